@@ -26,12 +26,16 @@ package org.restlet.ext.freemarker;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.restlet.Context;
 import org.restlet.Request;
 import org.restlet.Response;
 import org.restlet.data.CharacterSet;
 import org.restlet.data.MediaType;
+import org.restlet.engine.util.TemplateEngineRegistry;
 import org.restlet.ext.freemarker.internal.ResolverHashModel;
 import org.restlet.representation.Representation;
 import org.restlet.representation.WriterRepresentation;
@@ -43,15 +47,81 @@ import freemarker.template.TemplateException;
 
 /**
  * FreeMarker template representation. Useful for dynamic string-based
- * representations.
+ * representations. When no configuration is given, the one shared by the
+ * current application is used, see {@link #getConfiguration(Context)}.
+ * Templates provided as representations with a location are compiled once and
+ * cached by the application's {@link TemplateEngineRegistry}.
  * 
  * @see <a href="http://freemarker.org/">FreeMarker home page</a>
  * @author Jerome Louvel
  */
 public class TemplateRepresentation extends WriterRepresentation {
 
+    /**
+     * The prefixes of the cached template keys, per configuration. As the
+     * configurations don't override equals(), they are compared by identity.
+     */
+    private static final Map<Configuration, String> keyPrefixes = new WeakHashMap<Configuration, String>();
+
+    /** The number of key prefixes created. */
+    private static final AtomicLong keyPrefixCount = new AtomicLong();
+
+    /**
+     * Returns the FreeMarker configuration shared by the application of the
+     * given context. It is created on first use and checks the modification
+     * of templates after the delay returned by
+     * {@link TemplateEngineRegistry#getTemplateCacheTtlMs()}. A preconfigured
+     * configuration can also be registered with
+     * {@link TemplateEngineRegistry#putEngineIfAbsent(Class, Object)}, for
+     * example with a {@link ContextTemplateLoader}.
+     * 
+     * @param context
+     *            The application context or null for the current one.
+     * @return The shared FreeMarker configuration.
+     */
+    public static Configuration getConfiguration(Context context) {
+        TemplateEngineRegistry registry = TemplateEngineRegistry
+                .getInstance(context);
+        Configuration result = registry.getEngine(Configuration.class);
+
+        if (result == null) {
+            long ttl = registry.getTemplateCacheTtlMs();
+            result = new Configuration();
+            result.setTemplateUpdateDelay((ttl < 0) ? Integer.MAX_VALUE
+                    : (int) Math.min(Integer.MAX_VALUE, ttl / 1000));
+            result = registry.putEngineIfAbsent(Configuration.class, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the prefix of the cached template keys of a configuration,
+     * unique for the lifetime of the configuration.
+     * 
+     * @param config
+     *            The FreeMarker configuration.
+     * @return The prefix of the cached template keys.
+     */
+    private static String getKeyPrefix(Configuration config) {
+        synchronized (keyPrefixes) {
+            String result = keyPrefixes.get(config);
+
+            if (result == null) {
+                result = "freemarker:" + keyPrefixCount.incrementAndGet()
+                        + ":";
+                keyPrefixes.put(config, result);
+            }
+
+            return result;
+        }
+    }
+
     /**
      * Returns a FreeMarker template from a representation and a configuration.
+     * If the representation has a location, the compiled template is cached by
+     * the application and reused as long as the representation isn't
+     * modified.
      * 
      * @param config
      *            The FreeMarker configuration.
@@ -61,17 +131,35 @@ public class TemplateRepresentation extends WriterRepresentation {
      */
     public static Template getTemplate(Configuration config,
             Representation templateRepresentation) {
+        TemplateEngineRegistry registry = TemplateEngineRegistry
+                .getInstance(null);
+        String key = (templateRepresentation.getLocationRef() == null) ? null
+                : getKeyPrefix(config)
+                        + templateRepresentation.getLocationRef();
+        Template result = (Template) registry.getTemplate(key,
+                templateRepresentation.getModificationDate());
+
+        if (result != null) {
+            templateRepresentation.release();
+            return result;
+        }
+
         try {
             // Instantiate the template with the character set of the template
             // representation if it has been set, otherwise use UTF-8.
             if (templateRepresentation.getCharacterSet() != null) {
-                return new Template("template",
+                result = new Template("template",
                         templateRepresentation.getReader(), config,
                         templateRepresentation.getCharacterSet().getName());
+            } else {
+                result = new Template("template",
+                        templateRepresentation.getReader(), config,
+                        CharacterSet.UTF_8.getName());
             }
 
-            return new Template("template", templateRepresentation.getReader(),
-                    config, CharacterSet.UTF_8.getName());
+            registry.putTemplate(key,
+                    templateRepresentation.getModificationDate(), result);
+            return result;
         } catch (IOException e) {
             Context.getCurrentLogger().warning(
                     "Unable to get the template from the representation "
@@ -104,6 +192,9 @@ public class TemplateRepresentation extends WriterRepresentation {
     /** The template's data model. */
     private volatile Object dataModel;
 
+    /** The template engine registry of the current application. */
+    private final TemplateEngineRegistry registry;
+
     /** The FreeMarker template. */
     private volatile Template template;
 
@@ -149,7 +240,7 @@ public class TemplateRepresentation extends WriterRepresentation {
      */
     public TemplateRepresentation(Representation templateRepresentation,
             MediaType mediaType) {
-        this(templateRepresentation, new Configuration(), mediaType);
+        this(templateRepresentation, getConfiguration(null), mediaType);
     }
 
     /**
@@ -164,7 +255,8 @@ public class TemplateRepresentation extends WriterRepresentation {
      */
     public TemplateRepresentation(Representation templateRepresentation,
             Object dataModel, MediaType mediaType) {
-        this(templateRepresentation, new Configuration(), dataModel, mediaType);
+        this(templateRepresentation, getConfiguration(null), dataModel,
+                mediaType);
     }
 
     /**
@@ -211,6 +303,7 @@ public class TemplateRepresentation extends WriterRepresentation {
      */
     public TemplateRepresentation(Template template, MediaType mediaType) {
         super(mediaType);
+        this.registry = TemplateEngineRegistry.getInstance(null);
         this.template = template;
     }
 
@@ -227,6 +320,7 @@ public class TemplateRepresentation extends WriterRepresentation {
     public TemplateRepresentation(Template template, Object dataModel,
             MediaType mediaType) {
         super(mediaType);
+        this.registry = TemplateEngineRegistry.getInstance(null);
         this.template = template;
         this.dataModel = dataModel;
     }
@@ -311,11 +405,17 @@ public class TemplateRepresentation extends WriterRepresentation {
     @Override
     public void write(Writer writer) throws IOException {
         if (this.template != null) {
+            long startTime = System.nanoTime();
+            boolean success = false;
+
             try {
                 this.template.process(getDataModel(), writer);
+                success = true;
             } catch (TemplateException te) {
                 throw new IOException("Template processing error "
                         + te.getMessage());
+            } finally {
+                this.registry.recordRender(startTime, success);
             }
         } else {
             Context.getCurrentLogger()
@@ -77,6 +77,16 @@ public class JacksonConverter extends ConverterHelper {
     private static final VariantInfo VARIANT_TEXT_YAML = new VariantInfo(
             MediaType.TEXT_YAML);
 
+    /** The registry of shared mappers. */
+    private volatile JacksonMapperRegistry mapperRegistry;
+
+    /**
+     * Constructor.
+     */
+    public JacksonConverter() {
+        this.mapperRegistry = new JacksonMapperRegistry();
+    }
+
     /**
      * Creates the marshaling {@link JacksonRepresentation}.
      * 
@@ -88,7 +98,10 @@ public class JacksonConverter extends ConverterHelper {
      * @return The marshaling {@link JacksonRepresentation}.
      */
     protected <T> JacksonRepresentation<T> create(MediaType mediaType, T source) {
-        return new JacksonRepresentation<T>(mediaType, source);
+        JacksonRepresentation<T> result = new JacksonRepresentation<T>(
+                mediaType, source);
+        result.setMapperRegistry(getMapperRegistry());
+        return result;
     }
 
     /**
@@ -103,7 +116,20 @@ public class JacksonConverter extends ConverterHelper {
      */
     protected <T> JacksonRepresentation<T> create(Representation source,
             Class<T> objectClass) {
-        return new JacksonRepresentation<T>(source, objectClass);
+        JacksonRepresentation<T> result = new JacksonRepresentation<T>(source,
+                objectClass);
+        result.setMapperRegistry(getMapperRegistry());
+        return result;
+    }
+
+    /**
+     * Returns the registry of the mappers shared by the representations
+     * created by this converter.
+     * 
+     * @return The registry of shared mappers.
+     */
+    public JacksonMapperRegistry getMapperRegistry() {
+        return mapperRegistry;
     }
 
     @Override
@@ -197,6 +223,19 @@ public class JacksonConverter extends ConverterHelper {
         return result;
     }
 
+    /**
+     * Sets the registry of the mappers shared by the representations created
+     * by this converter. Set a subclass of {@link JacksonMapperRegistry} to
+     * customize the shared mappers, or null to create new mappers for each
+     * representation.
+     * 
+     * @param mapperRegistry
+     *            The registry of shared mappers.
+     */
+    public void setMapperRegistry(JacksonMapperRegistry mapperRegistry) {
+        this.mapperRegistry = mapperRegistry;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public <T> T toObject(Representation source, Class<T> target,
@@ -0,0 +1,343 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.ext.jackson;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.restlet.data.MediaType;
+import org.restlet.ext.jackson.internal.XmlFactoryProvider;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator.Feature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.csv.CsvFactory;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.xml.XmlFactory;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+
+/**
+ * Registry of shared Jackson object mappers, one per supported format. Object
+ * mappers are thread-safe once configured and keep caches of serializers and
+ * deserializers, so sharing them across representations avoids rebuilding
+ * those caches on each call. The object readers and writers derived from a
+ * shared mapper are also cached per target class.<br>
+ * <br>
+ * The shared mappers must not be modified after their creation. To customize
+ * their configuration, override the
+ * {@link #createObjectMapper(MediaType, boolean, boolean)} method and set the
+ * registry on the {@link JacksonConverter}.
+ * 
+ * @author Jerome Louvel
+ */
+public class JacksonMapperRegistry {
+
+    /** Shared object mapper with its cached readers and writers. */
+    private static final class MapperEntry {
+
+        /** The shared object mapper. */
+        private final ObjectMapper objectMapper;
+
+        /** The object readers cached per target class. */
+        private final ConcurrentMap<Class<?>, ObjectReader> objectReaders;
+
+        /** The object writers cached per source class. */
+        private final ConcurrentMap<Class<?>, ObjectWriter> objectWriters;
+
+        /**
+         * Constructor.
+         * 
+         * @param objectMapper
+         *            The shared object mapper.
+         */
+        private MapperEntry(ObjectMapper objectMapper) {
+            this.objectMapper = objectMapper;
+            this.objectReaders = new ConcurrentHashMap<Class<?>, ObjectReader>();
+            this.objectWriters = new ConcurrentHashMap<Class<?>, ObjectWriter>();
+        }
+    }
+
+    /**
+     * Creates a new Jackson object mapper based on a media type. It supports
+     * JSON, JSON Smile, CBOR, XML, YAML and CSV, defaulting to JSON.
+     * 
+     * @param mediaType
+     *            The target media type.
+     * @param expandingEntityRefs
+     *            True if the XML parser will expand entity reference nodes.
+     * @param validatingDtd
+     *            True if the XML parser will validate DTD documents.
+     * @return The new Jackson object mapper.
+     */
+    static ObjectMapper newObjectMapper(MediaType mediaType,
+            boolean expandingEntityRefs, boolean validatingDtd) {
+        ObjectMapper result = null;
+
+        if (MediaType.APPLICATION_JSON.isCompatible(mediaType)) {
+            JsonFactory jsonFactory = new JsonFactory();
+            jsonFactory.configure(Feature.AUTO_CLOSE_TARGET, false);
+            result = new ObjectMapper(jsonFactory);
+        } else if (MediaType.APPLICATION_JSON_SMILE.isCompatible(mediaType)) {
+            SmileFactory smileFactory = new SmileFactory();
+            smileFactory.configure(Feature.AUTO_CLOSE_TARGET, false);
+            result = new ObjectMapper(smileFactory);
+        } else if (MediaType.APPLICATION_CBOR.isCompatible(mediaType)) {
+            CBORFactory cborFactory = new CBORFactory();
+            cborFactory.configure(Feature.AUTO_CLOSE_TARGET, false);
+            result = new ObjectMapper(cborFactory);
+            // [ifndef android]
+        } else if (MediaType.APPLICATION_XML.isCompatible(mediaType)
+                || MediaType.TEXT_XML.isCompatible(mediaType)) {
+            javax.xml.stream.XMLInputFactory xif = XmlFactoryProvider
+                    .newInputFactory();
+            xif.setProperty(
+                    javax.xml.stream.XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+                    expandingEntityRefs);
+            xif.setProperty(javax.xml.stream.XMLInputFactory.SUPPORT_DTD,
+                    expandingEntityRefs);
+            xif.setProperty(javax.xml.stream.XMLInputFactory.IS_VALIDATING,
+                    validatingDtd);
+            javax.xml.stream.XMLOutputFactory xof = XmlFactoryProvider
+                    .newOutputFactory();
+            XmlFactory xmlFactory = new XmlFactory(xif, xof);
+            xmlFactory.configure(Feature.AUTO_CLOSE_TARGET, false);
+            result = new XmlMapper(xmlFactory);
+            // [enddef]
+        } else if (MediaType.APPLICATION_YAML.isCompatible(mediaType)
+                || MediaType.TEXT_YAML.isCompatible(mediaType)) {
+            YAMLFactory yamlFactory = new YAMLFactory();
+            yamlFactory.configure(Feature.AUTO_CLOSE_TARGET, false);
+            result = new ObjectMapper(yamlFactory);
+        } else if (MediaType.TEXT_CSV.isCompatible(mediaType)) {
+            CsvFactory csvFactory = new CsvFactory();
+            csvFactory.configure(Feature.AUTO_CLOSE_TARGET, false);
+            result = new CsvMapper(csvFactory);
+        } else {
+            JsonFactory jsonFactory = new JsonFactory();
+            jsonFactory.configure(Feature.AUTO_CLOSE_TARGET, false);
+            result = new ObjectMapper(jsonFactory);
+        }
+
+        return result;
+    }
+
+    /** The shared mappers, by format key. */
+    private final ConcurrentMap<String, MapperEntry> entries;
+
+    /**
+     * Constructor.
+     */
+    public JacksonMapperRegistry() {
+        this.entries = new ConcurrentHashMap<String, MapperEntry>();
+    }
+
+    /**
+     * Clears the shared mappers and their cached readers and writers.
+     */
+    public void clear() {
+        this.entries.clear();
+    }
+
+    /**
+     * Creates the Jackson object mapper to share for a given format. By
+     * default, it has the same configuration as the mappers created by
+     * {@link JacksonRepresentation#createObjectMapper()}. Override this method
+     * to customize the shared mappers.
+     * 
+     * @param mediaType
+     *            The target media type.
+     * @param expandingEntityRefs
+     *            True if the XML parser will expand entity reference nodes.
+     * @param validatingDtd
+     *            True if the XML parser will validate DTD documents.
+     * @return The Jackson object mapper.
+     */
+    protected ObjectMapper createObjectMapper(MediaType mediaType,
+            boolean expandingEntityRefs, boolean validatingDtd) {
+        return newObjectMapper(mediaType, expandingEntityRefs, validatingDtd);
+    }
+
+    /**
+     * Returns the entry of a shared mapper or null if the given mapper isn't
+     * shared by this registry.
+     * 
+     * @param objectMapper
+     *            The object mapper.
+     * @return The entry of the shared mapper or null.
+     */
+    private MapperEntry getEntry(ObjectMapper objectMapper) {
+        for (MapperEntry entry : this.entries.values()) {
+            if (entry.objectMapper == objectMapper) {
+                return entry;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the key of the format of a given media type. Media types served
+     * by the same kind of mapper share the same key.
+     * 
+     * @param mediaType
+     *            The media type.
+     * @param expandingEntityRefs
+     *            True if the XML parser will expand entity reference nodes.
+     * @param validatingDtd
+     *            True if the XML parser will validate DTD documents.
+     * @return The format key.
+     */
+    protected String getKey(MediaType mediaType, boolean expandingEntityRefs,
+            boolean validatingDtd) {
+        String result = null;
+
+        if (MediaType.APPLICATION_JSON.isCompatible(mediaType)) {
+            result = "json";
+        } else if (MediaType.APPLICATION_JSON_SMILE.isCompatible(mediaType)) {
+            result = "smile";
+        } else if (MediaType.APPLICATION_CBOR.isCompatible(mediaType)) {
+            result = "cbor";
+            // [ifndef android]
+        } else if (MediaType.APPLICATION_XML.isCompatible(mediaType)
+                || MediaType.TEXT_XML.isCompatible(mediaType)) {
+            result = "xml:" + expandingEntityRefs + ":" + validatingDtd;
+            // [enddef]
+        } else if (MediaType.APPLICATION_YAML.isCompatible(mediaType)
+                || MediaType.TEXT_YAML.isCompatible(mediaType)) {
+            result = "yaml";
+        } else if (MediaType.TEXT_CSV.isCompatible(mediaType)) {
+            result = "csv";
+        } else {
+            result = "json";
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the shared Jackson object mapper for a given media type, creating
+     * it at first use.
+     * 
+     * @param mediaType
+     *            The target media type.
+     * @param expandingEntityRefs
+     *            True if the XML parser will expand entity reference nodes.
+     * @param validatingDtd
+     *            True if the XML parser will validate DTD documents.
+     * @return The shared Jackson object mapper.
+     */
+    public ObjectMapper getObjectMapper(MediaType mediaType,
+            boolean expandingEntityRefs, boolean validatingDtd) {
+        String key = getKey(mediaType, expandingEntityRefs, validatingDtd);
+        MapperEntry entry = this.entries.get(key);
+
+        if (entry == null) {
+            entry = new MapperEntry(createObjectMapper(mediaType,
+                    expandingEntityRefs, validatingDtd));
+            MapperEntry prev = this.entries.putIfAbsent(key, entry);
+
+            if (prev != null) {
+                entry = prev;
+            }
+        }
+
+        return entry.objectMapper;
+    }
+
+    /**
+     * Returns an object reader for the given mapper and target class. The
+     * reader is cached when the mapper is shared by this registry.
+     * 
+     * @param objectMapper
+     *            The object mapper.
+     * @param objectClass
+     *            The target class.
+     * @return The object reader.
+     */
+    public ObjectReader getObjectReader(ObjectMapper objectMapper,
+            Class<?> objectClass) {
+        MapperEntry entry = (objectClass == null) ? null
+                : getEntry(objectMapper);
+
+        if (entry == null) {
+            return objectMapper.reader(objectClass);
+        }
+
+        ObjectReader result = entry.objectReaders.get(objectClass);
+
+        if (result == null) {
+            result = objectMapper.reader(objectClass);
+            ObjectReader prev = entry.objectReaders.putIfAbsent(objectClass,
+                    result);
+
+            if (prev != null) {
+                result = prev;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns an object writer for the given mapper and source class. The
+     * writer is cached when the mapper is shared by this registry.
+     * 
+     * @param objectMapper
+     *            The object mapper.
+     * @param objectClass
+     *            The source class.
+     * @return The object writer.
+     */
+    public ObjectWriter getObjectWriter(ObjectMapper objectMapper,
+            Class<?> objectClass) {
+        MapperEntry entry = (objectClass == null) ? null
+                : getEntry(objectMapper);
+
+        if (entry == null) {
+            return objectMapper.writerWithType(objectClass);
+        }
+
+        ObjectWriter result = entry.objectWriters.get(objectClass);
+
+        if (result == null) {
+            result = objectMapper.writerWithType(objectClass);
+            ObjectWriter prev = entry.objectWriters.putIfAbsent(objectClass,
+                    result);
+
+            if (prev != null) {
+                result = prev;
+            }
+        }
+
+        return result;
+    }
+
+}
@@ -24,22 +24,13 @@
 
 package org.restlet.ext.jackson;
 
-import com.fasterxml.jackson.core.JsonFactory;
-import com.fasterxml.jackson.core.JsonGenerator.Feature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.ObjectWriter;
-import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
-import com.fasterxml.jackson.dataformat.csv.CsvFactory;
 import com.fasterxml.jackson.dataformat.csv.CsvMapper;
 import com.fasterxml.jackson.dataformat.csv.CsvSchema;
-import com.fasterxml.jackson.dataformat.smile.SmileFactory;
-import com.fasterxml.jackson.dataformat.xml.XmlFactory;
-import com.fasterxml.jackson.dataformat.xml.XmlMapper;
-import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 
 import org.restlet.data.MediaType;
-import org.restlet.ext.jackson.internal.XmlFactoryProvider;
 import org.restlet.representation.OutputRepresentation;
 import org.restlet.representation.Representation;
 
@@ -91,6 +82,9 @@ public class JacksonRepresentation<T> extends OutputRepresentation {
      */
     private volatile boolean expandingEntityRefs;
 
+    /** The optional registry of shared mappers. */
+    private volatile JacksonMapperRegistry mapperRegistry;
+
     /** The (parsed) object to format. */
     private volatile T object;
 
@@ -134,6 +128,7 @@ public class JacksonRepresentation<T> extends OutputRepresentation {
         this.objectClass = (Class<T>) ((object == null) ? null : object
                 .getClass());
         this.representation = null;
+        this.mapperRegistry = null;
         this.objectMapper = null;
         this.objectReader = null;
         this.objectWriter = null;
@@ -158,6 +153,7 @@ public class JacksonRepresentation<T> extends OutputRepresentation {
         this.object = null;
         this.objectClass = objectClass;
         this.representation = representation;
+        this.mapperRegistry = null;
         this.objectMapper = null;
         this.objectReader = null;
         this.objectWriter = null;
@@ -192,59 +188,26 @@ public class JacksonRepresentation<T> extends OutputRepresentation {
 
     /**
      * Creates a Jackson object mapper based on a media type. It supports JSON,
-     * JSON Smile, XML, YAML and CSV.
+     * JSON Smile, XML, YAML and CSV. If a mapper registry is set, the mapper
+     * shared by the registry is returned instead of a new one.
      * 
      * @return The Jackson object mapper.
      */
     protected ObjectMapper createObjectMapper() {
-        ObjectMapper result = null;
-
-        if (MediaType.APPLICATION_JSON.isCompatible(getMediaType())) {
-            JsonFactory jsonFactory = new JsonFactory();
-            jsonFactory.configure(Feature.AUTO_CLOSE_TARGET, false);
-            result = new ObjectMapper(jsonFactory);
-        } else if (MediaType.APPLICATION_JSON_SMILE
-                .isCompatible(getMediaType())) {
-            SmileFactory smileFactory = new SmileFactory();
-            smileFactory.configure(Feature.AUTO_CLOSE_TARGET, false);
-            result = new ObjectMapper(smileFactory);
-        } else if (MediaType.APPLICATION_CBOR
-                .isCompatible(getMediaType())) {
-            CBORFactory cborFactory = new CBORFactory();
-            cborFactory.configure(Feature.AUTO_CLOSE_TARGET, false);
-            result = new ObjectMapper(cborFactory);
-            // [ifndef android]
-        } else if (MediaType.APPLICATION_XML.isCompatible(getMediaType())
-                || MediaType.TEXT_XML.isCompatible(getMediaType())) {
-            javax.xml.stream.XMLInputFactory xif = XmlFactoryProvider.newInputFactory();
-            xif.setProperty(
-                    javax.xml.stream.XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
-                    isExpandingEntityRefs());
-            xif.setProperty(javax.xml.stream.XMLInputFactory.SUPPORT_DTD,
-                    isExpandingEntityRefs());
-            xif.setProperty(javax.xml.stream.XMLInputFactory.IS_VALIDATING,
-                    isValidatingDtd());
-            javax.xml.stream.XMLOutputFactory xof = XmlFactoryProvider.newOutputFactory();
-            XmlFactory xmlFactory = new XmlFactory(xif, xof);
-            xmlFactory.configure(Feature.AUTO_CLOSE_TARGET, false);
-            result = new XmlMapper(xmlFactory);
-            // [enddef]
-        } else if (MediaType.APPLICATION_YAML.isCompatible(getMediaType())
-                || MediaType.TEXT_YAML.isCompatible(getMediaType())) {
-            YAMLFactory yamlFactory = new YAMLFactory();
-            yamlFactory.configure(Feature.AUTO_CLOSE_TARGET, false);
-            result = new ObjectMapper(yamlFactory);
-        } else if (MediaType.TEXT_CSV.isCompatible(getMediaType())) {
-            CsvFactory csvFactory = new CsvFactory();
-            csvFactory.configure(Feature.AUTO_CLOSE_TARGET, false);
-            result = new CsvMapper(csvFactory);
-        } else {
-            JsonFactory jsonFactory = new JsonFactory();
-            jsonFactory.configure(Feature.AUTO_CLOSE_TARGET, false);
-            result = new ObjectMapper(jsonFactory);
+        boolean expandingEntityRefs = false;
+        boolean validatingDtd = false;
+        // [ifndef android]
+        expandingEntityRefs = isExpandingEntityRefs();
+        validatingDtd = isValidatingDtd();
+        // [enddef]
+
+        if (getMapperRegistry() != null) {
+            return getMapperRegistry().getObjectMapper(getMediaType(),
+                    expandingEntityRefs, validatingDtd);
         }
 
-        return result;
+        return JacksonMapperRegistry.newObjectMapper(getMediaType(),
+                expandingEntityRefs, validatingDtd);
     }
 
     /**
@@ -260,6 +223,9 @@ public class JacksonRepresentation<T> extends OutputRepresentation {
             CsvMapper csvMapper = (CsvMapper) getObjectMapper();
             CsvSchema csvSchema = createCsvSchema(csvMapper);
             result = csvMapper.reader(getObjectClass()).with(csvSchema);
+        } else if (getMapperRegistry() != null) {
+            result = getMapperRegistry().getObjectReader(getObjectMapper(),
+                    getObjectClass());
         } else {
             result = getObjectMapper().reader(getObjectClass());
         }
@@ -280,6 +246,9 @@ public class JacksonRepresentation<T> extends OutputRepresentation {
             CsvMapper csvMapper = (CsvMapper) getObjectMapper();
             CsvSchema csvSchema = createCsvSchema(csvMapper);
             result = csvMapper.writer(csvSchema);
+        } else if (getMapperRegistry() != null) {
+            result = getMapperRegistry().getObjectWriter(getObjectMapper(),
+                    getObjectClass());
         } else {
             result = getObjectMapper().writerWithType(getObjectClass());
         }
@@ -300,6 +269,15 @@ public class JacksonRepresentation<T> extends OutputRepresentation {
         return this.csvSchema;
     }
 
+    /**
+     * Returns the optional registry of shared mappers.
+     * 
+     * @return The optional registry of shared mappers.
+     */
+    public JacksonMapperRegistry getMapperRegistry() {
+        return mapperRegistry;
+    }
+
     /**
      * Returns the wrapped object, deserializing the representation with Jackson
      * if necessary.
@@ -331,7 +309,9 @@ public class JacksonRepresentation<T> extends OutputRepresentation {
 
     /**
      * Returns the modifiable Jackson object mapper. Useful to customize
-     * mappings.
+     * mappings. Note that when a mapper registry is set, the returned mapper is
+     * shared and should not be modified. In this case, call
+     * {@link #setObjectMapper(ObjectMapper)} with a dedicated mapper instead.
      * 
      * @return The modifiable Jackson object mapper.
      */
@@ -415,6 +395,18 @@ public class JacksonRepresentation<T> extends OutputRepresentation {
         this.expandingEntityRefs = expandEntityRefs;
     }
 
+    /**
+     * Sets the optional registry of shared mappers. When set, the object
+     * mapper, reader and writer are taken from the registry instead of being
+     * created for this representation.
+     * 
+     * @param mapperRegistry
+     *            The optional registry of shared mappers.
+     */
+    public void setMapperRegistry(JacksonMapperRegistry mapperRegistry) {
+        this.mapperRegistry = mapperRegistry;
+    }
+
     /**
      * Sets the object to format.
      * 
@@ -26,7 +26,9 @@ package org.restlet.ext.jetty;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.logging.Level;
 
@@ -42,6 +44,7 @@ import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.LowResourceMonitor;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.spdy.server.NPNServerConnectionFactory;
+import org.eclipse.jetty.spdy.server.SPDYServerConnectionFactory;
 import org.eclipse.jetty.spdy.server.http.HTTPSPDYServerConnectionFactory;
 import org.eclipse.jetty.spdy.server.http.PushStrategy;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
@@ -50,6 +53,7 @@ import org.eclipse.jetty.util.thread.Scheduler;
 import org.eclipse.jetty.util.thread.ThreadPool;
 import org.restlet.Server;
 import org.restlet.ext.jetty.internal.JettyServerCall;
+import org.restlet.ext.jetty.internal.RestletSpdyConnectionFactory;
 
 /**
  * Abstract Jetty web server connector. Here is the list of parameters that are
@@ -223,6 +227,29 @@ import org.restlet.ext.jetty.internal.JettyServerCall;
  * <td>SPDY push strategy; can be null or "referrer" (shortcut for
  * "org.eclipse.jetty.spdy.server.http.ReferrerPushStrategy") or a class name.</td>
  * </tr>
+ * <tr>
+ * <td>spdy.npn</td>
+ * <td>boolean</td>
+ * <td>true</td>
+ * <td>SPDY negotiation; when true, SPDY is selected with NPN during the TLS
+ * handshake and HTTP/1.1 is used otherwise; when false, the connections
+ * directly speak SPDY, for example over cleartext connections, so the port
+ * doesn't accept HTTP/1.1 clients anymore</td>
+ * </tr>
+ * <tr>
+ * <td>spdy.maxConcurrentStreams</td>
+ * <td>int</td>
+ * <td>-1</td>
+ * <td>SPDY maximum number of concurrent streams per connection advertised to
+ * the clients; each stream is handled as a separate call; when -1, no limit is
+ * advertised</td>
+ * </tr>
+ * <tr>
+ * <td>spdy.initialWindowSize</td>
+ * <td>int</td>
+ * <td>65536</td>
+ * <td>SPDY initial flow control window size of each stream in bytes</td>
+ * </tr>
  * </table>
  * 
  * @see <a href="http://www.eclipse.org/jetty/">Jetty home page</a>
@@ -332,13 +359,17 @@ public abstract class JettyServerHelper extends
         if (spdyVersion == 0)
             return new ConnectionFactory[] { http };
         else {
-            /*
-             * try { SPDYServerConnectionFactory.
-             * checkProtocolNegotiationAvailable(); } catch( Exception e ) {
-             * getLogger().log( Level.WARNING,
-             * "Jetty NPN boot is not available in -Xbootclasspath", e ); return
-             * null; }
-             */
+            if (getSpdyNpn()) {
+                try {
+                    SPDYServerConnectionFactory
+                            .checkProtocolNegotiationAvailable();
+                } catch (Throwable t) {
+                    getLogger().log(Level.WARNING,
+                            "Jetty NPN boot is not available in "
+                                    + "-Xbootclasspath, SPDY is disabled", t);
+                    return new ConnectionFactory[] { http };
+                }
+            }
 
             // Push strategy
             String pushStrategyName = getSpdyPushStrategy();
@@ -359,11 +390,19 @@ public abstract class JettyServerHelper extends
             }
 
             // SDPY connection factories
-            HTTPSPDYServerConnectionFactory spdy3 = spdyVersion == 3 ? new HTTPSPDYServerConnectionFactory(
+            HTTPSPDYServerConnectionFactory spdy3 = spdyVersion == 3 ? createSpdyConnectionFactory(
                     3, configuration, pushStrategy) : null;
-            HTTPSPDYServerConnectionFactory spdy2 = new HTTPSPDYServerConnectionFactory(
+            HTTPSPDYServerConnectionFactory spdy2 = createSpdyConnectionFactory(
                     2, configuration, pushStrategy);
 
+            if (!getSpdyNpn()) {
+                // Without negotiation, connections directly speak SPDY
+                if (spdyVersion == 3)
+                    return new ConnectionFactory[] { spdy3 };
+                else
+                    return new ConnectionFactory[] { spdy2 };
+            }
+
             // NPN connection factory
             NPNServerConnectionFactory npn;
 
@@ -473,6 +512,27 @@ public abstract class JettyServerHelper extends
         return server;
     }
 
+    /**
+     * Creates a Jetty SPDY connection factory.
+     * 
+     * @param version
+     *            The SPDY version.
+     * @param configuration
+     *            The HTTP configuration.
+     * @param pushStrategy
+     *            The SPDY push strategy.
+     * @return A Jetty SPDY connection factory.
+     */
+    private HTTPSPDYServerConnectionFactory createSpdyConnectionFactory(
+            int version, HttpConfiguration configuration,
+            PushStrategy pushStrategy) {
+        final RestletSpdyConnectionFactory result = new RestletSpdyConnectionFactory(
+                version, configuration, pushStrategy);
+        result.setInitialWindowSize(getSpdyInitialWindowSize());
+        result.setMaxConcurrentStreams(getSpdyMaxConcurrentStreams());
+        return result;
+    }
+
     /**
      * Creates a Jetty thread pool.
      * 
@@ -716,6 +776,90 @@ public abstract class JettyServerHelper extends
                 "lowResource.threads", "true"));
     }
 
+    /**
+     * Returns the SPDY connection factories of the started server.
+     * 
+     * @return The SPDY connection factories.
+     */
+    private List<RestletSpdyConnectionFactory> getSpdyConnectionFactories() {
+        List<RestletSpdyConnectionFactory> result = new ArrayList<RestletSpdyConnectionFactory>();
+        org.eclipse.jetty.server.Server server = this.wrappedServer;
+
+        if (server != null) {
+            for (Connector connector : server.getConnectors()) {
+                for (ConnectionFactory factory : connector
+                        .getConnectionFactories()) {
+                    if (factory instanceof RestletSpdyConnectionFactory) {
+                        result.add((RestletSpdyConnectionFactory) factory);
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * SPDY initial flow control window size in bytes. Defaults to 65536.
+     * <p>
+     * Used for each stream sent to the clients and advertised to them for the
+     * streams they send with SPDY/3. A larger window lets large entities be
+     * transferred without waiting for window updates, however it lets a
+     * single stream buffer more data in memory.
+     * 
+     * @return SPDY initial flow control window size.
+     */
+    public int getSpdyInitialWindowSize() {
+        return Integer.parseInt(getHelpedParameters().getFirstValue(
+                "spdy.initialWindowSize", "65536"));
+    }
+
+    /**
+     * SPDY maximum number of concurrent streams per connection. Defaults to
+     * -1.
+     * <p>
+     * Advertised to the clients when a connection is opened. Each stream is
+     * handled as a separate call by the thread pool. When -1, no limit is
+     * advertised.
+     * 
+     * @return SPDY maximum number of concurrent streams per connection.
+     */
+    public int getSpdyMaxConcurrentStreams() {
+        return Integer.parseInt(getHelpedParameters().getFirstValue(
+                "spdy.maxConcurrentStreams", "-1"));
+    }
+
+    /**
+     * Whether SPDY is negotiated with NPN. Defaults to true.
+     * <p>
+     * When true, SPDY is only used if the client selects it during the TLS
+     * handshake, otherwise HTTP/1.1 is used. When false, the connections
+     * directly speak SPDY, for example over cleartext connections with clients
+     * that know the server supports it. In this case, there is no fallback to
+     * HTTP/1.1, so HTTP/1.1 clients need to use another port.
+     * 
+     * @return Whether SPDY is negotiated with NPN.
+     */
+    public boolean getSpdyNpn() {
+        return Boolean.parseBoolean(getHelpedParameters().getFirstValue(
+                "spdy.npn", "true"));
+    }
+
+    /**
+     * Returns the number of open SPDY streams.
+     * 
+     * @return The number of open SPDY streams.
+     */
+    public int getSpdyOpenStreamCount() {
+        int result = 0;
+
+        for (RestletSpdyConnectionFactory factory : getSpdyConnectionFactories()) {
+            result += factory.getOpenStreamCount();
+        }
+
+        return result;
+    }
+
     /**
      * SPDY push strategy. Defaults to null.
      * <p>
@@ -729,12 +873,57 @@ public abstract class JettyServerHelper extends
         return getHelpedParameters().getFirstValue("spdy.pushStrategy");
     }
 
+    /**
+     * Returns the number of SPDY streams reset by the clients.
+     * 
+     * @return The number of SPDY streams reset by the clients.
+     */
+    public long getSpdyResetCount() {
+        long result = 0;
+
+        for (RestletSpdyConnectionFactory factory : getSpdyConnectionFactories()) {
+            result += factory.getResetCount();
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the number of SPDY sessions opened.
+     * 
+     * @return The number of SPDY sessions opened.
+     */
+    public long getSpdySessionCount() {
+        long result = 0;
+
+        for (RestletSpdyConnectionFactory factory : getSpdyConnectionFactories()) {
+            result += factory.getSessionCount();
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the number of SPDY streams opened.
+     * 
+     * @return The number of SPDY streams opened.
+     */
+    public long getSpdyStreamCount() {
+        long result = 0;
+
+        for (RestletSpdyConnectionFactory factory : getSpdyConnectionFactories()) {
+            result += factory.getStreamCount();
+        }
+
+        return result;
+    }
+
     /**
      * SPDY max version. Defaults to 0.
      * <p>
      * Can be 0, 2, or 3. If 0, SPDY is not used.
      *
-     * @return Low resource monitor stop timeout.
+     * @return SPDY max version.
      */
     public int getSpdyVersion() {
         return Integer.parseInt(getHelpedParameters().getFirstValue(
@@ -0,0 +1,153 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty.internal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.eclipse.jetty.client.api.ContentProvider;
+import org.eclipse.jetty.util.Callback;
+
+/**
+ * Jetty content provider reading the request entity from a channel, one buffer
+ * at a time, as Jetty's sender asks for it. The channel is closed once the
+ * content is sent or when the request fails.
+ * 
+ * @author Jerome Louvel
+ */
+public class ChannelContentProvider implements ContentProvider, Callback,
+        Closeable {
+
+    /**
+     * Iterator reading the next buffer from the channel.
+     */
+    private class ChannelIterator implements Iterator<ByteBuffer>, Closeable {
+
+        /** Indicates if the end of the channel was reached. */
+        private boolean eof;
+
+        /** The next buffer or null. */
+        private ByteBuffer next;
+
+        public void close() throws IOException {
+            ChannelContentProvider.this.close();
+        }
+
+        public boolean hasNext() {
+            if ((this.next == null) && !this.eof) {
+                try {
+                    ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+                    int read = 0;
+
+                    while (read == 0) {
+                        read = channel.read(buffer);
+                    }
+
+                    if (read == -1) {
+                        this.eof = true;
+                        close();
+                    } else {
+                        buffer.flip();
+                        this.next = buffer;
+                    }
+                } catch (IOException e) {
+                    this.eof = true;
+                    throw new IllegalStateException(
+                            "Unable to read the request entity", e);
+                }
+            }
+
+            return this.next != null;
+        }
+
+        public ByteBuffer next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            ByteBuffer result = this.next;
+            this.next = null;
+            return result;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /** The size of the buffers read from the channel. */
+    private final int bufferSize;
+
+    /** The source channel. */
+    private final ReadableByteChannel channel;
+
+    /** The content length or -1 if unknown. */
+    private final long length;
+
+    /**
+     * Constructor.
+     * 
+     * @param channel
+     *            The source channel.
+     * @param length
+     *            The content length or -1 if unknown.
+     * @param bufferSize
+     *            The size of the buffers read from the channel.
+     */
+    public ChannelContentProvider(ReadableByteChannel channel, long length,
+            int bufferSize) {
+        this.channel = channel;
+        this.length = length;
+        this.bufferSize = bufferSize;
+    }
+
+    public void close() {
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            // Nothing more can be done
+        }
+    }
+
+    public void failed(Throwable x) {
+        close();
+    }
+
+    public long getLength() {
+        return this.length;
+    }
+
+    public Iterator<ByteBuffer> iterator() {
+        return new ChannelIterator();
+    }
+
+    public void succeeded() {
+        close();
+    }
+}
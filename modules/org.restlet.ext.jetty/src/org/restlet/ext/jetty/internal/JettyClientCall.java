@@ -30,13 +30,10 @@ import java.io.OutputStream;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 
 import org.eclipse.jetty.client.HttpRequest;
-import org.eclipse.jetty.client.util.InputStreamContentProvider;
-import org.eclipse.jetty.client.util.InputStreamResponseListener;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpFields;
 import org.restlet.Request;
@@ -52,7 +49,10 @@ import org.restlet.representation.Representation;
 import org.restlet.util.Series;
 
 /**
- * HTTP client connector call based on Jetty's HttpRequest class.
+ * HTTP client connector call based on Jetty's HttpRequest class. The request
+ * entity is read from its channel by Jetty's sender and the response entity is
+ * exposed as a channel fed by Jetty's content callbacks. Asynchronous calls
+ * don't hold any thread while waiting for the response.
  * 
  * @author Jerome Louvel
  * @author Tal Liron
@@ -75,9 +75,14 @@ public class JettyClientCall extends ClientCall {
     private volatile org.eclipse.jetty.client.api.Response httpResponse;
 
     /**
-     * The wrapped input stream response listener.
+     * The failure that prevented a response from being received, or null.
      */
-    private volatile InputStreamResponseListener inputStreamResponseListener;
+    private volatile Throwable failure;
+
+    /**
+     * The response listener.
+     */
+    private volatile JettyResponseListener responseListener;
 
     /**
      * Indicates if the response headers were added.
@@ -131,15 +136,6 @@ public class JettyClientCall extends ClientCall {
         return this.httpResponse;
     }
 
-    /**
-     * Returns the input stream response listener.
-     * 
-     * @return The input stream response listener.
-     */
-    public InputStreamResponseListener getInputStreamResponseListener() {
-        return this.inputStreamResponseListener;
-    }
-
     /**
      * Returns the response reason phrase.
      * 
@@ -148,7 +144,12 @@ public class JettyClientCall extends ClientCall {
     @Override
     public String getReasonPhrase() {
         final org.eclipse.jetty.client.api.Response httpResponse = getHttpResponse();
-        return httpResponse == null ? null : httpResponse.getReason();
+
+        if (httpResponse != null) {
+            return httpResponse.getReason();
+        }
+
+        return (this.failure == null) ? null : this.failure.getMessage();
     }
 
     public WritableByteChannel getRequestEntityChannel() {
@@ -164,13 +165,17 @@ public class JettyClientCall extends ClientCall {
     }
 
     public ReadableByteChannel getResponseEntityChannel(long size) {
-        return null;
+        final JettyResponseListener responseListener = getResponseListener();
+        return responseListener == null ? null : responseListener
+                .getChannel();
     }
 
+    /**
+     * Returns null so that the response entity is read from its channel
+     * without blocking on the first byte.
+     */
     public InputStream getResponseEntityStream(long size) {
-        final InputStreamResponseListener inputStreamResponseListener = getInputStreamResponseListener();
-        return inputStreamResponseListener == null ? null
-                : inputStreamResponseListener.getInputStream();
+        return null;
     }
 
     /**
@@ -221,6 +226,15 @@ public class JettyClientCall extends ClientCall {
         return result;
     }
 
+    /**
+     * Returns the response listener.
+     * 
+     * @return The response listener.
+     */
+    public JettyResponseListener getResponseListener() {
+        return this.responseListener;
+    }
+
     /**
      * Returns the response address.<br>
      * Corresponds to the IP address of the responding server.
@@ -240,7 +254,46 @@ public class JettyClientCall extends ClientCall {
     @Override
     public int getStatusCode() {
         final org.eclipse.jetty.client.api.Response httpResponse = getHttpResponse();
-        return httpResponse == null ? null : httpResponse.getStatus();
+
+        if (httpResponse != null) {
+            return httpResponse.getStatus();
+        }
+
+        return Status.CONNECTOR_ERROR_COMMUNICATION.getCode();
+    }
+
+    /**
+     * Sets the request entity and headers on the Jetty request.
+     * 
+     * @param request
+     *            The high-level request.
+     * @throws IOException
+     */
+    private void prepareRequest(Request request) throws IOException {
+        final Representation entity = request.getEntity();
+
+        // Request entity
+        if (entity != null && entity.isAvailable()) {
+            this.httpRequest.content(new ChannelContentProvider(entity
+                    .getChannel(), entity.getAvailableSize(), this.clientHelper
+                    .getRequestBufferSize()));
+        }
+
+        // Set the request headers
+        for (Header header : getRequestHeaders()) {
+            final String name = header.getName();
+            switch (name) {
+            case HeaderConstants.HEADER_CONTENT_LENGTH:
+                // skip this header
+                break;
+            case HeaderConstants.HEADER_USER_AGENT:
+                this.httpRequest.agent(header.getValue());
+                break;
+            default:
+                this.httpRequest.header(name, header.getValue());
+                break;
+            }
+        }
     }
 
     /**
@@ -256,34 +309,13 @@ public class JettyClientCall extends ClientCall {
         Status result = null;
 
         try {
-            final Representation entity = request.getEntity();
-
-            // Request entity
-            if (entity != null && entity.isAvailable())
-                this.httpRequest.content(new InputStreamContentProvider(entity
-                        .getStream()));
-
-            // Set the request headers
-            for (Header header : getRequestHeaders()) {
-                final String name = header.getName();
-                switch (name) {
-                case HeaderConstants.HEADER_CONTENT_LENGTH:
-                    // skip this header
-                    break;
-                case HeaderConstants.HEADER_USER_AGENT:
-                    this.httpRequest.agent(header.getValue());
-                    break;
-                default:
-                    this.httpRequest.header(name, header.getValue());
-                    break;
-                }
-            }
+            prepareRequest(request);
 
             // Ensure that the connection is active
-            this.inputStreamResponseListener = new InputStreamResponseListener();
-            this.httpRequest.send(this.inputStreamResponseListener);
-            this.httpResponse = this.inputStreamResponseListener.get(
-                    clientHelper.getIdleTimeout(), TimeUnit.MILLISECONDS);
+            this.responseListener = new JettyResponseListener();
+            this.httpRequest.send(this.responseListener);
+            this.httpResponse = this.responseListener
+                    .awaitHeaders(clientHelper.getIdleTimeout());
 
             result = new Status(getStatusCode(), getReasonPhrase());
         } catch (IOException e) {
@@ -319,17 +351,52 @@ public class JettyClientCall extends ClientCall {
         return result;
     }
 
+    /**
+     * Sends the request and returns without waiting for the response. The
+     * callback is invoked by a thread of Jetty's executor once the response
+     * head is received or when the exchange fails.
+     */
     @Override
-    public void sendRequest(Request request, Response response, Uniform callback)
-            throws Exception {
-        sendRequest(request);
+    public void sendRequest(final Request request, final Response response,
+            final Uniform callback) throws Exception {
+        try {
+            prepareRequest(request);
+        } catch (IOException e) {
+            this.clientHelper.getLogger().log(Level.WARNING,
+                    "An error occurred while reading the request entity.", e);
+            this.failure = e;
+        }
+
+        if (this.failure == null) {
+            this.responseListener = new JettyResponseListener(
+                    this.clientHelper.getHttpClient().getExecutor(),
+                    new Runnable() {
+                        public void run() {
+                            httpResponse = responseListener.getResponse();
+
+                            if (httpResponse == null) {
+                                failure = responseListener.getFailure();
+                                clientHelper
+                                        .getLogger()
+                                        .log(Level.FINE,
+                                                "An error occurred while processing the HTTP request.",
+                                                failure);
+                            }
+
+                            if (callback != null) {
+                                callback.handle(request, response);
+                            }
+                        }
+                    });
+            this.httpRequest.send(this.responseListener);
+        }
 
         final Uniform getOnSent = request.getOnSent();
         if (getOnSent != null)
             getOnSent.handle(request, response);
 
-        if (callback != null)
-            // Transmit to the callback, if any
+        if ((this.failure != null) && (callback != null))
+            // Transmit the failure to the callback
             callback.handle(request, response);
     }
 }
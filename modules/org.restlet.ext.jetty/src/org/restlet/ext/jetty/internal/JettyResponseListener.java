@@ -0,0 +1,299 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.jetty.internal;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.util.Callback;
+
+/**
+ * Jetty response listener exposing the response entity as a channel. The
+ * content buffers provided by Jetty are read in place and only acknowledged
+ * once consumed, so Jetty stops reading from the connection while the
+ * consumer is late. No thread is held while waiting for the response head.
+ * 
+ * @author Jerome Louvel
+ */
+public class JettyResponseListener extends Response.Listener.Adapter {
+
+    /**
+     * Channel reading the content buffers provided by Jetty.
+     */
+    private class ContentChannel implements ReadableByteChannel {
+
+        public void close() throws IOException {
+            Callback callback;
+            boolean abort;
+
+            synchronized (JettyResponseListener.this) {
+                if (closed) {
+                    return;
+                }
+
+                closed = true;
+                callback = contentCallback;
+                content = null;
+                contentCallback = null;
+                abort = !completed;
+                JettyResponseListener.this.notifyAll();
+            }
+
+            if (callback != null) {
+                callback.succeeded();
+            }
+
+            if (abort && (response != null)) {
+                response.abort(new ClosedChannelException());
+            }
+        }
+
+        public boolean isOpen() {
+            synchronized (JettyResponseListener.this) {
+                return !closed;
+            }
+        }
+
+        public int read(ByteBuffer dst) throws IOException {
+            int result;
+            Callback callback = null;
+
+            synchronized (JettyResponseListener.this) {
+                while ((content == null) && !completed && !closed) {
+                    try {
+                        JettyResponseListener.this.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException(
+                                "Interrupted while reading the response");
+                    }
+                }
+
+                if (closed) {
+                    throw new ClosedChannelException();
+                } else if (content != null) {
+                    result = Math.min(dst.remaining(), content.remaining());
+                    ByteBuffer slice = content.slice();
+                    slice.limit(result);
+                    dst.put(slice);
+                    content.position(content.position() + result);
+
+                    if (!content.hasRemaining()) {
+                        callback = contentCallback;
+                        content = null;
+                        contentCallback = null;
+                    }
+                } else if (failure != null) {
+                    throw new IOException(
+                            "Unable to read the response entity", failure);
+                } else {
+                    result = -1;
+                }
+            }
+
+            // Let Jetty read the next content buffer
+            if (callback != null) {
+                callback.succeeded();
+            }
+
+            return result;
+        }
+    }
+
+    /** The response entity channel. */
+    private final ContentChannel channel;
+
+    /** Indicates if the response entity channel was closed. */
+    private boolean closed;
+
+    /** Indicates if the exchange is completed. */
+    private boolean completed;
+
+    /** The content buffer being read, or null. */
+    private ByteBuffer content;
+
+    /** The callback acknowledging the content buffer being read. */
+    private Callback contentCallback;
+
+    /** Indicates if the head task was dispatched. */
+    private boolean dispatched;
+
+    /** The executor running the head task. */
+    private final Executor executor;
+
+    /** The failure cause or null. */
+    private Throwable failure;
+
+    /** Indicates if the response head was received. */
+    private boolean headersReceived;
+
+    /** The task run once the response head is received or on failure. */
+    private final Runnable headTask;
+
+    /** The Jetty response. */
+    private volatile Response response;
+
+    /**
+     * Constructor for synchronous calls.
+     */
+    public JettyResponseListener() {
+        this(null, null);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param executor
+     *            The executor running the head task.
+     * @param headTask
+     *            The task run once the response head is received or when the
+     *            exchange fails before, or null.
+     */
+    public JettyResponseListener(Executor executor, Runnable headTask) {
+        this.channel = new ContentChannel();
+        this.executor = executor;
+        this.headTask = headTask;
+    }
+
+    /**
+     * Waits for the response head.
+     * 
+     * @param timeout
+     *            The maximum time to wait in milliseconds.
+     * @return The Jetty response.
+     * @throws InterruptedException
+     * @throws TimeoutException
+     * @throws ExecutionException
+     */
+    public synchronized Response awaitHeaders(long timeout)
+            throws InterruptedException, TimeoutException, ExecutionException {
+        long deadline = System.currentTimeMillis() + timeout;
+
+        while (!this.headersReceived && !this.completed) {
+            long wait = deadline - System.currentTimeMillis();
+
+            if (wait <= 0) {
+                throw new TimeoutException();
+            }
+
+            wait(wait);
+        }
+
+        if (!this.headersReceived) {
+            throw new ExecutionException(this.failure);
+        }
+
+        return this.response;
+    }
+
+    /**
+     * Runs the head task only once, outside of Jetty's thread.
+     */
+    private void dispatch() {
+        synchronized (this) {
+            if (this.dispatched || (this.headTask == null)) {
+                return;
+            }
+
+            this.dispatched = true;
+        }
+
+        this.executor.execute(this.headTask);
+    }
+
+    /**
+     * Returns the response entity channel.
+     * 
+     * @return The response entity channel.
+     */
+    public ReadableByteChannel getChannel() {
+        return this.channel;
+    }
+
+    /**
+     * Returns the failure cause or null.
+     * 
+     * @return The failure cause or null.
+     */
+    public synchronized Throwable getFailure() {
+        return this.failure;
+    }
+
+    /**
+     * Returns the Jetty response once the head is received.
+     * 
+     * @return The Jetty response.
+     */
+    public Response getResponse() {
+        return this.response;
+    }
+
+    @Override
+    public void onComplete(Result result) {
+        synchronized (this) {
+            this.completed = true;
+            this.failure = result.getFailure();
+            notifyAll();
+        }
+
+        dispatch();
+    }
+
+    @Override
+    public void onContent(Response response, ByteBuffer content,
+            Callback callback) {
+        synchronized (this) {
+            if (!this.closed) {
+                this.content = content;
+                this.contentCallback = callback;
+                notifyAll();
+                return;
+            }
+        }
+
+        // The consumer closed the channel
+        callback.succeeded();
+    }
+
+    @Override
+    public void onHeaders(Response response) {
+        this.response = response;
+
+        synchronized (this) {
+            this.headersReceived = true;
+            notifyAll();
+        }
+
+        dispatch();
+    }
+}
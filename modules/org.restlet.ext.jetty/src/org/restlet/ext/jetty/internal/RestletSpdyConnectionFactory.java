@@ -0,0 +1,261 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.ext.jetty.internal;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import org.eclipse.jetty.io.EndPoint;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.spdy.api.GoAwayResultInfo;
+import org.eclipse.jetty.spdy.api.PingResultInfo;
+import org.eclipse.jetty.spdy.api.RstInfo;
+import org.eclipse.jetty.spdy.api.Session;
+import org.eclipse.jetty.spdy.api.Settings;
+import org.eclipse.jetty.spdy.api.SettingsInfo;
+import org.eclipse.jetty.spdy.api.Stream;
+import org.eclipse.jetty.spdy.api.StreamFrameListener;
+import org.eclipse.jetty.spdy.api.SynInfo;
+import org.eclipse.jetty.spdy.api.server.ServerSessionFrameListener;
+import org.eclipse.jetty.spdy.server.http.HTTPSPDYServerConnectionFactory;
+import org.eclipse.jetty.spdy.server.http.PushStrategy;
+import org.eclipse.jetty.util.Callback;
+import org.restlet.Context;
+
+/**
+ * Jetty SPDY connection factory that advertises the stream limits of the
+ * Restlet connector to its clients. Each SPDY stream is still handled as a
+ * separate HTTP exchange by Jetty, hence as a separate Restlet call. It also
+ * counts the sessions, the streams and the streams reset by the clients. The
+ * open streams of a given session are returned by {@link Session#getStreams()}.
+ * 
+ * @author Jerome Louvel
+ */
+public class RestletSpdyConnectionFactory extends
+        HTTPSPDYServerConnectionFactory {
+
+    /**
+     * Session listener sending the initial settings frame and counting the
+     * streams before delegating to the Jetty HTTP listener.
+     */
+    private class SettingsListener implements ServerSessionFrameListener {
+
+        /** The wrapped listener. */
+        private final ServerSessionFrameListener wrapped;
+
+        /**
+         * Constructor.
+         * 
+         * @param wrapped
+         *            The wrapped listener.
+         */
+        public SettingsListener(ServerSessionFrameListener wrapped) {
+            this.wrapped = wrapped;
+        }
+
+        public void onConnect(Session session) {
+            sessionCount.incrementAndGet();
+            session.addListener(new Session.StreamListener() {
+                public void onStreamClosed(Stream stream) {
+                    openStreamCount.decrementAndGet();
+                }
+
+                public void onStreamCreated(Stream stream) {
+                    openStreamCount.incrementAndGet();
+                    streamCount.incrementAndGet();
+                }
+            });
+
+            Settings settings = getSettings();
+
+            if (settings.size() > 0) {
+                session.settings(new SettingsInfo(settings),
+                        new Callback.Adapter() {
+                            @Override
+                            public void failed(Throwable x) {
+                                Context.getCurrentLogger().log(Level.FINE,
+                                        "Unable to send the SPDY settings", x);
+                            }
+                        });
+            }
+
+            this.wrapped.onConnect(session);
+        }
+
+        public void onFailure(Session session, Throwable x) {
+            this.wrapped.onFailure(session, x);
+        }
+
+        public void onGoAway(Session session,
+                GoAwayResultInfo goAwayResultInfo) {
+            this.wrapped.onGoAway(session, goAwayResultInfo);
+        }
+
+        public void onPing(Session session, PingResultInfo pingResultInfo) {
+            this.wrapped.onPing(session, pingResultInfo);
+        }
+
+        public void onRst(Session session, RstInfo rstInfo) {
+            resetCount.incrementAndGet();
+            this.wrapped.onRst(session, rstInfo);
+        }
+
+        public void onSettings(Session session, SettingsInfo settingsInfo) {
+            this.wrapped.onSettings(session, settingsInfo);
+        }
+
+        public StreamFrameListener onSyn(Stream stream, SynInfo synInfo) {
+            return this.wrapped.onSyn(stream, synInfo);
+        }
+    }
+
+    /**
+     * The maximum number of concurrent streams per session advertised to the
+     * clients, or -1 if unlimited.
+     */
+    private volatile int maxConcurrentStreams;
+
+    /** The number of open streams. */
+    private final AtomicInteger openStreamCount;
+
+    /** The number of streams reset by the clients. */
+    private final AtomicLong resetCount;
+
+    /** The number of sessions opened. */
+    private final AtomicLong sessionCount;
+
+    /** The number of streams opened. */
+    private final AtomicLong streamCount;
+
+    /**
+     * Constructor.
+     * 
+     * @param version
+     *            The SPDY version.
+     * @param configuration
+     *            The HTTP configuration.
+     * @param pushStrategy
+     *            The push strategy.
+     */
+    public RestletSpdyConnectionFactory(int version,
+            HttpConfiguration configuration, PushStrategy pushStrategy) {
+        super(version, configuration, pushStrategy);
+        this.maxConcurrentStreams = -1;
+        this.openStreamCount = new AtomicInteger();
+        this.resetCount = new AtomicLong();
+        this.sessionCount = new AtomicLong();
+        this.streamCount = new AtomicLong();
+    }
+
+    /**
+     * Returns the maximum number of concurrent streams per session advertised
+     * to the clients, or -1 if unlimited.
+     * 
+     * @return The maximum number of concurrent streams per session.
+     */
+    public int getMaxConcurrentStreams() {
+        return this.maxConcurrentStreams;
+    }
+
+    /**
+     * Returns the number of open streams, over all the sessions.
+     * 
+     * @return The number of open streams.
+     */
+    public int getOpenStreamCount() {
+        return this.openStreamCount.get();
+    }
+
+    /**
+     * Returns the number of streams reset by the clients.
+     * 
+     * @return The number of streams reset by the clients.
+     */
+    public long getResetCount() {
+        return this.resetCount.get();
+    }
+
+    /**
+     * Returns the number of sessions opened since the factory was created.
+     * 
+     * @return The number of sessions opened.
+     */
+    public long getSessionCount() {
+        return this.sessionCount.get();
+    }
+
+    /**
+     * Returns the settings sent to the clients when a session is opened.
+     * 
+     * @return The settings sent to the clients.
+     */
+    protected Settings getSettings() {
+        Settings result = new Settings();
+
+        if (getMaxConcurrentStreams() >= 0) {
+            result.put(new Settings.Setting(
+                    Settings.ID.MAX_CONCURRENT_STREAMS,
+                    getMaxConcurrentStreams()));
+        }
+
+        if (getVersion() >= 3) {
+            result.put(new Settings.Setting(Settings.ID.INITIAL_WINDOW_SIZE,
+                    getInitialWindowSize()));
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the number of streams opened since the factory was created.
+     * 
+     * @return The number of streams opened.
+     */
+    public long getStreamCount() {
+        return this.streamCount.get();
+    }
+
+    @Override
+    protected ServerSessionFrameListener provideServerSessionFrameListener(
+            Connector connector, EndPoint endPoint) {
+        return new SettingsListener(super.provideServerSessionFrameListener(
+                connector, endPoint));
+    }
+
+    /**
+     * Sets the maximum number of concurrent streams per session advertised to
+     * the clients.
+     * 
+     * @param maxConcurrentStreams
+     *            The maximum number of concurrent streams per session, or -1
+     *            if unlimited.
+     */
+    public void setMaxConcurrentStreams(int maxConcurrentStreams) {
+        this.maxConcurrentStreams = maxConcurrentStreams;
+    }
+}
@@ -24,25 +24,87 @@
 
 package org.restlet.ext.netty;
 
-import java.net.InetSocketAddress;
-
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.logging.LogLevel;
-import io.netty.handler.logging.LoggingHandler;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.logging.Level;
 
 import org.restlet.Server;
+import org.restlet.engine.connector.NetServerHelper;
+import org.restlet.ext.netty.internal.HttpServerHandler;
 import org.restlet.ext.netty.internal.HttpServerInitializer;
 
 /**
+ * Abstract Netty server connector. The Netty event loops only decode the
+ * requests and encode the responses, they never block. Calls are handled by
+ * the worker threads created by {@link #createWorkerService()}, possibly
+ * virtual threads, while the request entities are read on demand as the
+ * worker consumes them. Here is the list of additional parameters that are
+ * supported. They should be set in the Server's context before it is started:
+ * <table>
+ * <tr>
+ * <th>Parameter name</th>
+ * <th>Value type</th>
+ * <th>Default value</th>
+ * <th>Description</th>
+ * </tr>
+ * <tr>
+ * <td>ioThreads</td>
+ * <td>int</td>
+ * <td>0</td>
+ * <td>Number of event loop threads reading and writing the connections. If
+ * the value is '0', then Netty's default is used, twice the number of
+ * processors.</td>
+ * </tr>
+ * <tr>
+ * <td>nativeTransport</td>
+ * <td>boolean</td>
+ * <td>false</td>
+ * <td>Indicates if the native epoll transport should be used instead of the
+ * NIO one. It is only available on Linux, the NIO transport is used
+ * otherwise.</td>
+ * </tr>
+ * <tr>
+ * <td>requestBufferSize</td>
+ * <td>int</td>
+ * <td>65536</td>
+ * <td>Number of request entity bytes buffered for a call before the reading of
+ * the connection is suspended, until the worker consumes them.</td>
+ * </tr>
+ * </table>
  * 
  * @author Jerome Louvel
  */
-public abstract class NettyServerHelper extends
-        org.restlet.engine.adapter.HttpServerHelper {
+public abstract class NettyServerHelper extends NetServerHelper {
+
+    /** The group of event loops accepting the connections. */
+    private volatile EventLoopGroup bossGroup;
+
+    /** The server channel. */
+    private volatile Channel channel;
+
+    /** The server bootstrap. */
+    private volatile ServerBootstrap serverBootstrap;
+
+    /** The group of event loops reading and writing the connections. */
+    private volatile EventLoopGroup workerGroup;
+
+    /** The service running the calls. */
+    private volatile ExecutorService workerService;
 
     /**
      * Constructor.
@@ -54,74 +116,242 @@ public abstract class NettyServerHelper extends
         super(server);
     }
 
-    private ServerBootstrap serverBootstrap;
-
-    private Channel channel;
+    /**
+     * Returns the group of event loops accepting the connections.
+     * 
+     * @return The group of event loops accepting the connections.
+     */
+    protected EventLoopGroup getBossGroup() {
+        return bossGroup;
+    }
 
+    /**
+     * Returns the server channel.
+     * 
+     * @return The server channel.
+     */
     protected Channel getChannel() {
         return channel;
     }
 
-    protected void setChannel(Channel channel) {
-        this.channel = channel;
+    /**
+     * Returns the number of event loop threads reading and writing the
+     * connections.
+     * 
+     * @return The number of event loop threads.
+     */
+    public int getIoThreads() {
+        return Integer.parseInt(getHelpedParameters().getFirstValue(
+                "ioThreads", "0"));
     }
 
-    protected void setServerBootstrap(ServerBootstrap serverBootstrap) {
-        this.serverBootstrap = serverBootstrap;
+    /**
+     * Returns the number of request entity bytes buffered for a call before
+     * the reading of the connection is suspended.
+     * 
+     * @return The number of request entity bytes buffered for a call.
+     */
+    public int getRequestBufferSize() {
+        return Integer.parseInt(getHelpedParameters().getFirstValue(
+                "requestBufferSize", "65536"));
     }
 
+    /**
+     * Returns the server bootstrap.
+     * 
+     * @return The server bootstrap.
+     */
     protected ServerBootstrap getServerBootstrap() {
         return serverBootstrap;
     }
 
-    private NioEventLoopGroup bossGroup;
+    /**
+     * Returns the group of event loops reading and writing the connections.
+     * 
+     * @return The group of event loops reading and writing the connections.
+     */
+    protected EventLoopGroup getWorkerGroup() {
+        return workerGroup;
+    }
 
-    protected NioEventLoopGroup getBossGroup() {
-        return bossGroup;
+    /**
+     * Returns the service running the calls.
+     * 
+     * @return The service running the calls.
+     */
+    public ExecutorService getWorkerService() {
+        return workerService;
     }
 
-    protected void setBossGroup(NioEventLoopGroup bossGroup) {
+    /**
+     * Indicates if the native epoll transport should be used instead of the
+     * NIO one.
+     * 
+     * @return True if the native epoll transport should be used.
+     */
+    public boolean isNativeTransport() {
+        return Boolean.parseBoolean(getHelpedParameters().getFirstValue(
+                "nativeTransport", "false"));
+    }
+
+    /**
+     * Sets the group of event loops accepting the connections.
+     * 
+     * @param bossGroup
+     *            The group of event loops accepting the connections.
+     */
+    protected void setBossGroup(EventLoopGroup bossGroup) {
         this.bossGroup = bossGroup;
     }
 
-    protected NioEventLoopGroup getWorkerGroup() {
-        return workerGroup;
+    /**
+     * Sets the server channel.
+     * 
+     * @param channel
+     *            The server channel.
+     */
+    protected void setChannel(Channel channel) {
+        this.channel = channel;
     }
 
-    protected void setWorkerGroup(NioEventLoopGroup workerGroup) {
-        this.workerGroup = workerGroup;
+    /**
+     * Sets the server bootstrap.
+     * 
+     * @param serverBootstrap
+     *            The server bootstrap.
+     */
+    protected void setServerBootstrap(ServerBootstrap serverBootstrap) {
+        this.serverBootstrap = serverBootstrap;
     }
 
-    private NioEventLoopGroup workerGroup;
+    /**
+     * Sets the group of event loops reading and writing the connections.
+     * 
+     * @param workerGroup
+     *            The group of event loops reading and writing the
+     *            connections.
+     */
+    protected void setWorkerGroup(EventLoopGroup workerGroup) {
+        this.workerGroup = workerGroup;
+    }
 
     @Override
-    public void start() throws Exception {
-        super.start();
-        setBossGroup(new NioEventLoopGroup(1));
-        setWorkerGroup(new NioEventLoopGroup());
+    public synchronized void start() throws Exception {
+        String addr = getHelped().getAddress();
+
+        if (addr != null) {
+            setAddress(new InetSocketAddress(InetAddress.getByName(addr),
+                    getHelped().getPort()));
+        } else {
+            setAddress(new InetSocketAddress(getHelped().getPort()));
+        }
+
+        Class<? extends ServerChannel> channelClass = NioServerSocketChannel.class;
+        setBossGroup(null);
+        setWorkerGroup(null);
+
+        if (isNativeTransport()) {
+            if (Epoll.isAvailable()) {
+                try {
+                    setBossGroup(new EpollEventLoopGroup(1));
+                    setWorkerGroup(new EpollEventLoopGroup(getIoThreads()));
+                    channelClass = EpollServerSocketChannel.class;
+                } catch (Throwable t) {
+                    getLogger().log(Level.WARNING,
+                            "Unable to start the native epoll transport. Using the NIO transport instead.",
+                            t);
+
+                    if (getBossGroup() != null) {
+                        getBossGroup().shutdownGracefully();
+                        setBossGroup(null);
+                    }
+                }
+            } else {
+                getLogger().warning(
+                        "The native epoll transport isn't available ("
+                                + Epoll.unavailabilityCause()
+                                + "). Using the NIO transport instead.");
+            }
+        }
+
+        if (getWorkerGroup() == null) {
+            channelClass = NioServerSocketChannel.class;
+            setBossGroup(new NioEventLoopGroup(1));
+            setWorkerGroup(new NioEventLoopGroup(getIoThreads()));
+        }
+
+        this.workerService = createWorkerService();
+
+        if (this.workerService instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor threadPool = (ThreadPoolExecutor) this.workerService;
+            final RejectedExecutionHandler rejectionHandler = threadPool
+                    .getRejectedExecutionHandler();
+            threadPool
+                    .setRejectedExecutionHandler(new RejectedExecutionHandler() {
+                        public void rejectedExecution(Runnable r,
+                                ThreadPoolExecutor executor) {
+                            if (r instanceof HttpServerHandler.CallTask) {
+                                ((HttpServerHandler.CallTask) r).reject();
+                            } else {
+                                rejectionHandler.rejectedExecution(r,
+                                        executor);
+                            }
+                        }
+                    });
+        }
+
         setServerBootstrap(new ServerBootstrap());
-        getServerBootstrap().option(ChannelOption.SO_BACKLOG, 1024);
-        getServerBootstrap().group(bossGroup, workerGroup)
-                .channel(NioServerSocketChannel.class)
-                .handler(new LoggingHandler(LogLevel.INFO))
+        getServerBootstrap()
+                .group(getBossGroup(), getWorkerGroup())
+                .channel(channelClass)
+                .option(ChannelOption.SO_BACKLOG, 1024)
+                .option(ChannelOption.SO_REUSEADDR, true)
+                .childOption(ChannelOption.ALLOCATOR,
+                        PooledByteBufAllocator.DEFAULT)
+                .childOption(ChannelOption.AUTO_READ, false)
+                .childOption(ChannelOption.TCP_NODELAY, true)
                 .childHandler(new HttpServerInitializer(this, null));
-        setChannel(serverBootstrap.bind(getHelped().getPort()).sync().channel());
+
+        try {
+            setChannel(getServerBootstrap().bind(getAddress()).sync()
+                    .channel());
+        } catch (Exception e) {
+            getBossGroup().shutdownGracefully();
+            getWorkerGroup().shutdownGracefully();
+            this.workerService.shutdown();
+            this.workerService = null;
+            throw e;
+        }
+
+        setConfidential(false);
         setEphemeralPort(((InetSocketAddress) getChannel().localAddress())
                 .getPort());
-        getLogger().info(
-                "Starting the Netty " + getProtocols() + " server on port "
-                        + getHelped().getPort());
+        super.start();
     }
 
     @Override
-    public void stop() throws Exception {
-        getLogger().info(
-                "Stopping the Netty " + getProtocols() + " server on port "
-                        + getHelped().getPort());
-        getChannel().close().sync();
-        getBossGroup().shutdownGracefully();
-        getWorkerGroup().shutdownGracefully();
+    public synchronized void stop() throws Exception {
         super.stop();
+
+        if (getChannel() != null) {
+            getChannel().close().sync();
+            setChannel(null);
+        }
+
+        if (getBossGroup() != null) {
+            getBossGroup().shutdownGracefully();
+            setBossGroup(null);
+        }
+
+        if (getWorkerGroup() != null) {
+            getWorkerGroup().shutdownGracefully();
+            setWorkerGroup(null);
+        }
+
+        if (this.workerService != null) {
+            this.workerService.shutdown();
+            this.workerService = null;
+        }
     }
 
 }
@@ -25,113 +25,248 @@
 package org.restlet.ext.netty.internal;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.channel.ChannelHandlerContext;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.concurrent.BrokenBarrierException;
-import java.util.concurrent.CyclicBarrier;
+import java.util.ArrayDeque;
+import java.util.Queue;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.restlet.engine.io.IoUtils;
 
 /**
+ * Input stream bridging the request content received by a Netty event loop to
+ * the worker thread handling the call. The content buffers are queued without
+ * copy until the number of buffered bytes reaches a limit, then the reading of
+ * the connection is suspended until the worker consumes enough of them.
  * 
  * @author Jerome Louvel
  */
 public class HttpContentInputStream extends InputStream {
 
-    private final CyclicBarrier barrier;
+    /** Indicates if the connection was closed before the last content. */
+    private volatile boolean aborted;
 
-    private volatile ByteBuf content;
+    /** The queued content buffers. */
+    private final Queue<ByteBuf> buffers;
 
+    /** The number of readable bytes in the queued buffers. */
+    private volatile int bufferedBytes;
+
+    /** The maximum number of bytes to buffer before suspending the reading. */
+    private final int bufferSize;
+
+    /** Indicates if the stream was closed by the consumer. */
+    private volatile boolean closed;
+
+    /** The condition signaled when content is received. */
+    private final Condition contentReceived;
+
+    /** The parent handler. */
+    private final HttpServerHandler handler;
+
+    /** Indicates if the last content was received. */
     private volatile boolean lastContent;
 
-    private final ChannelHandlerContext nettyContext;
+    /** The lock protecting the queued buffers. */
+    private final ReentrantLock lock;
 
-    public HttpContentInputStream(ChannelHandlerContext nettyContext) {
-        this.nettyContext = nettyContext;
+    /**
+     * Constructor.
+     * 
+     * @param handler
+     *            The parent handler.
+     * @param bufferSize
+     *            The maximum number of bytes to buffer before suspending the
+     *            reading.
+     */
+    public HttpContentInputStream(HttpServerHandler handler, int bufferSize) {
+        this.aborted = false;
+        this.buffers = new ArrayDeque<ByteBuf>();
+        this.bufferedBytes = 0;
+        this.bufferSize = bufferSize;
+        this.closed = false;
+        this.handler = handler;
         this.lastContent = false;
-        this.content = null;
-        this.barrier = new CyclicBarrier(2);
+        this.lock = new ReentrantLock();
+        this.contentReceived = this.lock.newCondition();
+    }
+
+    /**
+     * Releases the queued buffers and wakes up the consumer because the
+     * connection was closed.
+     */
+    public void abort() {
+        this.lock.lock();
+
+        try {
+            this.aborted = true;
+            releaseBuffers();
+            this.contentReceived.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
     }
 
     @Override
     public int available() throws IOException {
-        return (content == null) ? 0 : content.readableBytes();
+        return this.bufferedBytes;
     }
 
-    protected void getMoreContent() {
+    @Override
+    public void close() {
+        this.lock.lock();
+
         try {
-            // Ask to read more content
-            nettyContext.channel().config().setAutoRead(true);
-
-            // Block until new content is available
-            barrier.await(IoUtils.TIMEOUT_MS, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        } catch (BrokenBarrierException e) {
-            e.printStackTrace();
-        } catch (TimeoutException e) {
-            e.printStackTrace();
+            this.closed = true;
+            releaseBuffers();
+        } finally {
+            this.lock.unlock();
         }
     }
 
-    protected boolean isLastContent() {
-        return lastContent;
-    }
+    /**
+     * Returns the first readable buffer, waiting for new content if needed.
+     * 
+     * @return The first readable buffer or null if the end of the entity is
+     *         reached.
+     * @throws IOException
+     */
+    private ByteBuf getBuffer() throws IOException {
+        ByteBuf result = this.buffers.peek();
 
-    public void onContent(ByteBuf content, boolean lastContent)
-            throws IOException {
-        try {
-            // Set the new content
-            this.content = content;
-            this.lastContent = lastContent;
-
-            // Unblock waiting consumer thread
-            barrier.await(IoUtils.TIMEOUT_MS, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        } catch (BrokenBarrierException e) {
-            e.printStackTrace();
-        } catch (TimeoutException e) {
-            e.printStackTrace();
+        while ((result == null) && !this.lastContent) {
+            if (this.closed) {
+                throw new IOException("The request entity stream is closed");
+            } else if (this.aborted) {
+                throw new IOException(
+                        "The connection was closed before the end of the request entity");
+            }
+
+            this.handler.requestContent();
+
+            try {
+                if (!this.contentReceived.await(IoUtils.TIMEOUT_MS,
+                        TimeUnit.MILLISECONDS)) {
+                    throw new IOException(
+                            "Timeout while waiting for the request entity");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(
+                        "Interrupted while waiting for the request entity");
+            }
+
+            result = this.buffers.peek();
         }
+
+        return result;
     }
 
-    @Override
-    public int read() throws IOException {
-        int available = available();
+    /**
+     * Indicates if more content should be read from the connection.
+     * 
+     * @return True if more content should be read from the connection.
+     */
+    public boolean isHungry() {
+        return !this.lastContent && !this.closed
+                && (this.bufferedBytes < this.bufferSize);
+    }
 
-        if (available == 0) {
-            if (isLastContent()) {
-                return -1;
+    /**
+     * Indicates if the last content was received.
+     * 
+     * @return True if the last content was received.
+     */
+    public boolean isLastContent() {
+        return this.lastContent;
+    }
+
+    /**
+     * Called by the event loop when new content is received. The buffer must
+     * have been retained by the caller and is released once consumed.
+     * 
+     * @param content
+     *            The content buffer.
+     * @param lastContent
+     *            Indicates if this is the last content of the entity.
+     */
+    public void onContent(ByteBuf content, boolean lastContent) {
+        this.lock.lock();
+
+        try {
+            if (this.closed || this.aborted || !content.isReadable()) {
+                content.release();
             } else {
-                getMoreContent();
-                available = available();
+                this.buffers.add(content);
+                this.bufferedBytes += content.readableBytes();
+            }
+
+            if (lastContent) {
+                this.lastContent = true;
             }
+
+            this.contentReceived.signalAll();
+        } finally {
+            this.lock.unlock();
         }
+    }
 
-        return content.readByte() & 0xff;
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return (read(b, 0, 1) == -1) ? -1 : (b[0] & 0xff);
     }
 
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
-        int available = available();
+        if (len == 0) {
+            return 0;
+        }
 
-        if (available == 0) {
-            if (isLastContent()) {
-                return -1;
-            } else {
-                getMoreContent();
-                available = available();
+        int result = -1;
+        boolean hungry = false;
+        this.lock.lock();
+
+        try {
+            ByteBuf buffer = getBuffer();
+
+            if (buffer != null) {
+                boolean wasHungry = isHungry();
+                result = Math.min(buffer.readableBytes(), len);
+                buffer.readBytes(b, off, result);
+                this.bufferedBytes -= result;
+
+                if (!buffer.isReadable()) {
+                    this.buffers.remove().release();
+                }
+
+                hungry = !wasHungry && isHungry();
             }
+        } finally {
+            this.lock.unlock();
+        }
+
+        if (hungry) {
+            // Resume the reading of the connection
+            this.handler.requestContent();
+        }
+
+        return result;
+    }
+
+    /**
+     * Releases the queued buffers.
+     */
+    private void releaseBuffers() {
+        for (ByteBuf buffer = this.buffers.poll(); buffer != null; buffer = this.buffers
+                .poll()) {
+            buffer.release();
         }
 
-        len = Math.min(available, len);
-        content.readBytes(b, off, len);
-        return len;
+        this.bufferedBytes = 0;
     }
 
 }
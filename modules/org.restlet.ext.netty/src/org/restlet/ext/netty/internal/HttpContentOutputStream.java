@@ -0,0 +1,176 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.ext.netty.internal;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultHttpContent;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.restlet.engine.io.IoUtils;
+
+/**
+ * Output stream writing the response entity as Netty content messages. The
+ * bytes are written into buffers taken from the channel's allocator, pooled by
+ * default, that are released by Netty once sent. When the outbound buffer of
+ * the channel is full, the writing thread waits until the pending content is
+ * sent, so that slow clients don't fill up the memory. This stream must only
+ * be used by worker threads, never by the event loop.
+ * 
+ * @author Jerome Louvel
+ */
+public class HttpContentOutputStream extends OutputStream {
+
+    /** The current buffer. */
+    private volatile ByteBuf buffer;
+
+    /** The size of the buffers to allocate. */
+    private final int bufferSize;
+
+    /** The Netty context. */
+    private final ChannelHandlerContext nettyContext;
+
+    /**
+     * Constructor.
+     * 
+     * @param nettyContext
+     *            The Netty context.
+     * @param bufferSize
+     *            The size of the buffers to allocate.
+     */
+    public HttpContentOutputStream(ChannelHandlerContext nettyContext,
+            int bufferSize) {
+        this.bufferSize = bufferSize;
+        this.nettyContext = nettyContext;
+        this.buffer = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        send(true);
+    }
+
+    /**
+     * Returns the current buffer, allocating a new one if needed.
+     * 
+     * @return The current buffer.
+     * @throws IOException
+     */
+    private ByteBuf getBuffer() throws IOException {
+        if (!this.nettyContext.channel().isActive()) {
+            throw new IOException("The connection was closed");
+        }
+
+        if (this.buffer == null) {
+            this.buffer = this.nettyContext.alloc().buffer(this.bufferSize);
+        }
+
+        return this.buffer;
+    }
+
+    /**
+     * Writes the current buffer, if any. Flushes the channel and waits until
+     * the content is sent if the outbound buffer of the channel is full.
+     * 
+     * @param flush
+     *            True if the channel should be flushed even if there is no
+     *            pending content.
+     * @throws IOException
+     */
+    private void send(boolean flush) throws IOException {
+        ByteBuf current = this.buffer;
+        this.buffer = null;
+
+        if ((current == null) || !current.isReadable()) {
+            if (current != null) {
+                current.release();
+            }
+
+            if (flush) {
+                this.nettyContext.flush();
+            }
+        } else {
+            ChannelFuture future = this.nettyContext
+                    .write(new DefaultHttpContent(current));
+
+            if (flush || !this.nettyContext.channel().isWritable()) {
+                this.nettyContext.flush();
+            }
+
+            if (!this.nettyContext.channel().isWritable()) {
+                try {
+                    if (!future.await(IoUtils.TIMEOUT_MS)) {
+                        throw new IOException(
+                                "Timeout while writing the response entity");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(
+                            "Interrupted while writing the response entity");
+                }
+            }
+
+            if (future.isDone() && !future.isSuccess()) {
+                throw new IOException(
+                        "Unable to write the response entity: "
+                                + future.cause());
+            }
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            ByteBuf current = getBuffer();
+            int count = Math.min(len, current.writableBytes());
+            current.writeBytes(b, off, count);
+            off += count;
+            len -= count;
+
+            if (!current.isWritable()) {
+                send(false);
+            }
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ByteBuf current = getBuffer();
+        current.writeByte(b);
+
+        if (!current.isWritable()) {
+            send(false);
+        }
+    }
+
+}
@@ -24,108 +24,351 @@
 
 package org.restlet.ext.netty.internal;
 
+import static io.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
 import static io.netty.handler.codec.http.HttpResponseStatus.CONTINUE;
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
-
-import java.io.IOException;
-
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.handler.codec.DecoderResult;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaderUtil;
-import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
 
 import org.restlet.ext.netty.NettyServerHelper;
 
 /**
+ * Handler of the HTTP messages received on a connection. The automatic
+ * reading of the connection is only enabled when the current call needs more
+ * request content or when the next request can be handled. Calls are handed to
+ * the worker service of the server helper, the event loop never blocks.
+ * Pipelined requests are queued until the current call completes.
  * 
  * @author Jerome Louvel
  */
 public class HttpServerHandler extends SimpleChannelInboundHandler<Object> {
 
-    private static void appendDecoderResult(HttpObject httpObject) {
-        DecoderResult result = httpObject.decoderResult();
+    /**
+     * Task handling a call on a worker thread.
+     */
+    public class CallTask implements Runnable {
 
-        if (result.isSuccess()) {
-            return;
+        /** The call to handle. */
+        private final NettyServerCall call;
+
+        /**
+         * Constructor.
+         * 
+         * @param call
+         *            The call to handle.
+         */
+        private CallTask(NettyServerCall call) {
+            this.call = call;
         }
 
-        // TODO: ???
+        /**
+         * Rejects the call because no worker is available.
+         */
+        public void reject() {
+            getServerHelper().getLogger().warning(
+                    "Unable to handle the call, no worker available: "
+                            + this.call.getMethod() + " "
+                            + this.call.getRequestUri());
+            this.call.getNettyEntityStream().close();
+            sendError(this.call.getNettyContext(), SERVICE_UNAVAILABLE);
+        }
+
+        @Override
+        public void run() {
+            getServerHelper().handle(this.call);
+        }
+
+        @Override
+        public String toString() {
+            return this.call.getMethod() + " " + this.call.getRequestUri();
+        }
     }
 
-    private static void send100Continue(ChannelHandlerContext ctx) {
+    /**
+     * Sends an error response and closes the connection.
+     * 
+     * @param ctx
+     *            The Netty context.
+     * @param status
+     *            The error status.
+     */
+    private static void sendError(ChannelHandlerContext ctx,
+            HttpResponseStatus status) {
         FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1,
-                CONTINUE);
-        ctx.write(response);
+                status);
+        response.headers().set(HttpHeaderNames.CONTENT_LENGTH, "0");
+        response.headers().set(HttpHeaderNames.CONNECTION,
+                HttpHeaderValues.CLOSE);
+        ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
     }
 
+    /** The current call. */
     private volatile NettyServerCall call;
 
+    /** Indicates if the current call has completed. */
+    private volatile boolean callCompleted;
+
+    /** The Netty context. */
+    private volatile ChannelHandlerContext nettyContext;
+
+    /** The messages received after the end of the current request. */
+    private final Queue<Object> pendingMessages;
+
+    /** Task updating the reading of the connection, run on the event loop. */
+    private final Runnable readTask;
+
+    /** The parent server helper. */
     private final NettyServerHelper serverHelper;
 
+    /**
+     * Constructor.
+     * 
+     * @param serverHelper
+     *            The parent server helper.
+     */
     public HttpServerHandler(NettyServerHelper serverHelper) {
         this.serverHelper = serverHelper;
+        this.pendingMessages = new ArrayDeque<Object>();
+        this.readTask = new Runnable() {
+            public void run() {
+                updateReading();
+            }
+        };
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        this.nettyContext = ctx;
+        super.channelActive(ctx);
+        updateReading();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        NettyServerCall current = this.call;
+
+        if (current != null) {
+            current.getNettyEntityStream().abort();
+        }
+
+        for (Object msg = this.pendingMessages.poll(); msg != null; msg = this.pendingMessages
+                .poll()) {
+            ReferenceCountUtil.release(msg);
+        }
+
+        super.channelInactive(ctx);
     }
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, Object msg) {
-        System.out.println("Message received: " + msg);
+        NettyServerCall current = this.call;
 
-        try {
-            if (msg instanceof HttpRequest) {
-                HttpRequest request = (HttpRequest) msg;
+        if (!this.pendingMessages.isEmpty()
+                || ((current != null) && current.getNettyEntityStream()
+                        .isLastContent())) {
+            // Pipelined request, wait for the completion of the current call
+            this.pendingMessages.add(ReferenceCountUtil.retain(msg));
+        } else {
+            handleMessage(ctx, msg);
+        }
+    }
 
-                if (HttpHeaderUtil.is100ContinueExpected(request)) {
-                    send100Continue(ctx);
-                }
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        getServerHelper().getLogger().log(Level.FINE,
+                "Error on a Netty connection, closing it", cause);
+        ctx.close();
+    }
+
+    /**
+     * Returns the parent server helper.
+     * 
+     * @return The parent server helper.
+     */
+    public NettyServerHelper getServerHelper() {
+        return serverHelper;
+    }
+
+    /**
+     * Handles a message received for the current request or starts a new
+     * call. Must be invoked on the event loop.
+     * 
+     * @param ctx
+     *            The Netty context.
+     * @param msg
+     *            The message received.
+     */
+    private void handleMessage(ChannelHandlerContext ctx, Object msg) {
+        if (msg instanceof HttpRequest) {
+            HttpRequest request = (HttpRequest) msg;
 
-                call = new NettyServerCall(getServerHelper().getHelped(), ctx,
-                        request);
-                serverHelper.handle(call);
-                appendDecoderResult(request);
-            } else if (msg instanceof HttpContent) {
-                HttpContent httpContent = (HttpContent) msg;
-                ctx.channel().config().setAutoRead(false);
+            if (request.decoderResult().isFailure()) {
+                sendError(ctx, BAD_REQUEST);
+                return;
+            }
+
+            if (HttpHeaderUtil.is100ContinueExpected(request)) {
+                ctx.writeAndFlush(new DefaultFullHttpResponse(HTTP_1_1,
+                        CONTINUE));
+            }
+
+            this.call = new NettyServerCall(this, ctx, request);
+            this.callCompleted = false;
+            CallTask task = new CallTask(this.call);
+
+            try {
+                getServerHelper().getWorkerService().execute(task);
+            } catch (RejectedExecutionException ree) {
+                task.reject();
+            }
+        }
+
+        if (msg instanceof HttpContent) {
+            NettyServerCall current = this.call;
 
-                if (call != null) {
-                    call.onContent(httpContent);
+            if (current != null) {
+                boolean lastContent = (msg instanceof LastHttpContent);
+                current.getNettyEntityStream().onContent(
+                        ((HttpContent) msg).content().retain(), lastContent);
+
+                if (lastContent && this.callCompleted) {
+                    // The unread content of the completed call was discarded
+                    nextCall();
                 } else {
-                    throw new IOException(
-                            "Unexpected error, content arrived before call created");
+                    updateReading();
                 }
+            }
+        }
+    }
 
-                if (msg instanceof LastHttpContent) {
-                    LastHttpContent trailer = (LastHttpContent) msg;
+    /**
+     * Called by the worker thread when a call completes. Discards the unread
+     * request content, then handles the pipelined requests or reads the next
+     * one.
+     * 
+     * @param completedCall
+     *            The completed call.
+     */
+    protected void onCallCompleted(final NettyServerCall completedCall) {
+        runOnEventLoop(new Runnable() {
+            public void run() {
+                if (completedCall == call) {
+                    callCompleted = true;
+                    completedCall.getNettyEntityStream().close();
 
-                    if (!trailer.trailingHeaders().isEmpty()) {
-                        // TODO
+                    if (completedCall.getNettyEntityStream().isLastContent()) {
+                        nextCall();
+                    } else {
+                        updateReading();
                     }
                 }
             }
-        } catch (Throwable e) {
-            // TODO
-            e.printStackTrace();
+        });
+    }
+
+    /**
+     * Handles the pipelined messages until a new call has received its whole
+     * request, then updates the reading of the connection. Must be invoked on
+     * the event loop.
+     */
+    private void nextCall() {
+        this.call = null;
+        this.callCompleted = false;
+        Object msg = this.pendingMessages.poll();
+
+        while (msg != null) {
+            try {
+                handleMessage(this.nettyContext, msg);
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+
+            NettyServerCall current = this.call;
+
+            if ((current != null)
+                    && current.getNettyEntityStream().isLastContent()) {
+                // Wait for the completion of the new call
+                msg = null;
+            } else {
+                msg = this.pendingMessages.poll();
+            }
         }
+
+        updateReading();
     }
 
-    @Override
-    public void channelReadComplete(ChannelHandlerContext ctx) {
-        ctx.flush();
+    /**
+     * Called by the worker thread when the current call needs more request
+     * content.
+     */
+    protected void requestContent() {
+        runOnEventLoop(this.readTask);
     }
 
-    @Override
-    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-        cause.printStackTrace();
-        ctx.close();
+    /**
+     * Runs a task on the event loop of the connection.
+     * 
+     * @param task
+     *            The task to run.
+     */
+    private void runOnEventLoop(Runnable task) {
+        ChannelHandlerContext ctx = this.nettyContext;
+
+        if (ctx != null) {
+            if (ctx.executor().inEventLoop()) {
+                task.run();
+            } else {
+                try {
+                    ctx.executor().execute(task);
+                } catch (RejectedExecutionException ree) {
+                    // The event loop is shutting down
+                    ctx.close();
+                }
+            }
+        }
     }
 
-    public NettyServerHelper getServerHelper() {
-        return serverHelper;
+    /**
+     * Enables the automatic reading of the connection if no call is in
+     * progress or if the current one needs more request content, disables it
+     * otherwise. Must be invoked on the event loop.
+     */
+    private void updateReading() {
+        ChannelHandlerContext ctx = this.nettyContext;
+
+        if ((ctx == null) || !ctx.channel().isActive()) {
+            return;
+        }
+
+        NettyServerCall current = this.call;
+        boolean needed = true;
+
+        if (current != null) {
+            HttpContentInputStream stream = current.getNettyEntityStream();
+            needed = !stream.isLastContent()
+                    && (this.callCompleted || stream.isHungry());
+        }
+
+        if (ctx.channel().config().isAutoRead() != needed) {
+            ctx.channel().config().setAutoRead(needed);
+        }
     }
 
 }
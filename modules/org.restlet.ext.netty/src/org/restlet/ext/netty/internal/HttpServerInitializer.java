@@ -29,7 +29,6 @@ import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.ssl.SslContext;
-import io.netty.handler.stream.ChunkedWriteHandler;
 
 import org.restlet.ext.netty.NettyServerHelper;
 
@@ -58,7 +57,6 @@ public class HttpServerInitializer extends ChannelInitializer<SocketChannel> {
         }
 
         p.addLast(new HttpServerCodec());
-        p.addLast(new ChunkedWriteHandler());
         p.addLast(new HttpServerHandler(serverHelper));
     }
 
@@ -25,47 +25,58 @@
 package org.restlet.ext.netty.internal;
 
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
-import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
 import io.netty.handler.codec.http.DefaultHttpResponse;
-import io.netty.handler.codec.http.HttpChunkedInput;
-import io.netty.handler.codec.http.HttpContent;
-import io.netty.handler.codec.http.HttpHeaderNames;
-import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.LastHttpContent;
-import io.netty.handler.stream.ChunkedStream;
+import io.netty.handler.ssl.SslHandler;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.net.InetSocketAddress;
 import java.util.Map;
-import java.util.logging.Level;
 
 import javax.net.ssl.SSLEngine;
 
 import org.restlet.Response;
-import org.restlet.Server;
 import org.restlet.data.Header;
 import org.restlet.engine.adapter.ServerCall;
+import org.restlet.engine.header.HeaderConstants;
+import org.restlet.engine.header.HeaderUtils;
+import org.restlet.engine.io.IoUtils;
+import org.restlet.representation.FileRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.util.Series;
 
 /**
+ * Call that is used by the Netty HTTP server connector. It is handled by a
+ * worker thread while the request content is received by the event loop.
  * 
  * @author Jerome Louvel
  */
 public class NettyServerCall extends ServerCall {
 
+    /** Indicates if the last content of the response was written. */
+    private volatile boolean ended;
+
+    /** The parent handler. */
+    private final HttpServerHandler handler;
+
+    /** Indicates if the connection should be kept alive after the call. */
+    private volatile boolean keepAlive;
+
     private final ChannelHandlerContext nettyContext;
 
-    private volatile HttpContentInputStream nettyEntityStream;
+    private final HttpContentInputStream nettyEntityStream;
 
     private final HttpRequest nettyRequest;
 
@@ -74,10 +85,25 @@ public class NettyServerCall extends ServerCall {
     /** Indicates if the request headers were parsed and added. */
     private volatile boolean requestHeadersAdded;
 
-    public NettyServerCall(Server server, ChannelHandlerContext nettyContext,
-            HttpRequest httpRequest) {
-        super(server);
+    /**
+     * Constructor.
+     * 
+     * @param handler
+     *            The parent handler.
+     * @param nettyContext
+     *            The Netty context.
+     * @param httpRequest
+     *            The Netty request.
+     */
+    public NettyServerCall(HttpServerHandler handler,
+            ChannelHandlerContext nettyContext, HttpRequest httpRequest) {
+        super(handler.getServerHelper().getHelped());
+        this.ended = false;
+        this.handler = handler;
+        this.keepAlive = true;
         this.nettyContext = nettyContext;
+        this.nettyEntityStream = new HttpContentInputStream(handler, handler
+                .getServerHelper().getRequestBufferSize());
         this.nettyRequest = httpRequest;
         this.nettyResponse = null;
         this.requestHeadersAdded = false;
@@ -85,18 +111,21 @@ public class NettyServerCall extends ServerCall {
 
     @Override
     public boolean abort() {
-        try {
-            getNettyContext().close().sync();
-            return true;
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-            return false;
-        }
+        getNettyContext().close();
+        return true;
     }
 
+    /**
+     * Closes the connection if the response couldn't be fully written, then
+     * lets the handler continue with the next request.
+     */
     @Override
     public void complete() {
-        getNettyContext().flush();
+        if (!this.ended) {
+            getNettyContext().close();
+        }
+
+        this.handler.onCallCompleted(this);
     }
 
     @Override
@@ -128,11 +157,6 @@ public class NettyServerCall extends ServerCall {
     }
 
     protected HttpContentInputStream getNettyEntityStream() {
-        if (this.nettyEntityStream == null) {
-            this.nettyEntityStream = new HttpContentInputStream(
-                    getNettyContext());
-        }
-
         return this.nettyEntityStream;
     }
 
@@ -158,7 +182,8 @@ public class NettyServerCall extends ServerCall {
                     .headers();
 
             for (Map.Entry<String, String> header : headers) {
-                result.add(header.getKey(), header.getValue());
+                result.add(HeaderUtils.intern(header.getKey()),
+                        header.getValue());
             }
 
             this.requestHeadersAdded = true;
@@ -179,13 +204,15 @@ public class NettyServerCall extends ServerCall {
 
     @Override
     public OutputStream getResponseEntityStream() {
-        return null;
+        return new HttpContentOutputStream(getNettyContext(),
+                IoUtils.BUFFER_SIZE);
     }
 
     @Override
     protected SSLEngine getSslEngine() {
-        // TODO
-        return null;
+        SslHandler sslHandler = getNettyContext().pipeline().get(
+                SslHandler.class);
+        return (sslHandler == null) ? null : sslHandler.engine();
     }
 
     @Override
@@ -202,65 +229,107 @@ public class NettyServerCall extends ServerCall {
         return result;
     }
 
-    public void onContent(HttpContent httpContent) throws IOException {
-        ByteBuf content = httpContent.content();
+    /**
+     * Indicates if the request was sent using HTTP/1.1 or a later version.
+     * 
+     * @return True if the request was sent using HTTP/1.1 or a later version.
+     */
+    protected boolean isHttp11() {
+        return !"1.0".equals(getVersion());
+    }
+
+    @Override
+    protected boolean isClientKeepAlive() {
+        String connectionHeader = getRequestHeaders().getFirstValue(
+                HeaderConstants.HEADER_CONNECTION, true);
 
-        if (content.isReadable()) {
-            getNettyEntityStream().onContent(content,
-                    httpContent instanceof LastHttpContent);
+        if (isHttp11()) {
+            return !"close".equalsIgnoreCase(connectionHeader);
         }
+
+        return "keep-alive".equalsIgnoreCase(connectionHeader);
+    }
+
+    @Override
+    protected boolean isServerKeepAlive() {
+        return !HeaderUtils.isConnectionClose(getResponseHeaders());
     }
 
     protected void setNettyResponse(HttpResponse nettyResponse) {
         this.nettyResponse = nettyResponse;
     }
 
+    /**
+     * Transfers the file representations with a known size as a file region,
+     * without copying them through the Java heap, unless the connection is
+     * encrypted. Other entities are written into pooled buffers.
+     */
     @Override
     protected void writeResponseBody(Representation responseEntity)
             throws IOException {
-        try {
-            // Send the entity to the client
-            InputStream is = responseEntity.getStream();
-            getNettyContext()
-                    .write(new HttpChunkedInput(new ChunkedStream(is)));
-            getNettyContext().writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
-        } catch (IOException ioe) {
-            // The stream was probably already closed by the
-            // connector. Probably OK, low message priority.
-            getLogger().log(Level.FINE,
-                    "Exception while writing the entity stream.", ioe);
+        if ((responseEntity instanceof FileRepresentation)
+                && (responseEntity.getSize() >= 0) && (getSslEngine() == null)) {
+            File file = ((FileRepresentation) responseEntity).getFile();
+
+            // Open the file now as it may be deleted once the entity is
+            // released, before the region is transferred
+            @SuppressWarnings("resource")
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            getNettyContext().write(
+                    new DefaultFileRegion(raf.getChannel(), 0, responseEntity
+                            .getSize()));
+        } else {
+            super.writeResponseBody(responseEntity);
         }
     }
 
     @Override
     public void writeResponseHead(org.restlet.Response restletResponse)
             throws IOException {
+        this.keepAlive = isKeepAlive();
+
+        if (shouldResponseBeChunked(restletResponse)) {
+            if (isHttp11()) {
+                getResponseHeaders().set(
+                        HeaderConstants.HEADER_TRANSFER_ENCODING, "chunked",
+                        true);
+            } else {
+                // The end of the entity is signaled by closing the connection
+                this.keepAlive = false;
+            }
+        }
+
+        if (!this.keepAlive) {
+            getResponseHeaders().set(HeaderConstants.HEADER_CONNECTION,
+                    "close", true);
+        } else if (!isHttp11()) {
+            getResponseHeaders().set(HeaderConstants.HEADER_CONNECTION,
+                    "keep-alive", true);
+        }
+
         setNettyResponse(new DefaultHttpResponse(HTTP_1_1,
                 new HttpResponseStatus(getStatusCode(), getReasonPhrase())));
         HttpHeaders headers = getNettyResponse().headers();
 
-        // this.response.clear();
         for (Header header : getResponseHeaders()) {
             headers.add(header.getName(), header.getValue());
         }
 
-        // Decide whether to close the connection or not.
-        if (isKeepAlive()) {
-            headers.set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
-            getNettyContext().write(getNettyResponse());
-        } else {
-            getNettyContext().writeAndFlush(getNettyResponse()).addListener(
-                    ChannelFutureListener.CLOSE);
-        }
+        // Only sent with the entity or the last content
+        getNettyContext().write(getNettyResponse());
     }
 
     @Override
     protected void writeResponseTail(Response response) {
-        if (!isKeepAlive()) {
+        ChannelFuture future = getNettyContext().writeAndFlush(
+                LastHttpContent.EMPTY_LAST_CONTENT);
+
+        if (!this.keepAlive) {
             // Close the connection once the content is fully written.
-            getNettyContext().writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(
-                    ChannelFutureListener.CLOSE);
+            future.addListener(ChannelFutureListener.CLOSE);
         }
+
+        this.ended = true;
     }
 
 }
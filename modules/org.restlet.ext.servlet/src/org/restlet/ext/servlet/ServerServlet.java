@@ -233,7 +233,15 @@ import org.restlet.routing.VirtualHost;
  * <br>
  * Finally, an "org.restlet.ext.servlet.offsetPath" attribute, containing the
  * computed offset path used to attach applications when (and only when) the
- * auto-wiring feature is set, is added to the component's context.
+ * auto-wiring feature is set, is added to the component's context.<br>
+ * <br>
+ * When a resource sets {@link org.restlet.Response#setAutoCommitting(boolean)}
+ * to false, the Servlet call is suspended using the Servlet 3 asynchronous
+ * processing, so that the container thread is released until
+ * {@link org.restlet.Response#commit()} is called from another thread. This
+ * requires the Servlet to be declared with
+ * "&lt;async-supported&gt;true&lt;/async-supported&gt;" in web.xml, otherwise
+ * the response is committed when the initial thread returns.
  * 
  * @see <a href="http://www.oracle.com/technetwork/java/javaee/">J2EE home
  *      page</a>
@@ -196,7 +196,11 @@ public class ServletAdapter extends ServletServerAdapter {
 
                 // Handle the request and commit the response
                 getNext().handle(httpRequest, httpResponse);
-                commit(httpResponse);
+
+                if (httpResponse.isAutoCommitting()
+                        || !servletCall.suspend(this, httpResponse)) {
+                    commit(httpResponse);
+                }
             } finally {
                 Engine.clearThreadLocalVariables();
             }
@@ -37,6 +37,9 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.logging.Level;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -47,6 +50,8 @@ import org.restlet.data.Header;
 import org.restlet.data.MediaType;
 import org.restlet.data.Protocol;
 import org.restlet.data.Status;
+import org.restlet.engine.adapter.HttpResponse;
+import org.restlet.engine.adapter.ServerAdapter;
 import org.restlet.engine.adapter.ServerCall;
 import org.restlet.engine.header.HeaderConstants;
 import org.restlet.engine.header.LanguageReader;
@@ -56,12 +61,62 @@ import org.restlet.representation.Representation;
 import org.restlet.util.Series;
 
 /**
- * Call that is used by the Servlet HTTP server connector.
+ * Call that is used by the Servlet HTTP server connector. When a response isn't
+ * automatically committed and the Servlet supports asynchronous processing,
+ * the call is suspended with {@link HttpServletRequest#startAsync()} so that
+ * the container thread is released until {@link Response#commit()} is
+ * invoked. If the container's asynchronous timeout expires first, a 503
+ * (Service unavailable) status is returned to the client.
  * 
  * @author Jerome Louvel
  */
 public class ServletCall extends ServerCall {
 
+    /**
+     * Listener completing the suspended call when the container reports a
+     * timeout or an error.
+     */
+    private class CallAsyncListener implements AsyncListener {
+
+        public void onComplete(AsyncEvent event) {
+        }
+
+        public void onError(AsyncEvent event) {
+            if (markCompleted()) {
+                getLogger().log(Level.FINE,
+                        "The suspended Servlet call failed",
+                        event.getThrowable());
+                event.getAsyncContext().complete();
+            }
+        }
+
+        public void onStartAsync(AsyncEvent event) {
+        }
+
+        public void onTimeout(AsyncEvent event) throws IOException {
+            if (markCompleted()) {
+                getLogger().fine(
+                        "The suspended Servlet call timed out before its "
+                                + "response was committed");
+                getResponse().sendError(
+                        HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                event.getAsyncContext().complete();
+            }
+        }
+    }
+
+    /** The adapter committing the response of a suspended call. */
+    private volatile ServerAdapter adapter;
+
+    /** The asynchronous context of a suspended call. */
+    private volatile AsyncContext asyncContext;
+
+    /** Indicates if the commit was requested before the call was suspended. */
+    private boolean commitRequested;
+
+    /** Indicates if the suspended call was completed. */
+    private boolean completed;
+
     /** The HTTP Servlet request to wrap. */
     private volatile HttpServletRequest request;
 
@@ -115,6 +170,22 @@ public class ServletCall extends ServerCall {
         return false;
     }
 
+    /**
+     * Commits the response of a suspended call, then completes the
+     * asynchronous context. If the call isn't suspended yet, the response is
+     * committed by the container thread once the Restlet call is handled.
+     */
+    @Override
+    public void commit(Response response) {
+        if (markCommitted()) {
+            try {
+                this.adapter.commit((HttpResponse) response);
+            } finally {
+                this.asyncContext.complete();
+            }
+        }
+    }
+
     @Override
     public void flushBuffers() throws IOException {
         getResponse().flushBuffer();
@@ -387,6 +458,32 @@ public class ServletCall extends ServerCall {
         return getRequest().isSecure();
     }
 
+    /**
+     * Marks a suspended call as being committed.
+     * 
+     * @return True if the response should be committed by the caller, false
+     *         if the call isn't suspended or was already completed.
+     */
+    private synchronized boolean markCommitted() {
+        if (this.asyncContext == null) {
+            this.commitRequested = true;
+            return false;
+        }
+
+        return markCompleted();
+    }
+
+    /**
+     * Marks a suspended call as being completed.
+     * 
+     * @return True if the call wasn't already completed.
+     */
+    private synchronized boolean markCompleted() {
+        boolean result = !this.completed;
+        this.completed = true;
+        return result;
+    }
+
     /**
      * Sends the response back to the client. Commits the status, headers and
      * optional entity and send them on the network.
@@ -455,4 +552,23 @@ public class ServletCall extends ServerCall {
         }
     }
 
+    /**
+     * Suspends the call with {@link HttpServletRequest#startAsync()} if the
+     * Servlet supports asynchronous processing and the response wasn't
+     * committed in the meantime.
+     */
+    @Override
+    public synchronized boolean suspend(ServerAdapter adapter,
+            HttpResponse response) {
+        if (this.commitRequested || !getRequest().isAsyncSupported()) {
+            return false;
+        }
+
+        this.adapter = adapter;
+        this.asyncContext = getRequest().startAsync(getRequest(),
+                getResponse());
+        this.asyncContext.addListener(new CallAsyncListener());
+        return true;
+    }
+
 }
@@ -133,6 +133,7 @@ public abstract class TemplateFilter extends Filter {
             try {
                 final TemplateRepresentation representation = new TemplateRepresentation(
                         (TemplateRepresentation) response.getEntity(),
+                        TemplateRepresentation.getTemplateEngine(getContext()),
                         getLocale(), response.getEntity().getMediaType());
 
                 if ((this.mapDataModel == null)
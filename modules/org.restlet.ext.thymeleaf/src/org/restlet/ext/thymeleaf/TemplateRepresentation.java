@@ -35,6 +35,7 @@ import org.restlet.Request;
 import org.restlet.Response;
 import org.restlet.data.Form;
 import org.restlet.data.MediaType;
+import org.restlet.engine.util.TemplateEngineRegistry;
 import org.restlet.representation.WriterRepresentation;
 import org.restlet.util.Resolver;
 import org.thymeleaf.TemplateEngine;
@@ -48,7 +49,9 @@ import org.thymeleaf.util.Validate;
 
 /**
  * Thymeleaf template representation. Useful for dynamic string-based
- * representations.
+ * representations. When no template engine is given, the one shared by the
+ * current application is used, see
+ * {@link #getTemplateEngine(org.restlet.Context)}.
  * 
  * @see <a href="http://www.thymeleaf.org/">Thymeleaf home page</a>
  * @author Grzegorz Godlewski
@@ -152,6 +155,46 @@ public class TemplateRepresentation extends WriterRepresentation {
         return templateResolver;
     }
 
+    /**
+     * Returns the template engine shared by the application of the given
+     * context. It is created on first use, based on a resolver returned by
+     * {@link #createTemplateResolver()} whose cache entries expire after the
+     * delay returned by
+     * {@link TemplateEngineRegistry#getTemplateCacheTtlMs()}. A preconfigured engine can also be registered with
+     * {@link TemplateEngineRegistry#putEngineIfAbsent(Class, Object)}.
+     * 
+     * @param context
+     *            The application context or null for the current one.
+     * @return The shared template engine.
+     */
+    public static TemplateEngine getTemplateEngine(
+            org.restlet.Context context) {
+        TemplateEngineRegistry registry = TemplateEngineRegistry
+                .getInstance(context);
+        TemplateEngine result = registry.getEngine(TemplateEngine.class);
+
+        if (result == null) {
+            long ttl = registry.getTemplateCacheTtlMs();
+            ITemplateResolver resolver = createTemplateResolver();
+
+            if (resolver instanceof TemplateResolver) {
+                TemplateResolver templateResolver = (TemplateResolver) resolver;
+
+                if (ttl == 0) {
+                    templateResolver.setCacheable(false);
+                } else {
+                    // Without TTL, entries live until expelled by LRU
+                    templateResolver.setCacheTTLMs((ttl < 0) ? null : ttl);
+                }
+            }
+
+            result = registry.putEngineIfAbsent(TemplateEngine.class,
+                    createTemplateEngine(resolver));
+        }
+
+        return result;
+    }
+
     /** The template's data model. */
     protected volatile IContext context;
 
@@ -161,6 +204,9 @@ public class TemplateRepresentation extends WriterRepresentation {
     /** The template locale */
     private final Locale locale;
 
+    /** The template engine registry of the current application. */
+    private final TemplateEngineRegistry registry;
+
     /** The template name. */
     private volatile String templateName;
 
@@ -179,7 +225,8 @@ public class TemplateRepresentation extends WriterRepresentation {
      */
     public TemplateRepresentation(String templateName, Locale locale,
             Map<String, Object> dataModel, MediaType mediaType) {
-        this(templateName, createTemplateEngine(), locale, mediaType);
+        this(templateName, getTemplateEngine(null), locale, dataModel,
+                mediaType);
     }
 
     /**
@@ -219,6 +266,7 @@ public class TemplateRepresentation extends WriterRepresentation {
         super(mediaType);
         this.locale = locale;
         this.engine = engine;
+        this.registry = TemplateEngineRegistry.getInstance(null);
         this.templateName = templateName;
         setDataModel(dataModel);
     }
@@ -256,7 +304,8 @@ public class TemplateRepresentation extends WriterRepresentation {
     public TemplateRepresentation(
             TemplateRepresentation templateRepresentation, Locale locale,
             MediaType mediaType) throws IOException {
-        this(templateRepresentation, createTemplateEngine(), locale, mediaType);
+        this(templateRepresentation, getTemplateEngine(null), locale,
+                mediaType);
     }
 
     /**
@@ -281,6 +330,7 @@ public class TemplateRepresentation extends WriterRepresentation {
         super(mediaType);
         this.locale = locale;
         this.engine = engine;
+        this.registry = TemplateEngineRegistry.getInstance(null);
         this.templateName = templateRepresentation.getTemplateName();
     }
 
@@ -371,11 +421,14 @@ public class TemplateRepresentation extends WriterRepresentation {
      */
     @Override
     public void write(Writer writer) throws IOException {
+        long startTime = System.nanoTime();
+        boolean success = false;
+
         try {
             // Load the template
             // Process the template
             engine.process(templateName, context, writer);
-
+            success = true;
         } catch (Exception e) {
             final org.restlet.Context context = org.restlet.Context
                     .getCurrent();
@@ -389,6 +442,8 @@ public class TemplateRepresentation extends WriterRepresentation {
 
             throw new IOException("Template processing error. "
                     + e.getMessage());
+        } finally {
+            this.registry.recordRender(startTime, success);
         }
     }
 }
@@ -97,8 +97,9 @@ public class ThymeleafConverter extends ConverterHelper {
             Locale locale = getLocale(resource);
 
             TemplateRepresentation tr = new TemplateRepresentation(
-                    ((Template) source).getTemplateName(), locale,
-                    target.getMediaType());
+                    ((Template) source).getTemplateName(),
+                    TemplateRepresentation.getTemplateEngine(resource
+                            .getContext()), locale, target.getMediaType());
             tr.setDataModel(resource.getRequest(), resource.getResponse());
             return tr;
         }
@@ -42,13 +42,18 @@ import org.restlet.Request;
 import org.restlet.Response;
 import org.restlet.data.CharacterSet;
 import org.restlet.data.MediaType;
+import org.restlet.engine.util.TemplateEngineRegistry;
 import org.restlet.representation.Representation;
 import org.restlet.representation.WriterRepresentation;
 import org.restlet.util.Resolver;
 
 /**
  * Velocity template representation. Useful for dynamic string-based
- * representations.
+ * representations. Named templates are loaded by the Velocity engine shared
+ * by the current application, see {@link #getEngine(Context)}, unless
+ * {@link #getEngine()} is called first to configure a dedicated engine.
+ * Templates provided as representations with a location are compiled once and
+ * cached by the application's {@link TemplateEngineRegistry}.
  * 
  * @see <a href="http://velocity.apache.org/">Velocity home page</a>
  * @author Jerome Louvel
@@ -132,12 +137,48 @@ public class TemplateRepresentation extends WriterRepresentation {
 
     }
 
+    /**
+     * Returns the Velocity engine shared by the application of the given
+     * context. It is created and initialized on first use, with a resource
+     * cache checking the modification of templates after the delay returned
+     * by {@link TemplateEngineRegistry#getTemplateCacheTtlMs()}. A
+     * preconfigured engine can also be registered with
+     * {@link TemplateEngineRegistry#putEngineIfAbsent(Class, Object)}.
+     * 
+     * @param context
+     *            The application context or null for the current one.
+     * @return The shared Velocity engine.
+     */
+    public static VelocityEngine getEngine(Context context) {
+        TemplateEngineRegistry registry = TemplateEngineRegistry
+                .getInstance(context);
+        VelocityEngine result = registry.getEngine(VelocityEngine.class);
+
+        if (result == null) {
+            long ttl = registry.getTemplateCacheTtlMs();
+            result = new VelocityEngine();
+            result.setProperty("file.resource.loader.cache",
+                    Boolean.toString(ttl != 0));
+
+            // A zero interval disables the modification checks
+            result.setProperty("file.resource.loader.modificationCheckInterval",
+                    Long.toString((ttl < 0) ? 0 : Math.max(1, ttl / 1000)));
+            result.init();
+            result = registry.putEngineIfAbsent(VelocityEngine.class, result);
+        }
+
+        return result;
+    }
+
     /** The template's data model. */
     private volatile org.apache.velocity.context.Context context;
 
-    /** The Velocity engine. */
+    /** The dedicated Velocity engine, if any. */
     private volatile VelocityEngine engine;
 
+    /** The template engine registry of the current application. */
+    private final TemplateEngineRegistry registry;
+
     /** The template. */
     private volatile Template template;
 
@@ -163,22 +204,8 @@ public class TemplateRepresentation extends WriterRepresentation {
         super(mediaType);
         setDataModel(dataModel);
         this.engine = null;
-        this.template = new Template();
-
-        CharacterSet charSet = (templateRepresentation.getCharacterSet() != null) ? templateRepresentation
-                .getCharacterSet() : CharacterSet.DEFAULT;
-        this.template.setEncoding(charSet.getName());
-
-        if (templateRepresentation.getModificationDate() != null) {
-            this.template.setLastModified(templateRepresentation
-                    .getModificationDate().getTime());
-        }
-
-        this.template.setName("org.restlet.resource.representation");
-        this.template.setRuntimeServices(RuntimeSingleton.getRuntimeServices());
-        this.template.setResourceLoader(new RepresentationResourceLoader(
-                templateRepresentation));
-        this.template.process();
+        this.registry = TemplateEngineRegistry.getInstance(null);
+        this.template = loadTemplate(templateRepresentation, 0L);
         this.templateName = null;
     }
 
@@ -198,19 +225,9 @@ public class TemplateRepresentation extends WriterRepresentation {
             ParseErrorException, IOException {
         super(mediaType);
         this.engine = null;
-        this.template = new Template();
-
-        CharacterSet charSet = (templateRepresentation.getCharacterSet() != null) ? templateRepresentation
-                .getCharacterSet() : CharacterSet.DEFAULT;
-        this.template.setEncoding(charSet.getName());
-        this.template.setLastModified((templateRepresentation
-                .getModificationDate() == null) ? new Date().getTime()
-                : templateRepresentation.getModificationDate().getTime());
-        this.template.setName("org.restlet.resource.representation");
-        this.template.setRuntimeServices(RuntimeSingleton.getRuntimeServices());
-        this.template.setResourceLoader(new RepresentationResourceLoader(
-                templateRepresentation));
-        this.template.process();
+        this.registry = TemplateEngineRegistry.getInstance(null);
+        this.template = loadTemplate(templateRepresentation,
+                new Date().getTime());
         this.templateName = null;
     }
 
@@ -228,15 +245,11 @@ public class TemplateRepresentation extends WriterRepresentation {
     public TemplateRepresentation(String templateName,
             Map<String, Object> dataModel, MediaType mediaType) {
         super(mediaType);
-
-        try {
-            setDataModel(dataModel);
-            this.engine = new VelocityEngine();
-            this.template = null;
-            this.templateName = templateName;
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        setDataModel(dataModel);
+        this.engine = null;
+        this.registry = TemplateEngineRegistry.getInstance(null);
+        this.template = null;
+        this.templateName = templateName;
     }
 
     /**
@@ -267,6 +280,7 @@ public class TemplateRepresentation extends WriterRepresentation {
         super(mediaType);
         setDataModel(dataModel);
         this.engine = null;
+        this.registry = TemplateEngineRegistry.getInstance(null);
         this.template = template;
         this.templateName = null;
     }
@@ -282,6 +296,7 @@ public class TemplateRepresentation extends WriterRepresentation {
     public TemplateRepresentation(Template template, MediaType mediaType) {
         super(mediaType);
         this.engine = null;
+        this.registry = TemplateEngineRegistry.getInstance(null);
         this.template = template;
         this.templateName = null;
     }
@@ -296,11 +311,18 @@ public class TemplateRepresentation extends WriterRepresentation {
     }
 
     /**
-     * Returns the Velocity engine.
+     * Returns a dedicated Velocity engine, created on first call, that can be
+     * configured before the named template is loaded. It is initialized when
+     * the template is loaded. If this method isn't called, the engine shared
+     * by the application is used instead.
      * 
-     * @return The Velocity engine.
+     * @return The dedicated Velocity engine.
      */
-    public VelocityEngine getEngine() {
+    public synchronized VelocityEngine getEngine() {
+        if ((this.engine == null) && (this.template == null)) {
+            this.engine = new VelocityEngine();
+        }
+
         return this.engine;
     }
 
@@ -313,8 +335,16 @@ public class TemplateRepresentation extends WriterRepresentation {
         if (this.template == null) {
             if (this.templateName != null) {
                 try {
-                    getEngine().init();
-                    this.template = getEngine().getTemplate(this.templateName);
+                    VelocityEngine dedicated = this.engine;
+
+                    if (dedicated == null) {
+                        this.template = getEngine(null).getTemplate(
+                                this.templateName);
+                    } else {
+                        dedicated.init();
+                        this.template = dedicated
+                                .getTemplate(this.templateName);
+                    }
                 } catch (Exception e) {
                     final Context context = Context.getCurrent();
 
@@ -329,6 +359,50 @@ public class TemplateRepresentation extends WriterRepresentation {
         return this.template;
     }
 
+    /**
+     * Returns the template compiled from a representation, reusing the one
+     * cached by the application if the representation has a location and
+     * wasn't modified since.
+     * 
+     * @param templateRepresentation
+     *            The representation to 'decode'.
+     * @param lastModified
+     *            The template modification time to use if the representation
+     *            doesn't provide one.
+     * @return The compiled template.
+     * @throws IOException
+     * @throws ParseErrorException
+     * @throws ResourceNotFoundException
+     */
+    private Template loadTemplate(Representation templateRepresentation,
+            long lastModified) throws ResourceNotFoundException,
+            ParseErrorException, IOException {
+        String key = (templateRepresentation.getLocationRef() == null) ? null
+                : "velocity:" + templateRepresentation.getLocationRef();
+        Date modificationDate = templateRepresentation.getModificationDate();
+        Template result = (Template) this.registry.getTemplate(key,
+                modificationDate);
+
+        if (result == null) {
+            result = new Template();
+            CharacterSet charSet = (templateRepresentation.getCharacterSet() != null) ? templateRepresentation
+                    .getCharacterSet() : CharacterSet.DEFAULT;
+            result.setEncoding(charSet.getName());
+            result.setLastModified((modificationDate == null) ? lastModified
+                    : modificationDate.getTime());
+            result.setName("org.restlet.resource.representation");
+            result.setRuntimeServices(RuntimeSingleton.getRuntimeServices());
+            result.setResourceLoader(new RepresentationResourceLoader(
+                    templateRepresentation));
+            result.process();
+            this.registry.putTemplate(key, modificationDate, result);
+        } else {
+            templateRepresentation.release();
+        }
+
+        return result;
+    }
+
     /**
      * Sets the Velocity context.
      * 
@@ -384,10 +458,14 @@ public class TemplateRepresentation extends WriterRepresentation {
      */
     @Override
     public void write(Writer writer) throws IOException {
+        long startTime = System.nanoTime();
+        boolean success = false;
+
         try {
             // Load the template
             // Process the template
             getTemplate().merge(getContext(), writer);
+            success = true;
         } catch (Exception e) {
             final Context context = Context.getCurrent();
 
@@ -400,6 +478,8 @@ public class TemplateRepresentation extends WriterRepresentation {
 
             throw new IOException("Template processing error. "
                     + e.getMessage());
+        } finally {
+            this.registry.recordRender(startTime, success);
         }
     }
 
@@ -47,10 +47,12 @@ import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
 import org.restlet.Context;
+import org.restlet.engine.util.TemplateEngineRegistry;
 import org.restlet.ext.xml.internal.AbstractXmlReader;
 import org.restlet.ext.xml.internal.ContextResolver;
 import org.restlet.representation.Representation;
 import org.restlet.representation.WriterRepresentation;
+import org.xml.sax.ContentHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLFilter;
@@ -66,11 +68,54 @@ import org.xml.sax.XMLReader;
  * a transform sheet on a source representation when it is read or written out.
  * Therefore, it isn't intended to be reused on different sources. For this use
  * case, you should instead use the {@link org.restlet.routing.Transformer}
- * filter.
+ * filter.<br>
+ * <br>
+ * The templates compiled from a transform sheet with a location are cached by
+ * the {@link TemplateEngineRegistry} of the current application. They are
+ * reused as long as the transform sheet has the same tag and modification
+ * date or, when it has neither, until the registry's TTL expires. When the
+ * source is itself a transform representation, the transformations are
+ * chained as a SAX pipeline, each stage streaming its events into the next
+ * one.
  * 
  * @author Jerome Louvel
  */
 public class TransformRepresentation extends WriterRepresentation {
+
+    /** The SAX transformer factory of each thread. */
+    private static final ThreadLocal<SAXTransformerFactory> SAX_TRANSFORMER_FACTORY = new ThreadLocal<SAXTransformerFactory>() {
+        @Override
+        protected SAXTransformerFactory initialValue() {
+            return (SAXTransformerFactory) TransformerFactory.newInstance();
+        }
+    };
+
+    /**
+     * Returns the key identifying the templates compiled from a transform
+     * sheet, based on its location and tag. Returns null if the transform
+     * sheet has no location.
+     * 
+     * @param transformSheet
+     *            The XSLT transform sheet.
+     * @return The templates key or null.
+     */
+    private static String getTemplatesKey(Representation transformSheet) {
+        String result = null;
+
+        if (transformSheet.getLocationRef() != null) {
+            StringBuilder sb = new StringBuilder("xslt:");
+            sb.append(transformSheet.getLocationRef().getTargetRef());
+
+            if (transformSheet.getTag() != null) {
+                sb.append('#').append(transformSheet.getTag().format());
+            }
+
+            result = sb.toString();
+        }
+
+        return result;
+    }
+
     /**
      * Wraps a source representation into a {@link SAXSource}. This method can
      * detect other {@link XmlRepresentation} instances to use their
@@ -118,8 +163,9 @@ public class TransformRepresentation extends WriterRepresentation {
                 }
             };
 
-            result = new SAXSource(reader, new InputSource(
-                    representation.getReader()));
+            // The events are streamed from the source transformation, so
+            // the input source doesn't need any content
+            result = new SAXSource(reader, new InputSource());
         } else {
             // Prepare the source and result documents
             result = new SAXSource(new InputSource(representation.getReader()));
@@ -143,6 +189,9 @@ public class TransformRepresentation extends WriterRepresentation {
     /** The JAXP transformer parameters. */
     private volatile Map<String, Object> parameters;
 
+    /** The template engine registry caching the compiled templates. */
+    private volatile TemplateEngineRegistry registry;
+
     /** The source representation to transform. */
     private volatile Representation sourceRepresentation;
 
@@ -170,6 +219,7 @@ public class TransformRepresentation extends WriterRepresentation {
             Representation transformSheet) {
         this((context == null) ? null : new ContextResolver(context), source,
                 transformSheet);
+        this.registry = TemplateEngineRegistry.getInstance(context);
     }
 
     /**
@@ -215,6 +265,7 @@ public class TransformRepresentation extends WriterRepresentation {
             Representation source, Representation transformSheet,
             Templates templates) {
         super(null);
+        this.registry = TemplateEngineRegistry.getInstance(null);
         this.sourceRepresentation = source;
         this.templates = templates;
         this.transformSheet = transformSheet;
@@ -278,14 +329,12 @@ public class TransformRepresentation extends WriterRepresentation {
     }
 
     /**
-     * Returns the default SAX transformer factory.
+     * Returns the default SAX transformer factory of the current thread.
      * 
      * @return The default SAX transformer factory.
      */
     private SAXTransformerFactory getSaxTransformerFactory() {
-        SAXTransformerFactory result = (SAXTransformerFactory) TransformerFactory
-                .newInstance();
-        return result;
+        return SAX_TRANSFORMER_FACTORY.get();
     }
 
     /**
@@ -298,8 +347,9 @@ public class TransformRepresentation extends WriterRepresentation {
     }
 
     /**
-     * Returns the templates to be used and reused. If no one exists, it creates
-     * a new one based on the transformSheet representation and on the URI
+     * Returns the templates to be used and reused. If no one exists, it reuses
+     * the one cached by the application for the transform sheet or compiles a
+     * new one based on the transformSheet representation and on the URI
      * resolver.
      * 
      * @return The templates to be used and reused.
@@ -307,6 +357,15 @@ public class TransformRepresentation extends WriterRepresentation {
     public Templates getTemplates() throws IOException {
         if (this.templates == null) {
             if (getTransformSheet() != null) {
+                TemplateEngineRegistry registry = this.registry;
+                String key = getTemplatesKey(getTransformSheet());
+                this.templates = (Templates) registry.getTemplate(key,
+                        getTransformSheet().getModificationDate());
+
+                if (this.templates != null) {
+                    return this.templates;
+                }
+
                 try {
                     // Prepare the XSLT transformer documents
                     final StreamSource transformSource = new StreamSource(
@@ -329,6 +388,8 @@ public class TransformRepresentation extends WriterRepresentation {
                     // Create a new transformer
                     this.templates = transformerFactory
                             .newTemplates(transformSource);
+                    registry.putTemplate(key, getTransformSheet()
+                            .getModificationDate(), this.templates);
                 } catch (TransformerConfigurationException tce) {
                     throw new IOException(
                             "Transformer configuration exception. "
@@ -447,6 +508,19 @@ public class TransformRepresentation extends WriterRepresentation {
         return result;
     }
 
+    /**
+     * Transforms the source and sends the resulting SAX events to a content
+     * handler, without serializing them. This lets the result be consumed or
+     * piped into another transformation as a stream.
+     * 
+     * @param contentHandler
+     *            The SAX content handler receiving the result.
+     * @throws IOException
+     */
+    public void parse(ContentHandler contentHandler) throws IOException {
+        write(new SAXResult(contentHandler));
+    }
+
     /**
      * Releases the source and transform sheet representations, the transformer
      * and the URI resolver.
@@ -554,14 +628,16 @@ public class TransformRepresentation extends WriterRepresentation {
      * @throws IOException
      */
     public void transform(Source source, Result result) throws IOException {
-        if (getTransformer() == null) {
+        Transformer transformer = getTransformer();
+
+        if (transformer == null) {
             Context.getCurrentLogger()
                     .warning(
                             "Unable to apply the transformation. No transformer found!");
         } else {
             try {
                 // Generates the result of the transformation
-                getTransformer().transform(source, result);
+                transformer.transform(source, result);
             } catch (TransformerException te) {
                 throw new IOException("Transformer exception. "
                         + te.getMessage());
@@ -24,8 +24,12 @@
 
 package org.restlet.ext.xml;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+
+import javax.xml.transform.Templates;
 
 import org.restlet.Request;
 import org.restlet.Response;
@@ -39,7 +43,10 @@ import org.restlet.routing.Filter;
 /**
  * Filter that can transform XML representations by applying an XSLT transform
  * sheet. It uses the {@link org.restlet.representation.TransformRepresentation}
- * to actually transform the XML entities.<br>
+ * to actually transform the XML entities. A transform sheet without location
+ * is compiled once for all the calls, while the compiled templates of a
+ * transform sheet with a location are cached and revalidated by the
+ * application.<br>
  * <br>
  * Concurrency note: instances of this class or its subclasses can be invoked by
  * several threads at the same time and therefore must be thread-safe. You
@@ -83,6 +90,9 @@ public class Transformer extends Filter {
      */
     private volatile MediaType resultMediaType;
 
+    /** The templates compiled from a transform sheet without location. */
+    private volatile Templates templates;
+
     /** The XSLT transform sheet to apply to message entities. */
     private volatile Representation transformSheet;
 
@@ -196,6 +206,28 @@ public class Transformer extends Filter {
         return this.resultMediaType;
     }
 
+    /**
+     * Returns the templates compiled once from the transform sheet.
+     * 
+     * @return The compiled templates or null.
+     */
+    private Templates getTemplates() {
+        Templates result = this.templates;
+
+        if (result == null) {
+            try {
+                result = new TransformRepresentation(getContext(), null,
+                        getTransformSheet()).getTemplates();
+                this.templates = result;
+            } catch (IOException ioe) {
+                getLogger().log(Level.WARNING,
+                        "Unable to compile the transform sheet", ioe);
+            }
+        }
+
+        return result;
+    }
+
     /**
      * Returns the XSLT transform sheet to apply to message entities.
      * 
@@ -263,6 +295,7 @@ public class Transformer extends Filter {
      */
     public void setTransformSheet(Representation transformSheet) {
         this.transformSheet = transformSheet;
+        this.templates = null;
     }
 
     /**
@@ -274,8 +307,13 @@ public class Transformer extends Filter {
      * @return The generated result representation.
      */
     public Representation transform(Representation source) {
-        final Representation result = new TransformRepresentation(getContext(),
-                source, getTransformSheet());
+        final TransformRepresentation result = new TransformRepresentation(
+                getContext(), source, getTransformSheet());
+
+        if ((getTransformSheet() != null)
+                && (getTransformSheet().getLocationRef() == null)) {
+            result.setTemplates(getTemplates());
+        }
 
         if (this.resultLanguages != null) {
             result.getLanguages().addAll(getResultLanguages());
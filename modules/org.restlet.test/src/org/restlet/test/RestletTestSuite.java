@@ -58,6 +58,7 @@ import org.restlet.test.ext.jaxb.JaxbBasicConverterTestCase;
 import org.restlet.test.ext.jaxb.JaxbIntegrationConverterTestCase;
 import org.restlet.test.ext.json.JsonTestSuite;
 import org.restlet.test.ext.odata.ODataTestSuite;
+import org.restlet.test.ext.servlet.ServletAdapterTestCase;
 import org.restlet.test.ext.spring.SpringTestSuite;
 import org.restlet.test.ext.velocity.VelocityTestCase;
 import org.restlet.test.ext.wadl.WadlTestSuite;
@@ -69,11 +70,13 @@ import org.restlet.test.representation.RangeRepresentationTestCase;
 import org.restlet.test.routing.FilterTestCase;
 import org.restlet.test.routing.RedirectTestCase;
 import org.restlet.test.routing.RouteListTestCase;
+import org.restlet.test.routing.RouterTestCase;
 import org.restlet.test.routing.ValidatorTestCase;
 import org.restlet.test.security.HttpBasicTestCase;
 import org.restlet.test.security.RoleTestCase;
 import org.restlet.test.security.SecurityTestCase;
 import org.restlet.test.service.ServiceTestSuite;
+import org.restlet.test.util.SeriesTestCase;
 import org.restlet.test.util.TemplateTestCase;
 
 /**
@@ -118,10 +121,13 @@ public class RestletTestSuite extends TestSuite {
         addTestSuite(RestartTestCase.class);
         addTestSuite(RiapTestCase.class);
         addTestSuite(RouteListTestCase.class);
+        addTestSuite(RouterTestCase.class);
         addTestSuite(DigestVerifierTestCase.class);
         addTestSuite(RecipientInfoTestCase.class);
         addTestSuite(RoleTestCase.class);
+        addTestSuite(ServletAdapterTestCase.class);
         addTestSuite(StatusTestCase.class);
+        addTestSuite(SeriesTestCase.class);
         addTestSuite(TemplateTestCase.class);
         addTestSuite(ValidatorTestCase.class);
         addTestSuite(VelocityTestCase.class);
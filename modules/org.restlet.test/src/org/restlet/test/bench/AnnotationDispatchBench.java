@@ -0,0 +1,159 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.test.bench;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.restlet.data.Form;
+import org.restlet.data.MediaType;
+import org.restlet.data.Method;
+import org.restlet.engine.resource.AnnotationInfo;
+import org.restlet.engine.resource.AnnotationUtils;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.resource.Delete;
+import org.restlet.resource.Get;
+import org.restlet.resource.Options;
+import org.restlet.resource.Post;
+import org.restlet.resource.Put;
+import org.restlet.service.ConverterService;
+import org.restlet.service.MetadataService;
+
+/**
+ * Measures the throughput of the annotated method selection when many threads
+ * dispatch calls concurrently, comparing the scan of the annotation
+ * descriptors with the per-class dispatch table. Pass the number of threads
+ * and the duration of each run in milliseconds as arguments.
+ * 
+ * @author Jerome Louvel
+ */
+public class AnnotationDispatchBench {
+
+    public static interface BenchResource {
+
+        @Delete
+        void remove();
+
+        @Get("txt")
+        String getText();
+
+        @Get("json")
+        String getJson();
+
+        @Get("xml")
+        String getXml();
+
+        @Options("txt")
+        String describe();
+
+        @Post("txt")
+        String postText(String text);
+
+        @Post("xml")
+        String postXml(String xml);
+
+        @Put("json")
+        String store(String json);
+
+    }
+
+    private static final Method[] METHODS = new Method[] { Method.GET,
+            Method.POST, Method.PUT, Method.DELETE };
+
+    public static void main(String[] args) throws Exception {
+        int threads = (args.length > 0) ? Integer.parseInt(args[0]) : 32;
+        long durationMs = (args.length > 1) ? Long.parseLong(args[1]) : 3000;
+
+        // Warm up then measure
+        run(false, threads, durationMs / 3);
+        run(true, threads, durationMs / 3);
+        System.out.println("Scan: " + run(false, threads, durationMs)
+                + " selections/s");
+        System.out.println("Dispatch table: "
+                + run(true, threads, durationMs) + " selections/s");
+    }
+
+    private static long run(final boolean dispatchTable, int threads,
+            final long durationMs) throws Exception {
+        final AnnotationUtils utils = AnnotationUtils.getInstance();
+        final List<AnnotationInfo> annotations = utils
+                .getAnnotations(BenchResource.class);
+        final MetadataService metadataService = new MetadataService();
+        final ConverterService converterService = new ConverterService();
+        final Form query = new Form();
+        final AtomicLong total = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                public void run() {
+                    Representation entity = new StringRepresentation("a",
+                            MediaType.TEXT_XML);
+                    long count = 0;
+
+                    try {
+                        start.await();
+                        long end = System.currentTimeMillis() + durationMs;
+
+                        while (System.currentTimeMillis() < end) {
+                            for (int i = 0; i < 1000; i++) {
+                                Method method = METHODS[i & 3];
+                                Representation e = (method == Method.POST) ? entity
+                                        : null;
+
+                                if (dispatchTable) {
+                                    utils.getMethodAnnotation(
+                                            BenchResource.class, method,
+                                            query, e, metadataService,
+                                            converterService);
+                                } else {
+                                    utils.getMethodAnnotation(annotations,
+                                            method, query, e,
+                                            metadataService, converterService);
+                                }
+                            }
+
+                            count += 1000;
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    } finally {
+                        total.addAndGet(count);
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        start.countDown();
+        done.await();
+        return total.get() * 1000 / durationMs;
+    }
+
+}
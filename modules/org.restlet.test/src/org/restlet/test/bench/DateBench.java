@@ -0,0 +1,100 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.test.bench;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.restlet.engine.util.DateUtils;
+
+/**
+ * Measures the throughput of the HTTP date formatting and parsing, with a new
+ * {@link SimpleDateFormat} for each call and with {@link DateUtils}. Pass the
+ * duration of each run in milliseconds as argument.
+ * 
+ * @author Jerome Louvel
+ */
+public class DateBench {
+
+    public static void main(String[] args) throws Exception {
+        long durationMs = (args.length > 0) ? Long.parseLong(args[0]) : 3000;
+        String text = DateUtils.format(new Date(784111777000L));
+
+        // Warm up then measure
+        run(false, text, durationMs / 3);
+        long[] result = run(false, text, durationMs);
+        System.out.println("SimpleDateFormat: " + result[0] + " formats/s, "
+                + result[1] + " parses/s");
+        run(true, text, durationMs / 3);
+        result = run(true, text, durationMs);
+        System.out.println("DateUtils: " + result[0] + " formats/s, "
+                + result[1] + " parses/s");
+    }
+
+    private static SimpleDateFormat newFormat() {
+        SimpleDateFormat result = new SimpleDateFormat(
+                DateUtils.FORMAT_RFC_1123.get(0), Locale.US);
+        result.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return result;
+    }
+
+    private static long[] run(boolean dateUtils, String text, long durationMs)
+            throws Exception {
+        long[] result = new long[2];
+        long count = 0;
+        long end = System.currentTimeMillis() + durationMs;
+
+        while (System.currentTimeMillis() < end) {
+            if (dateUtils) {
+                DateUtils.format(new Date());
+            } else {
+                newFormat().format(new Date());
+            }
+
+            count++;
+        }
+
+        result[0] = count * 1000 / durationMs;
+        count = 0;
+        end = System.currentTimeMillis() + durationMs;
+
+        while (System.currentTimeMillis() < end) {
+            if (dateUtils) {
+                DateUtils.parse(text);
+            } else {
+                newFormat().parse(text);
+            }
+
+            count++;
+        }
+
+        result[1] = count * 1000 / durationMs;
+        return result;
+    }
+
+}
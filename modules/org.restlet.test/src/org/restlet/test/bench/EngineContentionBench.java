@@ -0,0 +1,120 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.test.bench;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.restlet.engine.Engine;
+import org.restlet.engine.converter.ConverterHelper;
+
+/**
+ * Measures the throughput of the engine lookups done on the request path when
+ * many threads run concurrently, first serialized on the {@link Engine} class
+ * monitor like the former synchronized {@link Engine#getInstance()} method,
+ * then with the lock-free instance and the helper snapshots. Pass the number
+ * of threads (64 by default) and the duration of each run in milliseconds as
+ * arguments.
+ * 
+ * @author Jerome Louvel
+ */
+public class EngineContentionBench {
+
+    /**
+     * Iterates over the registered converters, like the converter lookups do.
+     * 
+     * @param converters
+     *            The registered converters.
+     * @return The number of converters.
+     */
+    private static int lookup(List<ConverterHelper> converters) {
+        int result = 0;
+
+        for (ConverterHelper ch : converters) {
+            if (ch != null) {
+                result++;
+            }
+        }
+
+        return result;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = (args.length > 0) ? Integer.parseInt(args[0]) : 64;
+        long durationMs = (args.length > 1) ? Long.parseLong(args[1]) : 3000;
+        Engine.getInstance();
+
+        // Warm up then measure
+        run(false, threads, durationMs / 3);
+        System.out.println("Engine monitor: "
+                + run(false, threads, durationMs) + " lookups/s");
+        run(true, threads, durationMs / 3);
+        System.out.println("Lock-free snapshots: "
+                + run(true, threads, durationMs) + " lookups/s");
+    }
+
+    private static long run(final boolean lockFree, int threads,
+            long durationMs) throws InterruptedException {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong count = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    long local = 0;
+
+                    while (running.get()) {
+                        if (lockFree) {
+                            lookup(Engine.getInstance()
+                                    .getRegisteredConvertersSnapshot());
+                        } else {
+                            synchronized (Engine.class) {
+                                lookup(Engine.getInstance()
+                                        .getRegisteredConverters());
+                            }
+                        }
+
+                        local++;
+                    }
+
+                    count.addAndGet(local);
+                    done.countDown();
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        Thread.sleep(durationMs);
+        running.set(false);
+        done.await();
+        return count.get() * 1000 / durationMs;
+    }
+
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.test.bench;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.Server;
+import org.restlet.data.MediaType;
+import org.restlet.data.Protocol;
+import org.restlet.engine.Engine;
+import org.restlet.engine.connector.ConnectorHelper;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.resource.ClientResource;
+
+/**
+ * Measures the latency of calls while many idle persistent connections are
+ * open on the server connector. Pass the number of idle connections and the
+ * number of calls as arguments.
+ * 
+ * @author Jerome Louvel
+ */
+public class IdleConnectionsBench {
+
+    public static void main(String[] args) throws Exception {
+        int idleConnections = (args.length > 0) ? Integer.parseInt(args[0])
+                : 2000;
+        int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 1000;
+
+        ConnectorHelper<Server> helper;
+        helper = new org.restlet.engine.connector.NioHttpServerHelper(null);
+        // helper = new org.restlet.engine.connector.HttpServerHelper(null);
+        Engine.getInstance().getRegisteredServers().add(0, helper);
+
+        Server server = new Server(new Context(), Protocol.HTTP, 0,
+                new Restlet() {
+                    @Override
+                    public void handle(Request request, Response response) {
+                        response.setEntity(new StringRepresentation(
+                                "hello, world!", MediaType.TEXT_PLAIN));
+                    }
+                });
+        server.getContext().getParameters().add("maxIdleTimeMs", "0");
+        server.start();
+        int port = server.getEphemeralPort();
+
+        // Open the idle connections
+        List<Socket> sockets = new ArrayList<Socket>();
+
+        for (int i = 0; i < idleConnections; i++) {
+            sockets.add(new Socket("localhost", port));
+        }
+
+        System.out.println("Opened " + sockets.size() + " idle connections");
+        ClientResource cr = new ClientResource("http://localhost:" + port
+                + "/");
+        cr.setRetryOnError(false);
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            cr.get().exhaust();
+        }
+
+        long duration = (System.nanoTime() - start) / 1000000L;
+        System.out.println(iterations + " calls in " + duration + " ms ("
+                + (iterations * 1000L / Math.max(1, duration))
+                + " calls/s)");
+
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+
+        server.stop();
+    }
+}
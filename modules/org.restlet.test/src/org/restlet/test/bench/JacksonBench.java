@@ -0,0 +1,117 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.test.bench;
+
+import java.util.Date;
+
+import org.restlet.data.MediaType;
+import org.restlet.ext.jackson.JacksonConverter;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.representation.Variant;
+import org.restlet.test.ext.jackson.Customer;
+import org.restlet.test.ext.jackson.Invoice;
+
+/**
+ * Measures the serialization and deserialization throughput of the Jackson
+ * converter, with mappers created for each representation and with the
+ * mappers shared by the converter registry. Pass the duration of each run in
+ * milliseconds as argument.
+ * 
+ * @author Jerome Louvel
+ */
+public class JacksonBench {
+
+    private static Customer createCustomer() {
+        Customer result = new Customer();
+        result.setFirstName("Foo");
+        result.setLastName("Bar");
+
+        for (int i = 0; i < 10; i++) {
+            Invoice invoice = new Invoice();
+            invoice.setAmount(1000 + i);
+            invoice.setDate(new Date(1356533333882L));
+            invoice.setPaid((i % 2) == 0);
+            result.getInvoices().add(invoice);
+        }
+
+        return result;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long durationMs = (args.length > 0) ? Long.parseLong(args[0]) : 3000;
+        Customer customer = createCustomer();
+
+        JacksonConverter newMappers = new JacksonConverter();
+        newMappers.setMapperRegistry(null);
+        JacksonConverter sharedMappers = new JacksonConverter();
+        String text = sharedMappers
+                .toRepresentation(customer,
+                        new Variant(MediaType.APPLICATION_JSON), null)
+                .getText();
+
+        report("New mappers", newMappers, customer, text, durationMs);
+        report("Shared mappers", sharedMappers, customer, text, durationMs);
+    }
+
+    private static void report(String label, JacksonConverter converter,
+            Customer customer, String text, long durationMs) throws Exception {
+        // Warm up then measure
+        run(converter, customer, text, durationMs / 3);
+        long[] result = run(converter, customer, text, durationMs);
+        System.out.println(label + ": " + result[0] + " serializations/s, "
+                + result[1] + " deserializations/s");
+    }
+
+    private static long[] run(JacksonConverter converter, Customer customer,
+            String text, long durationMs) throws Exception {
+        Variant variant = new Variant(MediaType.APPLICATION_JSON);
+        long[] result = new long[2];
+        long count = 0;
+        long end = System.currentTimeMillis() + durationMs;
+
+        while (System.currentTimeMillis() < end) {
+            Representation rep = converter.toRepresentation(customer, variant,
+                    null);
+            rep.getText();
+            count++;
+        }
+
+        result[0] = count * 1000 / durationMs;
+        count = 0;
+        end = System.currentTimeMillis() + durationMs;
+
+        while (System.currentTimeMillis() < end) {
+            converter.toObject(new StringRepresentation(text,
+                    MediaType.APPLICATION_JSON), Customer.class, null);
+            count++;
+        }
+
+        result[1] = count * 1000 / durationMs;
+        return result;
+    }
+
+}
@@ -27,12 +27,20 @@ package org.restlet.test.engine;
 import java.util.List;
 
 import org.junit.Assert;
+import org.restlet.data.Form;
+import org.restlet.data.MediaType;
 import org.restlet.data.Method;
+import org.restlet.engine.resource.AnnotationDispatchTable;
 import org.restlet.engine.resource.AnnotationInfo;
 import org.restlet.engine.resource.AnnotationUtils;
 import org.restlet.engine.resource.MethodAnnotationInfo;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
 import org.restlet.resource.Get;
+import org.restlet.resource.Post;
 import org.restlet.resource.Put;
+import org.restlet.service.ConverterService;
+import org.restlet.service.MetadataService;
 import org.restlet.test.RestletTestCase;
 
 /**
@@ -46,6 +54,22 @@ public class AnnotationUtilsTestCase extends RestletTestCase {
 
     }
 
+    public static interface IDispatch {
+
+        @Get("txt")
+        String getText();
+
+        @Get("?mode=raw")
+        String getRaw();
+
+        @Post("txt")
+        String postText(String text);
+
+        @Post("xml")
+        String postXml(String xml);
+
+    }
+
     public static interface IParent<S, T> {
 
         @Get
@@ -102,4 +126,58 @@ public class AnnotationUtilsTestCase extends RestletTestCase {
                 "Didn't find a method with IChild as the declaring class.",
                 true, found);
     }
+
+    public void testDispatchTable() throws Exception {
+        AnnotationUtils utils = AnnotationUtils.getInstance();
+        List<AnnotationInfo> infos = utils.getAnnotations(IDispatch.class);
+        AnnotationDispatchTable table = utils
+                .getDispatchTable(IDispatch.class);
+        assertSame(table, utils.getDispatchTable(IDispatch.class));
+        assertEquals(2, table.getMethodAnnotations(Method.GET).length);
+        assertEquals(0, table.getMethodAnnotations(Method.DELETE).length);
+
+        MetadataService metadataService = new MetadataService();
+        ConverterService converterService = new ConverterService();
+        Form raw = new Form("mode=raw");
+        Representation[] entities = new Representation[] { null,
+                new StringRepresentation("a", MediaType.TEXT_PLAIN),
+                new StringRepresentation("<a/>", MediaType.TEXT_XML),
+                new StringRepresentation("{}", MediaType.APPLICATION_JSON) };
+
+        // Twice to check the remembered selections
+        for (int i = 0; i < 2; i++) {
+            for (Method method : new Method[] { Method.GET, Method.POST,
+                    Method.PUT }) {
+                for (Form query : new Form[] { new Form(), raw }) {
+                    for (Representation entity : entities) {
+                        assertSame(utils.getMethodAnnotation(infos, method,
+                                query, entity, metadataService,
+                                converterService), utils.getMethodAnnotation(
+                                IDispatch.class, method, query, entity,
+                                metadataService, converterService));
+                    }
+                }
+            }
+        }
+
+        assertEquals("postXml",
+                utils.getMethodAnnotation(IDispatch.class, Method.POST,
+                        new Form(), entities[2], metadataService,
+                        converterService).getJavaMethod().getName());
+        assertNull(utils.getMethodAnnotation(IDispatch.class, Method.PUT,
+                new Form(), null, metadataService, converterService));
+        assertNull(utils.getThrowableAnnotationInfo(IDispatch.class));
+
+        // Media type parameters don't fill the remembered selections
+        for (int i = 0; i < 1000; i++) {
+            Representation entity = new StringRepresentation("a",
+                    MediaType.valueOf("text/plain; boundary=b" + i));
+            assertSame(utils.getMethodAnnotation(infos, Method.POST,
+                    new Form(), entity, metadataService, converterService),
+                    utils.getMethodAnnotation(IDispatch.class, Method.POST,
+                            new Form(), entity, metadataService,
+                            converterService));
+        }
+    }
+
 }
@@ -24,7 +24,12 @@
 
 package org.restlet.test.engine;
 
+import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
 
 import org.restlet.engine.util.DateUtils;
 import org.restlet.test.RestletTestCase;
@@ -54,6 +59,73 @@ public class DateTestCase extends RestletTestCase {
 
     private String DATE_RFC822_1 = "Fri, 12 Apr 85 23:20:50 GMT";
 
+    /**
+     * Returns a new reference date format in the GMT time zone.
+     * 
+     * @param formats
+     *            The date formats.
+     * @return The reference date format.
+     */
+    private SimpleDateFormat newReferenceFormat(List<String> formats) {
+        SimpleDateFormat result = new SimpleDateFormat(formats.get(0),
+                Locale.US);
+        result.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return result;
+    }
+
+    /**
+     * Tests that the HTTP dates are formatted and parsed like
+     * {@link SimpleDateFormat} does.
+     */
+    public void testHttpDates() throws Exception {
+        @SuppressWarnings("unchecked")
+        List<String>[] formats = new List[] { DateUtils.FORMAT_RFC_1123,
+                DateUtils.FORMAT_RFC_1036, DateUtils.FORMAT_ASC_TIME };
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+
+        for (List<String> format : formats) {
+            SimpleDateFormat reference = newReferenceFormat(format);
+
+            for (int i = 0; i < 2000; i++) {
+                Date date;
+
+                if (i == 0) {
+                    date = new Date(now);
+                } else if (format == DateUtils.FORMAT_RFC_1036) {
+                    // Stay within the two digits year window
+                    date = new Date(now - 2000000000000L
+                            + (long) (random.nextDouble() * 2500000000000L));
+                } else {
+                    date = new Date(random.nextLong() % 300000000000000L);
+                }
+
+                String expected = reference.format(date);
+                assertEquals(expected, DateUtils.format(date, format));
+                assertEquals(reference.parse(expected),
+                        DateUtils.parse(expected, format));
+            }
+        }
+    }
+
+    /**
+     * Tests that non canonical HTTP dates are still leniently parsed.
+     */
+    public void testHttpDatesLenient() throws Exception {
+        SimpleDateFormat reference = newReferenceFormat(DateUtils.FORMAT_RFC_1123);
+        String[] dates = { "Sun, 6 Nov 1994 08:49:37 GMT",
+                "Sun, 06 Nov 1994 08:49:37 PST",
+                "sun, 06 nov 1994 08:49:37 GMT",
+                "Mon, 31 Feb 1994 24:49:37 GMT",
+                "Sun, 06 Nov 1994 08:49:37 GMT trailing" };
+
+        for (String date : dates) {
+            assertEquals(reference.parse(date), DateUtils.parse(date));
+        }
+
+        assertNull(DateUtils.parse("Sun, 06 Nov 1994"));
+    }
+
     /**
      * Tests for dates in the RFC 822 format.
      */
@@ -29,8 +29,13 @@ import junit.framework.TestSuite;
 
 import org.restlet.test.engine.connector.ConnectorsTestSuite;
 import org.restlet.test.engine.io.BioUtilsTestCase;
+import org.restlet.test.engine.io.BufferPoolTestCase;
+import org.restlet.test.engine.io.FileTransferTestCase;
 import org.restlet.test.engine.io.ReaderInputStreamTestCase;
+import org.restlet.test.engine.io.SpoolOutputStreamTestCase;
 import org.restlet.test.engine.util.Base64TestCase;
+import org.restlet.test.engine.util.SnapshotListTestCase;
+import org.restlet.test.engine.util.ThreadPerTaskExecutorServiceTestCase;
 
 /**
  * Suite of unit tests for the Restlet Framework.
@@ -55,15 +60,21 @@ public class EngineTestSuite extends TestSuite {
         addTestSuite(AnnotationUtilsTestCase.class);
         addTestSuite(Base64TestCase.class);
         addTestSuite(BioUtilsTestCase.class);
+        addTestSuite(BufferPoolTestCase.class);
         addTestSuite(CookiesTestCase.class);
         addTestSuite(ContentTypeTestCase.class);
+        addTestSuite(FileTransferTestCase.class);
         addTestSuite(HeaderTestCase.class);
         addTestSuite(HttpCallTestCase.class);
         addTestSuite(ImmutableDateTestCase.class);
+        addTestSuite(MethodInvokerTestCase.class);
         addTestSuite(UnclosableInputStreamTestCase.class);
         addTestSuite(UnclosableOutputStreamTestCase.class);
         addTestSuite(PreferencesTestCase.class);
         addTestSuite(ReaderInputStreamTestCase.class);
+        addTestSuite(SnapshotListTestCase.class);
+        addTestSuite(SpoolOutputStreamTestCase.class);
+        addTestSuite(ThreadPerTaskExecutorServiceTestCase.class);
 
         // Tests based on HTTP client connectors are not supported by the GAE
         // edition.
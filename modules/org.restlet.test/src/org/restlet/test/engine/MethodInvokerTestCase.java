@@ -0,0 +1,153 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.test.engine;
+
+import java.lang.reflect.InvocationTargetException;
+
+import org.restlet.data.Method;
+import org.restlet.engine.resource.AnnotationUtils;
+import org.restlet.engine.resource.MethodAnnotationInfo;
+import org.restlet.engine.resource.MethodInvoker;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.resource.ClientResource;
+import org.restlet.resource.Finder;
+import org.restlet.resource.Get;
+import org.restlet.resource.Post;
+import org.restlet.resource.ServerResource;
+import org.restlet.test.RestletTestCase;
+
+/**
+ * Test case for the method handle invoker of annotated methods.
+ * 
+ * @author Jerome Louvel
+ */
+public class MethodInvokerTestCase extends RestletTestCase {
+
+    public static class CompiledResource extends ServerResource {
+
+        @Override
+        protected void doInit() {
+            setCompiledInvocation(true);
+        }
+
+        @Post("txt")
+        public String echo(String text) {
+            return "echo: " + text;
+        }
+
+        @Get("txt")
+        public String hello() {
+            return "hello";
+        }
+    }
+
+    public static class Target {
+
+        public int add(int a, Integer b) {
+            return a + b;
+        }
+
+        public void fail() {
+            throw new IllegalStateException("failed");
+        }
+    }
+
+    public void testAnnotatedInvocation() throws Exception {
+        MethodAnnotationInfo info = AnnotationUtils.getInstance()
+                .getMethodAnnotation(
+                        AnnotationUtils.getInstance().getAnnotations(
+                                CompiledResource.class),
+                        CompiledResource.class.getMethod("hello"));
+        assertNotNull(info.getInvoker());
+        assertSame(info.getInvoker(), info.getInvoker());
+        assertEquals(Method.GET, info.getRestletMethod());
+
+        CompiledResource resource = new CompiledResource();
+        assertEquals("hello", info.invoke(resource, new Object[0], true));
+        assertEquals("hello", info.invoke(resource, new Object[0], false));
+    }
+
+    public void testInvoke() throws Exception {
+        Target target = new Target();
+        MethodInvoker invoker = new MethodInvoker(Target.class.getMethod(
+                "add", int.class, Integer.class));
+        assertEquals(Integer.valueOf(5), invoker.invoke(target, 2, 3));
+
+        invoker = new MethodInvoker(Target.class.getMethod("fail"));
+
+        try {
+            invoker.invoke(target);
+            fail("An InvocationTargetException was expected");
+        } catch (InvocationTargetException e) {
+            assertTrue(e.getTargetException() instanceof IllegalStateException);
+        }
+    }
+
+    public void testInvalidArguments() throws Exception {
+        Target target = new Target();
+        MethodInvoker invoker = new MethodInvoker(Target.class.getMethod(
+                "add", int.class, Integer.class));
+        Object[][] invalid = new Object[][] { { "2", 3 }, { null, 3 },
+                { 2 }, { 2, 3, 4 } };
+
+        for (Object[] parameters : invalid) {
+            try {
+                invoker.invoke(target, parameters);
+                fail("An IllegalArgumentException was expected");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+
+        try {
+            invoker.invoke("target", 2, 3);
+            fail("An IllegalArgumentException was expected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        // Null values are accepted for reference parameters
+        try {
+            invoker.invoke(target, 2, null);
+            fail("An InvocationTargetException was expected");
+        } catch (InvocationTargetException e) {
+            assertTrue(e.getTargetException() instanceof NullPointerException);
+        }
+    }
+
+    public void testResource() throws Exception {
+        Finder finder = new Finder();
+        finder.setTargetClass(CompiledResource.class);
+        ClientResource clientResource = new ClientResource("http://local");
+        clientResource.setNext(finder);
+
+        assertEquals("hello", clientResource.get().getText());
+        assertEquals("echo: abc",
+                clientResource.post(new StringRepresentation("abc"))
+                        .getText());
+    }
+
+}
@@ -51,11 +51,15 @@ public abstract class BaseConnectorsTestCase extends RestletTestCase {
 
     private final boolean enabledClientNetty = false;
 
+    private final boolean enabledClientNio = true;
+
     private final boolean enabledServerInternal = true;
 
     private final boolean enabledServerJetty = true;
 
-    private final boolean enabledServerNetty = false;
+    private final boolean enabledServerNetty = true;
+
+    private final boolean enabledServerNio = true;
 
     protected abstract void call(String uri) throws Exception;
 
@@ -125,6 +129,13 @@ public abstract class BaseConnectorsTestCase extends RestletTestCase {
         }
     }
 
+    public void testInternalAndNio() throws Exception {
+        if (this.enabledServerInternal && this.enabledClientNio) {
+            runTest(new org.restlet.engine.connector.HttpServerHelper(null),
+                    new org.restlet.engine.connector.NioHttpClientHelper(null));
+        }
+    }
+
 //    public void testInternalAndNetty() throws Exception {
 //        if (this.enabledServerInternal && this.enabledClientNetty) {
 //            runTest(new org.restlet.engine.connector.HttpServerHelper(null),
@@ -146,6 +157,13 @@ public abstract class BaseConnectorsTestCase extends RestletTestCase {
         }
     }
 
+    public void testJettyAndNio() throws Exception {
+        if (this.enabledServerJetty && this.enabledClientNio) {
+            runTest(new org.restlet.ext.jetty.HttpServerHelper(null),
+                    new org.restlet.engine.connector.NioHttpClientHelper(null));
+        }
+    }
+
 //    public void testJettyAndNetty() throws Exception {
 //        if (this.enabledServerJetty && this.enabledClientNetty) {
 //            runTest(new org.restlet.ext.jetty.HttpServerHelper(null),
@@ -153,6 +171,27 @@ public abstract class BaseConnectorsTestCase extends RestletTestCase {
 //        }
 //    }
 
+    public void testNioAndInternal() throws Exception {
+        if (this.enabledServerNio && this.enabledClientInternal) {
+            runTest(new org.restlet.engine.connector.NioHttpServerHelper(null),
+                    new org.restlet.engine.connector.HttpClientHelper(null));
+        }
+    }
+
+    public void testNioAndJetty() throws Exception {
+        if (this.enabledServerNio && this.enabledClientJetty) {
+            runTest(new org.restlet.engine.connector.NioHttpServerHelper(null),
+                    new org.restlet.ext.jetty.HttpClientHelper(null));
+        }
+    }
+
+    public void testNioAndNio() throws Exception {
+        if (this.enabledServerNio && this.enabledClientNio) {
+            runTest(new org.restlet.engine.connector.NioHttpServerHelper(null),
+                    new org.restlet.engine.connector.NioHttpClientHelper(null));
+        }
+    }
+
     public void testNettyAndInternal() throws Exception {
         if (this.enabledServerNetty && this.enabledClientInternal) {
             runTest(new org.restlet.ext.netty.HttpServerHelper(null),
@@ -167,6 +206,13 @@ public abstract class BaseConnectorsTestCase extends RestletTestCase {
         }
     }
 
+    public void testNettyAndNio() throws Exception {
+        if (this.enabledServerNetty && this.enabledClientNio) {
+            runTest(new org.restlet.ext.netty.HttpServerHelper(null),
+                    new org.restlet.engine.connector.NioHttpClientHelper(null));
+        }
+    }
+
 //    public void testNettyAndNetty() throws Exception {
 //        if (this.enabledServerNetty && this.enabledClientNetty) {
 //            runTest(new org.restlet.ext.netty.HttpServerHelper(null),
@@ -54,6 +54,11 @@ public class ConnectorsTestSuite extends TestSuite {
         addTestSuite(GetTestCase.class);
         addTestSuite(GetChunkedTestCase.class);
         addTestSuite(GetQueryParamTestCase.class);
+        addTestSuite(JettyHttpClientTestCase.class);
+        addTestSuite(JettySpdyServerTestCase.class);
+        addTestSuite(NettyServerTestCase.class);
+        addTestSuite(NioHttpClientTestCase.class);
+        addTestSuite(NioHttpServerTestCase.class);
         addTestSuite(PostPutTestCase.class);
         addTestSuite(RemoteClientAddressTestCase.class);
         addTestSuite(SslClientContextGetTestCase.class);
@@ -0,0 +1,235 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.test.engine.connector;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.restlet.Client;
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.Server;
+import org.restlet.Uniform;
+import org.restlet.data.MediaType;
+import org.restlet.data.Method;
+import org.restlet.data.Protocol;
+import org.restlet.data.Status;
+import org.restlet.engine.connector.NioHttpServerHelper;
+import org.restlet.representation.InputRepresentation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.test.RestletTestCase;
+
+/**
+ * Unit tests for the asynchronous Jetty HTTP client connector.
+ * 
+ * @author Jerome Louvel
+ */
+public class JettyHttpClientTestCase extends RestletTestCase {
+
+    /** The size of the large entities. */
+    private static final int LARGE_SIZE = 1024 * 1024;
+
+    /**
+     * Returns a large entity with predictable content.
+     * 
+     * @return A large entity.
+     */
+    private static byte[] createLargeContent() {
+        byte[] content = new byte[LARGE_SIZE];
+
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+
+        return content;
+    }
+
+    private Client client;
+
+    private Server server;
+
+    private String uri;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Restlet restlet = new Restlet() {
+            @Override
+            public void handle(Request request, Response response) {
+                if (request.getResourceRef().getPath().endsWith("/large")) {
+                    response.setEntity(new InputRepresentation(
+                            new ByteArrayInputStream(createLargeContent()),
+                            MediaType.APPLICATION_OCTET_STREAM));
+                } else if (Method.POST.equals(request.getMethod())) {
+                    try {
+                        byte[] content = createLargeContent();
+                        InputStream stream = request.getEntity().getStream();
+                        int read = 0;
+
+                        for (int b = stream.read(); b != -1; b = stream
+                                .read()) {
+                            if ((read >= content.length)
+                                    || (content[read] != (byte) b)) {
+                                break;
+                            }
+
+                            read++;
+                        }
+
+                        response.setEntity(new StringRepresentation("read "
+                                + read));
+                    } catch (Exception e) {
+                        response.setStatus(Status.SERVER_ERROR_INTERNAL, e);
+                    }
+                } else {
+                    response.setEntity(new StringRepresentation("item "
+                            + request.getResourceRef().getQueryAsForm()
+                                    .getFirstValue("item")));
+                }
+            }
+        };
+
+        this.server = new Server(new Context(), Arrays.asList(Protocol.HTTP),
+                null, 0, restlet, NioHttpServerHelper.class.getName());
+        this.server.start();
+        this.uri = "http://localhost:" + this.server.getActualPort() + "/test";
+        this.client = new Client(new Context(), Arrays.asList(Protocol.HTTP),
+                org.restlet.ext.jetty.HttpClientHelper.class.getName());
+        this.client.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.client.stop();
+        this.client = null;
+        this.server.stop();
+        this.server = null;
+        super.tearDown();
+    }
+
+    public void testAsynchronous() throws Exception {
+        int count = 10;
+        final CountDownLatch latch = new CountDownLatch(count);
+        final Map<String, String> results = new ConcurrentHashMap<String, String>();
+        final Thread caller = Thread.currentThread();
+
+        for (int i = 0; i < count; i++) {
+            Request request = new Request(Method.GET, this.uri + "?item=" + i);
+            request.setOnResponse(new Uniform() {
+                public void handle(Request request, Response response) {
+                    try {
+                        if (Thread.currentThread() != caller
+                                && Status.SUCCESS_OK.equals(response
+                                        .getStatus())) {
+                            results.put(request.getResourceRef()
+                                    .getQueryAsForm().getFirstValue("item"),
+                                    response.getEntityAsText());
+                        }
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+            this.client.handle(request);
+        }
+
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertEquals(count, results.size());
+
+        for (int i = 0; i < count; i++) {
+            assertEquals("item " + i, results.get(Integer.toString(i)));
+        }
+    }
+
+    public void testAsynchronousConnectionError() throws Exception {
+        int port = this.server.getActualPort();
+        this.server.stop();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Status[] status = new Status[1];
+        Request request = new Request(Method.GET, "http://localhost:" + port
+                + "/test");
+        request.setOnResponse(new Uniform() {
+            public void handle(Request request, Response response) {
+                status[0] = response.getStatus();
+                latch.countDown();
+            }
+        });
+        this.client.handle(request);
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertTrue(status[0].isConnectorError());
+        this.server.start();
+    }
+
+    public void testLargeRequestEntity() throws Exception {
+        Request request = new Request(Method.POST, this.uri);
+        request.setEntity(new InputRepresentation(new ByteArrayInputStream(
+                createLargeContent()), MediaType.APPLICATION_OCTET_STREAM));
+        Response response = this.client.handle(request);
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+        assertEquals("read " + LARGE_SIZE, response.getEntityAsText());
+    }
+
+    public void testLargeResponseEntity() throws Exception {
+        Response response = this.client.handle(new Request(Method.GET,
+                this.uri + "/large"));
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+
+        // Consume slowly so that Jetty has to wait for the content callbacks
+        InputStream stream = response.getEntity().getStream();
+        Thread.sleep(200);
+        int read = 0;
+
+        for (int b = stream.read(); b != -1; b = stream.read()) {
+            assertEquals((byte) read, (byte) b);
+            read++;
+        }
+
+        stream.close();
+        assertEquals(LARGE_SIZE, read);
+    }
+
+    public void testPartialRead() throws Exception {
+        Response response = this.client.handle(new Request(Method.GET,
+                this.uri + "/large"));
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+        InputStream stream = response.getEntity().getStream();
+        assertEquals(0, stream.read());
+        stream.close();
+
+        // The client remains usable after the aborted response
+        response = this.client.handle(new Request(Method.GET, this.uri
+                + "?item=next"));
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+        assertEquals("item next", response.getEntityAsText());
+    }
+}
@@ -0,0 +1,286 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.test.engine.connector;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.spdy.api.DataInfo;
+import org.eclipse.jetty.spdy.api.ReplyInfo;
+import org.eclipse.jetty.spdy.api.RstInfo;
+import org.eclipse.jetty.spdy.api.SPDY;
+import org.eclipse.jetty.spdy.api.Session;
+import org.eclipse.jetty.spdy.api.SessionFrameListener;
+import org.eclipse.jetty.spdy.api.Settings;
+import org.eclipse.jetty.spdy.api.SettingsInfo;
+import org.eclipse.jetty.spdy.api.Stream;
+import org.eclipse.jetty.spdy.api.StreamFrameListener;
+import org.eclipse.jetty.spdy.api.StreamStatus;
+import org.eclipse.jetty.spdy.api.SynInfo;
+import org.eclipse.jetty.spdy.client.SPDYClient;
+import org.eclipse.jetty.spdy.http.HTTPSPDYHeader;
+import org.eclipse.jetty.util.Fields;
+import org.restlet.Client;
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.Server;
+import org.restlet.data.Method;
+import org.restlet.data.Protocol;
+import org.restlet.data.Status;
+import org.restlet.engine.Engine;
+import org.restlet.engine.connector.NioHttpClientHelper;
+import org.restlet.ext.jetty.HttpServerHelper;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.test.RestletTestCase;
+
+/**
+ * Unit tests for the SPDY support of the Jetty HTTP server connector.
+ * 
+ * @author Jerome Louvel
+ */
+public class JettySpdyServerTestCase extends RestletTestCase {
+
+    /**
+     * Jetty server helper remembering the last instance created.
+     */
+    public static class RecordingHelper extends HttpServerHelper {
+
+        private static volatile RecordingHelper current;
+
+        public RecordingHelper(Server server) {
+            super(server);
+            current = this;
+        }
+    }
+
+    /** The number of calls handled at the same time. */
+    private static final int STREAM_COUNT = 4;
+
+    private SPDYClient.Factory clientFactory;
+
+    private RecordingHelper registeredHelper;
+
+    private Server server;
+
+    /**
+     * Creates the SPDY request headers.
+     * 
+     * @param path
+     *            The request path.
+     * @return The SPDY request headers.
+     */
+    private Fields createHeaders(String path) {
+        Fields result = new Fields();
+        result.put(HTTPSPDYHeader.METHOD.name(SPDY.V3), "GET");
+        result.put(HTTPSPDYHeader.URI.name(SPDY.V3), path);
+        result.put(HTTPSPDYHeader.VERSION.name(SPDY.V3), "HTTP/1.1");
+        result.put(HTTPSPDYHeader.SCHEME.name(SPDY.V3), "http");
+        result.put(HTTPSPDYHeader.HOST.name(SPDY.V3), "localhost:"
+                + this.server.getActualPort());
+        return result;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.registeredHelper = new RecordingHelper(null);
+        Engine.getInstance().getRegisteredServers().add(this.registeredHelper);
+        this.clientFactory = new SPDYClient.Factory();
+        this.clientFactory.start();
+    }
+
+    /**
+     * Creates and starts the server.
+     * 
+     * @param parameters
+     *            The server parameters, as name and value pairs.
+     */
+    private void startServer(String... parameters) throws Exception {
+        Context context = new Context();
+
+        for (int i = 0; i < parameters.length; i += 2) {
+            context.getParameters().add(parameters[i], parameters[i + 1]);
+        }
+
+        final CyclicBarrier barrier = new CyclicBarrier(STREAM_COUNT);
+        Restlet restlet = new Restlet() {
+            @Override
+            public void handle(Request request, Response response) {
+                String item = request.getResourceRef().getQueryAsForm()
+                        .getFirstValue("item");
+
+                try {
+                    if (request.getResourceRef().getPath().endsWith("/wait")) {
+                        // Only completes if all the streams are handled at
+                        // the same time
+                        barrier.await(10, TimeUnit.SECONDS);
+                    }
+
+                    response.setEntity(new StringRepresentation("item "
+                            + item));
+                } catch (Exception e) {
+                    response.setStatus(Status.SERVER_ERROR_INTERNAL, e);
+                }
+            }
+        };
+
+        this.server = new Server(context, Arrays.asList(Protocol.HTTP), null,
+                0, restlet, RecordingHelper.class.getCanonicalName());
+        this.server.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.clientFactory.stop();
+        this.clientFactory = null;
+
+        if (this.server != null) {
+            this.server.stop();
+            this.server = null;
+        }
+
+        Engine.getInstance().getRegisteredServers()
+                .remove(this.registeredHelper);
+        this.registeredHelper = null;
+
+        super.tearDown();
+    }
+
+    public void testCleartextStreams() throws Exception {
+        startServer("spdy.version", "3", "spdy.npn", "false",
+                "spdy.maxConcurrentStreams", "8", "spdy.initialWindowSize",
+                "131072");
+
+        final CountDownLatch settingsLatch = new CountDownLatch(1);
+        final Map<Settings.ID, Integer> settings = new ConcurrentHashMap<Settings.ID, Integer>();
+        Session session = this.clientFactory.newSPDYClient(SPDY.V3).connect(
+                new InetSocketAddress("localhost", this.server
+                        .getActualPort()), new SessionFrameListener.Adapter() {
+                    @Override
+                    public void onSettings(Session session,
+                            SettingsInfo settingsInfo) {
+                        for (Settings.Setting setting : settingsInfo
+                                .getSettings()) {
+                            settings.put(setting.id(), setting.value());
+                        }
+
+                        settingsLatch.countDown();
+                    }
+                });
+
+        assertTrue(settingsLatch.await(10, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(8),
+                settings.get(Settings.ID.MAX_CONCURRENT_STREAMS));
+        assertEquals(Integer.valueOf(131072),
+                settings.get(Settings.ID.INITIAL_WINDOW_SIZE));
+
+        // All the streams share the same connection
+        final CountDownLatch latch = new CountDownLatch(STREAM_COUNT);
+        final Map<Integer, String> statuses = new ConcurrentHashMap<Integer, String>();
+        final Map<Integer, StringBuilder> entities = new ConcurrentHashMap<Integer, StringBuilder>();
+
+        for (int i = 0; i < STREAM_COUNT; i++) {
+            final int item = i;
+            entities.put(item, new StringBuilder());
+            session.syn(new SynInfo(createHeaders("/test/wait?item=" + item),
+                    true), new StreamFrameListener.Adapter() {
+                @Override
+                public void onData(Stream stream, DataInfo dataInfo) {
+                    entities.get(item).append(
+                            dataInfo.asString(Charset.forName("UTF-8"), true));
+
+                    if (dataInfo.isClose()) {
+                        latch.countDown();
+                    }
+                }
+
+                @Override
+                public void onReply(Stream stream, ReplyInfo replyInfo) {
+                    statuses.put(item, replyInfo.getHeaders().get(
+                            HTTPSPDYHeader.STATUS.name(SPDY.V3)).getValue());
+
+                    if (replyInfo.isClose()) {
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+
+        for (int i = 0; i < STREAM_COUNT; i++) {
+            assertTrue(statuses.get(i).startsWith("200"));
+            assertEquals("item " + i, entities.get(i).toString());
+        }
+
+        RecordingHelper helper = RecordingHelper.current;
+        assertEquals(1, helper.getSpdySessionCount());
+        assertEquals(STREAM_COUNT, helper.getSpdyStreamCount());
+
+        // Streams reset by the client
+        Stream stream = session.syn(new SynInfo(createHeaders("/test/reset"),
+                false), new StreamFrameListener.Adapter());
+        session.rst(new RstInfo(stream.getId(), StreamStatus.CANCEL_STREAM));
+        long limit = System.currentTimeMillis() + 10000;
+
+        while (((helper.getSpdyResetCount() == 0) || (helper
+                .getSpdyOpenStreamCount() > 0))
+                && (System.currentTimeMillis() < limit)) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(1, helper.getSpdyResetCount());
+        assertEquals(0, helper.getSpdyOpenStreamCount());
+        assertEquals(STREAM_COUNT + 1, helper.getSpdyStreamCount());
+    }
+
+    public void testNpnUnavailable() throws Exception {
+        // Without the NPN boot jar, the connector falls back to HTTP/1.1
+        startServer("spdy.version", "3");
+        Client client = new Client(new Context(),
+                Arrays.asList(Protocol.HTTP),
+                NioHttpClientHelper.class.getName());
+        client.start();
+
+        try {
+            Response response = client.handle(new Request(Method.GET,
+                    "http://localhost:" + this.server.getActualPort()
+                            + "/test?item=1"));
+            assertEquals(Status.SUCCESS_OK, response.getStatus());
+            assertEquals("item 1", response.getEntityAsText());
+        } finally {
+            client.stop();
+        }
+    }
+}
@@ -0,0 +1,302 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.test.engine.connector;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.restlet.Client;
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.Server;
+import org.restlet.Uniform;
+import org.restlet.data.MediaType;
+import org.restlet.data.Method;
+import org.restlet.data.Protocol;
+import org.restlet.data.Status;
+import org.restlet.engine.Engine;
+import org.restlet.engine.connector.NioHttpClientHelper;
+import org.restlet.ext.netty.HttpServerHelper;
+import org.restlet.representation.ByteArrayRepresentation;
+import org.restlet.representation.FileRepresentation;
+import org.restlet.representation.InputRepresentation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.test.RestletTestCase;
+
+/**
+ * Unit tests for the Netty HTTP server connector.
+ * 
+ * @author Jerome Louvel
+ */
+public class NettyServerTestCase extends RestletTestCase {
+
+    /** The size of the large entities. */
+    private static final int LARGE_SIZE = 1024 * 1024;
+
+    /**
+     * Returns the content of the large entities.
+     * 
+     * @return The content of the large entities.
+     */
+    private static byte[] createContent() {
+        byte[] result = new byte[LARGE_SIZE];
+
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) i;
+        }
+
+        return result;
+    }
+
+    private Client client;
+
+    private File file;
+
+    private Server server;
+
+    private String uri;
+
+    /**
+     * Checks that the stream returns the content of the large entities.
+     * 
+     * @param stream
+     *            The stream to check.
+     * @throws IOException
+     */
+    private void assertContent(InputStream stream) throws IOException {
+        int read = 0;
+
+        for (int b = stream.read(); b != -1; b = stream.read()) {
+            assertEquals((byte) read, (byte) b);
+            read++;
+        }
+
+        stream.close();
+        assertEquals(LARGE_SIZE, read);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Engine.getInstance().getRegisteredServers()
+                .add(0, new HttpServerHelper(null));
+        this.file = File.createTempFile("netty", ".bin");
+        FileOutputStream fos = new FileOutputStream(this.file);
+
+        try {
+            fos.write(createContent());
+        } finally {
+            fos.close();
+        }
+
+        this.client = new Client(new Context(), Arrays.asList(Protocol.HTTP),
+                NioHttpClientHelper.class.getName());
+        this.client.getContext().getParameters()
+                .add("maxConnectionsPerHost", "1");
+        this.client.start();
+    }
+
+    /**
+     * Creates and starts the server.
+     * 
+     * @param parameters
+     *            The server parameters, as name and value pairs.
+     */
+    private void startServer(String... parameters) throws Exception {
+        List<Protocol> protocols = Arrays.asList(Protocol.HTTP);
+        Context context = new Context();
+
+        for (int i = 0; i < parameters.length; i += 2) {
+            context.getParameters().add(parameters[i], parameters[i + 1]);
+        }
+
+        Restlet restlet = new Restlet() {
+            @Override
+            public void handle(Request request, Response response) {
+                String path = request.getResourceRef().getPath();
+
+                if (path.endsWith("/file")) {
+                    response.setEntity(new FileRepresentation(file,
+                            MediaType.APPLICATION_OCTET_STREAM));
+                } else if (path.endsWith("/large")) {
+                    response.setEntity(new InputRepresentation(
+                            new java.io.ByteArrayInputStream(createContent()),
+                            MediaType.APPLICATION_OCTET_STREAM));
+                } else if (path.endsWith("/thread")) {
+                    response.setEntity(new StringRepresentation(Thread
+                            .currentThread().getName()));
+                } else if (Method.POST.equals(request.getMethod())) {
+                    try {
+                        // Consume slowly so that the reading is suspended
+                        Thread.sleep(200);
+                        InputStream stream = request.getEntity().getStream();
+                        int read = 0;
+
+                        for (int b = stream.read(); b != -1; b = stream
+                                .read()) {
+                            if ((byte) read != (byte) b) {
+                                break;
+                            }
+
+                            read++;
+                        }
+
+                        response.setEntity(new StringRepresentation("read "
+                                + read));
+                    } catch (Exception e) {
+                        response.setStatus(Status.SERVER_ERROR_INTERNAL, e);
+                    }
+                } else {
+                    response.setEntity(new StringRepresentation("item "
+                            + request.getResourceRef().getQueryAsForm()
+                                    .getFirstValue("item")));
+                }
+            }
+        };
+
+        this.server = new Server(context, protocols, null, 0, restlet,
+                HttpServerHelper.class.getName());
+        this.server.start();
+        this.uri = "http://localhost:" + this.server.getActualPort() + "/test";
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.client.stop();
+        this.client = null;
+
+        if (this.server != null) {
+            this.server.stop();
+            this.server = null;
+        }
+
+        this.file.delete();
+        this.file = null;
+        super.tearDown();
+    }
+
+    public void testFileEntity() throws Exception {
+        startServer();
+
+        for (int i = 0; i < 2; i++) {
+            Response response = this.client.handle(new Request(Method.GET,
+                    this.uri + "/file"));
+            assertEquals(Status.SUCCESS_OK, response.getStatus());
+            assertEquals(LARGE_SIZE, response.getEntity().getSize());
+            assertContent(response.getEntity().getStream());
+        }
+    }
+
+    public void testLargeRequestEntity() throws Exception {
+        startServer("requestBufferSize", "4096");
+
+        for (int i = 0; i < 2; i++) {
+            Response response = this.client.handle(new Request(Method.POST,
+                    this.uri, new ByteArrayRepresentation(createContent())));
+            assertEquals(Status.SUCCESS_OK, response.getStatus());
+            assertEquals("read " + LARGE_SIZE, response.getEntityAsText());
+        }
+    }
+
+    public void testLargeResponseEntity() throws Exception {
+        startServer();
+        Response response = this.client.handle(new Request(Method.GET,
+                this.uri + "/large"));
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+        assertContent(response.getEntity().getStream());
+
+        // The connection is reused after the chunked entity
+        response = this.client.handle(new Request(Method.GET, this.uri
+                + "?item=1"));
+        assertEquals("item 1", response.getEntityAsText());
+    }
+
+    public void testNativeTransport() throws Exception {
+        // Falls back to the NIO transport when epoll isn't available
+        startServer("nativeTransport", "true");
+        Response response = this.client.handle(new Request(Method.GET,
+                this.uri + "?item=1"));
+        assertEquals("item 1", response.getEntityAsText());
+    }
+
+    public void testPipelining() throws Exception {
+        startServer();
+        this.client.stop();
+        this.client = new Client(new Context(), Arrays.asList(Protocol.HTTP),
+                NioHttpClientHelper.class.getName());
+        this.client.getContext().getParameters()
+                .add("maxConnectionsPerHost", "1");
+        this.client.getContext().getParameters().add("pipelining", "true");
+        this.client.getContext().getParameters()
+                .add("maxPipelinedRequests", "8");
+        this.client.start();
+
+        int count = 8;
+        final CountDownLatch latch = new CountDownLatch(count);
+        final Map<String, String> results = new ConcurrentHashMap<String, String>();
+
+        for (int i = 0; i < count; i++) {
+            Request request = new Request(Method.GET, this.uri + "?item=" + i);
+            request.setOnResponse(new Uniform() {
+                public void handle(Request request, Response response) {
+                    try {
+                        results.put(request.getResourceRef().getQueryAsForm()
+                                .getFirstValue("item"), response
+                                .getEntityAsText());
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+            this.client.handle(request);
+        }
+
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+
+        for (int i = 0; i < count; i++) {
+            assertEquals("item " + i, results.get(Integer.toString(i)));
+        }
+    }
+
+    public void testWorkerThreads() throws Exception {
+        startServer("threadingMode", "virtual");
+        Response response = this.client.handle(new Request(Method.GET,
+                this.uri + "/thread"));
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+
+        // The calls aren't handled by the event loops
+        assertFalse(response.getEntityAsText().contains("EventLoop"));
+    }
+}
@@ -0,0 +1,365 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.test.engine.connector;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.restlet.Client;
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.Server;
+import org.restlet.Uniform;
+import org.restlet.data.MediaType;
+import org.restlet.data.Method;
+import org.restlet.data.Protocol;
+import org.restlet.data.Status;
+import org.restlet.engine.connector.NioHttpClientHelper;
+import org.restlet.engine.connector.NioHttpServerHelper;
+import org.restlet.engine.util.StringUtils;
+import org.restlet.representation.InputRepresentation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.test.RestletTestCase;
+
+/**
+ * Unit tests for the pooled non-blocking HTTP client connector.
+ * 
+ * @author Jerome Louvel
+ */
+public class NioHttpClientTestCase extends RestletTestCase {
+
+    /** The size of the large entity. */
+    private static final int LARGE_SIZE = 1024 * 1024;
+
+    private Client client;
+
+    private NioHttpClientHelper helper;
+
+    private Server server;
+
+    private String uri;
+
+    /**
+     * Creates and starts the client.
+     * 
+     * @param parameters
+     *            The client parameters, as name and value pairs.
+     */
+    private void startClient(String... parameters) throws Exception {
+        List<Protocol> protocols = Arrays.asList(Protocol.HTTP);
+        Context context = new Context();
+
+        for (int i = 0; i < parameters.length; i += 2) {
+            context.getParameters().add(parameters[i], parameters[i + 1]);
+        }
+
+        this.client = new Client(context, protocols,
+                NioHttpClientHelper.class.getName());
+        this.helper = (NioHttpClientHelper) context.getAttributes().get(
+                "org.restlet.engine.helper");
+        this.client.start();
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Restlet restlet = new Restlet() {
+            @Override
+            public void handle(Request request, Response response) {
+                if (request.getResourceRef().getPath().endsWith("/large")) {
+                    byte[] content = new byte[LARGE_SIZE];
+
+                    for (int i = 0; i < content.length; i++) {
+                        content[i] = (byte) i;
+                    }
+
+                    response.setEntity(new InputRepresentation(
+                            new java.io.ByteArrayInputStream(content),
+                            MediaType.APPLICATION_OCTET_STREAM));
+                } else if (Method.POST.equals(request.getMethod())) {
+                    response.setEntity(new StringRepresentation("posted "
+                            + request.getEntityAsText()));
+                } else {
+                    response.setEntity(new StringRepresentation("item "
+                            + request.getResourceRef().getQueryAsForm()
+                                    .getFirstValue("item")));
+                }
+            }
+        };
+
+        this.server = new Server(new Context(), Arrays.asList(Protocol.HTTP),
+                null, 0, restlet, NioHttpServerHelper.class.getName());
+        this.server.start();
+        this.uri = "http://localhost:" + this.server.getActualPort() + "/test";
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (this.client != null) {
+            this.client.stop();
+            this.client = null;
+        }
+
+        this.server.stop();
+        this.server = null;
+        super.tearDown();
+    }
+
+    public void testAsynchronous() throws Exception {
+        startClient("maxConnectionsPerHost", "2");
+        int count = 10;
+        final CountDownLatch latch = new CountDownLatch(count);
+        final Map<String, String> results = new ConcurrentHashMap<String, String>();
+        final Thread caller = Thread.currentThread();
+
+        for (int i = 0; i < count; i++) {
+            Request request = new Request(Method.GET, this.uri + "?item=" + i);
+            request.setOnResponse(new Uniform() {
+                public void handle(Request request, Response response) {
+                    try {
+                        if (Thread.currentThread() != caller
+                                && Status.SUCCESS_OK.equals(response
+                                        .getStatus())) {
+                            results.put(request.getResourceRef()
+                                    .getQueryAsForm().getFirstValue("item"),
+                                    response.getEntityAsText());
+                        }
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+            this.client.handle(request);
+        }
+
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertEquals(count, results.size());
+
+        for (int i = 0; i < count; i++) {
+            assertEquals("item " + i, results.get(Integer.toString(i)));
+        }
+
+        assertTrue(this.helper.getCreatedConnectionCount() <= 2);
+    }
+
+    public void testConnectionError() throws Exception {
+        startClient("socketConnectTimeoutMs", "2000");
+        int port = this.server.getActualPort();
+        this.server.stop();
+        Response response = this.client.handle(new Request(Method.GET,
+                "http://localhost:" + port + "/test"));
+        assertEquals(Status.CONNECTOR_ERROR_CONNECTION, response.getStatus());
+        this.server.start();
+    }
+
+    public void testInvalidContentLength() throws Exception {
+        final ServerSocket serverSocket = new ServerSocket(0);
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Socket socket = serverSocket.accept();
+                    InputStream in = socket.getInputStream();
+                    StringBuilder head = new StringBuilder();
+
+                    while (!head.toString().endsWith("\r\n\r\n")) {
+                        int next = in.read();
+
+                        if (next == -1) {
+                            break;
+                        }
+
+                        head.append((char) next);
+                    }
+
+                    OutputStream out = socket.getOutputStream();
+                    out.write(StringUtils.getAsciiBytes("HTTP/1.1 200 OK\r\n"
+                            + "Content-Length: -5\r\n\r\nhello"));
+                    out.flush();
+                    in.read();
+                    socket.close();
+                } catch (Exception e) {
+                    // The client closed the connection
+                }
+            }
+        };
+        thread.start();
+
+        try {
+            startClient();
+            Response response = this.client.handle(new Request(Method.GET,
+                    "http://localhost:" + serverSocket.getLocalPort()
+                            + "/test"));
+            assertTrue(response.getStatus().isError());
+        } finally {
+            serverSocket.close();
+            thread.join(5000);
+        }
+    }
+
+    public void testLargeEntity() throws Exception {
+        startClient("ioBufferSize", "1024");
+        Response response = this.client.handle(new Request(Method.GET, this.uri
+                + "/large"));
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+
+        // Consume slowly so that the reading is suspended
+        InputStream stream = response.getEntity().getStream();
+        Thread.sleep(200);
+        int read = 0;
+
+        for (int b = stream.read(); b != -1; b = stream.read()) {
+            assertEquals((byte) read, (byte) b);
+            read++;
+        }
+
+        stream.close();
+        assertEquals(LARGE_SIZE, read);
+
+        // The connection is reused after the entity was consumed
+        response = this.client.handle(new Request(Method.GET, this.uri
+                + "?item=1"));
+        assertEquals("item 1", response.getEntityAsText());
+        assertEquals(1, this.helper.getCreatedConnectionCount());
+    }
+
+    public void testMaxRequestsPerConnection() throws Exception {
+        startClient("maxRequestsPerConnection", "2");
+
+        for (int i = 0; i < 4; i++) {
+            Response response = this.client.handle(new Request(Method.GET,
+                    this.uri + "?item=" + i));
+            assertEquals("item " + i, response.getEntityAsText());
+        }
+
+        assertEquals(2, this.helper.getCreatedConnectionCount());
+        assertEquals(2, this.helper.getReusedConnectionCount());
+    }
+
+    public void testPartialRead() throws Exception {
+        startClient();
+        Response response = this.client.handle(new Request(Method.GET, this.uri
+                + "/large"));
+        InputStream stream = response.getEntity().getStream();
+        assertEquals(0, stream.read());
+        stream.close();
+
+        // The remaining bytes are discarded and the connection reused
+        for (int i = 0; (i < 100)
+                && (this.helper.getIdleConnectionCount() == 0); i++) {
+            Thread.sleep(50);
+        }
+
+        response = this.client.handle(new Request(Method.GET, this.uri
+                + "?item=2"));
+        assertEquals("item 2", response.getEntityAsText());
+        assertEquals(1, this.helper.getCreatedConnectionCount());
+    }
+
+    public void testPipelining() throws Exception {
+        startClient("maxConnectionsPerHost", "1", "pipelining", "true",
+                "maxPipelinedRequests", "8");
+        int count = 8;
+        final CountDownLatch latch = new CountDownLatch(count);
+        final Map<String, String> results = new ConcurrentHashMap<String, String>();
+
+        for (int i = 0; i < count; i++) {
+            Request request = new Request(Method.GET, this.uri + "?item=" + i);
+            request.setOnResponse(new Uniform() {
+                public void handle(Request request, Response response) {
+                    try {
+                        results.put(request.getResourceRef().getQueryAsForm()
+                                .getFirstValue("item"), response
+                                .getEntityAsText());
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+            this.client.handle(request);
+        }
+
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+
+        for (int i = 0; i < count; i++) {
+            assertEquals("item " + i, results.get(Integer.toString(i)));
+        }
+
+        assertEquals(1, this.helper.getCreatedConnectionCount());
+        assertTrue(this.helper.getPipelinedRequestCount() > 0);
+    }
+
+    public void testPooling() throws Exception {
+        startClient();
+
+        for (int i = 0; i < 5; i++) {
+            Response response = this.client.handle(new Request(Method.GET,
+                    this.uri + "?item=" + i));
+            assertEquals(Status.SUCCESS_OK, response.getStatus());
+            assertEquals("item " + i, response.getEntityAsText());
+        }
+
+        Response response = this.client.handle(new Request(Method.POST,
+                this.uri, new StringRepresentation("entity")));
+        assertEquals("posted entity", response.getEntityAsText());
+
+        response = this.client.handle(new Request(Method.HEAD, this.uri));
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+
+        assertEquals(1, this.helper.getCreatedConnectionCount());
+        assertEquals(6, this.helper.getReusedConnectionCount());
+        assertEquals(1, this.helper.getConnectionCount());
+        assertEquals(1, this.helper.getIdleConnectionCount());
+    }
+
+    public void testStaleConnection() throws Exception {
+        startClient();
+        Response response = this.client.handle(new Request(Method.GET,
+                this.uri + "?item=1"));
+        assertEquals("item 1", response.getEntityAsText());
+
+        // Restarting the server closes the pooled connection
+        int port = this.server.getActualPort();
+        this.server.stop();
+        this.server = new Server(new Context(), Arrays.asList(Protocol.HTTP),
+                null, port, this.server.getNext(),
+                NioHttpServerHelper.class.getName());
+        this.server.start();
+
+        response = this.client.handle(new Request(Method.GET, this.uri
+                + "?item=2"));
+        assertEquals("item 2", response.getEntityAsText());
+    }
+}
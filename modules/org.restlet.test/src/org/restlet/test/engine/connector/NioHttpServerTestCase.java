@@ -0,0 +1,219 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.test.engine.connector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.Server;
+import org.restlet.data.MediaType;
+import org.restlet.data.Protocol;
+import org.restlet.engine.Engine;
+import org.restlet.engine.connector.NioHttpServerHelper;
+import org.restlet.engine.util.StringUtils;
+import org.restlet.test.RestletTestCase;
+
+/**
+ * Unit tests for the request entities streamed by the NIO server connector.
+ * 
+ * @author Jerome Louvel
+ */
+public class NioHttpServerTestCase extends RestletTestCase {
+
+    private Server server;
+
+    /**
+     * Reads a response and returns its entity, assuming a Content-Length
+     * header.
+     */
+    private static String readResponse(InputStream in) throws IOException {
+        StringBuilder head = new StringBuilder();
+
+        while (!head.toString().endsWith("\r\n\r\n")) {
+            int next = in.read();
+
+            if (next == -1) {
+                return null;
+            }
+
+            head.append((char) next);
+        }
+
+        String headers = head.toString().toLowerCase();
+        int index = headers.indexOf("content-length:");
+        int length = Integer.parseInt(headers.substring(index + 15,
+                headers.indexOf('\r', index)).trim());
+        byte[] entity = new byte[length];
+        int read = 0;
+
+        while (read < length) {
+            read += in.read(entity, read, length - read);
+        }
+
+        return new String(entity, "US-ASCII");
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Engine engine = Engine.register(false);
+        engine.getRegisteredServers().add(new NioHttpServerHelper(null));
+
+        this.server = new Server(new Context(), Protocol.HTTP, 0,
+                new Restlet() {
+                    @Override
+                    public void handle(Request request, Response response) {
+                        long count = 0;
+
+                        try {
+                            if (request.getResourceRef().getPath()
+                                    .equals("/count")) {
+                                InputStream in = request.getEntity()
+                                        .getStream();
+                                byte[] buffer = new byte[100];
+
+                                // Read slowly to fill the connection buffers
+                                for (int read = in.read(buffer); read != -1; read = in
+                                        .read(buffer)) {
+                                    count += read;
+                                }
+                            }
+                        } catch (IOException e) {
+                            count = -1;
+                        }
+
+                        response.setEntity(Long.toString(count),
+                                MediaType.TEXT_PLAIN);
+                    }
+                });
+        this.server.getContext().getParameters().add("ioBufferSize", "1024");
+        this.server.getContext().getParameters()
+                .add("maxRequestEntitySize", "100000");
+        this.server.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.server.stop();
+        this.server = null;
+        Engine.register();
+        super.tearDown();
+    }
+
+    public void testChunkedEntityTooLarge() throws Exception {
+        Socket socket = new Socket("localhost", this.server.getActualPort());
+        OutputStream out = socket.getOutputStream();
+        out.write(StringUtils.getAsciiBytes("POST /count HTTP/1.1\r\n"
+                + "Host: localhost\r\nTransfer-Encoding: chunked\r\n\r\n"));
+        byte[] chunk = new byte[30000];
+
+        for (int i = 0; i < 4; i++) {
+            out.write(StringUtils.getAsciiBytes(Integer.toHexString(chunk.length)
+                    + "\r\n"));
+            out.write(chunk);
+            out.write(StringUtils.getAsciiBytes("\r\n"));
+        }
+
+        out.flush();
+        InputStream in = socket.getInputStream();
+        assertEquals("-1", readResponse(in));
+        assertEquals(-1, in.read());
+        socket.close();
+    }
+
+    public void testInvalidChunkSize() throws Exception {
+        Socket socket = new Socket("localhost", this.server.getActualPort());
+        OutputStream out = socket.getOutputStream();
+        out.write(StringUtils.getAsciiBytes("POST /count HTTP/1.1\r\n"
+                + "Host: localhost\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "a\r\n0123456789\r\nzz\r\n"));
+        out.flush();
+
+        // A single response is sent once the entity read has failed
+        InputStream in = socket.getInputStream();
+        assertEquals("-1", readResponse(in));
+        assertEquals(-1, in.read());
+        socket.close();
+    }
+
+    public void testStreamedEntities() throws Exception {
+        Socket socket = new Socket("localhost", this.server.getActualPort());
+        OutputStream out = socket.getOutputStream();
+        InputStream in = socket.getInputStream();
+
+        // Entity of known size, much larger than the connection buffers
+        out.write(StringUtils.getAsciiBytes("POST /count HTTP/1.1\r\n"
+                + "Host: localhost\r\nContent-Length: 80000\r\n\r\n"));
+        out.write(new byte[80000]);
+        out.flush();
+        assertEquals("80000", readResponse(in));
+
+        // Chunked entity followed by a pipelined request
+        StringBuilder sb = new StringBuilder();
+        sb.append("POST /count HTTP/1.1\r\nHost: localhost\r\n");
+        sb.append("Transfer-Encoding: chunked\r\n\r\n");
+
+        for (int i = 0; i < 10; i++) {
+            sb.append("3e8\r\n");
+
+            for (int j = 0; j < 1000; j++) {
+                sb.append('x');
+            }
+
+            sb.append("\r\n");
+        }
+
+        sb.append("0\r\n\r\n");
+        sb.append("GET /other HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        out.write(StringUtils.getAsciiBytes(sb.toString()));
+        out.flush();
+        assertEquals("10000", readResponse(in));
+        assertEquals("0", readResponse(in));
+        socket.close();
+    }
+
+    public void testUnreadEntity() throws Exception {
+        Socket socket = new Socket("localhost", this.server.getActualPort());
+        OutputStream out = socket.getOutputStream();
+        out.write(StringUtils.getAsciiBytes("POST /ignore HTTP/1.1\r\n"
+                + "Host: localhost\r\nContent-Length: 80000\r\n\r\n"));
+        out.write(new byte[10000]);
+        out.flush();
+
+        // The connection is closed as the rest of the entity can't be skipped
+        InputStream in = socket.getInputStream();
+        assertEquals("0", readResponse(in));
+        assertEquals(-1, in.read());
+        socket.close();
+    }
+
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.test.engine.io;
+
+import java.nio.ByteBuffer;
+
+import org.restlet.engine.io.BufferPool;
+import org.restlet.engine.io.IoUtils;
+import org.restlet.test.RestletTestCase;
+
+/**
+ * Test case for the {@link BufferPool} class.
+ * 
+ * @author Jerome Louvel
+ */
+public class BufferPoolTestCase extends RestletTestCase {
+
+    private int maxIdle;
+
+    private boolean threadLocal;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.maxIdle = BufferPool.getMaxIdle();
+        this.threadLocal = BufferPool.isThreadLocal();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        BufferPool.setMaxIdle(this.maxIdle);
+        BufferPool.setThreadLocal(this.threadLocal);
+        super.tearDown();
+    }
+
+    public void testDirectBuffers() {
+        BufferPool.setThreadLocal(true);
+        ByteBuffer buffer = BufferPool.acquireDirectBuffer(5000);
+        assertTrue(buffer.isDirect());
+        assertEquals(8192, buffer.capacity());
+        buffer.put((byte) 1).flip();
+        BufferPool.release(buffer);
+
+        ByteBuffer reused = BufferPool.acquireDirectBuffer(8192);
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(8192, reused.limit());
+        BufferPool.release(reused);
+
+        // Read-only views must not be pooled
+        BufferPool.release(ByteBuffer.allocateDirect(8192).asReadOnlyBuffer());
+    }
+
+    public void testHitsAndMisses() {
+        long hits = BufferPool.getHitCount();
+        long misses = BufferPool.getMissCount();
+        byte[] first = BufferPool.acquireArray(65536);
+        BufferPool.release(first);
+        BufferPool.release(BufferPool.acquireArray(65536));
+        assertTrue(BufferPool.getHitCount() > hits);
+        assertTrue(BufferPool.getMissCount() >= misses);
+    }
+
+    public void testSharedTier() throws Exception {
+        BufferPool.setThreadLocal(false);
+        final byte[][] acquired = new byte[1][];
+        byte[] array = BufferPool.acquireArray(262144);
+        BufferPool.release(array);
+
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                acquired[0] = BufferPool.acquireArray(262144);
+            }
+        };
+        thread.start();
+        thread.join();
+        assertSame(array, acquired[0]);
+
+        // No idle buffer kept at all
+        BufferPool.setMaxIdle(0);
+        BufferPool.release(array);
+        assertNotSame(array, BufferPool.acquireArray(262144));
+    }
+
+    public void testSizeClasses() {
+        assertEquals(BufferPool.MIN_SIZE, BufferPool.acquireArray(1).length);
+        assertEquals(1024, BufferPool.acquireCharArray(1000).length);
+        assertEquals(2048, BufferPool.acquireArray(1025).length);
+        assertTrue(BufferPool.acquireArray().length >= IoUtils.BUFFER_SIZE);
+
+        // Larger buffers aren't pooled
+        byte[] large = BufferPool.acquireArray(BufferPool.MAX_SIZE + 1);
+        assertEquals(BufferPool.MAX_SIZE + 1, large.length);
+        BufferPool.release(large);
+        assertNotSame(large, BufferPool.acquireArray(BufferPool.MAX_SIZE + 1));
+
+        // Arrays of other sizes are ignored
+        BufferPool.release(new byte[3000]);
+        assertEquals(4096, BufferPool.acquireArray(3000).length);
+    }
+
+    public void testThreadLocalTier() throws Exception {
+        BufferPool.setThreadLocal(true);
+        BufferPool.setMaxIdle(0);
+        char[] array = BufferPool.acquireCharArray(4096);
+        BufferPool.release(array);
+        assertSame(array, BufferPool.acquireCharArray(4000));
+
+        // The largest size classes aren't kept per thread
+        byte[] large = BufferPool.acquireArray(BufferPool.MAX_SIZE);
+        BufferPool.release(large);
+        assertNotSame(large, BufferPool.acquireArray(BufferPool.MAX_SIZE));
+
+        // Buffers released by other threads are shared first
+        BufferPool.setMaxIdle(64);
+        final byte[][] released = new byte[1][];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                released[0] = BufferPool.acquireArray(16384);
+                BufferPool.release(released[0]);
+            }
+        };
+        thread.start();
+        thread.join();
+        assertSame(released[0], BufferPool.acquireArray(16384));
+    }
+}
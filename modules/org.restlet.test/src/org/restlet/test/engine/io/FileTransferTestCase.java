@@ -0,0 +1,241 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.test.engine.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.restlet.Application;
+import org.restlet.Client;
+import org.restlet.Component;
+import org.restlet.Restlet;
+import org.restlet.Server;
+import org.restlet.data.MediaType;
+import org.restlet.data.Protocol;
+import org.restlet.data.Range;
+import org.restlet.engine.Engine;
+import org.restlet.engine.application.RangeRepresentation;
+import org.restlet.engine.io.IoUtils;
+import org.restlet.engine.local.MappedFileRepresentation;
+import org.restlet.representation.FileRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.resource.ClientResource;
+import org.restlet.resource.Directory;
+import org.restlet.test.RestletTestCase;
+
+/**
+ * Test case for the copies of file content done without the Java heap.
+ * 
+ * @author Jerome Louvel
+ */
+public class FileTransferTestCase extends RestletTestCase {
+
+    private byte[] content;
+
+    private File file;
+
+    private File testDir;
+
+    private String getMappedText(File file) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new MappedFileRepresentation(new FileRepresentation(file,
+                MediaType.TEXT_PLAIN)).write(Channels.newChannel(baos));
+        return baos.toString();
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.testDir = new File(System.getProperty("java.io.tmpdir"),
+                "FileTransferTestCase");
+        this.testDir.mkdirs();
+
+        // Larger than the limit of bytes pending on a connection
+        this.content = new byte[3 * 1024 * 1024 + 17];
+        new Random(1).nextBytes(this.content);
+        this.file = new File(this.testDir, "large.bin");
+        FileOutputStream fos = new FileOutputStream(this.file);
+        fos.write(this.content);
+        fos.close();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        IoUtils.delete(this.testDir, true);
+        this.testDir = null;
+        this.file = null;
+        this.content = null;
+
+        // Restore a clean engine
+        Engine.register();
+        super.tearDown();
+    }
+
+    private File writeFile(String text) throws IOException {
+        File result = new File(this.testDir, text);
+        FileOutputStream fos = new FileOutputStream(result);
+        fos.write(text.getBytes());
+        fos.close();
+        return result;
+    }
+
+    public void testCopyToChannel() throws IOException {
+        FileInputStream fis = new FileInputStream(this.file);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        try {
+            FileChannel fc = fis.getChannel();
+            IoUtils.copy(fc, 10, 1000, Channels.newChannel(baos));
+        } finally {
+            fis.close();
+        }
+
+        assertTrue(Arrays.equals(Arrays.copyOfRange(this.content, 10, 1010),
+                baos.toByteArray()));
+    }
+
+    public void testCopyToStream() throws IOException {
+        FileInputStream fis = new FileInputStream(this.file);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        try {
+            FileChannel fc = fis.getChannel();
+            IoUtils.copy(fc, 0, fc.size(), baos);
+        } finally {
+            fis.close();
+        }
+
+        assertTrue(Arrays.equals(this.content, baos.toByteArray()));
+    }
+
+    public void testDirectory() throws Exception {
+        Engine engine = Engine.register(false);
+        engine.getRegisteredServers().add(
+                new org.restlet.engine.connector.NioHttpServerHelper(null));
+        engine.getRegisteredClients().add(
+                new org.restlet.engine.connector.HttpClientHelper(null));
+        engine.getRegisteredClients().add(
+                new org.restlet.engine.local.FileClientHelper(null));
+        engine.registerDefaultConverters();
+
+        File small = new File(this.testDir, "small.txt");
+        FileOutputStream fos = new FileOutputStream(small);
+        fos.write("mapped".getBytes());
+        fos.close();
+
+        Component component = new Component();
+        Server server = component.getServers().add(Protocol.HTTP, 0);
+        component.getClients().add(Protocol.FILE);
+        component.getDefaultHost().attach(new Application() {
+            @Override
+            public Restlet createInboundRoot() {
+                Directory directory = new Directory(getContext(), testDir
+                        .toURI().toString());
+                directory.setMappedFileMaxSize(1024);
+                return directory;
+            }
+        });
+        component.start();
+
+        Client client = new Client(Protocol.HTTP);
+        client.start();
+
+        try {
+            String uri = "http://localhost:" + server.getEphemeralPort() + "/";
+            ClientResource resource = new ClientResource(uri + "large.bin");
+            resource.setNext(client);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            resource.get().write(baos);
+            assertTrue(Arrays.equals(this.content, baos.toByteArray()));
+
+            // Mapped twice
+            for (int i = 0; i < 2; i++) {
+                resource = new ClientResource(uri + "small.txt");
+                resource.setNext(client);
+                assertEquals("mapped", resource.get().getText());
+            }
+        } finally {
+            client.stop();
+            component.stop();
+        }
+    }
+
+    public void testMappedFiles() throws IOException {
+        // More files than mappings kept
+        for (int i = 0; i < 300; i++) {
+            assertEquals("file" + i, getMappedText(writeFile("file" + i)));
+        }
+
+        File first = new File(this.testDir, "file0");
+        assertEquals("file0", getMappedText(first));
+
+        // Stale mappings are dropped
+        FileOutputStream fos = new FileOutputStream(first);
+        fos.write("modified".getBytes());
+        fos.close();
+        first.setLastModified(first.lastModified() + 2000);
+        assertEquals("modified", getMappedText(first));
+
+        first.delete();
+
+        try {
+            getMappedText(first);
+            fail("Deleted file mapped");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    public void testRange() throws IOException {
+        Representation range = new RangeRepresentation(new FileRepresentation(
+                this.file, MediaType.APPLICATION_OCTET_STREAM));
+        range.setRange(new Range(100, 5000));
+        byte[] expected = Arrays.copyOfRange(this.content, 100, 5100);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        range.write(baos);
+        assertTrue(Arrays.equals(expected, baos.toByteArray()));
+
+        baos = new ByteArrayOutputStream();
+        range.write(Channels.newChannel(baos));
+        assertTrue(Arrays.equals(expected, baos.toByteArray()));
+
+        // Last bytes
+        range.setRange(new Range(Range.INDEX_LAST, 10));
+        baos = new ByteArrayOutputStream();
+        range.write(baos);
+        assertTrue(Arrays.equals(Arrays.copyOfRange(this.content,
+                this.content.length - 10, this.content.length), baos
+                .toByteArray()));
+    }
+}
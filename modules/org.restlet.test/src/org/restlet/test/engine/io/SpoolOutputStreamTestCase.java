@@ -0,0 +1,212 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.test.engine.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.restlet.data.MediaType;
+import org.restlet.engine.io.IoUtils;
+import org.restlet.engine.io.SpoolOutputStream;
+import org.restlet.representation.OutputRepresentation;
+import org.restlet.representation.WriterRepresentation;
+import org.restlet.test.RestletTestCase;
+
+/**
+ * Test case for the {@link SpoolOutputStream} class and the thread-free
+ * representation adapters of {@link IoUtils}.
+ * 
+ * @author Jerome Louvel
+ */
+public class SpoolOutputStreamTestCase extends RestletTestCase {
+
+    private static List<File> getSpoolFiles() {
+        File[] files = new File(System.getProperty("java.io.tmpdir"))
+                .listFiles(new FilenameFilter() {
+                    public boolean accept(File dir, String name) {
+                        return name.startsWith("restlet-spool");
+                    }
+                });
+        return new ArrayList<File>(Arrays.asList(files));
+    }
+
+    private static byte[] read(InputStream is) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        IoUtils.copy(is, baos);
+        return baos.toByteArray();
+    }
+
+    public void testDiscard() throws IOException {
+        List<File> files = getSpoolFiles();
+        SpoolOutputStream spool = new SpoolOutputStream(10);
+        spool.write(new byte[100]);
+        spool.flush();
+        List<File> created = getSpoolFiles();
+        created.removeAll(files);
+        assertEquals(1, created.size());
+        File file = created.get(0);
+        assertEquals(100, file.length());
+
+        if (java.nio.file.FileSystems.getDefault()
+                .supportedFileAttributeViews().contains("posix")) {
+            assertEquals("rw-------",
+                    java.nio.file.attribute.PosixFilePermissions
+                            .toString(java.nio.file.Files
+                                    .getPosixFilePermissions(file.toPath())));
+        }
+
+        spool.discard();
+        assertFalse(file.exists());
+    }
+
+    public void testFailure() throws IOException {
+        OutputRepresentation representation = new OutputRepresentation(
+                MediaType.APPLICATION_OCTET_STREAM, 2) {
+            @Override
+            public void write(OutputStream outputStream) throws IOException {
+                outputStream.write(1);
+                throw new IOException("Broken");
+            }
+        };
+
+        InputStream is = IoUtils.getStream(representation);
+        assertEquals(1, is.read());
+
+        try {
+            is.read();
+            fail("The incomplete content should be reported");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testMemory() throws IOException {
+        SpoolOutputStream spool = new SpoolOutputStream();
+        spool.write(1);
+        spool.write(new byte[] { 2, 3, 4 });
+        InputStream is = spool.getInputStream();
+        assertEquals(1, is.read());
+        assertEquals(3, is.available());
+        assertTrue(Arrays.equals(new byte[] { 2, 3, 4 }, read(is)));
+        assertEquals(-1, is.read());
+    }
+
+    public void testRuntimeFailure() throws IOException {
+        OutputRepresentation representation = new OutputRepresentation(
+                MediaType.APPLICATION_OCTET_STREAM, 2) {
+            @Override
+            public void write(OutputStream outputStream) throws IOException {
+                outputStream.write(1);
+                throw new IllegalStateException("Broken");
+            }
+        };
+
+        try {
+            IoUtils.getStream(representation);
+            fail("The runtime exception should be propagated");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testReader() throws IOException {
+        WriterRepresentation representation = new WriterRepresentation(
+                MediaType.TEXT_PLAIN) {
+            @Override
+            public void write(Writer writer) throws IOException {
+                writer.write("testé €");
+            }
+        };
+
+        assertEquals("testé €", IoUtils.toString(representation
+                .getReader()));
+    }
+
+    public void testTemporaryFile() throws IOException {
+        final byte[] content = new byte[100000];
+        new Random(1).nextBytes(content);
+        SpoolOutputStream spool = new SpoolOutputStream(10000);
+
+        for (int i = 0; i < content.length; i += 3000) {
+            spool.write(content, i, Math.min(3000, content.length - i));
+        }
+
+        assertTrue(Arrays.equals(content, read(spool.getInputStream())));
+
+        // Through a representation
+        OutputRepresentation representation = new OutputRepresentation(
+                MediaType.APPLICATION_OCTET_STREAM, content.length) {
+            @Override
+            public void write(OutputStream outputStream) throws IOException {
+                outputStream.write(content);
+            }
+        };
+
+        assertTrue(Arrays.equals(content, read(representation.getStream())));
+        assertTrue(Arrays.equals(content,
+                read(java.nio.channels.Channels.newInputStream(representation
+                        .getChannel()))));
+    }
+
+    public void testUnknownSize() throws IOException {
+        final Thread caller = Thread.currentThread();
+        final Thread[] writer = new Thread[1];
+        OutputRepresentation representation = new OutputRepresentation(
+                MediaType.APPLICATION_OCTET_STREAM) {
+            @Override
+            public void write(OutputStream outputStream) throws IOException {
+                writer[0] = Thread.currentThread();
+
+                for (int i = 0; i < 20000; i++) {
+                    outputStream.write(i);
+                }
+            }
+        };
+
+        // Spooled by the caller by default
+        byte[] content = read(representation.getStream());
+        assertEquals(20000, content.length);
+        assertEquals((byte) 19999, content[19999]);
+        assertSame(caller, writer[0]);
+
+        // Unbounded content can be piped by a writer thread
+        IoUtils.setPipedUnknownSize(true);
+
+        try {
+            assertEquals(20000, read(representation.getStream()).length);
+            assertNotSame(caller, writer[0]);
+        } finally {
+            IoUtils.setPipedUnknownSize(false);
+        }
+    }
+}
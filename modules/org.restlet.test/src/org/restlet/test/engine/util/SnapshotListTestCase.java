@@ -0,0 +1,102 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.test.engine.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.restlet.engine.Engine;
+import org.restlet.engine.converter.ConverterHelper;
+import org.restlet.engine.util.SnapshotList;
+import org.restlet.test.RestletTestCase;
+
+/**
+ * Unit tests for the {@link SnapshotList} class.
+ * 
+ * @author Jerome Louvel
+ */
+public class SnapshotListTestCase extends RestletTestCase {
+
+    public void testEngineSnapshots() {
+        Engine engine = Engine.getInstance();
+        assertSame(engine, Engine.getInstance());
+
+        List<ConverterHelper> converters = engine.getRegisteredConverters();
+        List<ConverterHelper> snapshot = engine
+                .getRegisteredConvertersSnapshot();
+        assertEquals(converters, snapshot);
+        assertSame(snapshot, engine.getRegisteredConvertersSnapshot());
+
+        ConverterHelper first = converters.remove(0);
+
+        try {
+            assertNotSame(snapshot, engine.getRegisteredConvertersSnapshot());
+            assertEquals(converters, engine.getRegisteredConvertersSnapshot());
+        } finally {
+            converters.add(0, first);
+        }
+
+        assertEquals(snapshot, engine.getRegisteredConvertersSnapshot());
+    }
+
+    public void testSnapshot() {
+        SnapshotList<String> list = new SnapshotList<String>();
+        List<String> snapshot = list.getSnapshot();
+        assertTrue(snapshot.isEmpty());
+        assertSame(snapshot, list.getSnapshot());
+
+        list.add("a");
+        list.addAll(Arrays.asList("b", "c"));
+        snapshot = list.getSnapshot();
+        assertEquals(Arrays.asList("a", "b", "c"), snapshot);
+        assertSame(snapshot, list.getSnapshot());
+
+        list.set(1, "x");
+        assertEquals(Arrays.asList("a", "b", "c"), snapshot);
+        assertEquals(Arrays.asList("a", "x", "c"), list.getSnapshot());
+
+        list.remove("a");
+        assertEquals(Arrays.asList("x", "c"), list.getSnapshot());
+
+        try {
+            list.getSnapshot().add("d");
+            fail("The snapshot should be immutable");
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+
+        try {
+            list.subList(0, 1).clear();
+            fail("The sub-lists should be immutable");
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+
+        list.clear();
+        assertTrue(list.getSnapshot().isEmpty());
+    }
+
+}
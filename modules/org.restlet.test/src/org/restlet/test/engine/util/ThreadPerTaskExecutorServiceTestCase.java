@@ -0,0 +1,217 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.test.engine.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.restlet.engine.log.LoggingThreadFactory;
+import org.restlet.engine.util.ThreadPerTaskExecutorService;
+import org.restlet.test.RestletTestCase;
+
+/**
+ * Unit tests for the {@link ThreadPerTaskExecutorService} class.
+ * 
+ * @author Jerome Louvel
+ */
+public class ThreadPerTaskExecutorServiceTestCase extends RestletTestCase {
+
+    /**
+     * Returns a task waiting for the given latch.
+     * 
+     * @param started
+     *            The latch counted down when the task starts.
+     * @param release
+     *            The latch to wait for.
+     * @return The task.
+     */
+    private Runnable blockingTask(final CountDownLatch started,
+            final CountDownLatch release) {
+        return new Runnable() {
+            public void run() {
+                started.countDown();
+
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    public void testConcurrencyLimit() throws Exception {
+        ThreadPerTaskExecutorService service = new ThreadPerTaskExecutorService(
+                Executors.defaultThreadFactory(), 2, -1);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(20);
+
+        for (int i = 0; i < 20; i++) {
+            service.execute(new Runnable() {
+                public void run() {
+                    int current = running.incrementAndGet();
+
+                    synchronized (maxRunning) {
+                        if (current > maxRunning.get()) {
+                            maxRunning.set(current);
+                        }
+                    }
+
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(maxRunning.get() <= 2);
+        service.shutdown();
+        assertTrue(service.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(0, service.getQueuedCount());
+    }
+
+    public void testRejection() throws Exception {
+        ThreadPerTaskExecutorService service = new ThreadPerTaskExecutorService(
+                Executors.defaultThreadFactory(), 1, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        service.execute(blockingTask(started, release));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // Waits for a permit
+        CountDownLatch queuedStarted = new CountDownLatch(1);
+        service.execute(blockingTask(queuedStarted, release));
+        assertEquals(1, service.getQueuedCount());
+
+        try {
+            service.execute(blockingTask(new CountDownLatch(1), release));
+            fail("The task should have been rejected");
+        } catch (RejectedExecutionException ree) {
+            // Expected
+        }
+
+        release.countDown();
+        assertTrue(queuedStarted.await(5, TimeUnit.SECONDS));
+        service.shutdown();
+        assertTrue(service.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(service.isTerminated());
+
+        try {
+            service.execute(blockingTask(new CountDownLatch(1), release));
+            fail("The task should have been rejected after shutdown");
+        } catch (RejectedExecutionException ree) {
+            // Expected
+        }
+    }
+
+    public void testShutdownNow() throws Exception {
+        ThreadPerTaskExecutorService service = new ThreadPerTaskExecutorService(
+                Executors.defaultThreadFactory(), 1, -1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        service.execute(blockingTask(started, release));
+        service.execute(blockingTask(new CountDownLatch(1), release));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(2, service.getActiveCount());
+
+        service.shutdownNow();
+        assertTrue(service.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(0, service.getActiveCount());
+    }
+
+    public void testVirtualThreadFactory() throws Exception {
+        if (ThreadPerTaskExecutorService.createVirtualThreadFactory("test-") == null) {
+            // Virtual threads aren't supported by this JVM
+            return;
+        }
+
+        ThreadPerTaskExecutorService service = new ThreadPerTaskExecutorService(
+                ThreadPerTaskExecutorService
+                        .createVirtualThreadFactory("test-"), 100, -1);
+        final CountDownLatch done = new CountDownLatch(1000);
+
+        for (int i = 0; i < 1000; i++) {
+            service.execute(new Runnable() {
+                public void run() {
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        service.shutdown();
+        assertTrue(service.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    public void testLoggedFailures() throws Exception {
+        final CountDownLatch logged = new CountDownLatch(1);
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new Handler() {
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void publish(LogRecord record) {
+                if (record.getThrown() instanceof IllegalStateException) {
+                    logged.countDown();
+                }
+            }
+        });
+
+        ThreadPerTaskExecutorService service = new ThreadPerTaskExecutorService(
+                new LoggingThreadFactory(logger,
+                        Executors.defaultThreadFactory()), 1, -1);
+        service.execute(new Runnable() {
+            public void run() {
+                throw new IllegalStateException("Failed task");
+            }
+        });
+
+        assertTrue(logged.await(5, TimeUnit.SECONDS));
+        service.shutdown();
+        assertTrue(service.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+}
@@ -29,9 +29,13 @@ import java.io.FileWriter;
 import java.util.Map;
 import java.util.TreeMap;
 
+import org.restlet.Context;
+import org.restlet.data.LocalReference;
 import org.restlet.data.MediaType;
 import org.restlet.engine.io.IoUtils;
+import org.restlet.engine.util.TemplateEngineRegistry;
 import org.restlet.ext.freemarker.TemplateRepresentation;
+import org.restlet.representation.FileRepresentation;
 import org.restlet.test.RestletTestCase;
 
 import freemarker.template.Configuration;
@@ -43,6 +47,103 @@ import freemarker.template.Configuration;
  */
 public class FreeMarkerTestCase extends RestletTestCase {
 
+    /**
+     * Renders a template file provided as a representation.
+     * 
+     * @param testFile
+     *            The template file.
+     * @param map
+     *            The data model.
+     * @return The rendered text.
+     */
+    private String render(File testFile, Map<String, Object> map)
+            throws Exception {
+        FileRepresentation templateFile = new FileRepresentation(testFile,
+                MediaType.TEXT_PLAIN);
+        templateFile.setLocationRef(LocalReference
+                .createFileReference(testFile));
+        return new TemplateRepresentation(templateFile, map,
+                MediaType.TEXT_PLAIN).getText();
+    }
+
+    public void testCachedTemplate() throws Exception {
+        Context context = new Context();
+        Context.setCurrent(context);
+
+        // Create a temporary directory for the tests
+        File testDir = new File(System.getProperty("java.io.tmpdir"),
+                "FreeMarkerTestCase");
+        testDir.mkdir();
+
+        try {
+            // Create a temporary template file
+            File testFile = File.createTempFile("test", ".ftl", testDir);
+            FileWriter fw = new FileWriter(testFile);
+            fw.write("Value=${value}");
+            fw.close();
+
+            Map<String, Object> map = new TreeMap<String, Object>();
+            map.put("value", "myValue");
+            TemplateEngineRegistry registry = TemplateEngineRegistry
+                    .getInstance(context);
+
+            // The second rendering reuses the compiled template
+            assertEquals("Value=myValue", render(testFile, map));
+            assertEquals("Value=myValue", render(testFile, map));
+            assertEquals(1, registry.getMissCount());
+            assertEquals(1, registry.getHitCount());
+
+            // A modified template is compiled again
+            long lastModified = testFile.lastModified();
+            fw = new FileWriter(testFile);
+            fw.write("Other=${value}");
+            fw.close();
+            testFile.setLastModified(lastModified + 2000);
+            assertEquals("Other=myValue", render(testFile, map));
+            assertEquals(2, registry.getMissCount());
+            assertEquals(3, registry.getRenderCount());
+
+            // The configuration is shared by the application
+            assertSame(TemplateRepresentation.getConfiguration(context),
+                    TemplateRepresentation.getConfiguration(null));
+            assertNotSame(TemplateRepresentation.getConfiguration(context),
+                    TemplateRepresentation.getConfiguration(new Context()));
+        } finally {
+            Context.setCurrent(null);
+            IoUtils.delete(testDir, true);
+        }
+    }
+
+    public void testCachedTemplatePerConfiguration() throws Exception {
+        Context context = new Context();
+        Context.setCurrent(context);
+        File testDir = new File(System.getProperty("java.io.tmpdir"),
+                "FreeMarkerTestCase");
+        testDir.mkdir();
+
+        try {
+            File testFile = File.createTempFile("test", ".ftl", testDir);
+            FileWriter fw = new FileWriter(testFile);
+            fw.write("Value=${value}");
+            fw.close();
+
+            // The shared variables of each configuration are used
+            for (int i = 0; i < 3; i++) {
+                Configuration config = new Configuration();
+                config.setSharedVariable("value", "config" + i);
+                FileRepresentation templateFile = new FileRepresentation(
+                        testFile, MediaType.TEXT_PLAIN);
+                templateFile.setLocationRef(LocalReference
+                        .createFileReference(testFile));
+                assertEquals("Value=config" + i, new TemplateRepresentation(
+                        templateFile, config, MediaType.TEXT_PLAIN).getText());
+            }
+        } finally {
+            Context.setCurrent(null);
+            IoUtils.delete(testDir, true);
+        }
+    }
+
     public void testTemplate() throws Exception {
         // Create a temporary directory for the tests
         final File testDir = new File(System.getProperty("java.io.tmpdir"),
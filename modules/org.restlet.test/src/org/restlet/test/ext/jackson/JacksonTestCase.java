@@ -28,7 +28,10 @@ import java.io.IOException;
 import java.util.Date;
 
 import org.restlet.data.MediaType;
+import org.restlet.ext.jackson.JacksonConverter;
+import org.restlet.ext.jackson.JacksonMapperRegistry;
 import org.restlet.ext.jackson.JacksonRepresentation;
+import org.restlet.representation.Variant;
 import org.restlet.representation.Representation;
 import org.restlet.representation.StringRepresentation;
 import org.restlet.resource.ClientResource;
@@ -123,6 +126,38 @@ public class JacksonTestCase extends RestletTestCase {
         verify(customer, rep.getObject());
     }
 
+    @SuppressWarnings("unchecked")
+    public void testMapperRegistry() throws Exception {
+        JacksonConverter converter = new JacksonConverter();
+        JacksonMapperRegistry registry = converter.getMapperRegistry();
+        Customer customer = createCustomer();
+
+        JacksonRepresentation<Customer> rep1 = (JacksonRepresentation<Customer>) converter
+                .toRepresentation(customer, new Variant(
+                        MediaType.APPLICATION_JSON), null);
+        JacksonRepresentation<Customer> rep2 = (JacksonRepresentation<Customer>) converter
+                .toRepresentation(customer, new Variant(
+                        MediaType.APPLICATION_JSON), null);
+        assertSame(registry, rep1.getMapperRegistry());
+        assertSame(rep1.getObjectMapper(), rep2.getObjectMapper());
+        assertSame(rep1.getObjectWriter(), rep2.getObjectWriter());
+        assertNotSame(rep1.getObjectMapper(), registry.getObjectMapper(
+                MediaType.APPLICATION_YAML, false, false));
+
+        String text = rep1.getText();
+        assertEquals(text, rep2.getText());
+        Customer parsed = converter.toObject(new StringRepresentation(text,
+                MediaType.APPLICATION_JSON), Customer.class, null);
+        verify(customer, parsed);
+
+        // Representations created directly keep their own mapper
+        JacksonRepresentation<Customer> rep3 = new JacksonRepresentation<Customer>(
+                customer);
+        assertNull(rep3.getMapperRegistry());
+        assertNotSame(rep1.getObjectMapper(), rep3.getObjectMapper());
+        assertEquals(text, rep3.getText());
+    }
+
     public void testSmile() throws Exception {
         Customer customer = createCustomer();
         JacksonRepresentation<Customer> rep = new JacksonRepresentation<Customer>(
@@ -0,0 +1,145 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.test.ext.servlet;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.restlet.Client;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.data.MediaType;
+import org.restlet.data.Method;
+import org.restlet.data.Protocol;
+import org.restlet.data.Status;
+import org.restlet.ext.servlet.ServletAdapter;
+import org.restlet.test.RestletTestCase;
+
+/**
+ * Unit tests for the {@link ServletAdapter}, deployed in a bare Jetty server.
+ * 
+ * @author Jerome Louvel
+ */
+public class ServletAdapterTestCase extends RestletTestCase {
+
+    /** Released when the container thread returns from the adapter. */
+    private volatile CountDownLatch released;
+
+    private org.eclipse.jetty.server.Server server;
+
+    private String uri;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.released = new CountDownLatch(1);
+        final ServletAdapter adapter = new ServletAdapter(null, new Restlet() {
+            @Override
+            public void handle(Request request, final Response response) {
+                if (request.getResourceRef().getPath().endsWith("/async")) {
+                    response.setAutoCommitting(false);
+                    new Thread() {
+                        public void run() {
+                            try {
+                                released.await(10, TimeUnit.SECONDS);
+                                response.setEntity("committed later",
+                                        MediaType.TEXT_PLAIN);
+                            } catch (InterruptedException e) {
+                                response.setStatus(
+                                        Status.SERVER_ERROR_INTERNAL);
+                            }
+
+                            response.commit();
+                        }
+                    }.start();
+                } else {
+                    response.setEntity("committed now", MediaType.TEXT_PLAIN);
+                }
+            }
+        });
+
+        this.server = new org.eclipse.jetty.server.Server(0);
+        this.server.setHandler(new AbstractHandler() {
+            public void handle(String target,
+                    org.eclipse.jetty.server.Request baseRequest,
+                    HttpServletRequest request, HttpServletResponse response)
+                    throws IOException, ServletException {
+                baseRequest.setHandled(true);
+                adapter.service(request, response);
+                released.countDown();
+            }
+        });
+        this.server.start();
+        this.uri = "http://localhost:"
+                + ((ServerConnector) this.server.getConnectors()[0])
+                        .getLocalPort();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.server.stop();
+        this.server = null;
+        super.tearDown();
+    }
+
+    /**
+     * Returns the text of the response to a GET request.
+     * 
+     * @param path
+     *            The path of the resource.
+     * @return The response text.
+     */
+    private String get(String path) throws Exception {
+        Client client = new Client(Protocol.HTTP);
+        client.start();
+
+        try {
+            Response response = client.handle(new Request(Method.GET, this.uri
+                    + path));
+            assertEquals(Status.SUCCESS_OK, response.getStatus());
+            return response.getEntityAsText();
+        } finally {
+            client.stop();
+        }
+    }
+
+    public void testAsynchronousCommit() throws Exception {
+        // The response is only committed once the container thread returned
+        assertEquals("committed later", get("/async"));
+    }
+
+    public void testAutomaticCommit() throws Exception {
+        assertEquals("committed now", get("/sync"));
+    }
+}
@@ -28,9 +28,12 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.TreeMap;
 
+import org.restlet.Context;
 import org.restlet.data.MediaType;
+import org.restlet.engine.util.TemplateEngineRegistry;
 import org.restlet.ext.thymeleaf.TemplateRepresentation;
 import org.restlet.test.RestletTestCase;
+import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
 import org.thymeleaf.templateresolver.TemplateResolver;
 
@@ -41,6 +44,38 @@ import org.thymeleaf.templateresolver.TemplateResolver;
  */
 public class ThymeleafTestCase extends RestletTestCase {
 
+    public void testSharedEngine() throws Exception {
+        Context context = new Context();
+        Context.setCurrent(context);
+
+        try {
+            TemplateResolver templateResolver = new ClassLoaderTemplateResolver();
+            templateResolver.setPrefix("org/restlet/test/ext/thymeleaf/");
+            templateResolver.setSuffix(".html");
+            TemplateEngineRegistry registry = TemplateEngineRegistry
+                    .getInstance(context);
+            TemplateEngine engine = registry.putEngineIfAbsent(
+                    TemplateEngine.class,
+                    TemplateRepresentation
+                            .createTemplateEngine(templateResolver));
+            assertSame(engine, TemplateRepresentation.getTemplateEngine(null));
+
+            Map<String, Object> map = new TreeMap<String, Object>();
+            map.put("welcome", "Hello, world");
+
+            for (int i = 0; i < 2; i++) {
+                String result = new TemplateRepresentation("test",
+                        Locale.getDefault(), map, MediaType.TEXT_PLAIN)
+                        .getText();
+                assertTrue(result.contains("Hello, world"));
+            }
+
+            assertEquals(2, registry.getRenderCount());
+        } finally {
+            Context.setCurrent(null);
+        }
+    }
+
     public void testTemplate() throws Exception {
         TemplateResolver templateResolver = new ClassLoaderTemplateResolver();
         templateResolver.setPrefix("org/restlet/test/ext/thymeleaf/");
@@ -29,11 +29,14 @@ import java.io.FileWriter;
 import java.util.Map;
 import java.util.TreeMap;
 
+import org.restlet.Context;
 import org.restlet.data.LocalReference;
 import org.restlet.data.MediaType;
 import org.restlet.data.Reference;
 import org.restlet.engine.io.IoUtils;
+import org.restlet.engine.util.TemplateEngineRegistry;
 import org.restlet.ext.velocity.TemplateRepresentation;
+import org.restlet.representation.FileRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.resource.ClientResource;
 import org.restlet.test.RestletTestCase;
@@ -45,6 +48,74 @@ import org.restlet.test.RestletTestCase;
  */
 public class VelocityTestCase extends RestletTestCase {
 
+    /**
+     * Renders a template file provided as a representation.
+     * 
+     * @param testFile
+     *            The template file.
+     * @param map
+     *            The data model.
+     * @return The rendered text.
+     */
+    private String render(File testFile, Map<String, Object> map)
+            throws Exception {
+        FileRepresentation templateFile = new FileRepresentation(testFile,
+                MediaType.TEXT_PLAIN);
+        templateFile.setLocationRef(LocalReference
+                .createFileReference(testFile));
+        return new TemplateRepresentation(templateFile, map,
+                MediaType.TEXT_PLAIN).getText();
+    }
+
+    public void testCachedTemplate() throws Exception {
+        Context context = new Context();
+        Context.setCurrent(context);
+
+        // Create a temporary directory for the tests
+        File testDir = new File(System.getProperty("java.io.tmpdir"),
+                "VelocityTestCase");
+        testDir.mkdir();
+
+        try {
+            // Create a temporary template file
+            File testFile = File.createTempFile("test", ".vm", testDir);
+            FileWriter fw = new FileWriter(testFile);
+            fw.write("Value=$value");
+            fw.close();
+
+            Map<String, Object> map = new TreeMap<String, Object>();
+            map.put("value", "myValue");
+            TemplateEngineRegistry registry = TemplateEngineRegistry
+                    .getInstance(context);
+
+            // The second rendering reuses the compiled template
+            assertEquals("Value=myValue", render(testFile, map));
+            assertEquals("Value=myValue", render(testFile, map));
+            assertEquals(1, registry.getMissCount());
+            assertEquals(1, registry.getHitCount());
+
+            // A modified template is compiled again
+            long lastModified = testFile.lastModified();
+            fw = new FileWriter(testFile);
+            fw.write("Other=$value");
+            fw.close();
+            testFile.setLastModified(lastModified + 2000);
+            assertEquals("Other=myValue", render(testFile, map));
+            assertEquals(2, registry.getMissCount());
+            assertEquals(3, registry.getRenderCount());
+            assertEquals(0, registry.getRenderErrorCount());
+
+            // The engine is shared by the application
+            assertSame(TemplateRepresentation.getEngine(context),
+                    TemplateRepresentation.getEngine(null));
+            assertNotSame(TemplateRepresentation.getEngine(context),
+                    TemplateRepresentation.getEngine(new Context()));
+        } finally {
+            Context.setCurrent(null);
+            IoUtils.delete(testDir, true);
+        }
+    }
+
     public void testRepresentationTemplate() throws Exception {
         // Create a temporary directory for the tests
         File testDir = new File(System.getProperty("java.io.tmpdir"),
@@ -24,11 +24,17 @@
 
 package org.restlet.test.ext.xml;
 
+import java.util.Date;
+
+import org.restlet.Context;
 import org.restlet.data.MediaType;
+import org.restlet.engine.util.TemplateEngineRegistry;
 import org.restlet.ext.xml.TransformRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.representation.StringRepresentation;
 import org.restlet.test.RestletTestCase;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
 
 /**
  * Test case for the {@link TransformRepresentation} class.
@@ -82,4 +88,48 @@ public class TransformRepresentationTestCase extends RestletTestCase {
         assertEquals(this.output2, result);
     }
 
+    public void testCachedTemplates() throws Exception {
+        Context context = new Context();
+        TemplateEngineRegistry registry = TemplateEngineRegistry
+                .getInstance(context);
+        this.xslt1.setLocationRef("http://localhost/xslt1.xsl");
+        this.xslt1.setModificationDate(new Date());
+
+        TransformRepresentation tr1 = new TransformRepresentation(context,
+                this.source, this.xslt1);
+        assertEquals(this.output1, tr1.getText());
+        assertEquals(1, registry.getMissCount());
+
+        TransformRepresentation tr2 = new TransformRepresentation(context,
+                this.source, this.xslt1);
+        assertEquals(this.output1, tr2.getText());
+        assertEquals(1, registry.getHitCount());
+        assertSame(tr1.getTemplates(), tr2.getTemplates());
+    }
+
+    public void testParse() throws Exception {
+        TransformRepresentation tr1 = new TransformRepresentation(this.source,
+                this.xslt1);
+        TransformRepresentation tr2 = new TransformRepresentation(tr1,
+                this.xslt2);
+        final StringBuilder elements = new StringBuilder();
+        final StringBuilder text = new StringBuilder();
+
+        tr2.parse(new DefaultHandler() {
+            @Override
+            public void characters(char[] ch, int start, int length) {
+                text.append(ch, start, length);
+            }
+
+            @Override
+            public void startElement(String uri, String localName,
+                    String qName, Attributes attributes) {
+                elements.append(localName);
+            }
+        });
+
+        assertEquals("myBuyer", elements.toString());
+        assertEquals("cust123", text.toString());
+    }
+
 }
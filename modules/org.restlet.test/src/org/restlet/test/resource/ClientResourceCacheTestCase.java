@@ -0,0 +1,268 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.test.resource;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.restlet.Client;
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.Server;
+import org.restlet.data.CacheDirective;
+import org.restlet.data.MediaType;
+import org.restlet.data.Protocol;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.engine.cache.CacheFilter;
+import org.restlet.engine.cache.HttpCache;
+import org.restlet.engine.cache.MemoryCacheStore;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.resource.ClientResource;
+import org.restlet.test.RestletTestCase;
+
+/**
+ * Test the caching of the responses received by client resources.
+ * 
+ * @author Jerome Louvel
+ */
+public class ClientResourceCacheTestCase extends RestletTestCase {
+
+    /**
+     * Origin Restlet counting its invocations.
+     */
+    private class Origin extends Restlet {
+
+        @Override
+        public void handle(Request request, Response response) {
+            super.handle(request, response);
+            invocations.incrementAndGet();
+            Tag tag = tagged ? new Tag("v" + version) : null;
+            Status status = request.getConditions().getStatus(
+                    request.getMethod(), true, tag, MODIFICATION_DATE);
+
+            if (status != null) {
+                response.setStatus(status);
+            } else {
+                Representation entity = new StringRepresentation(content
+                        + version, MediaType.TEXT_PLAIN);
+                entity.setTag(tag);
+                entity.setModificationDate(MODIFICATION_DATE);
+
+                if (!sized) {
+                    entity.setSize(Representation.UNKNOWN_SIZE);
+                }
+
+                response.setEntity(entity);
+            }
+
+            response.getCacheDirectives().add(CacheDirective.maxAge(maxAge));
+
+            if (privateResponse) {
+                response.getCacheDirectives().add(
+                        CacheDirective.privateInfo());
+            }
+        }
+    }
+
+    private static final Date MODIFICATION_DATE = new Date(
+            System.currentTimeMillis() - 3600000L);
+
+    private volatile HttpCache cache;
+
+    private volatile String content;
+
+    private final AtomicInteger invocations = new AtomicInteger();
+
+    private volatile int maxAge;
+
+    private volatile boolean privateResponse;
+
+    private volatile boolean sized;
+
+    private volatile boolean tagged;
+
+    private volatile int version;
+
+    /**
+     * Creates a client resource whose calls go through a cache filter.
+     * 
+     * @param uri
+     *            The target URI.
+     * @param next
+     *            The Restlet after the cache filter.
+     * @return The client resource.
+     */
+    private ClientResource createResource(String uri, Restlet next) {
+        ClientResource result = new ClientResource(uri);
+        result.setNext(new CacheFilter(new Context(), this.cache, next));
+        return result;
+    }
+
+    /**
+     * Gets the text of a resource through the cache.
+     * 
+     * @param next
+     *            The Restlet after the cache filter.
+     * @return The text of the resource.
+     */
+    private String get(Restlet next) throws Exception {
+        return createResource("http://localhost/test", next).get().getText();
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.cache = new HttpCache(new MemoryCacheStore(), false);
+        this.content = "content ";
+        this.invocations.set(0);
+        this.maxAge = 60;
+        this.privateResponse = false;
+        this.sized = true;
+        this.tagged = true;
+        this.version = 0;
+    }
+
+    public void testConcurrentClients() throws Exception {
+        final Restlet origin = new Origin();
+        assertEquals("content 0", get(origin));
+        List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+
+        for (int i = 0; i < 100; i++) {
+            tasks.add(new Callable<String>() {
+                public String call() throws Exception {
+                    return get(origin);
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            for (Future<String> result : executor.invokeAll(tasks)) {
+                assertEquals("content 0", result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1, this.invocations.get());
+        assertEquals(100, this.cache.getHitCount());
+    }
+
+    public void testEviction() throws Exception {
+        this.cache.setStore(new MemoryCacheStore(32));
+        Restlet origin = new Origin();
+
+        for (int i = 0; i < 5; i++) {
+            createResource("http://localhost/test" + i, origin).get()
+                    .getText();
+        }
+
+        assertTrue(this.cache.getStore().getSize() <= 32);
+        assertTrue(this.cache.getStore().getEvictionCount() > 0);
+    }
+
+    public void testFreshHit() throws Exception {
+        Restlet origin = new Origin();
+        assertEquals("content 0", get(origin));
+        this.version++;
+        assertEquals("content 0", get(origin));
+        assertEquals(1, this.invocations.get());
+        assertEquals(1, this.cache.getHitCount());
+        assertEquals(1, this.cache.getMissCount());
+    }
+
+    public void testHttpUnknownSize() throws Exception {
+        this.sized = false;
+        Server server = new Server(Protocol.HTTP, 0, new Origin());
+        Client client = new Client(Protocol.HTTP);
+        server.start();
+        client.start();
+
+        try {
+            String uri = "http://localhost:" + server.getEphemeralPort()
+                    + "/test";
+            assertEquals("content 0", createResource(uri, client).get()
+                    .getText());
+            assertEquals("content 0", createResource(uri, client).get()
+                    .getText());
+            assertEquals(1, this.invocations.get());
+
+            // Too large entities are streamed to the client resource
+            this.cache.clear();
+            this.cache.setMaxEntrySize(8);
+            this.content = "a larger content ";
+            assertEquals("a larger content 0", createResource(uri, client)
+                    .get().getText());
+            assertEquals(0, this.cache.getStore().getEntryCount());
+        } finally {
+            client.stop();
+            server.stop();
+        }
+    }
+
+    public void testModificationDateRevalidation() throws Exception {
+        this.maxAge = 0;
+        this.tagged = false;
+        Restlet origin = new Origin();
+        assertEquals("content 0", get(origin));
+        assertEquals("content 0", get(origin));
+        assertEquals(2, this.invocations.get());
+        assertEquals(1, this.cache.getRevalidationCount());
+    }
+
+    public void testPrivateResponse() throws Exception {
+        this.privateResponse = true;
+        Restlet origin = new Origin();
+        get(origin);
+        get(origin);
+        assertEquals(1, this.invocations.get());
+    }
+
+    public void testTagRevalidation() throws Exception {
+        this.maxAge = 0;
+        Restlet origin = new Origin();
+        assertEquals("content 0", get(origin));
+        assertEquals("content 0", get(origin));
+        assertEquals(1, this.cache.getRevalidationCount());
+
+        this.version++;
+        assertEquals("content 1", get(origin));
+        assertEquals(3, this.invocations.get());
+        assertEquals(2, this.cache.getRevalidationCount());
+    }
+
+}
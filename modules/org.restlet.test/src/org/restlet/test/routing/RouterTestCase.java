@@ -0,0 +1,193 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.test.routing;
+
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.data.Method;
+import org.restlet.engine.util.RouteTrie;
+import org.restlet.routing.Route;
+import org.restlet.routing.Router;
+import org.restlet.routing.Template;
+import org.restlet.routing.TemplateRoute;
+import org.restlet.routing.Variable;
+import org.restlet.test.RestletTestCase;
+
+/**
+ * Test case for the routing modes of the {@link Router} class.
+ * 
+ * @author Jerome Louvel
+ */
+public class RouterTestCase extends RestletTestCase {
+
+    /** The URIs to route. */
+    private static final String[] URIS = { "/", "/users", "/users/",
+            "/users/123", "/users/abc", "/users/123/orders",
+            "/users/123/orders/456", "/users/v2", "/userspace", "/orders/7",
+            "/orders/7?details=true", "/static/css/site.css", "/static",
+            "/aab", "/ab", "/b", "/unknown/path", "" };
+
+    /**
+     * Creates a router with a mix of literal and variable templates.
+     * 
+     * @return The router.
+     */
+    private Router createRouter() {
+        Router router = new Router();
+        Restlet target = new Restlet() {
+        };
+        router.attach("/", target);
+        router.attach("/users", target);
+        router.attach("/users/{id}", target);
+        router.attach("/users/{id}/orders", target);
+        router.attach("/users/{id}/orders/{orderId}", target);
+        router.attach("/users/v{version}", target);
+        router.attach("/users/{id}", target, Template.MODE_STARTS_WITH);
+        TemplateRoute digits = router.attach("/orders/{number}", target);
+        digits.getTemplate().getVariables()
+                .put("number", new Variable(Variable.TYPE_DIGIT));
+        router.attach("/orders/{number}?details={details}", target)
+                .setMatchingQuery(true);
+        router.attach("/static", target, Template.MODE_STARTS_WITH);
+        router.attach("/a+b", target);
+        router.attach("{any}", target);
+        router.getRoutes().add(new Route(router, target) {
+            @Override
+            public float score(Request request, Response response) {
+                return request.getResourceRef().toString().endsWith("/b") ? 1F
+                        : 0F;
+            }
+        });
+        return router;
+    }
+
+    /**
+     * Creates a request to route.
+     * 
+     * @param uri
+     *            The relative URI.
+     * @return The request.
+     */
+    private Request createRequest(String uri) {
+        Request request = new Request(Method.GET, "http://localhost" + uri);
+        request.getResourceRef().setBaseRef("http://localhost");
+        return request;
+    }
+
+    /**
+     * Checks that both modes select the same route for all the URIs.
+     * 
+     * @param router
+     *            The router to test.
+     * @param linearMode
+     *            The linear routing mode.
+     * @param compiledMode
+     *            The compiled routing mode.
+     */
+    private void checkSameRoutes(Router router, int linearMode,
+            int compiledMode) {
+        for (String uri : URIS) {
+            router.setRoutingMode(linearMode);
+            Restlet expected = router.getNext(createRequest(uri),
+                    new Response(null));
+            router.setRoutingMode(compiledMode);
+            Restlet actual = router.getNext(createRequest(uri), new Response(
+                    null));
+            assertSame("Different route selected for " + uri, expected,
+                    actual);
+        }
+    }
+
+    public void testCompiledBestMatch() {
+        checkSameRoutes(createRouter(), Router.MODE_BEST_MATCH,
+                Router.MODE_COMPILED_BEST_MATCH);
+    }
+
+    public void testCompiledFirstMatch() {
+        checkSameRoutes(createRouter(), Router.MODE_FIRST_MATCH,
+                Router.MODE_COMPILED_FIRST_MATCH);
+    }
+
+    public void testCompiledUpdates() {
+        Router router = createRouter();
+        router.setRoutingMode(Router.MODE_COMPILED_FIRST_MATCH);
+        Restlet target = new Restlet() {
+        };
+        assertNull(router.getNext(createRequest("/products/42"),
+                new Response(null)));
+
+        // Inserting after the index is built
+        router.getRoutes().add(0,
+                new TemplateRoute(router, "/products/{id}", target));
+        Route route = (Route) router.getNext(createRequest("/products/42"),
+                new Response(null));
+        assertSame(target, route.getNext());
+
+        router.detach(target);
+        assertNull(router.getNext(createRequest("/products/42"),
+                new Response(null)));
+
+        // Attaching after the index is built
+        TemplateRoute products = router.attach("/products/{id}", target);
+        checkSameRoutes(router, Router.MODE_FIRST_MATCH,
+                Router.MODE_COMPILED_FIRST_MATCH);
+
+        // Detaching after the index is built
+        router.getRoutes().remove(products);
+        checkSameRoutes(router, Router.MODE_FIRST_MATCH,
+                Router.MODE_COMPILED_FIRST_MATCH);
+
+        // Changing a pattern requires a reindexing
+        TemplateRoute users = (TemplateRoute) router.getRoutes().get(1);
+        users.getTemplate().setPattern("/customers");
+        router.getRoutes().reindex();
+        checkSameRoutes(router, Router.MODE_FIRST_MATCH,
+                Router.MODE_COMPILED_FIRST_MATCH);
+        router.setRoutingMode(Router.MODE_COMPILED_FIRST_MATCH);
+        assertSame(users, router.getNext(createRequest("/customers"),
+                new Response(null)));
+    }
+
+    public void testLiteralPrefix() {
+        assertEquals("/users/",
+                RouteTrie.getLiteralPrefix("/users/{id}"));
+        assertEquals("/a", RouteTrie.getLiteralPrefix("/ab+c"));
+        assertEquals("", RouteTrie.getLiteralPrefix("{any}"));
+        assertEquals("/static", RouteTrie.getLiteralPrefix("/static"));
+    }
+
+    public void testUnknownUri() {
+        Router router = new Router();
+        router.setRoutingMode(Router.MODE_COMPILED_FIRST_MATCH);
+        router.attach("/users/{id}", new Restlet() {
+        });
+        Response response = new Response(null);
+        assertNull(router.getNext(createRequest("/orders/1"), response));
+        assertEquals(404, response.getStatus().getCode());
+    }
+
+}
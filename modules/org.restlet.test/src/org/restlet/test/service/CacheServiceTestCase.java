@@ -0,0 +1,289 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.test.service;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.restlet.Application;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.data.CacheDirective;
+import org.restlet.data.MediaType;
+import org.restlet.data.Method;
+import org.restlet.data.Preference;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.engine.cache.FileCacheStore;
+import org.restlet.engine.cache.HttpCache;
+import org.restlet.engine.cache.MemoryCacheStore;
+import org.restlet.engine.cache.OffHeapCacheStore;
+import org.restlet.engine.io.IoUtils;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.representation.Variant;
+import org.restlet.resource.ResourceException;
+import org.restlet.resource.ServerResource;
+import org.restlet.routing.Router;
+import org.restlet.service.CacheService;
+import org.restlet.test.RestletTestCase;
+
+/**
+ * Unit tests for the {@link CacheService} class.
+ * 
+ * @author Jerome Louvel
+ */
+public class CacheServiceTestCase extends RestletTestCase {
+
+    /**
+     * Resource counting its invocations.
+     */
+    public static class CachedResource extends ServerResource {
+
+        @Override
+        protected void doInit() throws ResourceException {
+            setAnnotated(false);
+            getVariants().add(new Variant(MediaType.TEXT_HTML));
+            getVariants().add(new Variant(MediaType.TEXT_PLAIN));
+        }
+
+        @Override
+        protected Representation get(Variant variant) throws ResourceException {
+            invocations.incrementAndGet();
+            MediaType mediaType = variant.getMediaType();
+            int current = version.get();
+            Representation result = new StringRepresentation(
+                    mediaType.getSubType() + " " + current
+                            + getQueryValue("q"), mediaType);
+            result.setTag(new Tag(mediaType.getSubType() + current));
+            getResponse().getCacheDirectives().add(
+                    CacheDirective.maxAge(maxAge));
+            return result;
+        }
+
+        @Override
+        protected Representation post(Representation entity, Variant variant)
+                throws ResourceException {
+            version.incrementAndGet();
+            return null;
+        }
+    }
+
+    /** The number of resource invocations. */
+    private static final AtomicInteger invocations = new AtomicInteger();
+
+    /** The max-age directive returned by the resource. */
+    private static volatile int maxAge;
+
+    /** The version of the resource. */
+    private static final AtomicInteger version = new AtomicInteger();
+
+    private Application application;
+
+    /**
+     * Creates a request relative to the application's base reference.
+     * 
+     * @param method
+     *            The method.
+     * @param uri
+     *            The resource URI.
+     * @return The request.
+     */
+    private Request createRequest(Method method, String uri) {
+        Request request = new Request(method, "http://localhost" + uri);
+        request.getResourceRef().setBaseRef("http://localhost");
+        return request;
+    }
+
+    /**
+     * Returns the cache of the application.
+     * 
+     * @return The cache of the application.
+     */
+    private HttpCache getCache() {
+        return this.application.getCacheService().getCache();
+    }
+
+    /**
+     * Sends a request to the application.
+     * 
+     * @param method
+     *            The method.
+     * @param uri
+     *            The resource URI.
+     * @param mediaType
+     *            The accepted media type or null.
+     * @return The response.
+     */
+    private Response handle(Method method, String uri, MediaType mediaType) {
+        Request request = createRequest(method, uri);
+
+        if (mediaType != null) {
+            request.getClientInfo().getAcceptedMediaTypes()
+                    .add(new Preference<MediaType>(mediaType));
+        }
+
+        return this.application.handle(request);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        invocations.set(0);
+        maxAge = 60;
+        version.set(0);
+        this.application = new Application() {
+            @Override
+            public Restlet createInboundRoot() {
+                Router router = new Router(getContext());
+                router.attach("/test", CachedResource.class);
+                return router;
+            }
+        };
+        this.application.getCacheService().setEnabled(true);
+        this.application.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.application.stop();
+        this.application = null;
+        super.tearDown();
+    }
+
+    public void testEviction() throws Exception {
+        this.application.getCacheService().setStore(new MemoryCacheStore(20));
+
+        for (int i = 0; i < 5; i++) {
+            handle(Method.GET, "/test?q=" + i, MediaType.TEXT_PLAIN);
+        }
+
+        assertTrue(getCache().getStore().getSize() <= 20);
+        assertTrue(getCache().getStore().getEvictionCount() > 0);
+        assertEquals(5, invocations.get());
+    }
+
+    public void testFileStore() throws Exception {
+        File directory = new File(System.getProperty("java.io.tmpdir"),
+                "restlet-cache-test");
+        this.application.getCacheService().setStore(
+                new FileCacheStore(directory,
+                        MemoryCacheStore.DEFAULT_MAX_SIZE));
+
+        try {
+            handle(Method.GET, "/test", MediaType.TEXT_PLAIN);
+            assertEquals(1, directory.list().length);
+            Response response = handle(Method.GET, "/test",
+                    MediaType.TEXT_PLAIN);
+            assertEquals("plain 0null", response.getEntityAsText());
+            assertEquals(1, invocations.get());
+        } finally {
+            getCache().clear();
+            IoUtils.delete(directory, true);
+        }
+    }
+
+    public void testFreshHit() throws Exception {
+        Response response = handle(Method.GET, "/test", MediaType.TEXT_PLAIN);
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+        assertEquals("plain 0null", response.getEntityAsText());
+
+        response = handle(Method.GET, "/test", MediaType.TEXT_PLAIN);
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+        assertEquals("plain 0null", response.getEntityAsText());
+        assertEquals(new Tag("plain0"), response.getEntity().getTag());
+        assertEquals(1, invocations.get());
+        assertEquals(1, getCache().getHitCount());
+        assertEquals(1, getCache().getMissCount());
+    }
+
+    public void testInvalidation() throws Exception {
+        handle(Method.GET, "/test", MediaType.TEXT_PLAIN);
+        handle(Method.POST, "/test", null);
+        Response response = handle(Method.GET, "/test", MediaType.TEXT_PLAIN);
+        assertEquals("plain 1null", response.getEntityAsText());
+        assertEquals(2, invocations.get());
+        assertEquals(0, getCache().getHitCount());
+    }
+
+    public void testNoCacheRequest() throws Exception {
+        handle(Method.GET, "/test", MediaType.TEXT_PLAIN);
+        Request request = createRequest(Method.GET, "/test");
+        request.getClientInfo().getAcceptedMediaTypes()
+                .add(new Preference<MediaType>(MediaType.TEXT_PLAIN));
+        request.getCacheDirectives().add(CacheDirective.noCache());
+        Response response = this.application.handle(request);
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+        assertEquals(1, getCache().getRevalidationCount());
+        assertEquals(2, invocations.get());
+    }
+
+    public void testNotModified() throws Exception {
+        handle(Method.GET, "/test", MediaType.TEXT_PLAIN);
+        Request request = createRequest(Method.GET, "/test");
+        request.getClientInfo().getAcceptedMediaTypes()
+                .add(new Preference<MediaType>(MediaType.TEXT_PLAIN));
+        request.getConditions().setNoneMatch(Arrays.asList(new Tag("plain0")));
+        Response response = this.application.handle(request);
+        assertEquals(Status.REDIRECTION_NOT_MODIFIED, response.getStatus());
+        assertEquals(1, invocations.get());
+    }
+
+    public void testOffHeapStore() throws Exception {
+        this.application.getCacheService().setStore(new OffHeapCacheStore());
+        handle(Method.GET, "/test", MediaType.TEXT_PLAIN);
+        Response response = handle(Method.GET, "/test", MediaType.TEXT_PLAIN);
+        assertEquals("plain 0null", response.getEntityAsText());
+        assertEquals(1, invocations.get());
+    }
+
+    public void testRevalidation() throws Exception {
+        maxAge = 0;
+        handle(Method.GET, "/test", MediaType.TEXT_PLAIN);
+        Response response = handle(Method.GET, "/test", MediaType.TEXT_PLAIN);
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+        assertEquals("plain 0null", response.getEntityAsText());
+        assertEquals(1, getCache().getRevalidationCount());
+        assertEquals(0, getCache().getHitCount());
+    }
+
+    public void testVariants() throws Exception {
+        handle(Method.GET, "/test", MediaType.TEXT_PLAIN);
+        handle(Method.GET, "/test", MediaType.TEXT_HTML);
+        assertEquals("plain 0null",
+                handle(Method.GET, "/test", MediaType.TEXT_PLAIN)
+                        .getEntityAsText());
+        assertEquals("html 0null",
+                handle(Method.GET, "/test", MediaType.TEXT_HTML)
+                        .getEntityAsText());
+        assertEquals(2, invocations.get());
+        assertEquals(2, getCache().getHitCount());
+        assertEquals(2, getCache().getStore().getEntryCount());
+    }
+
+}
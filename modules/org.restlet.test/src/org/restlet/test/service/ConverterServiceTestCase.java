@@ -0,0 +1,204 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.test.service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.restlet.data.MediaType;
+import org.restlet.engine.Engine;
+import org.restlet.engine.converter.ConverterHelper;
+import org.restlet.engine.converter.ConverterUtils;
+import org.restlet.engine.resource.VariantInfo;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.representation.Variant;
+import org.restlet.resource.Resource;
+import org.restlet.service.ConverterService;
+import org.restlet.test.RestletTestCase;
+
+/**
+ * Unit tests for the converter service and the memory of its lookups.
+ * 
+ * @author Jerome Louvel
+ */
+public class ConverterServiceTestCase extends RestletTestCase {
+
+    /** Converter helper counting the calls to its score methods. */
+    private static class CountingConverter extends ConverterHelper {
+
+        private final AtomicInteger scores = new AtomicInteger();
+
+        @Override
+        public List<Class<?>> getObjectClasses(Variant source) {
+            return null;
+        }
+
+        @Override
+        public List<VariantInfo> getVariants(Class<?> source) {
+            return (source == StringBuilder.class) ? addVariant(null,
+                    new VariantInfo(MediaType.TEXT_CSV)) : null;
+        }
+
+        @Override
+        public float score(Object source, Variant target, Resource resource) {
+            scores.incrementAndGet();
+            return (source instanceof StringBuilder) ? 2.0F : -1.0F;
+        }
+
+        @Override
+        public <T> float score(Representation source, Class<T> target,
+                Resource resource) {
+            scores.incrementAndGet();
+            return (target == StringBuilder.class) ? 2.0F : -1.0F;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T> T toObject(Representation source, Class<T> target,
+                Resource resource) throws IOException {
+            return (T) new StringBuilder(source.getText());
+        }
+
+        @Override
+        public Representation toRepresentation(Object source, Variant target,
+                Resource resource) throws IOException {
+            return new StringRepresentation(source.toString(),
+                    MediaType.TEXT_CSV);
+        }
+    }
+
+    private CountingConverter converter;
+
+    private ConverterService converterService;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.converter = new CountingConverter();
+        this.converterService = new ConverterService();
+        Engine.getInstance().getRegisteredConverters().add(0, converter);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Engine.getInstance().getRegisteredConverters().remove(converter);
+        super.tearDown();
+    }
+
+    public void testInvalidation() throws Exception {
+        assertSame(converter, ConverterUtils.getBestHelper(new StringBuilder(
+                "a"), null, null));
+        CountingConverter other = new CountingConverter() {
+            @Override
+            public float score(Object source, Variant target,
+                    Resource resource) {
+                return 3.0F;
+            }
+        };
+        Engine.getInstance().getRegisteredConverters().add(other);
+
+        try {
+            assertSame(other, ConverterUtils.getBestHelper(new StringBuilder(
+                    "a"), null, null));
+        } finally {
+            Engine.getInstance().getRegisteredConverters().remove(other);
+        }
+
+        assertSame(converter, ConverterUtils.getBestHelper(new StringBuilder(
+                "a"), null, null));
+        Engine.getInstance().getRegisteredConverters().remove(converter);
+        assertNotSame(converter, ConverterUtils.getBestHelper(
+                new StringBuilder("a"), null, null));
+    }
+
+    public void testLookups() throws Exception {
+        Representation rep = converterService.toRepresentation(
+                new StringBuilder("abc"), new Variant(MediaType.TEXT_CSV),
+                null);
+        assertEquals("abc", rep.getText());
+        int scores = converter.scores.get();
+        rep = converterService.toRepresentation(new StringBuilder("def"),
+                new Variant(MediaType.TEXT_CSV), null);
+        assertEquals("def", rep.getText());
+        assertEquals(scores, converter.scores.get());
+
+        // A different target variant is a different lookup
+        converterService.toRepresentation(new StringBuilder("ghi"),
+                new Variant(MediaType.TEXT_PLAIN), null);
+        assertEquals(scores + 1, converter.scores.get());
+
+        StringBuilder sb = converterService.toObject(new StringRepresentation(
+                "xyz", MediaType.TEXT_CSV), StringBuilder.class, null);
+        assertEquals("xyz", sb.toString());
+        scores = converter.scores.get();
+        sb = converterService.toObject(new StringRepresentation("uvw",
+                MediaType.TEXT_CSV), StringBuilder.class, null);
+        assertEquals("uvw", sb.toString());
+        assertEquals(scores, converter.scores.get());
+    }
+
+    public void testParameters() throws Exception {
+        converterService.toObject(new StringRepresentation("a",
+                MediaType.TEXT_CSV), StringBuilder.class, null);
+        int scores = converter.scores.get();
+
+        // Media type parameters don't create new lookups
+        for (int i = 0; i < 2000; i++) {
+            MediaType mediaType = MediaType.valueOf("text/csv; boundary=" + i);
+            StringBuilder sb = converterService.toObject(
+                    new StringRepresentation("b" + i, mediaType),
+                    StringBuilder.class, null);
+            assertEquals("b" + i, sb.toString());
+        }
+
+        assertEquals(scores, converter.scores.get());
+
+        // A full memory is cleared rather than left as is
+        for (int i = 0; i < 2000; i++) {
+            ConverterUtils.getBestHelper(new StringBuilder("c"), new Variant(
+                    MediaType.valueOf("text/x-test-" + i)), null);
+        }
+
+        scores = converter.scores.get();
+        ConverterUtils.getBestHelper(new StringBuilder("d"), new Variant(
+                MediaType.TEXT_PLAIN), null);
+        ConverterUtils.getBestHelper(new StringBuilder("e"), new Variant(
+                MediaType.TEXT_PLAIN), null);
+        assertEquals(scores + 1, converter.scores.get());
+    }
+
+    public void testVariants() throws Exception {
+        List<? extends Variant> variants = converterService.getVariants(
+                StringBuilder.class, null);
+        assertEquals(MediaType.TEXT_CSV, variants.get(0).getMediaType());
+        variants.clear();
+        variants = converterService.getVariants(StringBuilder.class, null);
+        assertFalse(variants.isEmpty());
+    }
+
+}
@@ -0,0 +1,304 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.test.service;
+
+import java.lang.Thread.State;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.data.Method;
+import org.restlet.data.Status;
+import org.restlet.engine.log.AccessLogEntry;
+import org.restlet.engine.log.AccessLogTemplate;
+import org.restlet.engine.log.AccessLogWriter;
+import org.restlet.engine.log.LogFilter;
+import org.restlet.routing.Filter;
+import org.restlet.routing.Template;
+import org.restlet.service.LogService;
+import org.restlet.test.RestletTestCase;
+
+/**
+ * Unit tests for the log service.
+ * 
+ * @author Jerome Louvel
+ */
+public class LogServiceTestCase extends RestletTestCase {
+
+    /** Handler collecting the published messages. */
+    private static class CollectingHandler extends Handler {
+
+        private final List<String> messages = new CopyOnWriteArrayList<String>();
+
+        private volatile int flushCount;
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void flush() {
+            this.flushCount++;
+        }
+
+        @Override
+        public void publish(LogRecord record) {
+            this.messages.add(record.getMessage());
+        }
+    }
+
+    private CollectingHandler handler;
+
+    private Logger logger;
+
+    private Response createResponse(String uri) {
+        Request request = new Request(Method.GET, uri);
+        request.getClientInfo().setAddress("127.0.0.1");
+        Response response = new Response(request);
+        response.setStatus(Status.SUCCESS_OK);
+        return response;
+    }
+
+    private Filter createLogFilter(LogService logService) {
+        Filter result = logService.createInboundFilter(new Context());
+        result.setNext(new Restlet() {
+            @Override
+            public void handle(Request request, Response response) {
+                response.setStatus(Status.SUCCESS_OK);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.handler = new CollectingHandler();
+        this.logger = Logger.getLogger(LogServiceTestCase.class
+                .getCanonicalName());
+        this.logger.setUseParentHandlers(false);
+        this.logger.setLevel(Level.INFO);
+        this.logger.addHandler(this.handler);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.logger.removeHandler(this.handler);
+        super.tearDown();
+    }
+
+    public void testAsynchronous() throws Exception {
+        LogService logService = new LogService();
+        logService.setLoggerName(this.logger.getName());
+        logService.setResponseLogFormat("{m} {rp} {S}");
+        logService.setAsynchronous(true);
+        logService.setBatchSize(10);
+        logService.start();
+
+        Filter filter = createLogFilter(logService);
+        assertTrue(filter instanceof LogFilter);
+
+        for (int i = 0; i < 100; i++) {
+            Response response = createResponse("http://localhost/test/" + i);
+            filter.handle(response.getRequest(), response);
+        }
+
+        AccessLogWriter writer = logService.getAccessLogWriter();
+        logService.stop();
+
+        assertEquals(100, this.handler.messages.size());
+        assertEquals("GET /test/0 200", this.handler.messages.get(0));
+        assertEquals("GET /test/99 200", this.handler.messages.get(99));
+        assertEquals(100, writer.getWrittenCount());
+        assertEquals(0, writer.getDroppedCount());
+        assertTrue(this.handler.flushCount >= 10);
+        assertNull(logService.getAccessLogWriter());
+    }
+
+    public void testDefaultFormat() throws Exception {
+        LogService logService = new LogService();
+        logService.start();
+        Response response = createResponse("http://localhost/test?a=b");
+
+        String message = logService.getResponseLogMessage(logService
+                .getResponseLogEntry(response, 12));
+        String[] fields = message.split("\t");
+        assertEquals(16, fields.length);
+        assertEquals("127.0.0.1", fields[2]);
+        assertEquals("GET", fields[6]);
+        assertEquals("/test", fields[7]);
+        assertEquals("a=b", fields[8]);
+        assertEquals("200", fields[9]);
+        assertEquals("0", fields[10]);
+        assertEquals("12", fields[12]);
+    }
+
+    public void testIdle() throws Exception {
+        LogService logService = new LogService();
+        AccessLogWriter writer = new AccessLogWriter(logService, 16, 10, false);
+        writer.start();
+
+        try {
+            // The idle writer thread parks without a timeout
+            Thread thread = null;
+            long limit = System.currentTimeMillis() + 5000;
+
+            while (((thread == null) || (thread.getState() != State.WAITING))
+                    && (System.currentTimeMillis() < limit)) {
+                for (Thread t : Thread.getAllStackTraces().keySet()) {
+                    if (t.getName().startsWith("Restlet-AccessLogWriter-")) {
+                        thread = t;
+                    }
+                }
+
+                Thread.sleep(10);
+            }
+
+            assertEquals(State.WAITING, thread.getState());
+
+            // An offered entry unparks it
+            AccessLogEntry entry = logService.getResponseLogEntry(
+                    createResponse("http://localhost/test"), 0);
+            entry.setLogger(this.logger);
+            assertTrue(writer.offer(entry));
+            limit = System.currentTimeMillis() + 5000;
+
+            while ((writer.getWrittenCount() == 0)
+                    && (System.currentTimeMillis() < limit)) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(1, writer.getWrittenCount());
+        } finally {
+            writer.stop();
+        }
+    }
+
+    public void testRestart() throws Exception {
+        LogService logService = new LogService();
+        logService.setAsynchronous(true);
+        logService.start();
+        AccessLogWriter writer = logService.getAccessLogWriter();
+        assertTrue(writer.isRunning());
+
+        // The previous writer is stopped
+        logService.start();
+        assertFalse(writer.isRunning());
+        assertNotSame(writer, logService.getAccessLogWriter());
+        assertTrue(logService.getAccessLogWriter().isRunning());
+        logService.stop();
+        assertNull(logService.getAccessLogWriter());
+    }
+
+    public void testSaturated() throws Exception {
+        LogService logService = new LogService();
+        AccessLogWriter writer = new AccessLogWriter(logService, 2, 10, false);
+
+        for (int i = 0; i < 3; i++) {
+            AccessLogEntry entry = logService.getResponseLogEntry(
+                    createResponse("http://localhost/test"), 0);
+            entry.setLogger(this.logger);
+            assertEquals(i < 2, writer.offer(entry));
+        }
+
+        assertEquals(2, writer.getPendingCount());
+        assertEquals(1, writer.getDroppedCount());
+
+        writer.start();
+        writer.stop();
+        assertEquals(2, writer.getWrittenCount());
+        assertEquals(2, this.handler.messages.size());
+    }
+
+    public void testStopWhileOffering() throws Exception {
+        final LogService logService = new LogService();
+        final AccessLogWriter writer = new AccessLogWriter(logService, 1024,
+                10, true);
+        Thread[] threads = new Thread[4];
+        writer.start();
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 500; j++) {
+                        AccessLogEntry entry = logService.getResponseLogEntry(
+                                createResponse("http://localhost/test"), 0);
+                        entry.setLogger(logger);
+                        writer.offer(entry);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        Thread.sleep(5);
+        writer.stop();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Entries offered after the stop are written by the calling threads
+        assertEquals(0, writer.getDroppedCount());
+        assertEquals(0, writer.getPendingCount());
+        assertEquals(2000, writer.getWrittenCount());
+        assertEquals(2000, this.handler.messages.size());
+
+        // The buffer is reopened on restart
+        writer.start();
+
+        try {
+            AccessLogEntry entry = logService.getResponseLogEntry(
+                    createResponse("http://localhost/test"), 0);
+            entry.setLogger(this.logger);
+            assertTrue(writer.offer(entry));
+        } finally {
+            writer.stop();
+        }
+
+        assertEquals(2001, writer.getWrittenCount());
+    }
+
+    public void testTemplate() throws Exception {
+        Template template = new Template(
+                "{cia} {m} {rp} {rq} {S} {unknown} {{bad!}} end");
+        AccessLogTemplate accessTemplate = new AccessLogTemplate(template);
+        Response response = createResponse("http://localhost/test?a=b");
+
+        assertEquals(template.format(response.getRequest(), response),
+                accessTemplate.format(accessTemplate.resolve(
+                        response.getRequest(), response)));
+    }
+
+}
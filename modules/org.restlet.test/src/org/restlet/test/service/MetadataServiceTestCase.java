@@ -24,7 +24,11 @@
 
 package org.restlet.test.service;
 
+import java.util.List;
+
+import org.restlet.data.Language;
 import org.restlet.data.MediaType;
+import org.restlet.data.Metadata;
 import org.restlet.service.MetadataService;
 import org.restlet.test.RestletTestCase;
 
@@ -35,6 +39,39 @@ import org.restlet.test.RestletTestCase;
  */
 public class MetadataServiceTestCase extends RestletTestCase {
 
+    public void testIndex() {
+        MetadataService ms = new MetadataService();
+        assertEquals(MediaType.TEXT_XML, ms.getMediaType("xml"));
+        assertEquals("xml", ms.getExtension(MediaType.APPLICATION_XML));
+        assertEquals("txt", ms.getExtension(MediaType.TEXT_PLAIN));
+        assertNull(ms.getLanguage("xml"));
+
+        List<MediaType> xml = ms.getAllMediaTypes("xml");
+        assertEquals(2, xml.size());
+        assertEquals(MediaType.TEXT_XML, xml.get(0));
+        assertEquals(MediaType.APPLICATION_XML, xml.get(1));
+
+        // Preferred mappings come first
+        ms.addExtension("xml", MediaType.APPLICATION_ATOM, true);
+        assertEquals(MediaType.APPLICATION_ATOM, ms.getMediaType("xml"));
+        assertEquals("xml", ms.getExtension(MediaType.APPLICATION_ATOM));
+        assertEquals(3, ms.getAllMetadata("xml").size());
+
+        // Other mappings are appended
+        ms.addExtension("fr", MediaType.TEXT_PLAIN);
+        assertEquals(Language.FRENCH, ms.getMetadata("fr"));
+        assertEquals("txt", ms.getExtension(MediaType.TEXT_PLAIN));
+        List<Metadata> fr = ms.getAllMetadata("fr");
+        assertEquals(2, fr.size());
+        assertEquals(MediaType.TEXT_PLAIN, fr.get(1));
+        assertNull(ms.getAllMediaTypes("unknown"));
+
+        ms.clearExtensions();
+        assertNull(ms.getMetadata("xml"));
+        assertNull(ms.getExtension(MediaType.TEXT_PLAIN));
+        assertTrue(ms.getAllExtensionNames().isEmpty());
+    }
+
     public void testStrict() {
         MetadataService ms = new MetadataService();
         MediaType ma = ms.getMediaType("ma");
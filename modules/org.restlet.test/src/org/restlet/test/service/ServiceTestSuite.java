@@ -33,8 +33,12 @@ public class ServiceTestSuite {
         TestSuite suite = new TestSuite("Service package");
 
         // $JUnit-BEGIN$
+        suite.addTestSuite(CacheServiceTestCase.class);
         suite.addTestSuite(ConnegServiceTestCase.class);
+        suite.addTestSuite(ConverterServiceTestCase.class);
+        suite.addTestSuite(LogServiceTestCase.class);
         suite.addTestSuite(MetadataServiceTestCase.class);
+        suite.addTestSuite(TaskServiceTestCase.class);
         // [ifndef jee]
         suite.addTestSuite(StatusServiceTestCase.class);
         // [enddef]
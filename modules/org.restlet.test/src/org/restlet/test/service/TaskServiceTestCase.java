@@ -0,0 +1,102 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.test.service;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.restlet.Application;
+import org.restlet.service.TaskService;
+import org.restlet.test.RestletTestCase;
+
+/**
+ * Unit tests for the {@link TaskService} class.
+ * 
+ * @author Jerome Louvel
+ */
+public class TaskServiceTestCase extends RestletTestCase {
+
+    /**
+     * Checks that the current application is visible from the tasks.
+     * 
+     * @param taskService
+     *            The task service to test.
+     */
+    private void checkThreadLocals(TaskService taskService) throws Exception {
+        final Application application = new Application();
+        Application.setCurrent(application);
+
+        try {
+            final Application[] seen = new Application[1];
+            final Object lock = new Object();
+
+            taskService.execute(new Runnable() {
+                public void run() {
+                    synchronized (lock) {
+                        seen[0] = Application.getCurrent();
+                        lock.notifyAll();
+                    }
+                }
+            });
+
+            synchronized (lock) {
+                long deadline = System.currentTimeMillis() + 5000;
+
+                while ((seen[0] == null)
+                        && (System.currentTimeMillis() < deadline)) {
+                    lock.wait(100);
+                }
+            }
+
+            assertSame(application, seen[0]);
+            assertEquals("ok", taskService.schedule(new Callable<String>() {
+                public String call() throws Exception {
+                    return "ok";
+                }
+            }, 10, TimeUnit.MILLISECONDS).get(5, TimeUnit.SECONDS));
+        } finally {
+            Application.setCurrent(null);
+            taskService.setShutdownAllowed(true);
+            taskService.shutdown();
+        }
+
+        assertTrue(taskService.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    public void testPlatformThreads() throws Exception {
+        checkThreadLocals(new TaskService());
+    }
+
+    public void testVirtualThreads() throws Exception {
+        TaskService taskService = new TaskService();
+        taskService.setVirtualThreads(true);
+        taskService.setMaxConcurrentTasks(10);
+        assertTrue(taskService.isVirtualThreads());
+        assertEquals(10, taskService.getMaxConcurrentTasks());
+        checkThreadLocals(taskService);
+    }
+
+}
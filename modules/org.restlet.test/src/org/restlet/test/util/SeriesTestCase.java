@@ -0,0 +1,171 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.test.util;
+
+import java.util.Iterator;
+
+import org.restlet.data.Header;
+import org.restlet.data.Parameter;
+import org.restlet.engine.header.HeaderConstants;
+import org.restlet.engine.header.HeaderUtils;
+import org.restlet.test.RestletTestCase;
+import org.restlet.util.NamedValue;
+import org.restlet.util.Series;
+
+/**
+ * Test {@link org.restlet.util.Series}.
+ * 
+ * @author Jerome Louvel
+ */
+public class SeriesTestCase extends RestletTestCase {
+
+    /**
+     * Entry without specific support in the series.
+     */
+    public static class Entry implements NamedValue<String> {
+
+        private String name;
+
+        private String value;
+
+        public Entry(String name, String value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public void setValue(String value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * Creates a series of headers large enough to be indexed.
+     * 
+     * @return The series of headers.
+     */
+    private Series<Header> createHeaders() {
+        Series<Header> result = new Series<Header>(Header.class);
+
+        for (int i = 0; i < 20; i++) {
+            result.add("X-Header-" + i, Integer.toString(i));
+        }
+
+        return result;
+    }
+
+    public void testCreateEntry() {
+        assertEquals(Header.class, new Series<Header>(Header.class)
+                .createEntry("a", "b").getClass());
+        assertEquals(Parameter.class, new Series<Parameter>(Parameter.class)
+                .createEntry("a", "b").getClass());
+
+        Entry entry = new Series<Entry>(Entry.class).createEntry("a", "b");
+        assertEquals("a", entry.getName());
+        assertEquals("b", entry.getValue());
+        entry = new Series<Entry>(Entry.class).createEntry("c", "d");
+        assertEquals("c", entry.getName());
+    }
+
+    public void testIndexedLookups() {
+        Series<Header> headers = createHeaders();
+        headers.add("Accept", "text/plain");
+        headers.add("accept", "text/html");
+
+        assertEquals("5", headers.getFirstValue("X-Header-5"));
+        assertEquals("5", headers.getFirstValue("x-header-5", true));
+        assertNull(headers.getFirstValue("x-header-5"));
+        assertEquals("text/plain", headers.getFirstValue("Accept"));
+        assertEquals("text/html", headers.getFirstValue("accept"));
+        assertEquals("text/plain,text/html", headers.getValues("ACCEPT"));
+        assertEquals(2, headers.subList("Accept", true).size());
+        assertEquals(1, headers.getValuesArray("Accept").length);
+        assertNull(headers.getFirst("Missing", true));
+    }
+
+    public void testIndexMaintenance() {
+        Series<Header> headers = createHeaders();
+        assertEquals("1", headers.getFirstValue("X-Header-1"));
+
+        // Additions
+        headers.add("X-Header-1", "again");
+        assertEquals("1,again", headers.getValues("X-Header-1"));
+        headers.add(0, new Header("X-Header-1", "first"));
+        assertEquals("first", headers.getFirstValue("X-Header-1"));
+
+        // Removals
+        headers.remove(0);
+        assertEquals("1", headers.getFirstValue("X-Header-1"));
+        headers.removeAll("X-Header-1");
+        assertNull(headers.getFirstValue("X-Header-1"));
+
+        // Changes through the iterator
+        for (Iterator<Header> iter = headers.iterator(); iter.hasNext();) {
+            if ("X-Header-2".equals(iter.next().getName())) {
+                iter.remove();
+            }
+        }
+
+        assertNull(headers.getFirstValue("X-Header-2"));
+
+        // Changes through a view
+        headers.subList(0, 5).clear();
+        assertNull(headers.getFirstValue("X-Header-6"));
+        assertEquals("7", headers.getFirstValue("X-Header-7"));
+
+        // Renamed entries
+        headers.getFirst("X-Header-7").setName("X-Renamed");
+        headers.reindex();
+        assertNull(headers.getFirstValue("X-Header-7"));
+        assertEquals("7", headers.getFirstValue("X-Renamed"));
+
+        // Replacements
+        headers.set("X-Header-8", "eight");
+        assertEquals("eight", headers.getFirstValue("X-Header-8"));
+        headers.clear();
+        assertNull(headers.getFirstValue("X-Header-8"));
+    }
+
+    public void testInternedNames() {
+        assertSame(HeaderConstants.HEADER_CONTENT_TYPE,
+                HeaderUtils.intern(new String("Content-Type")));
+        assertEquals("content-type",
+                HeaderUtils.intern(new String("content-type")));
+        assertEquals("X-Custom", HeaderUtils.intern("X-Custom"));
+    }
+
+}
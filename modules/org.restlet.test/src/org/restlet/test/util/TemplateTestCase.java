@@ -54,6 +54,47 @@ public class TemplateTestCase extends RestletTestCase {
         assertEquals(encodedToken, variables1.get("token"));
     }
 
+    public void testBacktracking() {
+        Template template = new Template("/{path}/{file}.{ext}");
+        template.getDefaultVariable().setType(Variable.TYPE_URI_PATH);
+        Map<String, Object> variables = new HashMap<String, Object>();
+        assertEquals(21, template.parse("/a/b%2Fc/site.min.css", variables));
+        assertEquals("a/b%2Fc", variables.get("path"));
+        assertEquals("site.min", variables.get("file"));
+        assertEquals("css", variables.get("ext"));
+
+        template = new Template("/{id}/x", Template.MODE_STARTS_WITH);
+        template.getDefaultVariable().setType(Variable.TYPE_URI_PATH);
+        assertEquals(8, template.match("/1/x/2/x/3"));
+        assertEquals(-1, template.match("/1/y"));
+
+        template = new Template("/users/{id}");
+        template.getVariables().put("id", new Variable(Variable.TYPE_DIGIT));
+        assertEquals(10, template.match("/users/123"));
+        assertEquals(-1, template.match("/users/12a"));
+        assertEquals(-1, template.match("/users/"));
+
+        template = new Template("/users/{id}");
+        template.getVariables().put("id",
+                new Variable(Variable.TYPE_DIGIT, "", false, false));
+        assertEquals(7, template.match("/users/"));
+    }
+
+    public void testRegexFallback() {
+        // Repeated variable
+        Template template = new Template("/{a}/{a}");
+        template.getDefaultVariable().setType(Variable.TYPE_URI_SEGMENT);
+        assertEquals(4, template.match("/x/x"));
+        assertEquals(-1, template.match("/x/y"));
+
+        // Comment type
+        template = new Template("({c})");
+        template.getVariables().put("c", new Variable(Variable.TYPE_COMMENT));
+        Map<String, Object> variables = new HashMap<String, Object>();
+        assertEquals(8, template.parse("(a; b c)", variables));
+        assertEquals("a; b c", variables.get("c"));
+    }
+
     public void testPathMatching() {
         Template template = new Template("http://www.mydomain.com/abc/{v1}");
         template.setMatchingMode(Template.MODE_STARTS_WITH);
@@ -36,6 +36,7 @@ import org.restlet.resource.ServerResource;
 import org.restlet.routing.Router;
 import org.restlet.routing.VirtualHost;
 import org.restlet.security.Role;
+import org.restlet.service.CacheService;
 import org.restlet.service.ConnectorService;
 import org.restlet.service.ConnegService;
 import org.restlet.service.ConverterService;
@@ -57,6 +58,8 @@ import org.restlet.util.ServiceList;
  * Applications also have many useful services associated. Most are enabled by
  * default and are available as properties that can be eventually overridden:
  * <ul>
+ * <li>"cacheService" to cache the responses of the resources (disabled by
+ * default).</li>
  * <li>"connectorService" to declare necessary client and server connectors.</li>
  * <li>"converterService" to convert between regular objects and
  * representations.</li>
@@ -167,6 +170,7 @@ public class Application extends Restlet {
         this.services.add(new DecoderService());
         this.services.add(new EncoderService(false));
         this.services.add(new RangeService());
+        this.services.add(new CacheService(false));
         this.services.add(new ConnectorService());
         this.services.add(connegService);
         this.services.add(converterService);
@@ -207,6 +211,15 @@ public class Application extends Restlet {
         return getHelper().getFirstOutboundFilter();
     }
 
+    /**
+     * Returns the cache service. The service is disabled by default.
+     * 
+     * @return The cache service.
+     */
+    public CacheService getCacheService() {
+        return getServices().get(CacheService.class);
+    }
+
     /**
      * Returns the connector service. The service is enabled by default.
      * 
@@ -398,6 +411,16 @@ public class Application extends Restlet {
         return debugging;
     }
 
+    /**
+     * Sets the cache service.
+     * 
+     * @param cacheService
+     *            The cache service.
+     */
+    public void setCacheService(CacheService cacheService) {
+        getServices().set(cacheService);
+    }
+
     /**
      * Sets the connector service.
      * 
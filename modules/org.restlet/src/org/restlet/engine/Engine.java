@@ -249,15 +249,22 @@ public class Engine {
     }
 
     /**
-     * Returns the registered Restlet engine.
+     * Returns the registered Restlet engine. Once the engine is initialized,
+     * this method doesn't acquire any lock.
      * 
      * @return The registered Restlet engine.
      */
-    public static synchronized Engine getInstance() {
+    public static Engine getInstance() {
         Engine result = instance;
 
-        if (result == null) {
-            result = register();
+        if ((result == null) || !result.initialized) {
+            synchronized (Engine.class) {
+                result = instance;
+
+                if (result == null) {
+                    result = register();
+                }
+            }
         }
 
         return result;
@@ -440,26 +447,32 @@ public class Engine {
     /** Class loader to use for dynamic class loading. */
     private volatile ClassLoader classLoader;
 
+    /**
+     * Indicates if the constructor has completed, so that the instance can be
+     * returned without lock.
+     */
+    private volatile boolean initialized;
+
     /** The logger facade to use. */
     private LoggerFacade loggerFacade;
 
     // [ifndef gwt] member
     /** List of available authenticator helpers. */
-    private final List<org.restlet.engine.security.AuthenticatorHelper> registeredAuthenticators;
+    private final org.restlet.engine.util.SnapshotList<org.restlet.engine.security.AuthenticatorHelper> registeredAuthenticators;
 
     /** List of available client connectors. */
     private final List<org.restlet.engine.connector.ConnectorHelper<Client>> registeredClients;
 
     // [ifndef gwt] member
     /** List of available converter helpers. */
-    private final List<org.restlet.engine.converter.ConverterHelper> registeredConverters;
+    private final org.restlet.engine.util.SnapshotList<org.restlet.engine.converter.ConverterHelper> registeredConverters;
 
     /** List of available protocol helpers. */
     private final List<org.restlet.engine.connector.ProtocolHelper> registeredProtocols;
 
     // [ifndef gwt] member
     /** List of available server connectors. */
-    private final List<org.restlet.engine.connector.ConnectorHelper<org.restlet.Server>> registeredServers;
+    private final org.restlet.engine.util.SnapshotList<org.restlet.engine.connector.ConnectorHelper<org.restlet.Server>> registeredServers;
 
     // [ifndef gwt] member
     /** User class loader to use for dynamic class loading. */
@@ -504,13 +517,16 @@ public class Engine {
             // [enddef]
         }
 
-        this.registeredClients = new CopyOnWriteArrayList<org.restlet.engine.connector.ConnectorHelper<Client>>();
+        // [ifndef gwt] instruction
+        this.registeredClients = new org.restlet.engine.util.SnapshotList<org.restlet.engine.connector.ConnectorHelper<Client>>();
+        // [ifdef gwt] instruction uncomment
+        // this.registeredClients = new CopyOnWriteArrayList<org.restlet.engine.connector.ConnectorHelper<Client>>();
         this.registeredProtocols = new CopyOnWriteArrayList<org.restlet.engine.connector.ProtocolHelper>();
 
         // [ifndef gwt]
-        this.registeredServers = new CopyOnWriteArrayList<org.restlet.engine.connector.ConnectorHelper<org.restlet.Server>>();
-        this.registeredAuthenticators = new CopyOnWriteArrayList<org.restlet.engine.security.AuthenticatorHelper>();
-        this.registeredConverters = new CopyOnWriteArrayList<org.restlet.engine.converter.ConverterHelper>();
+        this.registeredServers = new org.restlet.engine.util.SnapshotList<org.restlet.engine.connector.ConnectorHelper<org.restlet.Server>>();
+        this.registeredAuthenticators = new org.restlet.engine.util.SnapshotList<org.restlet.engine.security.AuthenticatorHelper>();
+        this.registeredConverters = new org.restlet.engine.util.SnapshotList<org.restlet.engine.converter.ConverterHelper>();
         // [enddef]
 
         if (discoverHelpers) {
@@ -529,6 +545,8 @@ public class Engine {
                                 e);
             }
         }
+
+        this.initialized = true;
     }
 
     // [ifndef gwt] method
@@ -748,7 +766,7 @@ public class Engine {
             ChallengeScheme challengeScheme, boolean clientSide,
             boolean serverSide) {
         org.restlet.engine.security.AuthenticatorHelper result = null;
-        List<org.restlet.engine.security.AuthenticatorHelper> helpers = getRegisteredAuthenticators();
+        List<org.restlet.engine.security.AuthenticatorHelper> helpers = getRegisteredAuthenticatorsSnapshot();
         org.restlet.engine.security.AuthenticatorHelper current;
 
         for (int i = 0; (result == null) && (i < helpers.size()); i++) {
@@ -814,6 +832,17 @@ public class Engine {
         return this.registeredAuthenticators;
     }
 
+    // [ifndef gwt] method
+    /**
+     * Returns an immutable snapshot of the available authentication helpers.
+     * A new snapshot is published after each registration change.
+     * 
+     * @return An immutable snapshot of the available authentication helpers.
+     */
+    public List<org.restlet.engine.security.AuthenticatorHelper> getRegisteredAuthenticatorsSnapshot() {
+        return this.registeredAuthenticators.getSnapshot();
+    }
+
     /**
      * Returns the list of available client connectors.
      * 
@@ -823,6 +852,18 @@ public class Engine {
         return this.registeredClients;
     }
 
+    // [ifndef gwt] method
+    /**
+     * Returns an immutable snapshot of the available client connectors. A new
+     * snapshot is published after each registration change.
+     * 
+     * @return An immutable snapshot of the available client connectors.
+     */
+    public List<org.restlet.engine.connector.ConnectorHelper<Client>> getRegisteredClientsSnapshot() {
+        return ((org.restlet.engine.util.SnapshotList<org.restlet.engine.connector.ConnectorHelper<Client>>) this.registeredClients)
+                .getSnapshot();
+    }
+
     // [ifndef gwt] method
     /**
      * Returns the list of available converters.
@@ -833,6 +874,17 @@ public class Engine {
         return registeredConverters;
     }
 
+    // [ifndef gwt] method
+    /**
+     * Returns an immutable snapshot of the available converters. A new
+     * snapshot is published after each registration change.
+     * 
+     * @return An immutable snapshot of the available converters.
+     */
+    public List<org.restlet.engine.converter.ConverterHelper> getRegisteredConvertersSnapshot() {
+        return this.registeredConverters.getSnapshot();
+    }
+
     /**
      * Returns the list of available protocol connectors.
      * 
@@ -852,6 +904,17 @@ public class Engine {
         return this.registeredServers;
     }
 
+    // [ifndef gwt] method
+    /**
+     * Returns an immutable snapshot of the available server connectors. A new
+     * snapshot is published after each registration change.
+     * 
+     * @return An immutable snapshot of the available server connectors.
+     */
+    public List<org.restlet.engine.connector.ConnectorHelper<org.restlet.Server>> getRegisteredServersSnapshot() {
+        return this.registeredServers.getSnapshot();
+    }
+
     // [ifndef gwt] method
     /**
      * Returns the class loader specified by the user and that should be used in
@@ -898,6 +961,10 @@ public class Engine {
                 new org.restlet.engine.connector.HttpServerHelper(null));
         getRegisteredServers().add(
                 new org.restlet.engine.connector.HttpsServerHelper(null));
+        getRegisteredServers().add(
+                new org.restlet.engine.connector.NioHttpServerHelper(null));
+        getRegisteredClients().add(
+                new org.restlet.engine.connector.NioHttpClientHelper(null));
         // [enddef]
 
         // [ifndef gae, gwt]
@@ -34,6 +34,7 @@ import java.util.logging.Level;
 import org.restlet.Context;
 import org.restlet.Message;
 import org.restlet.Request;
+import org.restlet.Response;
 import org.restlet.data.CacheDirective;
 import org.restlet.data.ChallengeResponse;
 import org.restlet.data.ClientInfo;
@@ -208,6 +209,11 @@ public class HttpRequest extends Request {
         return getHttpCall().abort();
     }
 
+    @Override
+    public void commit(Response response) {
+        getHttpCall().commit(response);
+    }
+
     @Override
     public void flushBuffers() throws IOException {
         getHttpCall().flushBuffers();
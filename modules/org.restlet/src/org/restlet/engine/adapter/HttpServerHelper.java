@@ -141,7 +141,11 @@ public class HttpServerHelper extends ServerHelper {
             HttpRequest request = getAdapter().toRequest(httpCall);
             HttpResponse response = new HttpResponse(httpCall, request);
             handle(request, response);
-            getAdapter().commit(response);
+
+            if (response.isAutoCommitting()
+                    || !httpCall.suspend(getAdapter(), response)) {
+                getAdapter().commit(response);
+            }
         } catch (Exception e) {
             getLogger().log(Level.WARNING,
                     "Error while handling an HTTP server call", e);
@@ -110,6 +110,8 @@ public class ServerAdapter extends Adapter {
      *            The high-level response.
      */
     public void commit(HttpResponse response) {
+        response.setCommitted(true);
+
         try {
             if ((response.getRequest().getMethod() != null)
                     && response.getRequest().getMethod().equals(Method.HEAD)) {
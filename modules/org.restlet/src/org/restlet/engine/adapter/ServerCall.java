@@ -28,6 +28,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PushbackInputStream;
+import java.nio.channels.WritableByteChannel;
 import java.security.cert.Certificate;
 import java.util.Arrays;
 import java.util.List;
@@ -103,6 +104,18 @@ public abstract class ServerCall extends Call {
      */
     public abstract boolean abort();
 
+    /**
+     * Asks the connector to commit a response that was previously suspended
+     * with {@link #suspend(ServerAdapter, HttpResponse)}. By default, it does
+     * nothing as all connectors don't support this feature.
+     * 
+     * @param response
+     *            The high-level response.
+     * @see Response#commit()
+     */
+    public void commit(Response response) {
+    }
+
     /**
      * Complete the response
      */
@@ -307,6 +320,18 @@ public abstract class ServerCall extends Call {
      */
     public abstract InputStream getRequestHeadStream();
 
+    /**
+     * Returns the response entity channel if it exists. When available, it is
+     * used instead of the response entity stream, allowing file
+     * representations to be transferred without copying them through the Java
+     * heap. Returns null by default.
+     * 
+     * @return The response entity channel if it exists.
+     */
+    public WritableByteChannel getResponseEntityChannel() {
+        return null;
+    }
+
     /**
      * Returns the response entity stream if it exists.
      * 
@@ -537,8 +562,26 @@ public abstract class ServerCall extends Call {
                 && !response.getEntity().hasKnownSize();
     }
 
+    /**
+     * Suspends the call so that the response is only committed when
+     * {@link Response#commit()} is invoked, without holding the current thread
+     * until then. By default, it returns false as all connectors don't support
+     * this feature.
+     * 
+     * @param adapter
+     *            The adapter that will commit the response.
+     * @param response
+     *            The high-level response that isn't automatically committed.
+     * @return True if the call was suspended, false if the response should be
+     *         committed right away.
+     */
+    public boolean suspend(ServerAdapter adapter, HttpResponse response) {
+        return false;
+    }
+
     /**
      * Attempts to write the response body. By default, it attempts to use the
+     * {@link #getResponseEntityChannel()} or the
      * {@link #getResponseEntityStream()} to synchronously write the entity
      * content.
      * 
@@ -548,6 +591,13 @@ public abstract class ServerCall extends Call {
      */
     protected void writeResponseBody(Representation responseEntity)
             throws IOException {
+        WritableByteChannel responseEntityChannel = getResponseEntityChannel();
+
+        if (responseEntityChannel != null) {
+            responseEntity.write(responseEntityChannel);
+            return;
+        }
+
         OutputStream responseEntityStream = getResponseEntityStream();
         try {
             writeResponseBody(responseEntity, responseEntityStream);
@@ -28,11 +28,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
+import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
 
 import org.restlet.data.Range;
 import org.restlet.engine.io.IoUtils;
 import org.restlet.engine.io.RangeInputStream;
+import org.restlet.representation.FileRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.util.WrapperRepresentation;
 
@@ -87,6 +89,54 @@ public class RangeRepresentation extends WrapperRepresentation {
         return IoUtils.getChannel(getStream());
     }
 
+    /**
+     * Returns the region of the wrapped file to write, as a start position and
+     * a number of bytes. It returns null if the wrapped representation isn't a
+     * file.
+     * 
+     * @param fileChannel
+     *            The channel of the wrapped file.
+     * @return The region of the wrapped file or null.
+     * @throws IOException
+     */
+    private long[] getFileRegion(FileChannel fileChannel) throws IOException {
+        Range range = getRange();
+        long totalSize = fileChannel.size();
+        long start;
+        long end;
+
+        if (range.getIndex() == Range.INDEX_LAST) {
+            start = (range.getSize() == Range.SIZE_MAX) ? 0 : totalSize
+                    - range.getSize();
+            end = totalSize;
+        } else {
+            start = range.getIndex();
+            end = (range.getSize() == Range.SIZE_MAX) ? totalSize : Math.min(
+                    totalSize, range.getIndex() + range.getSize());
+        }
+
+        start = Math.max(0, start);
+        return new long[] { start, Math.max(0, end - start) };
+    }
+
+    /**
+     * Returns the channel of the wrapped file if the wrapped representation is
+     * a file and if a range is set, so that the range can be directly
+     * transferred from the file.
+     * 
+     * @return The channel of the wrapped file or null.
+     * @throws IOException
+     */
+    private FileChannel getFileChannel() throws IOException {
+        if ((getRange() != null)
+                && (getWrappedRepresentation() instanceof FileRepresentation)) {
+            return ((FileRepresentation) getWrappedRepresentation())
+                    .getChannel();
+        }
+
+        return null;
+    }
+
     /**
      * Returns the range specific to this wrapper. The wrapped representation
      * must not have a range set itself.
@@ -135,14 +185,37 @@ public class RangeRepresentation extends WrapperRepresentation {
 
     @Override
     public void write(OutputStream outputStream) throws IOException {
-        IoUtils.copy(getStream(), outputStream);
+        FileChannel fileChannel = getFileChannel();
+
+        if (fileChannel != null) {
+            try {
+                long[] region = getFileRegion(fileChannel);
+                IoUtils.copy(fileChannel, region[0], region[1], outputStream);
+            } finally {
+                fileChannel.close();
+            }
+        } else {
+            IoUtils.copy(getStream(), outputStream);
+        }
     }
 
     @Override
     public void write(WritableByteChannel writableChannel) throws IOException {
-        OutputStream os = IoUtils.getStream(writableChannel);
-        write(os);
-        os.flush();
+        FileChannel fileChannel = getFileChannel();
+
+        if (fileChannel != null) {
+            try {
+                long[] region = getFileRegion(fileChannel);
+                IoUtils.copy(fileChannel, region[0], region[1],
+                        writableChannel);
+            } finally {
+                fileChannel.close();
+            }
+        } else {
+            OutputStream os = IoUtils.getStream(writableChannel);
+            write(os);
+            os.flush();
+        }
     }
 
 }
@@ -0,0 +1,411 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.engine.cache;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.restlet.Response;
+import org.restlet.data.CacheDirective;
+import org.restlet.data.CharacterSet;
+import org.restlet.data.Dimension;
+import org.restlet.data.Disposition;
+import org.restlet.data.Encoding;
+import org.restlet.data.Header;
+import org.restlet.data.Language;
+import org.restlet.data.MediaType;
+import org.restlet.data.Tag;
+import org.restlet.engine.header.HeaderConstants;
+import org.restlet.representation.ByteArrayRepresentation;
+import org.restlet.representation.InputRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.util.Series;
+
+// [excludes gwt]
+/**
+ * Response stored in an {@link HttpCache}. It captures the entity metadata and
+ * content, the cache directives and the request preferences that selected this
+ * variant of the resource. The freshness information is updated when the
+ * entry is successfully revalidated.
+ * 
+ * @author Jerome Louvel
+ */
+public class CacheEntry {
+
+    /**
+     * Input stream reading the remaining bytes of a buffer.
+     */
+    private static class BufferInputStream extends InputStream {
+
+        /** The source buffer. */
+        private final ByteBuffer buffer;
+
+        /**
+         * Constructor.
+         * 
+         * @param buffer
+         *            The source buffer.
+         */
+        public BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int available() {
+            return this.buffer.remaining();
+        }
+
+        @Override
+        public int read() {
+            return this.buffer.hasRemaining() ? (this.buffer.get() & 0xff)
+                    : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!this.buffer.hasRemaining()) {
+                return -1;
+            }
+
+            int result = Math.min(len, this.buffer.remaining());
+            this.buffer.get(b, off, result);
+            return result;
+        }
+    }
+
+    /** The age reported by the origin or by upstream caches, in seconds. */
+    private volatile int age;
+
+    /** The response cache directives. */
+    private volatile List<CacheDirective> cacheDirectives;
+
+    /** The entity character set. */
+    private final CharacterSet characterSet;
+
+    /** The entity content. */
+    private volatile ByteBuffer content;
+
+    /** The response date. */
+    private volatile Date date;
+
+    /** The dimensions the response varies on. */
+    private final Set<Dimension> dimensions;
+
+    /** The entity disposition. */
+    private final Disposition disposition;
+
+    /** The entity encodings. */
+    private final List<Encoding> encodings;
+
+    /** The entity expiration date. */
+    private volatile Date expirationDate;
+
+    /** The extension headers of the response, or null. */
+    private final Series<Header> headers;
+
+    /** The cache key of the resource. */
+    private final String key;
+
+    /** The entity languages. */
+    private final List<Language> languages;
+
+    /** The entity media type. */
+    private final MediaType mediaType;
+
+    /** The entity modification date. */
+    private final Date modificationDate;
+
+    /** The time when the request was sent, in milliseconds. */
+    private volatile long requestTime;
+
+    /** The time when the response was received, in milliseconds. */
+    private volatile long responseTime;
+
+    /** The request preferences that selected this variant, by dimension. */
+    private final Map<Dimension, String> selectors;
+
+    /** The entity tag. */
+    private final Tag tag;
+
+    /**
+     * Constructor.
+     * 
+     * @param key
+     *            The cache key of the resource.
+     * @param selectors
+     *            The request preferences that selected this variant.
+     * @param response
+     *            The response to store, with an available entity.
+     * @param content
+     *            The entity content.
+     * @param requestTime
+     *            The time when the request was sent.
+     * @param responseTime
+     *            The time when the response was received.
+     */
+    @SuppressWarnings("unchecked")
+    public CacheEntry(String key, Map<Dimension, String> selectors,
+            Response response, ByteBuffer content, long requestTime,
+            long responseTime) {
+        Representation entity = response.getEntity();
+        Series<Header> responseHeaders = (Series<Header>) response
+                .getAttributes().get(HeaderConstants.ATTRIBUTE_HEADERS);
+
+        this.key = key;
+        this.selectors = selectors;
+        this.content = content;
+        this.dimensions = Collections.unmodifiableSet(new HashSet<Dimension>(
+                response.getDimensions()));
+        this.headers = (responseHeaders == null) ? null : new Series<Header>(
+                Header.class, new ArrayList<Header>(responseHeaders));
+        this.characterSet = entity.getCharacterSet();
+        this.disposition = entity.getDisposition();
+        this.encodings = new ArrayList<Encoding>(entity.getEncodings());
+        this.languages = new ArrayList<Language>(entity.getLanguages());
+        this.mediaType = entity.getMediaType();
+        this.modificationDate = entity.getModificationDate();
+        this.tag = entity.getTag();
+        update(response, requestTime, responseTime);
+    }
+
+    /**
+     * Creates a new entity reading the stored content, with the stored
+     * metadata.
+     * 
+     * @return A new entity.
+     */
+    public Representation createEntity() {
+        ByteBuffer buffer = getContent().duplicate();
+        int size = buffer.remaining();
+        Representation result;
+
+        if (buffer.hasArray()) {
+            result = new ByteArrayRepresentation(buffer.array(),
+                    buffer.arrayOffset() + buffer.position(), size,
+                    this.mediaType, size);
+        } else {
+            result = new InputRepresentation(new BufferInputStream(buffer),
+                    this.mediaType, size);
+        }
+
+        result.setCharacterSet(this.characterSet);
+        result.setDisposition(this.disposition);
+        result.setEncodings(new ArrayList<Encoding>(this.encodings));
+        result.setExpirationDate(this.expirationDate);
+        result.setLanguages(new ArrayList<Language>(this.languages));
+        result.setModificationDate(this.modificationDate);
+        result.setTag(this.tag);
+        return result;
+    }
+
+    /**
+     * Returns the age reported by the origin or by upstream caches, in
+     * seconds.
+     * 
+     * @return The reported age.
+     */
+    public int getAge() {
+        return age;
+    }
+
+    /**
+     * Returns the response cache directives.
+     * 
+     * @return The response cache directives.
+     */
+    public List<CacheDirective> getCacheDirectives() {
+        return cacheDirectives;
+    }
+
+    /**
+     * Returns the entity content. Callers should duplicate the buffer before
+     * reading it.
+     * 
+     * @return The entity content.
+     */
+    public ByteBuffer getContent() {
+        return content;
+    }
+
+    /**
+     * Returns the response date.
+     * 
+     * @return The response date.
+     */
+    public Date getDate() {
+        return date;
+    }
+
+    /**
+     * Returns the dimensions the response varies on.
+     * 
+     * @return The dimensions the response varies on.
+     */
+    public Set<Dimension> getDimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Returns the entity expiration date.
+     * 
+     * @return The entity expiration date.
+     */
+    public Date getExpirationDate() {
+        return expirationDate;
+    }
+
+    /**
+     * Returns the extension headers of the response, or null.
+     * 
+     * @return The extension headers of the response, or null.
+     */
+    public Series<Header> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Returns the cache key of the resource.
+     * 
+     * @return The cache key of the resource.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the entity modification date.
+     * 
+     * @return The entity modification date.
+     */
+    public Date getModificationDate() {
+        return modificationDate;
+    }
+
+    /**
+     * Returns the time when the request was sent, in milliseconds.
+     * 
+     * @return The time when the request was sent.
+     */
+    public long getRequestTime() {
+        return requestTime;
+    }
+
+    /**
+     * Returns the time when the response was received, in milliseconds.
+     * 
+     * @return The time when the response was received.
+     */
+    public long getResponseTime() {
+        return responseTime;
+    }
+
+    /**
+     * Returns the request preferences that selected this variant, by
+     * dimension.
+     * 
+     * @return The request preferences that selected this variant.
+     */
+    public Map<Dimension, String> getSelectors() {
+        return selectors;
+    }
+
+    /**
+     * Returns the size of the entity content.
+     * 
+     * @return The size of the entity content.
+     */
+    public int getSize() {
+        return getContent().remaining();
+    }
+
+    /**
+     * Returns the entity tag.
+     * 
+     * @return The entity tag.
+     */
+    public Tag getTag() {
+        return tag;
+    }
+
+    /**
+     * Indicates if the entry has a validator allowing a conditional
+     * revalidation.
+     * 
+     * @return True if the entry has a tag or a modification date.
+     */
+    public boolean hasValidator() {
+        return (this.tag != null) || (this.modificationDate != null);
+    }
+
+    /**
+     * Sets the entity content.
+     * 
+     * @param content
+     *            The entity content.
+     */
+    public void setContent(ByteBuffer content) {
+        this.content = content;
+    }
+
+    /**
+     * Updates the freshness information from a new response, for example a
+     * 304 (Not modified) response received when revalidating the entry.
+     * 
+     * @param response
+     *            The new response.
+     * @param requestTime
+     *            The time when the request was sent.
+     * @param responseTime
+     *            The time when the response was received.
+     */
+    public void update(Response response, long requestTime, long responseTime) {
+        if ((this.cacheDirectives == null)
+                || !response.getCacheDirectives().isEmpty()) {
+            this.cacheDirectives = Collections
+                    .unmodifiableList(new ArrayList<CacheDirective>(response
+                            .getCacheDirectives()));
+        }
+
+        if ((response.getEntity() != null)
+                && (response.getEntity().getExpirationDate() != null)) {
+            this.expirationDate = response.getEntity().getExpirationDate();
+        }
+
+        this.age = response.getAge();
+        this.date = (response.getDate() == null) ? new Date(responseTime)
+                : response.getDate();
+        this.requestTime = requestTime;
+        this.responseTime = responseTime;
+    }
+
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.engine.cache;
+
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.data.Conditions;
+import org.restlet.data.Status;
+import org.restlet.engine.header.HeaderConstants;
+import org.restlet.routing.Filter;
+
+// [excludes gwt]
+/**
+ * Filter answering requests from an {@link HttpCache}. Fresh entries are
+ * served without invoking the next Restlet, stale entries are revalidated with
+ * a conditional request and storable responses are stored. Successful unsafe
+ * requests invalidate the entries of their resource.<br>
+ * <br>
+ * On the server-side, the filter is added by the
+ * {@link org.restlet.service.CacheService}. On the client-side, it can be
+ * inserted in front of a {@link org.restlet.Client} connector with a private
+ * cache, either for a single client resource or for all the calls dispatched
+ * by a context:
+ * 
+ * <pre>
+ * HttpCache cache = new HttpCache(new MemoryCacheStore(), false);
+ * 
+ * // For a single client resource
+ * clientResource.setNext(new CacheFilter(context, cache, client));
+ * 
+ * // For all the client calls of a context
+ * context.setClientDispatcher(new CacheFilter(context, cache, context
+ *         .getClientDispatcher()));
+ * </pre>
+ * 
+ * The cache can be shared by several filters and used concurrently.
+ * 
+ * @author Jerome Louvel
+ */
+public class CacheFilter extends Filter {
+
+    /** The HTTP cache. */
+    private final HttpCache cache;
+
+    /**
+     * Constructor.
+     * 
+     * @param context
+     *            The context.
+     * @param cache
+     *            The HTTP cache.
+     */
+    public CacheFilter(Context context, HttpCache cache) {
+        this(context, cache, null);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param context
+     *            The context.
+     * @param cache
+     *            The HTTP cache.
+     * @param next
+     *            The next Restlet.
+     */
+    public CacheFilter(Context context, HttpCache cache, Restlet next) {
+        super(context, next);
+        this.cache = cache;
+    }
+
+    @Override
+    protected int doHandle(Request request, Response response) {
+        HttpCache cache = getCache();
+
+        if (!cache.isCacheable(request)) {
+            int result = super.doHandle(request, response);
+            cache.invalidate(request, response);
+            return result;
+        }
+
+        long requestTime = System.currentTimeMillis();
+        CacheEntry entry = cache.lookup(request);
+
+        if ((entry != null) && cache.isFresh(entry, request, requestTime)) {
+            cache.onHit();
+            cache.serve(entry, request, response, requestTime);
+            return CONTINUE;
+        }
+
+        if (HttpCache.hasDirective(request.getCacheDirectives(),
+                HeaderConstants.CACHE_ONLY_IF_CACHED)) {
+            cache.onMiss();
+            response.setStatus(Status.SERVER_ERROR_GATEWAY_TIMEOUT);
+            return CONTINUE;
+        }
+
+        // Revalidate the stale entry unless the client sent its own
+        // conditions
+        Conditions conditions = request.getConditions();
+        boolean revalidating = (entry != null) && entry.hasValidator()
+                && !conditions.hasSome();
+        int result;
+
+        if (revalidating) {
+            cache.onRevalidation();
+            request.setConditions(cache.createConditions(entry));
+        } else {
+            cache.onMiss();
+        }
+
+        try {
+            result = super.doHandle(request, response);
+        } finally {
+            if (revalidating) {
+                request.setConditions(conditions);
+            }
+        }
+
+        long responseTime = System.currentTimeMillis();
+
+        if (revalidating
+                && Status.REDIRECTION_NOT_MODIFIED.equals(response.getStatus())) {
+            cache.refresh(entry, response, requestTime, responseTime);
+            cache.serve(entry, request, response, responseTime);
+        } else if (cache.isStorable(request, response)) {
+            cache.store(request, response, requestTime, responseTime);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the HTTP cache.
+     * 
+     * @return The HTTP cache.
+     */
+    public HttpCache getCache() {
+        return cache;
+    }
+
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.engine.cache;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// [excludes gwt]
+/**
+ * Storage tier of an {@link HttpCache}. Entries are grouped by the cache key
+ * of their resource, one entry per variant. Implementations must be safe for
+ * concurrent use.
+ * 
+ * @author Jerome Louvel
+ */
+public abstract class CacheStore {
+
+    /** The number of entries evicted to make room for new ones. */
+    private final AtomicLong evictionCount;
+
+    /**
+     * Constructor.
+     */
+    public CacheStore() {
+        this.evictionCount = new AtomicLong();
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public abstract void clear();
+
+    /**
+     * Returns the entries stored for a resource, one per variant.
+     * 
+     * @param key
+     *            The cache key of the resource.
+     * @return The entries stored for the resource or null.
+     */
+    public abstract List<CacheEntry> get(String key);
+
+    /**
+     * Returns the number of stored entries.
+     * 
+     * @return The number of stored entries.
+     */
+    public abstract int getEntryCount();
+
+    /**
+     * Returns the number of entries evicted to make room for new ones.
+     * 
+     * @return The number of evicted entries.
+     */
+    public long getEvictionCount() {
+        return this.evictionCount.get();
+    }
+
+    /**
+     * Returns the total size of the stored contents.
+     * 
+     * @return The total size of the stored contents.
+     */
+    public abstract long getSize();
+
+    /**
+     * Called when an entry was evicted to make room for new ones.
+     * 
+     * @param entry
+     *            The evicted entry.
+     */
+    protected void onEvicted(CacheEntry entry) {
+        this.evictionCount.incrementAndGet();
+    }
+
+    /**
+     * Stores an entry, replacing the entry of the same resource variant if
+     * any.
+     * 
+     * @param entry
+     *            The entry to store.
+     */
+    public abstract void put(CacheEntry entry);
+
+    /**
+     * Removes all the entries stored for a resource.
+     * 
+     * @param key
+     *            The cache key of the resource.
+     */
+    public abstract void remove(String key);
+
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.engine.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+import org.restlet.Context;
+import org.restlet.engine.io.IoUtils;
+
+// [excludes gwt]
+/**
+ * Cache store writing the contents into files of a local directory and
+ * reading them back through memory mapping. The entry metadata stays in the
+ * heap, so the stored contents don't survive a restart.
+ * 
+ * @author Jerome Louvel
+ */
+public class FileCacheStore extends MemoryCacheStore {
+
+    /** The directory of the content files. */
+    private final File directory;
+
+    /** The content files by entry. */
+    private final Map<CacheEntry, File> files;
+
+    /**
+     * Constructor.
+     * 
+     * @param directory
+     *            The directory of the content files, created if needed.
+     * @param maxSize
+     *            The maximum size of the stored contents.
+     */
+    public FileCacheStore(File directory, long maxSize) {
+        super(maxSize);
+        this.directory = directory;
+        this.files = new ConcurrentHashMap<CacheEntry, File>();
+    }
+
+    /**
+     * Returns the directory of the content files.
+     * 
+     * @return The directory of the content files.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    @Override
+    protected void releaseContent(CacheEntry entry) {
+        File file = this.files.remove(entry);
+
+        if (file != null) {
+            IoUtils.delete(file);
+        }
+    }
+
+    /**
+     * Writes the content into a new file and replaces it by a read-only
+     * mapping of this file. If the file can't be written, the content stays in
+     * the heap.
+     */
+    @Override
+    protected void storeContent(CacheEntry entry) {
+        File file = null;
+
+        try {
+            if (!this.directory.exists()) {
+                this.directory.mkdirs();
+            }
+
+            file = File.createTempFile("entry", ".cache", this.directory);
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+            try {
+                FileChannel channel = raf.getChannel();
+                ByteBuffer content = entry.getContent().duplicate();
+                int size = content.remaining();
+
+                while (content.hasRemaining()) {
+                    channel.write(content);
+                }
+
+                entry.setContent(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                        size));
+                this.files.put(entry, file);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            Context.getCurrentLogger().log(Level.WARNING,
+                    "Unable to write the cache file, keeping it in memory", e);
+
+            if (file != null) {
+                IoUtils.delete(file);
+            }
+        }
+    }
+
+}
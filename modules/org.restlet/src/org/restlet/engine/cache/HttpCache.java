@@ -0,0 +1,813 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.engine.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.CacheDirective;
+import org.restlet.data.ClientInfo;
+import org.restlet.data.Conditions;
+import org.restlet.data.Dimension;
+import org.restlet.data.Header;
+import org.restlet.data.Method;
+import org.restlet.data.Reference;
+import org.restlet.data.Status;
+import org.restlet.engine.header.HeaderConstants;
+import org.restlet.engine.header.PreferenceWriter;
+import org.restlet.engine.io.IoUtils;
+import org.restlet.representation.InputRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.util.Series;
+
+// [excludes gwt]
+/**
+ * HTTP cache following the RFC 7234 rules to store responses, decide whether
+ * they are fresh and revalidate them. Entries are keyed by the target resource
+ * reference and by the request preferences selecting the variant, based on
+ * the dimensions of the response (the "Vary" header). The entries are kept in
+ * a pluggable {@link CacheStore}.<br>
+ * <br>
+ * A shared cache, as used on the server-side, honors the "s-maxage" and
+ * "proxy-revalidate" directives, doesn't store "private" responses nor
+ * responses to authenticated requests and responses setting cookies. A
+ * private cache, as used in front of a client connector, stores them.
+ * 
+ * @author Jerome Louvel
+ * @see <a href="https://tools.ietf.org/html/rfc7234">RFC 7234</a>
+ */
+public class HttpCache {
+
+    /**
+     * Output stream buffering the written bytes up to a maximum size.
+     */
+    private static class BoundedOutputStream extends OutputStream {
+
+        /** The written bytes. */
+        private final ByteArrayOutputStream buffer;
+
+        /** The maximum number of bytes. */
+        private final long maxSize;
+
+        /**
+         * Constructor.
+         * 
+         * @param maxSize
+         *            The maximum number of bytes.
+         */
+        public BoundedOutputStream(long maxSize) {
+            this.buffer = new ByteArrayOutputStream();
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * Returns a buffer with the written bytes.
+         * 
+         * @return A buffer with the written bytes.
+         */
+        public ByteBuffer toBuffer() {
+            return ByteBuffer.wrap(this.buffer.toByteArray());
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (this.buffer.size() + len > this.maxSize) {
+                throw new IOException(
+                        "The entity exceeds the maximum entry size");
+            }
+
+            this.buffer.write(b, off, len);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+    }
+
+    /** The default maximum size of a stored entity. */
+    public static final long DEFAULT_MAX_ENTRY_SIZE = 1024 * 1024;
+
+    /** The dimensions that can be matched against a request. */
+    private static final List<Dimension> SELECTING_DIMENSIONS = Arrays.asList(
+            Dimension.CHARACTER_SET, Dimension.CLIENT_AGENT,
+            Dimension.ENCODING, Dimension.LANGUAGE, Dimension.MEDIA_TYPE);
+
+    /**
+     * Returns the value of a cache directive.
+     * 
+     * @param directives
+     *            The cache directives.
+     * @param name
+     *            The directive name.
+     * @return The directive value, an empty string if the directive has no
+     *         value or null if it isn't present.
+     */
+    public static String getDirective(List<CacheDirective> directives,
+            String name) {
+        for (CacheDirective directive : directives) {
+            if (directive.getName().equalsIgnoreCase(name)) {
+                return (directive.getValue() == null) ? "" : directive
+                        .getValue();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the number of seconds of a cache directive in milliseconds.
+     * 
+     * @param directives
+     *            The cache directives.
+     * @param name
+     *            The directive name.
+     * @return The directive value in milliseconds or -1 if the directive isn't
+     *         present or invalid.
+     */
+    public static long getDirectiveMs(List<CacheDirective> directives,
+            String name) {
+        String value = getDirective(directives, name);
+
+        if (value != null) {
+            try {
+                return Math.max(0, Long.parseLong(value.trim())) * 1000;
+            } catch (NumberFormatException e) {
+                // Ignore the invalid directive
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Indicates if a cache directive is present.
+     * 
+     * @param directives
+     *            The cache directives.
+     * @param name
+     *            The directive name.
+     * @return True if the directive is present.
+     */
+    public static boolean hasDirective(List<CacheDirective> directives,
+            String name) {
+        return getDirective(directives, name) != null;
+    }
+
+    /** The number of requests served with fresh entries. */
+    private final AtomicLong hitCount;
+
+    /** The maximum size of a stored entity. */
+    private volatile long maxEntrySize;
+
+    /** The number of requests that found no usable entry. */
+    private final AtomicLong missCount;
+
+    /** The number of requests that revalidated a stale entry. */
+    private final AtomicLong revalidationCount;
+
+    /** Indicates if the cache is shared between several users. */
+    private final boolean shared;
+
+    /** The storage tier. */
+    private volatile CacheStore store;
+
+    /**
+     * Constructor.
+     * 
+     * @param store
+     *            The storage tier.
+     * @param shared
+     *            Indicates if the cache is shared between several users.
+     */
+    public HttpCache(CacheStore store, boolean shared) {
+        this.hitCount = new AtomicLong();
+        this.maxEntrySize = DEFAULT_MAX_ENTRY_SIZE;
+        this.missCount = new AtomicLong();
+        this.revalidationCount = new AtomicLong();
+        this.shared = shared;
+        this.store = store;
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public void clear() {
+        getStore().clear();
+    }
+
+    /**
+     * Creates the conditions used to revalidate a stale entry.
+     * 
+     * @param entry
+     *            The stale entry.
+     * @return The revalidation conditions.
+     */
+    public Conditions createConditions(CacheEntry entry) {
+        Conditions result = new Conditions();
+
+        if (entry.getTag() != null) {
+            result.getNoneMatch().add(entry.getTag());
+        } else {
+            result.setModifiedSince(entry.getModificationDate());
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the current age of an entry, in milliseconds.
+     * 
+     * @param entry
+     *            The entry.
+     * @param now
+     *            The current time.
+     * @return The current age of the entry.
+     */
+    public long getCurrentAge(CacheEntry entry, long now) {
+        long apparentAge = Math.max(0, entry.getResponseTime()
+                - entry.getDate().getTime());
+        long correctedAge = (entry.getAge() * 1000L)
+                + (entry.getResponseTime() - entry.getRequestTime());
+        return Math.max(apparentAge, correctedAge)
+                + (now - entry.getResponseTime());
+    }
+
+    /**
+     * Returns the freshness lifetime of an entry, in milliseconds.
+     * 
+     * @param entry
+     *            The entry.
+     * @return The freshness lifetime of the entry.
+     */
+    public long getFreshnessLifetime(CacheEntry entry) {
+        List<CacheDirective> directives = entry.getCacheDirectives();
+        long result = -1;
+
+        if (isShared()) {
+            result = getDirectiveMs(directives,
+                    HeaderConstants.CACHE_SHARED_MAX_AGE);
+        }
+
+        if (result < 0) {
+            result = getDirectiveMs(directives, HeaderConstants.CACHE_MAX_AGE);
+        }
+
+        if ((result < 0) && (entry.getExpirationDate() != null)) {
+            result = Math.max(0, entry.getExpirationDate().getTime()
+                    - entry.getDate().getTime());
+        }
+
+        return Math.max(0, result);
+    }
+
+    /**
+     * Returns the number of requests served with fresh entries.
+     * 
+     * @return The number of hits.
+     */
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    /**
+     * Returns the cache key of the resource targeted by a request, its
+     * absolute reference without fragment.
+     * 
+     * @param request
+     *            The request.
+     * @return The cache key.
+     */
+    public String getKey(Request request) {
+        return getKey(request.getResourceRef());
+    }
+
+    /**
+     * Returns the cache key of a resource, its absolute reference without
+     * fragment.
+     * 
+     * @param reference
+     *            The resource reference.
+     * @return The cache key.
+     */
+    protected String getKey(Reference reference) {
+        return reference.getTargetRef().toString(true, false);
+    }
+
+    /**
+     * Returns the maximum size of a stored entity.
+     * 
+     * @return The maximum size of a stored entity.
+     */
+    public long getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    /**
+     * Returns the number of requests that found no usable entry.
+     * 
+     * @return The number of misses.
+     */
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /**
+     * Returns the number of requests that revalidated a stale entry.
+     * 
+     * @return The number of revalidations.
+     */
+    public long getRevalidationCount() {
+        return this.revalidationCount.get();
+    }
+
+    /**
+     * Returns the request preferences selecting a variant for a given
+     * dimension.
+     * 
+     * @param dimension
+     *            The dimension.
+     * @param request
+     *            The request.
+     * @return The request preferences for this dimension.
+     */
+    protected String getSelector(Dimension dimension, Request request) {
+        ClientInfo clientInfo = request.getClientInfo();
+
+        switch (dimension) {
+        case CHARACTER_SET:
+            return PreferenceWriter.write(clientInfo
+                    .getAcceptedCharacterSets());
+        case CLIENT_AGENT:
+            return clientInfo.getAgent();
+        case ENCODING:
+            return PreferenceWriter.write(clientInfo.getAcceptedEncodings());
+        case LANGUAGE:
+            return PreferenceWriter.write(clientInfo.getAcceptedLanguages());
+        case MEDIA_TYPE:
+            return PreferenceWriter.write(clientInfo.getAcceptedMediaTypes());
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Returns the request preferences selecting a variant.
+     * 
+     * @param request
+     *            The request.
+     * @param dimensions
+     *            The dimensions the response varies on.
+     * @return The request preferences by dimension.
+     */
+    protected Map<Dimension, String> getSelectors(Request request,
+            Iterable<Dimension> dimensions) {
+        Map<Dimension, String> result = new HashMap<Dimension, String>();
+
+        for (Dimension dimension : dimensions) {
+            result.put(dimension, getSelector(dimension, request));
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the storage tier.
+     * 
+     * @return The storage tier.
+     */
+    public CacheStore getStore() {
+        return store;
+    }
+
+    /**
+     * Removes the entries of a resource after a successful unsafe request,
+     * including the resources identified by the "Location" and
+     * "Content-Location" headers.
+     * 
+     * @param request
+     *            The unsafe request.
+     * @param response
+     *            The response.
+     */
+    public void invalidate(Request request, Response response) {
+        Status status = response.getStatus();
+
+        if (!request.getMethod().isSafe()
+                && (status.isSuccess() || status.isRedirection())) {
+            getStore().remove(getKey(request));
+
+            if (response.getLocationRef() != null) {
+                getStore().remove(getKey(response.getLocationRef()));
+            }
+
+            if ((response.getEntity() != null)
+                    && (response.getEntity().getLocationRef() != null)) {
+                getStore().remove(
+                        getKey(response.getEntity().getLocationRef()));
+            }
+        }
+    }
+
+    /**
+     * Indicates if a request can be answered by the cache. Only GET and HEAD
+     * requests are considered, and a shared cache ignores the authenticated
+     * ones.
+     * 
+     * @param request
+     *            The request.
+     * @return True if the request can be answered by the cache.
+     */
+    public boolean isCacheable(Request request) {
+        Method method = request.getMethod();
+
+        if (!Method.GET.equals(method) && !Method.HEAD.equals(method)) {
+            return false;
+        }
+
+        return !isShared() || (request.getChallengeResponse() == null);
+    }
+
+    /**
+     * Indicates if an entry can be used to answer a request without
+     * revalidation, based on its freshness and on the request directives.
+     * 
+     * @param entry
+     *            The entry.
+     * @param request
+     *            The request.
+     * @param now
+     *            The current time.
+     * @return True if the entry can be used without revalidation.
+     */
+    public boolean isFresh(CacheEntry entry, Request request, long now) {
+        List<CacheDirective> requestDirectives = request.getCacheDirectives();
+        List<CacheDirective> responseDirectives = entry.getCacheDirectives();
+
+        if (hasDirective(requestDirectives, HeaderConstants.CACHE_NO_CACHE)
+                || hasDirective(responseDirectives,
+                        HeaderConstants.CACHE_NO_CACHE)) {
+            return false;
+        }
+
+        long age = getCurrentAge(entry, now);
+        long lifetime = getFreshnessLifetime(entry);
+        long maxAge = getDirectiveMs(requestDirectives,
+                HeaderConstants.CACHE_MAX_AGE);
+        long minFresh = getDirectiveMs(requestDirectives,
+                HeaderConstants.CACHE_MIN_FRESH);
+
+        if ((maxAge >= 0) && (age > maxAge)) {
+            return false;
+        }
+
+        if (lifetime - age > Math.max(0, minFresh)) {
+            return true;
+        }
+
+        // The entry is stale, check if the client accepts it anyway
+        String maxStale = getDirective(requestDirectives,
+                HeaderConstants.CACHE_MAX_STALE);
+
+        if ((maxStale == null)
+                || (minFresh >= 0)
+                || hasDirective(responseDirectives,
+                        HeaderConstants.CACHE_MUST_REVALIDATE)
+                || (isShared() && (hasDirective(responseDirectives,
+                        HeaderConstants.CACHE_PROXY_MUST_REVALIDATE) || hasDirective(
+                        responseDirectives,
+                        HeaderConstants.CACHE_SHARED_MAX_AGE)))) {
+            return false;
+        }
+
+        long maxStaleMs = getDirectiveMs(requestDirectives,
+                HeaderConstants.CACHE_MAX_STALE);
+        return (maxStaleMs < 0) || (age - lifetime <= maxStaleMs);
+    }
+
+    /**
+     * Indicates if the cache is shared between several users.
+     * 
+     * @return True if the cache is shared between several users.
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * Indicates if a response can be stored. Only successful responses to GET
+     * requests with an available entity and a freshness lifetime or a
+     * validator are stored, unless a directive prevents it.
+     * 
+     * @param request
+     *            The request.
+     * @param response
+     *            The response.
+     * @return True if the response can be stored.
+     */
+    public boolean isStorable(Request request, Response response) {
+        if (!Method.GET.equals(request.getMethod())
+                || !(Status.SUCCESS_OK.equals(response.getStatus()) || Status.SUCCESS_NON_AUTHORITATIVE
+                        .equals(response.getStatus()))
+                || !response.isEntityAvailable()) {
+            return false;
+        }
+
+        List<CacheDirective> directives = response.getCacheDirectives();
+
+        if (hasDirective(request.getCacheDirectives(),
+                HeaderConstants.CACHE_NO_STORE)
+                || hasDirective(directives, HeaderConstants.CACHE_NO_STORE)) {
+            return false;
+        }
+
+        if (isShared()
+                && (hasDirective(directives, HeaderConstants.CACHE_PRIVATE) || !response
+                        .getCookieSettings().isEmpty())) {
+            return false;
+        }
+
+        if (!SELECTING_DIMENSIONS.containsAll(response.getDimensions())) {
+            return false;
+        }
+
+        Representation entity = response.getEntity();
+        return hasDirective(directives, HeaderConstants.CACHE_MAX_AGE)
+                || (isShared() && hasDirective(directives,
+                        HeaderConstants.CACHE_SHARED_MAX_AGE))
+                || (entity.getExpirationDate() != null)
+                || (entity.getTag() != null)
+                || (entity.getModificationDate() != null);
+    }
+
+    /**
+     * Returns the entry matching the variant selected by a request.
+     * 
+     * @param request
+     *            The request.
+     * @return The matching entry or null.
+     */
+    public CacheEntry lookup(Request request) {
+        List<CacheEntry> entries = getStore().get(getKey(request));
+        CacheEntry result = null;
+
+        if (entries != null) {
+            for (CacheEntry entry : entries) {
+                if (getSelectors(request, entry.getDimensions()).equals(
+                        entry.getSelectors())
+                        && ((result == null) || (entry.getResponseTime() > result
+                                .getResponseTime()))) {
+                    result = entry;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Records a request served with a fresh entry.
+     */
+    void onHit() {
+        this.hitCount.incrementAndGet();
+    }
+
+    /**
+     * Records a request that found no usable entry.
+     */
+    void onMiss() {
+        this.missCount.incrementAndGet();
+    }
+
+    /**
+     * Records a request that revalidated a stale entry.
+     */
+    void onRevalidation() {
+        this.revalidationCount.incrementAndGet();
+    }
+
+    /**
+     * Reads a transient entity of unknown size, such as a chunked entity
+     * received by a client connector. If the entity turns out to be too large
+     * to be stored, the response entity is replaced by one streaming the bytes
+     * already read followed by the rest of the original stream.
+     * 
+     * @param response
+     *            The response.
+     * @return The entity content or null if it is too large.
+     * @throws IOException
+     */
+    private ByteBuffer read(Response response) throws IOException {
+        Representation entity = response.getEntity();
+        InputStream stream = entity.getStream();
+
+        if (stream == null) {
+            return ByteBuffer.allocate(0);
+        }
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[IoUtils.BUFFER_SIZE];
+        int read = 0;
+
+        while ((content.size() <= getMaxEntrySize())
+                && ((read = stream.read(buffer)) != -1)) {
+            content.write(buffer, 0, read);
+        }
+
+        if (read != -1) {
+            Representation remaining = new InputRepresentation(
+                    new SequenceInputStream(new ByteArrayInputStream(
+                            content.toByteArray()), stream),
+                    entity.getMediaType());
+            remaining.setCharacterSet(entity.getCharacterSet());
+            remaining.setDisposition(entity.getDisposition());
+            remaining.setEncodings(entity.getEncodings());
+            remaining.setExpirationDate(entity.getExpirationDate());
+            remaining.setLanguages(entity.getLanguages());
+            remaining.setModificationDate(entity.getModificationDate());
+            remaining.setTag(entity.getTag());
+            response.setEntity(remaining);
+            return null;
+        }
+
+        stream.close();
+        return ByteBuffer.wrap(content.toByteArray());
+    }
+
+    /**
+     * Updates an entry after a successful revalidation.
+     * 
+     * @param entry
+     *            The revalidated entry.
+     * @param response
+     *            The 304 (Not modified) response.
+     * @param requestTime
+     *            The time when the request was sent.
+     * @param responseTime
+     *            The time when the response was received.
+     */
+    public void refresh(CacheEntry entry, Response response,
+            long requestTime, long responseTime) {
+        entry.update(response, requestTime, responseTime);
+    }
+
+    /**
+     * Answers a request with a stored entry. The request conditions are
+     * evaluated against the entry, possibly leading to a 304 (Not modified)
+     * response.
+     * 
+     * @param entry
+     *            The entry.
+     * @param request
+     *            The request.
+     * @param response
+     *            The response to update.
+     * @param now
+     *            The current time.
+     */
+    public void serve(CacheEntry entry, Request request, Response response,
+            long now) {
+        response.setStatus(Status.SUCCESS_OK);
+        response.setEntity(entry.createEntity());
+        response.setCacheDirectives(entry.getCacheDirectives());
+        response.setDimensions(entry.getDimensions());
+        response.setAge((int) (getCurrentAge(entry, now) / 1000));
+
+        if (entry.getHeaders() != null) {
+            Series<Header> headers = new Series<Header>(Header.class, entry
+                    .getHeaders().size());
+
+            for (Header header : entry.getHeaders()) {
+                headers.add(header.getName(), header.getValue());
+            }
+
+            response.getAttributes().put(HeaderConstants.ATTRIBUTE_HEADERS,
+                    headers);
+        }
+
+        Status status = request.getConditions().getStatus(
+                request.getMethod(), true, entry.getTag(),
+                entry.getModificationDate());
+
+        if (status != null) {
+            response.setStatus(status);
+
+            if (!Status.REDIRECTION_NOT_MODIFIED.equals(status)) {
+                response.setEntity(null);
+            }
+        }
+    }
+
+    /**
+     * Sets the maximum size of a stored entity.
+     * 
+     * @param maxEntrySize
+     *            The maximum size of a stored entity.
+     */
+    public void setMaxEntrySize(long maxEntrySize) {
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    /**
+     * Sets the storage tier. The entries of the previous store are not moved.
+     * 
+     * @param store
+     *            The storage tier.
+     */
+    public void setStore(CacheStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Stores a response. The response entity is read and replaced by a new
+     * entity reading the stored content. Entities larger than the maximum
+     * entry size are not stored. When their size isn't known in advance, they
+     * are only detected while being read and the response gets an entity
+     * streaming the same content.
+     * 
+     * @param request
+     *            The request.
+     * @param response
+     *            The storable response.
+     * @param requestTime
+     *            The time when the request was sent.
+     * @param responseTime
+     *            The time when the response was received.
+     * @return The new entry or null.
+     */
+    public CacheEntry store(Request request, Response response,
+            long requestTime, long responseTime) {
+        Representation entity = response.getEntity();
+        long size = entity.getAvailableSize();
+
+        if (size > getMaxEntrySize()) {
+            return null;
+        }
+
+        try {
+            ByteBuffer content;
+
+            if ((size == Representation.UNKNOWN_SIZE) && entity.isTransient()) {
+                content = read(response);
+            } else {
+                BoundedOutputStream output = new BoundedOutputStream(
+                        getMaxEntrySize());
+                entity.write(output);
+                content = output.toBuffer();
+            }
+
+            if (content == null) {
+                return null;
+            }
+
+            CacheEntry result = new CacheEntry(getKey(request), getSelectors(
+                    request, response.getDimensions()), response, content,
+                    requestTime, responseTime);
+            response.setEntity(result.createEntity());
+            getStore().put(result);
+            return result;
+        } catch (IOException e) {
+            Context.getCurrentLogger().log(Level.FINE,
+                    "Unable to store the response entity", e);
+            return null;
+        }
+    }
+
+}
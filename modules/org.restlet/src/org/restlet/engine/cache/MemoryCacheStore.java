@@ -0,0 +1,231 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.engine.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// [excludes gwt]
+/**
+ * Cache store keeping the entries in the Java heap, bounded by the total size
+ * of their contents. When the limit is exceeded, the least recently used
+ * resources are evicted. Subclasses can keep the contents elsewhere by
+ * overriding {@link #storeContent(CacheEntry)} and
+ * {@link #releaseContent(CacheEntry)}.
+ * 
+ * @author Jerome Louvel
+ */
+public class MemoryCacheStore extends CacheStore {
+
+    /** The default maximum size of the stored contents. */
+    public static final long DEFAULT_MAX_SIZE = 16 * 1024 * 1024;
+
+    /** The entries by resource key, in access order. */
+    private final LinkedHashMap<String, List<CacheEntry>> entries;
+
+    /** The number of stored entries. */
+    private int entryCount;
+
+    /** The maximum size of the stored contents. */
+    private final long maxSize;
+
+    /** The total size of the stored contents. */
+    private long size;
+
+    /**
+     * Constructor using the default maximum size.
+     */
+    public MemoryCacheStore() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param maxSize
+     *            The maximum size of the stored contents.
+     */
+    public MemoryCacheStore(long maxSize) {
+        this.entries = new LinkedHashMap<String, List<CacheEntry>>(16, 0.75f,
+                true);
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public void clear() {
+        List<CacheEntry> removed = new ArrayList<CacheEntry>();
+
+        synchronized (this) {
+            for (List<CacheEntry> variants : this.entries.values()) {
+                removed.addAll(variants);
+            }
+
+            this.entries.clear();
+            this.entryCount = 0;
+            this.size = 0;
+        }
+
+        for (CacheEntry entry : removed) {
+            releaseContent(entry);
+        }
+    }
+
+    @Override
+    public synchronized List<CacheEntry> get(String key) {
+        return this.entries.get(key);
+    }
+
+    @Override
+    public synchronized int getEntryCount() {
+        return this.entryCount;
+    }
+
+    /**
+     * Returns the maximum size of the stored contents.
+     * 
+     * @return The maximum size of the stored contents.
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public synchronized long getSize() {
+        return this.size;
+    }
+
+    @Override
+    public void put(CacheEntry entry) {
+        if (entry.getSize() > getMaxSize()) {
+            return;
+        }
+
+        storeContent(entry);
+        List<CacheEntry> removed = new ArrayList<CacheEntry>();
+        List<CacheEntry> evicted = new ArrayList<CacheEntry>();
+
+        synchronized (this) {
+            List<CacheEntry> current = this.entries.get(entry.getKey());
+            List<CacheEntry> variants = new ArrayList<CacheEntry>();
+
+            if (current != null) {
+                for (CacheEntry variant : current) {
+                    if (variant.getSelectors().equals(entry.getSelectors())) {
+                        removed.add(variant);
+                    } else {
+                        variants.add(variant);
+                    }
+                }
+            }
+
+            variants.add(entry);
+            this.entries.put(entry.getKey(),
+                    Collections.unmodifiableList(variants));
+            this.entryCount += 1 - removed.size();
+            this.size += entry.getSize();
+
+            for (CacheEntry variant : removed) {
+                this.size -= variant.getSize();
+            }
+
+            // Evict the least recently used resources
+            Iterator<Map.Entry<String, List<CacheEntry>>> iter = this.entries
+                    .entrySet().iterator();
+
+            while ((this.size > getMaxSize()) && iter.hasNext()) {
+                Map.Entry<String, List<CacheEntry>> eldest = iter.next();
+
+                if (!eldest.getKey().equals(entry.getKey())) {
+                    iter.remove();
+
+                    for (CacheEntry variant : eldest.getValue()) {
+                        this.entryCount--;
+                        this.size -= variant.getSize();
+                        evicted.add(variant);
+                    }
+                }
+            }
+        }
+
+        for (CacheEntry variant : removed) {
+            releaseContent(variant);
+        }
+
+        for (CacheEntry variant : evicted) {
+            onEvicted(variant);
+            releaseContent(variant);
+        }
+    }
+
+    /**
+     * Releases the content of an entry that is no longer stored. Does nothing
+     * by default.
+     * 
+     * @param entry
+     *            The removed entry.
+     */
+    protected void releaseContent(CacheEntry entry) {
+    }
+
+    @Override
+    public void remove(String key) {
+        List<CacheEntry> removed;
+
+        synchronized (this) {
+            removed = this.entries.remove(key);
+
+            if (removed != null) {
+                for (CacheEntry variant : removed) {
+                    this.entryCount--;
+                    this.size -= variant.getSize();
+                }
+            }
+        }
+
+        if (removed != null) {
+            for (CacheEntry variant : removed) {
+                releaseContent(variant);
+            }
+        }
+    }
+
+    /**
+     * Moves the content of a new entry to its storage location, updating the
+     * entry with {@link CacheEntry#setContent(ByteBuffer)}. Keeps the content
+     * in the Java heap by default.
+     * 
+     * @param entry
+     *            The new entry.
+     */
+    protected void storeContent(CacheEntry entry) {
+    }
+
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.engine.cache;
+
+import java.nio.ByteBuffer;
+
+// [excludes gwt]
+/**
+ * Cache store keeping the contents in direct buffers, outside of the Java
+ * heap, so that large caches don't increase the garbage collection work. The
+ * entry metadata stays in the heap.
+ * 
+ * @author Jerome Louvel
+ */
+public class OffHeapCacheStore extends MemoryCacheStore {
+
+    /**
+     * Constructor using the default maximum size.
+     */
+    public OffHeapCacheStore() {
+        super();
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param maxSize
+     *            The maximum size of the stored contents.
+     */
+    public OffHeapCacheStore(long maxSize) {
+        super(maxSize);
+    }
+
+    @Override
+    protected void storeContent(CacheEntry entry) {
+        ByteBuffer source = entry.getContent().duplicate();
+        ByteBuffer content = ByteBuffer.allocateDirect(source.remaining());
+        content.put(source);
+        content.flip();
+        entry.setContent(content.asReadOnlyBuffer());
+    }
+
+}
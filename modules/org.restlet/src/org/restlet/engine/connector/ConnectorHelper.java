@@ -34,7 +34,32 @@ import org.restlet.engine.Edition;
 import org.restlet.engine.RestletHelper;
 
 /**
- * Base connector helper.
+ * Base connector helper. Here is the list of parameters that are supported by
+ * all connectors. They should be set in the connector's context before it is
+ * started:
+ * <table>
+ * <tr>
+ * <th>Parameter name</th>
+ * <th>Value type</th>
+ * <th>Default value</th>
+ * <th>Description</th>
+ * </tr>
+ * <tr>
+ * <td>bufferPoolMaxIdle</td>
+ * <td>int</td>
+ * <td>64</td>
+ * <td>Maximum number of idle I/O buffers shared between threads, per kind and
+ * size class. See {@link org.restlet.engine.io.BufferPool}.</td>
+ * </tr>
+ * <tr>
+ * <td>bufferPoolThreadLocal</td>
+ * <td>boolean</td>
+ * <td>true</td>
+ * <td>Indicates if each thread keeps its own idle I/O buffers. See
+ * {@link org.restlet.engine.io.BufferPool}.</td>
+ * </tr>
+ * </table>
+ * Note that the buffer pool is shared by all the connectors of the JVM.
  * 
  * @author Jerome Louvel
  */
@@ -97,6 +122,23 @@ public abstract class ConnectorHelper<T extends Connector> extends
 
     @Override
     public void start() throws Exception {
+        // [ifndef gwt]
+        String bufferPoolMaxIdle = getHelpedParameters().getFirstValue(
+                "bufferPoolMaxIdle");
+
+        if (bufferPoolMaxIdle != null) {
+            org.restlet.engine.io.BufferPool.setMaxIdle(Integer
+                    .parseInt(bufferPoolMaxIdle));
+        }
+
+        String bufferPoolThreadLocal = getHelpedParameters().getFirstValue(
+                "bufferPoolThreadLocal");
+
+        if (bufferPoolThreadLocal != null) {
+            org.restlet.engine.io.BufferPool.setThreadLocal(Boolean
+                    .parseBoolean(bufferPoolThreadLocal));
+        }
+        // [enddef]
     }
 
     @Override
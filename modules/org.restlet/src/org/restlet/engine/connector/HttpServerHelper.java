@@ -26,6 +26,7 @@ package org.restlet.engine.connector;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
 
 import org.restlet.Server;
 import org.restlet.data.Protocol;
@@ -43,6 +44,9 @@ public class HttpServerHelper extends NetServerHelper {
     /** The underlying HTTP server. */
     private volatile HttpServer server;
 
+    /** The worker service. */
+    private volatile ExecutorService workerService;
+
     /**
      * Constructor.
      * 
@@ -66,7 +70,8 @@ public class HttpServerHelper extends NetServerHelper {
             }
         });
         // creates a default executor
-        server.setExecutor(createThreadPool());
+        this.workerService = createWorkerService();
+        server.setExecutor(this.workerService);
         server.start();
 
         setConfidential(false);
@@ -78,5 +83,10 @@ public class HttpServerHelper extends NetServerHelper {
     public synchronized void stop() throws Exception {
         super.stop();
         this.server.stop(0);
+
+        if (this.workerService != null) {
+            this.workerService.shutdown();
+            this.workerService = null;
+        }
     }
 }
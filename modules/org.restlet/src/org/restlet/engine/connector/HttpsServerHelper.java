@@ -27,6 +27,7 @@ package org.restlet.engine.connector;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLParameters;
@@ -72,6 +73,9 @@ public class HttpsServerHelper extends NetServerHelper {
     /** The underlying HTTPS server. */
     private volatile HttpsServer server;
 
+    /** The worker service. */
+    private volatile ExecutorService workerService;
+
     /**
      * Constructor.
      * 
@@ -127,7 +131,8 @@ public class HttpsServerHelper extends NetServerHelper {
             }
         });
         // creates a default executor
-        server.setExecutor(createThreadPool());
+        this.workerService = createWorkerService();
+        server.setExecutor(this.workerService);
         server.start();
 
         setConfidential(true);
@@ -139,6 +144,11 @@ public class HttpsServerHelper extends NetServerHelper {
     public synchronized void stop() throws Exception {
         super.stop();
         this.server.stop(0);
+
+        if (this.workerService != null) {
+            this.workerService.shutdown();
+            this.workerService = null;
+        }
     }
 
 }
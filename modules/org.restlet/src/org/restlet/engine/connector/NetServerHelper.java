@@ -27,15 +27,18 @@ package org.restlet.engine.connector;
 import java.net.InetSocketAddress;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import org.restlet.Server;
 import org.restlet.engine.adapter.HttpServerHelper;
 import org.restlet.engine.log.LoggingThreadFactory;
+import org.restlet.engine.util.ThreadPerTaskExecutorService;
 
 /**
  * Abstract Internal web server connector based on com.sun.net.httpserver
@@ -82,6 +85,25 @@ import org.restlet.engine.log.LoggingThreadFactory;
  * <td>300 000</td>
  * <td>Time for an idle thread to wait for an operation before being collected.</td>
  * </tr>
+ * <tr>
+ * <td>threadingMode</td>
+ * <td>String</td>
+ * <td>platform</td>
+ * <td>Kind of threads servicing calls, either "platform" for a pool of worker
+ * threads or "virtual" for a new virtual thread per call. The virtual mode
+ * requires Java SE 21 or later and falls back to the platform mode otherwise.
+ * In this mode, the "minThreads", "maxThreads" and "maxThreadIdleTimeMs"
+ * parameters are ignored and "maxConcurrentCalls" applies instead.</td>
+ * </tr>
+ * <tr>
+ * <td>maxConcurrentCalls</td>
+ * <td>int</td>
+ * <td>10000</td>
+ * <td>Maximum number of calls serviced concurrently in the virtual threading
+ * mode. If this number is reached then additional calls wait for their turn
+ * if the "maxQueued" value hasn't been reached. If the value is '-1', then
+ * the number isn't limited.</td>
+ * </tr>
  * </table>
  * 
  * @author Jerome Louvel
@@ -142,6 +164,35 @@ public abstract class NetServerHelper extends HttpServerHelper {
         return result;
     }
 
+    /**
+     * Creates the service running the calls, depending on the threading mode.
+     * In the "virtual" mode, a new virtual thread is started for each call
+     * and the number of concurrent calls is limited by the
+     * "maxConcurrentCalls" parameter. Otherwise, the result of
+     * {@link #createThreadPool()} is returned.
+     * 
+     * @return The service running the calls.
+     */
+    protected ExecutorService createWorkerService() {
+        if ("virtual".equalsIgnoreCase(getThreadingMode())) {
+            ThreadFactory threadFactory = ThreadPerTaskExecutorService
+                    .createVirtualThreadFactory("restlet-virtual-"
+                            + getHelped().getPort() + "-");
+
+            if (threadFactory != null) {
+                return new ThreadPerTaskExecutorService(
+                        new LoggingThreadFactory(getLogger(), threadFactory),
+                        getMaxConcurrentCalls(), getMaxQueued());
+            }
+
+            getLogger()
+                    .warning(
+                            "Virtual threads aren't supported by this JVM. Using platform threads instead.");
+        }
+
+        return createThreadPool();
+    }
+
     /**
      * Returns the socket address this server is listening to.
      * 
@@ -151,6 +202,17 @@ public abstract class NetServerHelper extends HttpServerHelper {
         return this.address;
     }
 
+    /**
+     * Returns the maximum number of calls serviced concurrently in the virtual
+     * threading mode. If the value is '-1', then the number isn't limited.
+     * 
+     * @return The maximum number of calls serviced concurrently.
+     */
+    public int getMaxConcurrentCalls() {
+        return Integer.parseInt(getHelpedParameters().getFirstValue(
+                "maxConcurrentCalls", "10000"));
+    }
+
     /**
      * Returns the maximum number of calls that can be queued if there aren't
      * any worker thread available to service them. If the value is '0', then no
@@ -202,6 +264,17 @@ public abstract class NetServerHelper extends HttpServerHelper {
                 "minThreads", "1"));
     }
 
+    /**
+     * Returns the kind of threads servicing calls, either "platform" or
+     * "virtual".
+     * 
+     * @return The kind of threads servicing calls.
+     */
+    public String getThreadingMode() {
+        return getHelpedParameters().getFirstValue("threadingMode",
+                "platform");
+    }
+
     /**
      * Indicates if this service is acting in HTTP or HTTPS mode.
      * 
@@ -0,0 +1,535 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.engine.connector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.logging.Level;
+
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Uniform;
+import org.restlet.data.Header;
+import org.restlet.data.Method;
+import org.restlet.data.Protocol;
+import org.restlet.data.Reference;
+import org.restlet.data.Status;
+import org.restlet.engine.adapter.ClientCall;
+import org.restlet.engine.header.HeaderConstants;
+import org.restlet.engine.header.HeaderUtils;
+import org.restlet.engine.util.ReferenceUtils;
+import org.restlet.engine.util.StringUtils;
+import org.restlet.representation.Representation;
+import org.restlet.service.ConnectorService;
+
+/**
+ * Call that is used by the non-blocking internal HTTP client. The request is
+ * written by the calling thread on a pooled {@link NioClientConnection} while
+ * the response is parsed by the selector thread, which streams the response
+ * entity to the consuming thread.
+ * 
+ * @author Jerome Louvel
+ */
+public class NioClientCall extends ClientCall {
+
+    /** The maximum number of times a request is sent. */
+    private static final int MAX_ATTEMPTS = 2;
+
+    /** The number of times the request was sent. */
+    private volatile int attempts;
+
+    /** The callback invoked once the response head is received. */
+    private volatile Uniform callback;
+
+    /** Indicates if the callback was invoked. */
+    private boolean completed;
+
+    /** The connection used to send the request. */
+    private volatile NioClientConnection connection;
+
+    /** The communication failure or null. */
+    private volatile IOException failure;
+
+    /** Indicates if the response head was received. */
+    private volatile boolean headReceived;
+
+    /** The path and query sent in the request line. */
+    private final String path;
+
+    /** The high-level request. */
+    private final Request request;
+
+    /** The high-level response. */
+    private volatile Response response;
+
+    /** The response entity stream or null. */
+    private volatile InputStream responseStream;
+
+    /** Indicates if the request was sent on a previously used connection. */
+    private volatile boolean reused;
+
+    /**
+     * Constructor.
+     * 
+     * @param helper
+     *            The parent client helper.
+     * @param request
+     *            The high-level request.
+     */
+    public NioClientCall(NioHttpClientHelper helper, Request request) {
+        this(helper, request, ReferenceUtils.update(request.getResourceRef(),
+                request));
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param helper
+     *            The parent client helper.
+     * @param request
+     *            The high-level request.
+     * @param targetRef
+     *            The absolute target reference.
+     */
+    private NioClientCall(NioHttpClientHelper helper, Request request,
+            Reference targetRef) {
+        super(helper, request.getMethod().toString(), targetRef.toString());
+        this.request = request;
+        this.attempts = 0;
+        setProtocol(Protocol.HTTP);
+        setHostDomain(targetRef.getHostDomain());
+
+        int port = targetRef.getHostPort();
+
+        if (port == -1) {
+            port = (targetRef.getSchemeProtocol() != null) ? targetRef
+                    .getSchemeProtocol().getDefaultPort() : Protocol.HTTP
+                    .getDefaultPort();
+        }
+
+        setHostPort(port);
+
+        StringBuilder sb = new StringBuilder();
+        String targetPath = targetRef.getPath();
+        sb.append(((targetPath == null) || targetPath.isEmpty()) ? "/"
+                : targetPath);
+
+        if (targetRef.getQuery() != null) {
+            sb.append('?').append(targetRef.getQuery());
+        }
+
+        this.path = sb.toString();
+    }
+
+    /**
+     * Waits for the response head, sending the request again on a new
+     * connection if a reused connection was closed before responding.
+     * 
+     * @throws IOException
+     */
+    private void awaitHead() throws IOException {
+        for (;;) {
+            synchronized (this) {
+                while (!this.headReceived && (this.failure == null)) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        this.connection.close(new InterruptedIOException(
+                                "Interrupted while waiting for the response"));
+                        throw new InterruptedIOException(
+                                "Interrupted while waiting for the response");
+                    }
+                }
+            }
+
+            if (this.headReceived) {
+                return;
+            } else if (isRetrying()) {
+                send();
+            } else {
+                throw this.failure;
+            }
+        }
+    }
+
+    /**
+     * Invokes the callback of an asynchronous call, only once.
+     */
+    private void complete() {
+        synchronized (this) {
+            if (this.completed) {
+                return;
+            }
+
+            this.completed = true;
+        }
+
+        if (!this.headReceived && (this.failure != null)) {
+            Status status = toStatus(this.failure);
+            setStatusCode(status.getCode());
+            setReasonPhrase(status.getReasonPhrase());
+        }
+
+        this.callback.handle(this.request, this.response);
+    }
+
+    /**
+     * Returns the path and query sent in the request line.
+     * 
+     * @return The path and query sent in the request line.
+     */
+    public String getPath() {
+        return this.path;
+    }
+
+    @Override
+    public NioHttpClientHelper getHelper() {
+        return (NioHttpClientHelper) super.getHelper();
+    }
+
+    @Override
+    public WritableByteChannel getRequestEntityChannel() {
+        return null;
+    }
+
+    @Override
+    public OutputStream getRequestEntityStream() {
+        return null;
+    }
+
+    @Override
+    public OutputStream getRequestHeadStream() {
+        return null;
+    }
+
+    @Override
+    public ReadableByteChannel getResponseEntityChannel(long size) {
+        return null;
+    }
+
+    @Override
+    public InputStream getResponseEntityStream(long size) {
+        return this.responseStream;
+    }
+
+    /**
+     * Indicates if the request can be pipelined behind other requests, which
+     * is only the case of GET and HEAD requests without entity.
+     * 
+     * @return True if the request can be pipelined.
+     */
+    protected boolean isPipelinable() {
+        return (Method.GET.equals(this.request.getMethod()) || Method.HEAD
+                .equals(this.request.getMethod()))
+                && !this.request.isEntityAvailable();
+    }
+
+    /**
+     * Indicates if the request can be safely sent again after a failure,
+     * which is only the case of idempotent requests without entity.
+     * 
+     * @return True if the request can be sent again.
+     */
+    protected boolean isRetryable() {
+        return this.request.getMethod().isIdempotent()
+                && !this.request.isEntityAvailable();
+    }
+
+    /**
+     * Indicates if the request should be sent again after a failure, when the
+     * connection was reused and closed before any response was received.
+     * 
+     * @return True if the request should be sent again.
+     */
+    private boolean isRetrying() {
+        return (this.failure != null) && !this.headReceived && this.reused
+                && (this.attempts < MAX_ATTEMPTS) && isRetryable()
+                && !(this.failure instanceof InterruptedIOException);
+    }
+
+    /**
+     * Called when the connection fails before the response is fully received.
+     * 
+     * @param cause
+     *            The failure cause.
+     */
+    protected void onFailure(IOException cause) {
+        if (this.headReceived) {
+            // The response entity stream reports the failure
+            return;
+        }
+
+        synchronized (this) {
+            this.failure = cause;
+            notifyAll();
+        }
+
+        if (this.callback != null) {
+            getHelper().getWorkerService().execute(new Runnable() {
+                public void run() {
+                    if (isRetrying()) {
+                        try {
+                            send();
+                            return;
+                        } catch (IOException e) {
+                            failure = e;
+                        }
+                    }
+
+                    complete();
+                }
+            });
+        }
+    }
+
+    /**
+     * Called by the selector thread once the response status line and headers
+     * are received.
+     * 
+     * @param responseStream
+     *            The response entity stream or null.
+     */
+    protected void onHead(InputStream responseStream) {
+        this.responseStream = responseStream;
+
+        synchronized (this) {
+            this.headReceived = true;
+            notifyAll();
+        }
+
+        if (this.callback != null) {
+            getHelper().getWorkerService().execute(new Runnable() {
+                public void run() {
+                    complete();
+                }
+
+                @Override
+                public String toString() {
+                    return "Response callback for " + getRequestUri();
+                }
+            });
+        }
+    }
+
+    /**
+     * Acquires a connection and sends the request on it.
+     * 
+     * @throws IOException
+     */
+    private void send() throws IOException {
+        this.attempts++;
+
+        synchronized (this) {
+            this.failure = null;
+            getResponseHeaders().clear();
+        }
+
+        NioClientConnection current = getHelper().acquire(this);
+
+        while (!current.send(this)) {
+            current = getHelper().acquire(this);
+        }
+    }
+
+    /**
+     * Sends the request and waits for the response head.
+     */
+    @Override
+    public Status sendRequest(Request request) {
+        Status result = null;
+        Representation entity = request.isEntityAvailable() ? request
+                .getEntity() : null;
+        ConnectorService connectorService = ConnectorHelper
+                .getConnectorService();
+
+        if (connectorService != null) {
+            connectorService.beforeSend(entity);
+        }
+
+        try {
+            send();
+            awaitHead();
+            result = new Status(getStatusCode(), getReasonPhrase());
+        } catch (IOException ioe) {
+            getHelper()
+                    .getLogger()
+                    .log(Level.FINE,
+                            "An error occurred during the communication with the remote HTTP server.",
+                            ioe);
+            result = toStatus(ioe);
+        } finally {
+            if (entity != null) {
+                entity.release();
+            }
+
+            if (connectorService != null) {
+                connectorService.afterSend(entity);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Sends the request and returns without waiting for the response. The
+     * callback is invoked by a worker thread once the response head is
+     * received or when the communication fails. Note that the calling thread
+     * still blocks while a connection is acquired, up to the acquire timeout,
+     * and while the request is written.
+     */
+    @Override
+    public void sendRequest(Request request, Response response,
+            Uniform callback) throws Exception {
+        Representation entity = request.isEntityAvailable() ? request
+                .getEntity() : null;
+        ConnectorService connectorService = ConnectorHelper
+                .getConnectorService();
+        this.response = response;
+        this.callback = callback;
+
+        if (connectorService != null) {
+            connectorService.beforeSend(entity);
+        }
+
+        try {
+            send();
+        } catch (IOException ioe) {
+            getHelper()
+                    .getLogger()
+                    .log(Level.FINE,
+                            "An error occurred during the communication with the remote HTTP server.",
+                            ioe);
+            this.failure = ioe;
+        } finally {
+            if (entity != null) {
+                entity.release();
+            }
+
+            if (connectorService != null) {
+                connectorService.afterSend(entity);
+            }
+        }
+
+        if (request.getOnSent() != null) {
+            request.getOnSent().handle(request, response);
+        }
+
+        if ((this.failure != null) && !this.headReceived
+                && (this.connection == null)) {
+            complete();
+        }
+    }
+
+    /**
+     * Sets the connection used to send the request.
+     * 
+     * @param connection
+     *            The connection used to send the request.
+     * @param reused
+     *            True if the connection was previously used.
+     */
+    protected void setConnection(NioClientConnection connection, boolean reused) {
+        this.connection = connection;
+        this.reused = reused;
+        setServerAddress(connection.getServerAddress());
+        setServerPort(connection.getServerPort());
+    }
+
+    /**
+     * Converts a communication failure into a connector error status.
+     * 
+     * @param failure
+     *            The communication failure.
+     * @return The connector error status.
+     */
+    private Status toStatus(IOException failure) {
+        if ((failure instanceof ConnectException)
+                || (failure instanceof UnknownHostException)) {
+            return new Status(Status.CONNECTOR_ERROR_CONNECTION, failure);
+        }
+
+        return new Status(Status.CONNECTOR_ERROR_COMMUNICATION, failure);
+    }
+
+    /**
+     * Writes the request line, headers and optional entity. Called by the
+     * connection while holding its write lock.
+     * 
+     * @param out
+     *            The connection output buffer.
+     * @param close
+     *            True if the connection is closed after the response.
+     * @throws IOException
+     */
+    protected void writeRequest(NioClientConnection.OutputBuffer out,
+            boolean close) throws IOException {
+        Representation entity = this.request.isEntityAvailable() ? this.request
+                .getEntity() : null;
+        boolean chunked = shouldRequestBeChunked(this.request);
+
+        if (chunked) {
+            getRequestHeaders().set(HeaderConstants.HEADER_TRANSFER_ENCODING,
+                    "chunked", true);
+        }
+
+        if (close) {
+            getRequestHeaders().set(HeaderConstants.HEADER_CONNECTION,
+                    "close", true);
+        } else {
+            getRequestHeaders().removeAll(HeaderConstants.HEADER_CONNECTION,
+                    true);
+        }
+
+        // Write the request line
+        out.write(StringUtils.getAsciiBytes(getMethod()));
+        out.write(' ');
+        out.write(StringUtils.getAsciiBytes(this.path));
+        out.write(StringUtils.getAsciiBytes(" HTTP/1.1"));
+        HeaderUtils.writeCRLF(out);
+
+        // Write the request headers
+        for (Header header : getRequestHeaders()) {
+            if (header.getValue() != null) {
+                HeaderUtils.writeHeaderLine(header, out);
+            }
+        }
+
+        HeaderUtils.writeCRLF(out);
+        out.startEntity(chunked);
+
+        if (entity != null) {
+            entity.write(out);
+        }
+
+        out.finish();
+    }
+}
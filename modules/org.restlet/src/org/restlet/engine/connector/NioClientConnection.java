@@ -0,0 +1,1389 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.engine.connector;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.logging.Level;
+
+import org.restlet.data.Header;
+import org.restlet.data.Method;
+import org.restlet.engine.header.HeaderConstants;
+import org.restlet.engine.header.HeaderUtils;
+import org.restlet.engine.io.BufferPool;
+import org.restlet.engine.util.StringUtils;
+
+/**
+ * Pooled connection of the non-blocking internal HTTP client. Requests are
+ * written by the calling threads, one at a time or pipelined, while responses
+ * are parsed by the selector thread in the order of the requests.
+ * 
+ * @author Jerome Louvel
+ */
+public class NioClientConnection {
+
+    /**
+     * Output stream buffering the request head and entity, chunking the entity
+     * if needed.
+     */
+    public class OutputBuffer extends OutputStream {
+
+        /** The buffered bytes. */
+        private byte[] bytes;
+
+        /** Indicates if the entity is chunked. */
+        private boolean chunked;
+
+        /** The number of buffered bytes. */
+        private int count;
+
+        /** Index of the first entity byte in the buffer if chunked. */
+        private int entityStart;
+
+        /**
+         * Constructor.
+         */
+        private OutputBuffer() {
+            this.bytes = new byte[getHelper().getIoBufferSize()];
+        }
+
+        /**
+         * Sends all the buffered bytes, terminating the chunked entity if
+         * needed, then resets the buffer for the next request.
+         * 
+         * @throws IOException
+         */
+        public void finish() throws IOException {
+            sendBuffer(true);
+            this.chunked = false;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            sendBuffer(false);
+        }
+
+        /**
+         * Sends the buffered bytes.
+         * 
+         * @param last
+         *            True if this is the last write for the current request.
+         * @throws IOException
+         */
+        private void sendBuffer(boolean last) throws IOException {
+            List<ByteBuffer> buffers = new ArrayList<ByteBuffer>(5);
+
+            if (this.chunked) {
+                int size = this.count - this.entityStart;
+
+                if (this.entityStart > 0) {
+                    buffers.add(ByteBuffer.wrap(this.bytes, 0,
+                            this.entityStart));
+                }
+
+                if (size > 0) {
+                    buffers.add(ByteBuffer.wrap(StringUtils
+                            .getAsciiBytes(Integer.toHexString(size) + "\r\n")));
+                    buffers.add(ByteBuffer.wrap(this.bytes, this.entityStart,
+                            size));
+                    buffers.add(ByteBuffer.wrap(CRLF));
+                }
+
+                if (last) {
+                    buffers.add(ByteBuffer.wrap(LAST_CHUNK));
+                }
+            } else if (this.count > 0) {
+                buffers.add(ByteBuffer.wrap(this.bytes, 0, this.count));
+            }
+
+            if (!buffers.isEmpty()
+                    && !send(buffers.toArray(new ByteBuffer[buffers.size()]))) {
+                this.bytes = new byte[this.bytes.length];
+            }
+
+            this.count = 0;
+            this.entityStart = 0;
+        }
+
+        /**
+         * Indicates that the request head was written and that the following
+         * bytes belong to the entity.
+         * 
+         * @param chunked
+         *            True if the entity must be chunked.
+         */
+        public void startEntity(boolean chunked) {
+            this.chunked = chunked;
+            this.entityStart = this.count;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (this.count == this.bytes.length) {
+                    sendBuffer(false);
+                }
+
+                int length = Math.min(len, this.bytes.length - this.count);
+                System.arraycopy(b, off, this.bytes, this.count, length);
+                this.count += length;
+                off += length;
+                len -= length;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (this.count == this.bytes.length) {
+                sendBuffer(false);
+            }
+
+            this.bytes[this.count++] = (byte) b;
+        }
+    }
+
+    /**
+     * Input stream of a response entity, fed by the selector thread. Reading
+     * from the connection is suspended while too many bytes are buffered.
+     */
+    private class ResponseStream extends InputStream {
+
+        /** The buffered chunks, backed by pooled arrays. */
+        private final LinkedList<ByteBuffer> chunks;
+
+        /** The number of buffered bytes. */
+        private int available;
+
+        /** Indicates if the consumer closed the stream. */
+        private boolean closed;
+
+        /** The failure cause or null. */
+        private IOException failure;
+
+        /** Indicates if the whole entity was received. */
+        private boolean finished;
+
+        /** Indicates if the connection stopped reading. */
+        private boolean suspended;
+
+        /**
+         * Constructor.
+         */
+        private ResponseStream() {
+            this.chunks = new LinkedList<ByteBuffer>();
+        }
+
+        /**
+         * Waits for available bytes. Returns false at the end of the entity.
+         * 
+         * @return False at the end of the entity.
+         * @throws IOException
+         */
+        private boolean await() throws IOException {
+            while (this.chunks.isEmpty()) {
+                if (this.closed) {
+                    throw new IOException("Stream closed");
+                } else if (this.failure != null) {
+                    throw this.failure;
+                } else if (this.finished) {
+                    return false;
+                }
+
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new java.io.InterruptedIOException(
+                            "Interrupted while reading the response");
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public synchronized int available() throws IOException {
+            return this.available;
+        }
+
+        @Override
+        public void close() throws IOException {
+            boolean resume;
+
+            synchronized (this) {
+                if (this.closed) {
+                    return;
+                }
+
+                this.closed = true;
+                this.available = 0;
+
+                for (ByteBuffer chunk : this.chunks) {
+                    BufferPool.release(chunk.array());
+                }
+
+                this.chunks.clear();
+                resume = this.suspended;
+                this.suspended = false;
+            }
+
+            // The remaining bytes are discarded by the selector thread
+            if (resume) {
+                resume();
+            }
+        }
+
+        /**
+         * Called by the selector thread when the connection fails.
+         * 
+         * @param cause
+         *            The failure cause.
+         */
+        private synchronized void fail(IOException cause) {
+            if (!this.finished) {
+                this.failure = cause;
+                notifyAll();
+            }
+        }
+
+        /**
+         * Called by the selector thread at the end of the entity.
+         */
+        private synchronized void finish() {
+            this.finished = true;
+            notifyAll();
+        }
+
+        /**
+         * Called by the consuming thread after bytes were read. Resumes the
+         * reading from the connection once half of the buffer is free.
+         */
+        private void onConsumed() {
+            if (this.suspended && (this.available <= maxBufferedBytes / 2)) {
+                this.suspended = false;
+                resume();
+            }
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            if (!await()) {
+                return -1;
+            }
+
+            ByteBuffer chunk = this.chunks.getFirst();
+            int result = chunk.get() & 0xFF;
+            this.available--;
+
+            if (!chunk.hasRemaining()) {
+                BufferPool.release(this.chunks.removeFirst().array());
+            }
+
+            onConsumed();
+            return result;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len)
+                throws IOException {
+            if (len == 0) {
+                return 0;
+            } else if (!await()) {
+                return -1;
+            }
+
+            int result = 0;
+
+            while ((len > 0) && !this.chunks.isEmpty()) {
+                ByteBuffer chunk = this.chunks.getFirst();
+                int length = Math.min(len, chunk.remaining());
+                chunk.get(b, off, length);
+                off += length;
+                len -= length;
+                result += length;
+
+                if (!chunk.hasRemaining()) {
+                    BufferPool.release(this.chunks.removeFirst().array());
+                }
+            }
+
+            this.available -= result;
+            onConsumed();
+            return result;
+        }
+
+        /**
+         * Called by the selector thread to buffer entity bytes.
+         * 
+         * @param source
+         *            The source buffer.
+         * @param length
+         *            The number of bytes to copy.
+         * @return False if the connection should stop reading.
+         */
+        private synchronized boolean write(ByteBuffer source, int length) {
+            if (this.closed) {
+                source.position(source.position() + length);
+                return true;
+            }
+
+            byte[] array = BufferPool.acquireArray(length);
+            source.get(array, 0, length);
+            this.chunks.add(ByteBuffer.wrap(array, 0, length));
+            this.available += length;
+            notifyAll();
+
+            if (this.available >= maxBufferedBytes) {
+                this.suspended = true;
+                return false;
+            }
+
+            return true;
+        }
+    }
+
+    /** The CRLF bytes. */
+    private static final byte[] CRLF = { 13, 10 };
+
+    /** The last chunk of a chunked entity. */
+    private static final byte[] LAST_CHUNK = StringUtils
+            .getAsciiBytes("0\r\n\r\n");
+
+    /** Parsing the status line and headers. */
+    private static final int STATE_HEAD = 1;
+
+    /** Parsing an entity of known size. */
+    private static final int STATE_ENTITY = 2;
+
+    /** Parsing a chunk size line. */
+    private static final int STATE_CHUNK_SIZE = 3;
+
+    /** Parsing chunk data. */
+    private static final int STATE_CHUNK_DATA = 4;
+
+    /** Parsing the line ending chunk data. */
+    private static final int STATE_CHUNK_END = 5;
+
+    /** Parsing the trailer lines. */
+    private static final int STATE_TRAILER = 6;
+
+    /** Parsing an entity delimited by the end of the connection. */
+    private static final int STATE_UNTIL_CLOSE = 7;
+
+    /** The calls whose response is expected, in the order of the requests. */
+    private final LinkedList<NioClientCall> calls;
+
+    /** The socket channel. */
+    private final SocketChannel channel;
+
+    /** Indicates if the connection is closed. */
+    private volatile boolean closed;
+
+    /** Indicates if no more request can be sent on the connection. */
+    private volatile boolean closing;
+
+    /** The remaining bytes of the current chunk or entity. */
+    private long remaining;
+
+    /** The parent helper. */
+    private final NioHttpClientHelper helper;
+
+    /** The inbound buffer. */
+    private ByteBuffer inbound;
+
+    /** Indicates if the server closes the connection after the response. */
+    private boolean lastResponse;
+
+    /** The time of the last read or write. */
+    private volatile long lastActivity;
+
+    /** The maximum number of bytes buffered for a response entity. */
+    private final int maxBufferedBytes;
+
+    /** The maximum number of bytes pending before blocking writers. */
+    private final long maxPendingBytes;
+
+    /** The output buffer. */
+    private final OutputBuffer outputBuffer;
+
+    /** The buffers waiting to be written by the selector thread. */
+    private final List<ByteBuffer> pendingBuffers;
+
+    /** The number of bytes waiting to be written. */
+    private long pendingBytes;
+
+    /** The parent host pool. */
+    private final NioHttpClientHelper.HostPool pool;
+
+    /** The number of requests sent on the connection. */
+    private int requestCount;
+
+    /** The call the connection was handed to by the pool, or null. */
+    private NioClientCall reservation;
+
+    /** The entity stream of the response being parsed, or null. */
+    private volatile ResponseStream responseStream;
+
+    /** The number of head bytes already scanned for the end of head. */
+    private int scanned;
+
+    /** The selection key. */
+    private volatile SelectionKey selectionKey;
+
+    /** The IP address of the server. */
+    private final String serverAddress;
+
+    /** The port of the server. */
+    private final int serverPort;
+
+    /** The parsing state. */
+    private int state;
+
+    /** Indicates if reading is suspended until the entity is consumed. */
+    private boolean suspended;
+
+    /** The lock serializing the requests written on the connection. */
+    private final Object writeLock;
+
+    /**
+     * Constructor.
+     * 
+     * @param helper
+     *            The parent helper.
+     * @param pool
+     *            The parent host pool.
+     * @param channel
+     *            The connected socket channel.
+     */
+    public NioClientConnection(NioHttpClientHelper helper,
+            NioHttpClientHelper.HostPool pool, SocketChannel channel) {
+        this.helper = helper;
+        this.pool = pool;
+        this.channel = channel;
+        this.calls = new LinkedList<NioClientCall>();
+        this.closed = false;
+        this.closing = false;
+        this.inbound = ByteBuffer.allocate(helper.getIoBufferSize());
+        this.lastActivity = System.currentTimeMillis();
+        this.lastResponse = false;
+        this.maxBufferedBytes = 4 * helper.getIoBufferSize();
+        this.maxPendingBytes = 4L * helper.getIoBufferSize();
+        this.outputBuffer = new OutputBuffer();
+        this.pendingBuffers = new ArrayList<ByteBuffer>();
+        this.pendingBytes = 0;
+        this.requestCount = 0;
+        this.reservation = null;
+        this.state = STATE_HEAD;
+        this.writeLock = new Object();
+
+        InetSocketAddress remote = (InetSocketAddress) channel.socket()
+                .getRemoteSocketAddress();
+        this.serverAddress = (remote == null) ? null : remote.getAddress()
+                .getHostAddress();
+        this.serverPort = (remote == null) ? -1 : remote.getPort();
+    }
+
+    /**
+     * Returns a string decoded from the inbound bytes using ISO-8859-1.
+     * 
+     * @param start
+     *            The start index.
+     * @param end
+     *            The end index (excluded).
+     * @return The decoded string.
+     */
+    private String ascii(int start, int end) {
+        char[] chars = new char[end - start];
+
+        for (int i = start; i < end; i++) {
+            chars[i - start] = (char) (this.inbound.get(i) & 0xFF);
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * Blocks the calling thread while too many bytes are pending. Must be
+     * called while holding the lock on the pending buffers.
+     * 
+     * @throws IOException
+     */
+    private void awaitPendingBytes() throws IOException {
+        while (!this.closed && (this.pendingBytes > this.maxPendingBytes)) {
+            try {
+                this.pendingBuffers.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new java.io.InterruptedIOException(
+                        "Interrupted while sending");
+            }
+        }
+
+        if (this.closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * Indicates if a call can be pipelined behind the requests already sent.
+     * 
+     * @param call
+     *            The call to pipeline.
+     * @return True if the call can be pipelined.
+     */
+    protected synchronized boolean canPipeline(NioClientCall call) {
+        if (this.closed || this.closing || (this.reservation != null)
+                || this.calls.isEmpty()
+                || (this.calls.size() >= getHelper().getMaxPipelinedRequests())
+                || !call.isPipelinable()) {
+            return false;
+        }
+
+        for (NioClientCall current : this.calls) {
+            if (!current.isPipelinable()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Closes the connection if no response was received in time.
+     * 
+     * @param now
+     *            The current time.
+     */
+    protected void checkTimeout(long now) {
+        int readTimeout = getHelper().getReadTimeout();
+
+        if ((readTimeout > 0) && isWaiting()
+                && (now - this.lastActivity > readTimeout)) {
+            close(new SocketTimeoutException("Read timed out"));
+        }
+    }
+
+    /**
+     * Closes the connection, failing the calls still waiting for a response.
+     * Can be called from any thread.
+     * 
+     * @param cause
+     *            The failure cause reported to the waiting calls.
+     */
+    public void close(IOException cause) {
+        List<NioClientCall> failed;
+
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+
+            this.closed = true;
+            failed = new ArrayList<NioClientCall>(this.calls);
+            this.calls.clear();
+        }
+
+        synchronized (this.pendingBuffers) {
+            this.pendingBuffers.clear();
+            this.pendingBytes = 0;
+            this.pendingBuffers.notifyAll();
+        }
+
+        if (this.selectionKey != null) {
+            this.selectionKey.cancel();
+        }
+
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            getHelper().getLogger().log(Level.FINE,
+                    "Unable to close the connection", e);
+        }
+
+        ResponseStream stream = this.responseStream;
+
+        if (stream != null) {
+            stream.fail(cause);
+        }
+
+        getHelper().onClosed(this);
+
+        for (NioClientCall call : failed) {
+            call.onFailure(cause);
+        }
+    }
+
+    /**
+     * Finds the end of a line in the inbound buffer.
+     * 
+     * @param from
+     *            The index to start from.
+     * @return The index following the line feed or -1.
+     */
+    private int findLineEnd(int from) {
+        for (int i = from; i < this.inbound.limit(); i++) {
+            if (this.inbound.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the parent helper.
+     * 
+     * @return The parent helper.
+     */
+    public NioHttpClientHelper getHelper() {
+        return this.helper;
+    }
+
+    /**
+     * Returns the time of the last read or write.
+     * 
+     * @return The time of the last read or write.
+     */
+    public long getLastActivity() {
+        return this.lastActivity;
+    }
+
+    /**
+     * Returns the parent host pool.
+     * 
+     * @return The parent host pool.
+     */
+    protected NioHttpClientHelper.HostPool getPool() {
+        return this.pool;
+    }
+
+    /**
+     * Returns the IP address of the server.
+     * 
+     * @return The IP address of the server.
+     */
+    public String getServerAddress() {
+        return this.serverAddress;
+    }
+
+    /**
+     * Returns the port of the server.
+     * 
+     * @return The port of the server.
+     */
+    public int getServerPort() {
+        return this.serverPort;
+    }
+
+    /**
+     * Returns the index of a byte in the inbound buffer, or -1.
+     * 
+     * @param b
+     *            The byte to look for.
+     * @param start
+     *            The start index.
+     * @param end
+     *            The end index (excluded).
+     * @return The index of the byte or -1.
+     */
+    private int indexOf(char b, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (this.inbound.get(i) == b) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Indicates if the connection is closed.
+     * 
+     * @return True if the connection is closed.
+     */
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * Indicates if the connection can be returned to the idle connections of
+     * its pool.
+     * 
+     * @return True if the connection is idle.
+     */
+    protected synchronized boolean isIdle() {
+        return !this.closed && !this.closing && (this.reservation == null)
+                && this.calls.isEmpty();
+    }
+
+    /**
+     * Indicates if the connection is waiting for a response, in which case
+     * the read timeout applies.
+     * 
+     * @return True if the connection is waiting for a response.
+     */
+    protected synchronized boolean isWaiting() {
+        return !this.calls.isEmpty() && !this.suspended;
+    }
+
+    /**
+     * Called by the selector thread when the connection is readable.
+     */
+    public void onReadable() {
+        if (this.suspended) {
+            return;
+        }
+
+        try {
+            int read = this.channel.read(this.inbound);
+
+            if (read == -1) {
+                if (this.state == STATE_UNTIL_CLOSE) {
+                    onResponseCompleted();
+                }
+
+                close(new EOFException("Connection closed by the server"));
+            } else if (read > 0) {
+                this.lastActivity = System.currentTimeMillis();
+                parse();
+            }
+        } catch (IOException e) {
+            getHelper().getLogger().log(Level.FINE,
+                    "Unable to read from the connection", e);
+            close(e);
+        }
+    }
+
+    /**
+     * Called by the selector thread once a response was fully received.
+     * Returns the connection to its pool if no other response is expected,
+     * before signaling the end of the entity so that the consumer can reuse
+     * it right away.
+     */
+    private void onResponseCompleted() {
+        boolean idle;
+        ResponseStream stream = this.responseStream;
+        this.responseStream = null;
+        this.state = STATE_HEAD;
+
+        synchronized (this) {
+            this.calls.poll();
+            idle = this.calls.isEmpty();
+        }
+
+        if (this.lastResponse || (this.closing && idle)) {
+            // Pipelined requests are sent again on other connections
+            close(new EOFException("Connection closed by the server"));
+        } else if (idle) {
+            this.pool.release(this);
+        }
+
+        if (stream != null) {
+            stream.finish();
+        }
+    }
+
+    /**
+     * Called by the selector thread when the connection is writable.
+     */
+    public void onWritable() {
+        boolean drained = false;
+
+        synchronized (this.pendingBuffers) {
+            try {
+                if (!this.pendingBuffers.isEmpty()) {
+                    ByteBuffer[] buffers = this.pendingBuffers
+                            .toArray(new ByteBuffer[this.pendingBuffers.size()]);
+                    this.pendingBytes -= this.channel.write(buffers);
+                    this.lastActivity = System.currentTimeMillis();
+
+                    while (!this.pendingBuffers.isEmpty()
+                            && !this.pendingBuffers.get(0).hasRemaining()) {
+                        this.pendingBuffers.remove(0);
+                    }
+
+                    this.pendingBuffers.notifyAll();
+                }
+            } catch (IOException e) {
+                getHelper().getLogger().log(Level.FINE,
+                        "Unable to write to the connection", e);
+                close(e);
+                return;
+            }
+
+            drained = this.pendingBuffers.isEmpty();
+        }
+
+        if (drained && this.selectionKey.isValid()) {
+            this.selectionKey.interestOps(this.selectionKey.interestOps()
+                    & ~SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Parses the inbound bytes.
+     * 
+     * @throws IOException
+     */
+    private void parse() throws IOException {
+        this.inbound.flip();
+
+        try {
+            boolean progress = true;
+
+            while (progress && !this.closed && !this.suspended
+                    && this.inbound.hasRemaining()) {
+                switch (this.state) {
+                case STATE_HEAD:
+                    progress = parseHead();
+                    break;
+                case STATE_ENTITY:
+                case STATE_CHUNK_DATA:
+                case STATE_UNTIL_CLOSE:
+                    progress = parseEntity();
+                    break;
+                case STATE_CHUNK_SIZE:
+                    progress = parseChunkSize();
+                    break;
+                default:
+                    progress = parseChunkLine();
+                }
+            }
+        } finally {
+            this.inbound.compact();
+        }
+
+        if (!this.closed && (this.state == STATE_HEAD)
+                && !this.inbound.hasRemaining()) {
+            int maxHeadSize = getHelper().getMaxHeadSize();
+
+            if (this.inbound.capacity() >= maxHeadSize) {
+                throw new IOException("The response head is too large");
+            }
+
+            // Grow the buffer to read a larger head
+            ByteBuffer larger = ByteBuffer.allocate(Math.min(maxHeadSize,
+                    this.inbound.capacity() * 2));
+            this.inbound.flip();
+            larger.put(this.inbound);
+            this.inbound = larger;
+        }
+    }
+
+    /**
+     * Parses the line following chunk data, or a trailer line.
+     * 
+     * @return True if a line was parsed.
+     */
+    private boolean parseChunkLine() {
+        int start = this.inbound.position();
+        int end = findLineEnd(start);
+
+        if (end == -1) {
+            return false;
+        }
+
+        this.inbound.position(end);
+
+        if (this.state == STATE_CHUNK_END) {
+            this.state = STATE_CHUNK_SIZE;
+        } else if ((end - start) <= 2) {
+            // Empty line ending the trailers
+            onResponseCompleted();
+        }
+
+        return true;
+    }
+
+    /**
+     * Parses a chunk size line.
+     * 
+     * @return True if the line was parsed.
+     * @throws IOException
+     */
+    private boolean parseChunkSize() throws IOException {
+        int start = this.inbound.position();
+        int end = findLineEnd(start);
+
+        if (end == -1) {
+            return false;
+        }
+
+        long size = 0;
+        boolean digits = false;
+
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(this.inbound.get(i), 16);
+
+            if (digit == -1) {
+                break;
+            }
+
+            digits = true;
+            size = (size << 4) + digit;
+
+            if (size > Integer.MAX_VALUE) {
+                break;
+            }
+        }
+
+        this.inbound.position(end);
+
+        if (!digits || (size > Integer.MAX_VALUE)) {
+            throw new IOException("Invalid chunk size in the response");
+        } else if (size == 0) {
+            this.state = STATE_TRAILER;
+        } else {
+            this.remaining = size;
+            this.state = STATE_CHUNK_DATA;
+        }
+
+        return true;
+    }
+
+    /**
+     * Hands the available entity bytes to the response stream.
+     * 
+     * @return True if some bytes were handed.
+     */
+    private boolean parseEntity() {
+        int length = this.inbound.remaining();
+
+        if (this.state != STATE_UNTIL_CLOSE) {
+            length = (int) Math.min(this.remaining, length);
+        }
+
+        if (!this.responseStream.write(this.inbound, length)) {
+            this.suspended = true;
+
+            if (this.selectionKey.isValid()) {
+                this.selectionKey.interestOps(this.selectionKey
+                        .interestOps() & ~SelectionKey.OP_READ);
+            }
+        }
+
+        if (this.state != STATE_UNTIL_CLOSE) {
+            this.remaining -= length;
+
+            if (this.remaining == 0) {
+                if (this.state == STATE_CHUNK_DATA) {
+                    this.state = STATE_CHUNK_END;
+                } else {
+                    onResponseCompleted();
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Parses the status line and headers once fully available.
+     * 
+     * @return True if the head was parsed.
+     * @throws IOException
+     */
+    private boolean parseHead() throws IOException {
+        int start = this.inbound.position();
+        int limit = this.inbound.limit();
+        int headEnd = -1;
+
+        for (int i = Math.max(start, start + this.scanned - 3); (headEnd == -1)
+                && (i < limit); i++) {
+            if (this.inbound.get(i) == '\n') {
+                if ((i + 1 < limit) && (this.inbound.get(i + 1) == '\n')) {
+                    headEnd = i + 2;
+                } else if ((i + 2 < limit)
+                        && (this.inbound.get(i + 1) == '\r')
+                        && (this.inbound.get(i + 2) == '\n')) {
+                    headEnd = i + 3;
+                }
+            }
+        }
+
+        if (headEnd == -1) {
+            this.scanned = limit - start;
+            return false;
+        }
+
+        this.scanned = 0;
+        this.inbound.position(headEnd);
+        NioClientCall call;
+
+        synchronized (this) {
+            call = this.calls.peek();
+        }
+
+        if (call == null) {
+            throw new IOException("Unexpected response received");
+        }
+
+        int lineEnd = findLineEnd(start);
+        int contentEnd = lineEnd - 1;
+
+        if ((contentEnd > start) && (this.inbound.get(contentEnd - 1) == '\r')) {
+            contentEnd--;
+        }
+
+        int versionEnd = indexOf(' ', start, contentEnd);
+
+        if (versionEnd <= start) {
+            throw new IOException("Invalid status line in the response");
+        }
+
+        int codeEnd = indexOf(' ', versionEnd + 1, contentEnd);
+
+        if (codeEnd == -1) {
+            codeEnd = contentEnd;
+        }
+
+        int code;
+
+        try {
+            code = Integer.parseInt(ascii(versionEnd + 1, codeEnd).trim());
+        } catch (NumberFormatException e) {
+            code = -1;
+        }
+
+        if (code < 100) {
+            throw new IOException("Invalid status line in the response");
+        } else if ((code < 200) && (code != 101)) {
+            // Skip the interim responses
+            return true;
+        }
+
+        String version = ascii(start, versionEnd);
+        call.setVersion(version);
+        call.setStatusCode(code);
+        call.setReasonPhrase((codeEnd < contentEnd) ? ascii(codeEnd + 1,
+                contentEnd) : "");
+        parseHeaders(call, lineEnd, headEnd);
+
+        // Detect the persistence of the connection
+        String connectionHeader = call.getResponseHeaders().getFirstValue(
+                HeaderConstants.HEADER_CONNECTION, true);
+
+        if ("HTTP/1.0".equalsIgnoreCase(version) ? !"keep-alive"
+                .equalsIgnoreCase(connectionHeader) : "close"
+                .equalsIgnoreCase(connectionHeader)) {
+            this.closing = true;
+            this.lastResponse = true;
+        }
+
+        // Detect the entity delimitation
+        String transferEncoding = call.getResponseHeaders().getFirstValue(
+                HeaderConstants.HEADER_TRANSFER_ENCODING, true);
+        String contentLength = call.getResponseHeaders().getFirstValue(
+                HeaderConstants.HEADER_CONTENT_LENGTH, true);
+        long size;
+
+        if (Method.HEAD.getName().equals(call.getMethod()) || (code == 204)
+                || (code == 304) || (code == 101)) {
+            size = 0;
+        } else if ((transferEncoding != null)
+                && transferEncoding.trim().toLowerCase().endsWith("chunked")) {
+            size = -1;
+            this.state = STATE_CHUNK_SIZE;
+        } else if (contentLength != null) {
+            try {
+                size = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException nfe) {
+                throw new IOException("Invalid content length in the response");
+            }
+
+            if (size < 0) {
+                throw new IOException("Invalid content length in the response");
+            }
+
+            this.remaining = size;
+            this.state = STATE_ENTITY;
+        } else {
+            size = -1;
+            this.closing = true;
+            this.lastResponse = true;
+            this.state = STATE_UNTIL_CLOSE;
+        }
+
+        if (size == 0) {
+            onResponseCompleted();
+            call.onHead(null);
+        } else {
+            this.responseStream = new ResponseStream();
+            call.onHead(this.responseStream);
+        }
+
+        return true;
+    }
+
+    /**
+     * Parses the response headers.
+     * 
+     * @param call
+     *            The call to update.
+     * @param start
+     *            The index of the first header line.
+     * @param end
+     *            The index following the last head byte.
+     * @throws IOException
+     */
+    private void parseHeaders(NioClientCall call, int start, int end)
+            throws IOException {
+        int lineStart = start;
+        int lineEnd = findLineEnd(lineStart);
+        Header last = null;
+
+        while ((lineEnd != -1) && (lineEnd <= end)) {
+            int contentEnd = lineEnd - 1;
+
+            if ((contentEnd > lineStart)
+                    && (this.inbound.get(contentEnd - 1) == '\r')) {
+                contentEnd--;
+            }
+
+            if (contentEnd == lineStart) {
+                // End of the head
+                break;
+            }
+
+            byte first = this.inbound.get(lineStart);
+
+            if ((first == ' ') || (first == '\t')) {
+                // Obsolete line folding
+                if (last == null) {
+                    throw new IOException("Invalid header in the response");
+                }
+
+                last.setValue(last.getValue() + ' '
+                        + ascii(lineStart, contentEnd).trim());
+            } else {
+                int colon = indexOf(':', lineStart, contentEnd);
+
+                if (colon <= lineStart) {
+                    throw new IOException("Invalid header in the response");
+                }
+
+                last = new Header(HeaderUtils.intern(ascii(lineStart, colon)
+                        .trim()), ascii(colon + 1, contentEnd).trim());
+                call.getResponseHeaders().add(last);
+            }
+
+            lineStart = lineEnd;
+            lineEnd = findLineEnd(lineStart);
+        }
+    }
+
+    /**
+     * Registers the connection with the selector. Called by the selector
+     * thread.
+     * 
+     * @throws IOException
+     */
+    protected void register() throws IOException {
+        if (this.closed) {
+            return;
+        }
+
+        this.selectionKey = this.channel.register(getHelper().getSelector(),
+                SelectionKey.OP_READ, this);
+
+        synchronized (this.pendingBuffers) {
+            if (!this.pendingBuffers.isEmpty()) {
+                this.selectionKey.interestOps(SelectionKey.OP_READ
+                        | SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    /**
+     * Asks the selector thread to write the pending buffers once the
+     * connection is writable.
+     */
+    private void registerWrite() {
+        getHelper().execute(new Runnable() {
+            public void run() {
+                SelectionKey key = selectionKey;
+
+                if ((key != null) && key.isValid()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                }
+            }
+        });
+    }
+
+    /**
+     * Reserves an idle connection for a call. Called by the pool.
+     * 
+     * @param call
+     *            The call to reserve the connection for.
+     * @return True if the connection was reserved.
+     */
+    protected synchronized boolean reserve(NioClientCall call) {
+        if (this.closed || (this.reservation != null)
+                || !this.calls.isEmpty()) {
+            return false;
+        }
+
+        this.reservation = call;
+        return true;
+    }
+
+    /**
+     * Asks the selector thread to resume reading once the response entity was
+     * partly consumed or closed.
+     */
+    private void resume() {
+        getHelper().execute(new Runnable() {
+            public void run() {
+                if (closed || !suspended) {
+                    return;
+                }
+
+                suspended = false;
+
+                try {
+                    if (inbound.position() > 0) {
+                        parse();
+                    }
+
+                    if (!closed && !suspended && selectionKey.isValid()) {
+                        selectionKey.interestOps(selectionKey.interestOps()
+                                | SelectionKey.OP_READ);
+                    }
+                } catch (IOException e) {
+                    getHelper().getLogger().log(Level.FINE,
+                            "Unable to parse the response", e);
+                    close(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Sends buffers on the connection. Tries to write them immediately on the
+     * channel and otherwise queues them for the selector thread, blocking the
+     * calling thread while too many bytes are pending.
+     * 
+     * @param buffers
+     *            The buffers to send.
+     * @return True if the buffers were fully written and can be reused.
+     * @throws IOException
+     */
+    private boolean send(ByteBuffer[] buffers) throws IOException {
+        boolean written = false;
+        boolean register = false;
+
+        synchronized (this.pendingBuffers) {
+            awaitPendingBytes();
+
+            if (this.pendingBuffers.isEmpty()) {
+                this.channel.write(buffers);
+                this.lastActivity = System.currentTimeMillis();
+            }
+
+            written = true;
+
+            for (ByteBuffer buffer : buffers) {
+                if (buffer.hasRemaining()) {
+                    written = false;
+                    register = register || this.pendingBuffers.isEmpty();
+                    this.pendingBuffers.add(buffer);
+                    this.pendingBytes += buffer.remaining();
+                }
+            }
+        }
+
+        if (register) {
+            registerWrite();
+        }
+
+        return written;
+    }
+
+    /**
+     * Sends the request of a call on the connection, either on a reserved
+     * connection or pipelined behind the requests already sent. Failures to
+     * write close the connection and are reported to the call.
+     * 
+     * @param call
+     *            The call to send.
+     * @return False if the connection can't accept the call anymore.
+     */
+    protected boolean send(NioClientCall call) {
+        synchronized (this.writeLock) {
+            boolean pipelined;
+            boolean reused;
+            boolean last;
+
+            synchronized (this) {
+                pipelined = (this.reservation != call);
+
+                if (this.closed || (pipelined && !canPipeline(call))) {
+                    return false;
+                }
+
+                reused = this.requestCount > 0;
+                this.reservation = null;
+                this.requestCount++;
+                int maxRequests = getHelper().getMaxRequestsPerConnection();
+
+                if ((maxRequests > 0) && (this.requestCount >= maxRequests)) {
+                    this.closing = true;
+                }
+
+                last = this.closing;
+                this.calls.add(call);
+            }
+
+            call.setConnection(this, reused);
+            getHelper().onSent(reused, pipelined);
+
+            try {
+                call.writeRequest(this.outputBuffer, last);
+            } catch (IOException e) {
+                getHelper().getLogger().log(Level.FINE,
+                        "Unable to send the request", e);
+                close(e);
+            }
+
+            return true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Connection to " + this.serverAddress + ":" + this.serverPort;
+    }
+}
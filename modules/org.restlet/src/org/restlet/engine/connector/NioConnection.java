@@ -0,0 +1,1550 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.engine.connector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+
+import org.restlet.data.Header;
+import org.restlet.data.Status;
+import org.restlet.engine.header.HeaderConstants;
+import org.restlet.engine.header.HeaderUtils;
+import org.restlet.engine.io.BufferPool;
+import org.restlet.engine.io.FileTransferChannel;
+import org.restlet.engine.util.StringUtils;
+
+/**
+ * Connection handled by the {@link NioHttpServerHelper}. The request line,
+ * headers and entity are parsed straight from the inbound {@link ByteBuffer}
+ * by the selector thread. Calls are handed to the worker service once their
+ * head is read, one at a time, so that pipelined requests are answered in
+ * order. The entity is then streamed to the worker thread through a bounded
+ * {@link EntityInputStream}, the selector thread pausing the reads while the
+ * worker doesn't consume it.
+ * The response is written by the worker thread without blocking on the socket
+ * whenever possible, the selector thread taking care of the remaining bytes.
+ * 
+ * @author Jerome Louvel
+ */
+public class NioConnection {
+
+    /**
+     * Channel writing a response entity that isn't chunked. Regular bytes are
+     * buffered by the {@link OutputBuffer} while file regions and read-only
+     * buffers are directly sent to the socket. The part of a file region that
+     * the socket doesn't accept immediately is queued as a read-only mapped
+     * buffer, so that file content is never copied through the Java heap.
+     */
+    public class EntityChannel implements FileTransferChannel {
+
+        /**
+         * Does nothing as the response is finished by the connection once the
+         * call is handled.
+         */
+        public void close() throws IOException {
+        }
+
+        public boolean isOpen() {
+            return !closed;
+        }
+
+        public long transferFrom(FileChannel source, long position, long count)
+                throws IOException {
+            // Send the response head and the buffered entity bytes first
+            getOutputStream().flush();
+            long end = Math.min(position + count, source.size());
+            long current = position;
+
+            while (current < end) {
+                int length = (int) Math.min(end - current, MAX_TRANSFER_SIZE);
+                boolean register = false;
+
+                synchronized (pendingBuffers) {
+                    awaitPendingBytes();
+                    long written = 0;
+
+                    if (pendingBuffers.isEmpty()) {
+                        written = source.transferTo(current, length, channel);
+                        lastActivity = System.currentTimeMillis();
+                    }
+
+                    if (written < length) {
+                        register = pendingBuffers.isEmpty();
+                        ByteBuffer mapped = source.map(
+                                FileChannel.MapMode.READ_ONLY, current
+                                        + written, length - written);
+                        pendingBuffers.add(mapped);
+                        pendingBytes += mapped.remaining();
+                    }
+                }
+
+                if (register) {
+                    registerWrite();
+                }
+
+                current += length;
+            }
+
+            return current - position;
+        }
+
+        public int write(ByteBuffer src) throws IOException {
+            int result = src.remaining();
+
+            if (src.hasArray()) {
+                getOutputStream().write(src.array(),
+                        src.arrayOffset() + src.position(), result);
+                src.position(src.limit());
+            } else if (src.isReadOnly()) {
+                // The content can't be modified by the caller, such as a
+                // mapped file, so a view of the buffer is queued without copy
+                getOutputStream().flush();
+                send(new ByteBuffer[] { src.duplicate() });
+                src.position(src.limit());
+            } else {
+                byte[] bytes = BufferPool.acquireArray();
+
+                try {
+                    while (src.hasRemaining()) {
+                        int length = Math.min(src.remaining(), bytes.length);
+                        src.get(bytes, 0, length);
+                        getOutputStream().write(bytes, 0, length);
+                    }
+                } finally {
+                    BufferPool.release(bytes);
+                }
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Output stream buffering the response bytes before sending them on the
+     * connection. Once the entity starts, it can encode the bytes using the
+     * chunked transfer encoding.
+     */
+    public class OutputBuffer extends OutputStream {
+
+        /** The buffered bytes. */
+        private byte[] bytes;
+
+        /** The number of buffered bytes. */
+        private int count;
+
+        /** Index of the first entity byte in the buffer if chunked. */
+        private int entityStart;
+
+        /** Indicates if the entity is chunked. */
+        private boolean chunked;
+
+        /** Indicates if the last chunk was written. */
+        private boolean finished;
+
+        /**
+         * Constructor.
+         */
+        private OutputBuffer() {
+            this.bytes = new byte[getHelper().getIoBufferSize()];
+            reset();
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+        }
+
+        /**
+         * Sends all the buffered bytes, terminating the chunked entity if
+         * needed.
+         * 
+         * @throws IOException
+         */
+        public synchronized void finish() throws IOException {
+            if (!this.finished) {
+                this.finished = true;
+                sendBuffer(true);
+            }
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            sendBuffer(false);
+        }
+
+        /**
+         * Indicates if the entity is chunked.
+         * 
+         * @return True if the entity is chunked.
+         */
+        public synchronized boolean isChunked() {
+            return this.chunked;
+        }
+
+        /**
+         * Resets the stream for a new response.
+         */
+        private synchronized void reset() {
+            this.count = 0;
+            this.entityStart = 0;
+            this.chunked = false;
+            this.finished = false;
+        }
+
+        /**
+         * Sends the buffered bytes.
+         * 
+         * @param last
+         *            True if this is the last write for the current response.
+         * @throws IOException
+         */
+        private void sendBuffer(boolean last) throws IOException {
+            if (this.chunked) {
+                List<ByteBuffer> buffers = new ArrayList<ByteBuffer>(5);
+                int size = this.count - this.entityStart;
+
+                if (this.entityStart > 0) {
+                    buffers.add(ByteBuffer.wrap(this.bytes, 0,
+                            this.entityStart));
+                }
+
+                if (size > 0) {
+                    buffers.add(ByteBuffer.wrap(StringUtils
+                            .getAsciiBytes(Integer.toHexString(size) + "\r\n")));
+                    buffers.add(ByteBuffer.wrap(this.bytes, this.entityStart,
+                            size));
+                    buffers.add(ByteBuffer.wrap(CRLF));
+                }
+
+                if (last) {
+                    buffers.add(ByteBuffer.wrap(LAST_CHUNK));
+                }
+
+                if (!buffers.isEmpty()
+                        && !send(buffers.toArray(new ByteBuffer[buffers
+                                .size()]))) {
+                    this.bytes = new byte[this.bytes.length];
+                }
+            } else if (this.count > 0) {
+                if (!send(new ByteBuffer[] { ByteBuffer.wrap(this.bytes, 0,
+                        this.count) })) {
+                    this.bytes = new byte[this.bytes.length];
+                }
+            }
+
+            this.count = 0;
+            this.entityStart = 0;
+        }
+
+        /**
+         * Indicates that the response head was written and that the following
+         * bytes belong to the entity.
+         * 
+         * @param chunked
+         *            True if the entity must be chunked.
+         */
+        public synchronized void startEntity(boolean chunked) {
+            this.chunked = chunked;
+            this.entityStart = this.count;
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len)
+                throws IOException {
+            while (len > 0) {
+                if (this.count == this.bytes.length) {
+                    sendBuffer(false);
+                }
+
+                int length = Math.min(len, this.bytes.length - this.count);
+                System.arraycopy(b, off, this.bytes, this.count, length);
+                this.count += length;
+                off += length;
+                len -= length;
+            }
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            if (this.count == this.bytes.length) {
+                sendBuffer(false);
+            }
+
+            this.bytes[this.count++] = (byte) b;
+        }
+    }
+
+    /**
+     * Input stream of a request entity, filled by the selector thread and read
+     * by the worker thread handling the call. When more than the maximum
+     * number of bytes are buffered, the selector thread stops reading the
+     * connection until the worker consumes half of them.
+     */
+    public class EntityInputStream extends InputStream {
+
+        /** The buffered chunks of bytes. */
+        private final Deque<ByteBuffer> chunks;
+
+        /** The number of buffered bytes. */
+        private long buffered;
+
+        /** Indicates if the entity was fully received. */
+        private boolean completed;
+
+        /** The error to report to the reader, if any. */
+        private IOException error;
+
+        /** Indicates if the selector thread stopped reading the connection. */
+        private boolean suspended;
+
+        /**
+         * Constructor.
+         */
+        private EntityInputStream() {
+            this.chunks = new ArrayDeque<ByteBuffer>();
+        }
+
+        /**
+         * Adds bytes read by the selector thread.
+         * 
+         * @param bytes
+         *            The bytes read.
+         * @param offset
+         *            The offset of the first byte.
+         * @param length
+         *            The number of bytes.
+         * @return True if the selector thread should stop reading the entity
+         *         until the worker thread consumes the buffered bytes.
+         */
+        private synchronized boolean add(byte[] bytes, int offset, int length) {
+            byte[] copy = new byte[length];
+            System.arraycopy(bytes, offset, copy, 0, length);
+            this.chunks.add(ByteBuffer.wrap(copy));
+            this.buffered += length;
+            this.suspended = this.buffered >= maxPendingBytes;
+            notifyAll();
+            return this.suspended;
+        }
+
+        @Override
+        public synchronized int available() {
+            return (int) Math.min(Integer.MAX_VALUE, this.buffered);
+        }
+
+        /**
+         * Marks the entity as fully received.
+         */
+        private synchronized void complete() {
+            this.completed = true;
+            notifyAll();
+        }
+
+        /**
+         * Reports an error to the reader, for example when the connection is
+         * closed or the entity is too large.
+         * 
+         * @param error
+         *            The error to report.
+         */
+        private synchronized void fail(IOException error) {
+            if (!this.completed && (this.error == null)) {
+                this.error = error;
+                notifyAll();
+            }
+        }
+
+        /**
+         * Indicates if the entity was fully received.
+         * 
+         * @return True if the entity was fully received.
+         */
+        private synchronized boolean isCompleted() {
+            return this.completed;
+        }
+
+        /**
+         * Indicates if the selector thread stopped reading the connection.
+         * 
+         * @return True if the selector thread stopped reading the connection.
+         */
+        private synchronized boolean isSuspended() {
+            return this.suspended;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return (read(b, 0, 1) == -1) ? -1 : (b[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            int result = 0;
+            boolean resume = false;
+
+            synchronized (this) {
+                while (this.chunks.isEmpty() && !this.completed
+                        && (this.error == null)) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException(
+                                "Interrupted while reading the entity");
+                    }
+                }
+
+                if (this.chunks.isEmpty()) {
+                    if (this.error != null) {
+                        throw this.error;
+                    }
+
+                    return -1;
+                }
+
+                while ((result < len) && !this.chunks.isEmpty()) {
+                    ByteBuffer chunk = this.chunks.peek();
+                    int length = Math.min(len - result, chunk.remaining());
+                    chunk.get(b, off + result, length);
+                    result += length;
+
+                    if (!chunk.hasRemaining()) {
+                        this.chunks.poll();
+                    }
+                }
+
+                this.buffered -= result;
+
+                if (this.suspended && (this.buffered <= maxPendingBytes / 2)) {
+                    this.suspended = false;
+                    resume = true;
+                }
+            }
+
+            if (resume) {
+                resumeEntity();
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Task handling a call on a worker thread.
+     */
+    public class CallTask implements Runnable {
+
+        /** The call to handle. */
+        private final NioServerCall call;
+
+        /**
+         * Constructor.
+         * 
+         * @param call
+         *            The call to handle.
+         */
+        private CallTask(NioServerCall call) {
+            this.call = call;
+        }
+
+        /**
+         * Rejects the call because no worker is available.
+         */
+        public void reject() {
+            getHelper().getLogger().warning(
+                    "Unable to handle the call, no worker available: "
+                            + this.call.getMethod() + " "
+                            + this.call.getRequestUri());
+            sendError(Status.SERVER_ERROR_SERVICE_UNAVAILABLE);
+        }
+
+        @Override
+        public void run() {
+            try {
+                getHelper().handle(this.call);
+            } finally {
+                onCallCompleted();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return this.call.getMethod() + " " + this.call.getRequestUri();
+        }
+    }
+
+    /** Carriage return and line feed. */
+    private static final byte[] CRLF = { 13, 10 };
+
+    /** The maximum number of file bytes transferred or mapped at once. */
+    private static final int MAX_TRANSFER_SIZE = 1024 * 1024;
+
+    /** The interim response sent to clients expecting a 100 status. */
+    private static final byte[] CONTINUE = StringUtils
+            .getAsciiBytes("HTTP/1.1 100 Continue\r\n\r\n");
+
+    /** The last chunk of a chunked entity, without trailers. */
+    private static final byte[] LAST_CHUNK = StringUtils
+            .getAsciiBytes("0\r\n\r\n");
+
+    /** Reading the request line and headers. */
+    private static final int STATE_HEAD = 1;
+
+    /** Reading an entity of known size. */
+    private static final int STATE_ENTITY = 2;
+
+    /** Reading a chunk size line. */
+    private static final int STATE_CHUNK_SIZE = 3;
+
+    /** Reading chunk data. */
+    private static final int STATE_CHUNK_DATA = 4;
+
+    /** Reading the line end following chunk data. */
+    private static final int STATE_CHUNK_END = 5;
+
+    /** Reading the trailer lines of a chunked entity. */
+    private static final int STATE_TRAILER = 6;
+
+    /** A call is being handled, inbound bytes are left in the buffer. */
+    private static final int STATE_BUSY = 7;
+
+    /** The socket channel. */
+    private final SocketChannel channel;
+
+    /** The client IP address. */
+    private final String clientAddress;
+
+    /** The client port. */
+    private final int clientPort;
+
+    /** Indicates if the connection was closed. */
+    private volatile boolean closed;
+
+    /** The channel writing the response entity. */
+    private final EntityChannel entityChannel;
+
+    /** The call being read or handled. */
+    private volatile NioServerCall call;
+
+    /** The remaining bytes of the current chunk. */
+    private long chunkRemaining;
+
+    /** The number of entity bytes read. */
+    private long entityRead;
+
+    /** The declared size of the entity being read, or -1 if chunked. */
+    private long entitySize;
+
+    /** The stream of the entity being read, or null if there is none. */
+    private volatile EntityInputStream entityStream;
+
+    /** The parent helper. */
+    private final NioHttpServerHelper helper;
+
+    /** The inbound buffer, kept in filling mode between reads. */
+    private ByteBuffer inbound;
+
+    /** Indicates if the connection should be kept alive after the call. */
+    private volatile boolean keepAlive;
+
+    /** The time of the last read or write. */
+    private volatile long lastActivity;
+
+    /** The output buffer. */
+    private final OutputBuffer outputStream;
+
+    /** The buffers waiting to be written by the selector thread. */
+    private final List<ByteBuffer> pendingBuffers;
+
+    /** The number of bytes waiting to be written. */
+    private long pendingBytes;
+
+    /** The number of pending bytes above which worker threads must wait. */
+    private final long maxPendingBytes;
+
+    /** Indicates if the current response was fully sent to the buffers. */
+    private boolean responseCompleted;
+
+    /** The number of head bytes already scanned for the end of head. */
+    private int scanned;
+
+    /** The selection key. */
+    private volatile SelectionKey selectionKey;
+
+    /** The parsing state. */
+    private int state;
+
+    /**
+     * Constructor.
+     * 
+     * @param helper
+     *            The parent helper.
+     * @param channel
+     *            The accepted socket channel.
+     */
+    public NioConnection(NioHttpServerHelper helper, SocketChannel channel) {
+        this.helper = helper;
+        this.channel = channel;
+        this.closed = false;
+        this.inbound = ByteBuffer.allocate(helper.getIoBufferSize());
+        this.pendingBuffers = new ArrayList<ByteBuffer>();
+        this.pendingBytes = 0;
+        this.maxPendingBytes = 4L * helper.getIoBufferSize();
+        this.lastActivity = System.currentTimeMillis();
+        this.state = STATE_HEAD;
+        this.outputStream = new OutputBuffer();
+        this.entityChannel = new EntityChannel();
+
+        InetSocketAddress remote = (InetSocketAddress) channel.socket()
+                .getRemoteSocketAddress();
+        this.clientAddress = (remote == null) ? null : remote.getAddress()
+                .getHostAddress();
+        this.clientPort = (remote == null) ? -1 : remote.getPort();
+    }
+
+    /**
+     * Returns a string decoded from the inbound bytes using ISO-8859-1.
+     * 
+     * @param start
+     *            The start index.
+     * @param end
+     *            The end index (excluded).
+     * @return The decoded string.
+     */
+    private String ascii(int start, int end) {
+        char[] chars = new char[end - start];
+
+        for (int i = start; i < end; i++) {
+            chars[i - start] = (char) (this.inbound.get(i) & 0xFF);
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * Blocks the calling worker thread while too many bytes are pending. Must
+     * be called while holding the lock on the pending buffers.
+     * 
+     * @throws IOException
+     */
+    private void awaitPendingBytes() throws IOException {
+        while (!this.closed && (this.pendingBytes > this.maxPendingBytes)) {
+            try {
+                this.pendingBuffers.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while sending");
+            }
+        }
+
+        if (this.closed) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * Closes the connection. Can be called from any thread.
+     */
+    public void close() {
+        if (!this.closed) {
+            this.closed = true;
+
+            synchronized (this.pendingBuffers) {
+                this.pendingBuffers.clear();
+                this.pendingBytes = 0;
+                this.pendingBuffers.notifyAll();
+            }
+
+            if (this.selectionKey != null) {
+                this.selectionKey.cancel();
+            }
+
+            EntityInputStream stream = this.entityStream;
+
+            if (stream != null) {
+                stream.fail(new ClosedChannelException());
+            }
+
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                getHelper().getLogger().log(Level.FINE,
+                        "Unable to close the connection", e);
+            }
+
+            getHelper().onClosed(this);
+        }
+    }
+
+    /**
+     * Hands the call to a worker thread once its head is read. The entity, if
+     * any, keeps being read by the selector thread.
+     * 
+     * @param entity
+     *            True if the request has an entity.
+     */
+    private void dispatch(boolean entity) {
+        NioServerCall current = this.call;
+        this.entityRead = 0;
+        this.entityStream = entity ? new EntityInputStream() : null;
+        current.setRequestEntityStream(this.entityStream);
+        this.outputStream.reset();
+
+        if (!entity) {
+            endEntity();
+        }
+
+        CallTask task = new CallTask(current);
+
+        try {
+            getHelper().getWorkerService().execute(task);
+        } catch (RejectedExecutionException ree) {
+            task.reject();
+        }
+    }
+
+    /**
+     * Called once the entity is fully read, or if there is none. Doesn't read
+     * the pipelined requests until the current call is handled.
+     */
+    private void endEntity() {
+        this.state = STATE_BUSY;
+
+        if (this.entityStream != null) {
+            this.entityStream.complete();
+        }
+
+        if (this.selectionKey.isValid()) {
+            this.selectionKey.interestOps(this.selectionKey.interestOps()
+                    & ~SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Reports an entity error to the worker thread and stops reading the
+     * connection, which will be closed once the response is sent.
+     * 
+     * @param error
+     *            The error to report.
+     */
+    private void failEntity(IOException error) {
+        this.state = STATE_BUSY;
+        this.keepAlive = false;
+        this.entityStream.fail(error);
+
+        if (this.selectionKey.isValid()) {
+            this.selectionKey.interestOps(this.selectionKey.interestOps()
+                    & ~SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Returns the index following the next line feed in the inbound buffer,
+     * or -1 if there is none.
+     * 
+     * @param from
+     *            The index to start from.
+     * @return The index following the next line feed or -1.
+     */
+    private int findLineEnd(int from) {
+        for (int i = from; i < this.inbound.limit(); i++) {
+            if (this.inbound.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the client IP address.
+     * 
+     * @return The client IP address.
+     */
+    public String getClientAddress() {
+        return clientAddress;
+    }
+
+    /**
+     * Returns the client port.
+     * 
+     * @return The client port.
+     */
+    public int getClientPort() {
+        return clientPort;
+    }
+
+    /**
+     * Returns the channel writing the response entity when it isn't chunked.
+     * 
+     * @return The channel writing the response entity.
+     */
+    public EntityChannel getEntityChannel() {
+        return entityChannel;
+    }
+
+    /**
+     * Returns the parent helper.
+     * 
+     * @return The parent helper.
+     */
+    public NioHttpServerHelper getHelper() {
+        return helper;
+    }
+
+    /**
+     * Returns the time of the last read or write.
+     * 
+     * @return The time of the last read or write.
+     */
+    public long getLastActivity() {
+        return lastActivity;
+    }
+
+    /**
+     * Returns the output buffer of the current response.
+     * 
+     * @return The output buffer of the current response.
+     */
+    public OutputBuffer getOutputStream() {
+        return outputStream;
+    }
+
+    /**
+     * Indicates if the connection is waiting for a new request or for entity
+     * bytes, and can be closed when idle.
+     * 
+     * @return True if the connection is waiting for the client.
+     */
+    public boolean isIdle() {
+        return (this.state != STATE_BUSY) && !this.closed
+                && !isEntitySuspended();
+    }
+
+    /**
+     * Called when the current call was handled. Sends the remaining bytes and
+     * prepares the connection for the next request.
+     */
+    private void onCallCompleted() {
+        try {
+            this.outputStream.finish();
+        } catch (IOException e) {
+            getHelper().getLogger().log(Level.FINE,
+                    "Unable to send the end of the response", e);
+            close();
+        }
+
+        onResponseCompleted();
+    }
+
+    /**
+     * Called by the selector thread when the connection is readable.
+     */
+    public void onReadable() {
+        try {
+            int read = this.channel.read(this.inbound);
+
+            if (read == -1) {
+                close();
+            } else if (read > 0) {
+                this.lastActivity = System.currentTimeMillis();
+                parse();
+            }
+        } catch (IOException e) {
+            getHelper().getLogger().log(Level.FINE,
+                    "Unable to read from the connection", e);
+            close();
+        }
+    }
+
+    /**
+     * Marks the current response as completed. The connection will be reset
+     * or closed once all the pending bytes are written.
+     */
+    private void onResponseCompleted() {
+        boolean drained;
+
+        synchronized (this.pendingBuffers) {
+            this.responseCompleted = true;
+            drained = this.pendingBuffers.isEmpty();
+        }
+
+        if (drained) {
+            getHelper().execute(new Runnable() {
+                public void run() {
+                    reset();
+                }
+            });
+        }
+    }
+
+    /**
+     * Called by the selector thread when the connection is writable.
+     */
+    public void onWritable() {
+        boolean drained = false;
+        boolean completed = false;
+
+        synchronized (this.pendingBuffers) {
+            try {
+                if (!this.pendingBuffers.isEmpty()) {
+                    ByteBuffer[] buffers = this.pendingBuffers
+                            .toArray(new ByteBuffer[this.pendingBuffers.size()]);
+                    this.pendingBytes -= this.channel.write(buffers);
+                    this.lastActivity = System.currentTimeMillis();
+
+                    while (!this.pendingBuffers.isEmpty()
+                            && !this.pendingBuffers.get(0).hasRemaining()) {
+                        this.pendingBuffers.remove(0);
+                    }
+
+                    this.pendingBuffers.notifyAll();
+                }
+            } catch (IOException e) {
+                getHelper().getLogger().log(Level.FINE,
+                        "Unable to write to the connection", e);
+                close();
+                return;
+            }
+
+            drained = this.pendingBuffers.isEmpty();
+            completed = drained && this.responseCompleted;
+        }
+
+        if (drained && this.selectionKey.isValid()) {
+            this.selectionKey.interestOps(this.selectionKey.interestOps()
+                    & ~SelectionKey.OP_WRITE);
+        }
+
+        if (completed) {
+            reset();
+        }
+    }
+
+    /**
+     * Parses the inbound bytes. Dispatches the call once fully read.
+     * 
+     * @throws IOException
+     */
+    private void parse() throws IOException {
+        this.inbound.flip();
+
+        try {
+            boolean progress = true;
+
+            while (progress && !this.closed && (this.state != STATE_BUSY)
+                    && !isEntitySuspended()) {
+                switch (this.state) {
+                case STATE_HEAD:
+                    progress = parseHead();
+                    break;
+                case STATE_ENTITY:
+                    progress = parseEntity();
+                    break;
+                case STATE_CHUNK_SIZE:
+                    progress = parseChunkSize();
+                    break;
+                case STATE_CHUNK_DATA:
+                    progress = parseChunkData();
+                    break;
+                case STATE_CHUNK_END:
+                case STATE_TRAILER:
+                    progress = parseChunkLine();
+                    break;
+                default:
+                    progress = false;
+                }
+            }
+        } finally {
+            this.inbound.compact();
+        }
+
+        if ((this.state != STATE_BUSY) && !isEntitySuspended()
+                && !this.inbound.hasRemaining()) {
+            int maxHeadSize = getHelper().getMaxHeadSize();
+
+            if (this.state != STATE_HEAD) {
+                // Line too long while the call is handled
+                failEntity(new IOException("Line too long"));
+            } else if (this.inbound.capacity() >= maxHeadSize) {
+                // Head too long
+                sendError(Status.CLIENT_ERROR_BAD_REQUEST);
+            } else {
+                // Grow the buffer to read a larger head
+                ByteBuffer larger = ByteBuffer.allocate(Math.min(maxHeadSize,
+                        this.inbound.capacity() * 2));
+                this.inbound.flip();
+                larger.put(this.inbound);
+                this.inbound = larger;
+            }
+        }
+    }
+
+    /**
+     * Parses the line following chunk data, or a trailer line.
+     * 
+     * @return True if a line was parsed.
+     */
+    private boolean parseChunkLine() {
+        int start = this.inbound.position();
+        int end = findLineEnd(start);
+
+        if (end == -1) {
+            return false;
+        }
+
+        this.inbound.position(end);
+
+        if (this.state == STATE_CHUNK_END) {
+            this.state = STATE_CHUNK_SIZE;
+        } else if ((end - start) <= 2) {
+            // Empty line ending the trailers
+            endEntity();
+        }
+
+        return true;
+    }
+
+    /**
+     * Streams the available chunk data.
+     * 
+     * @return True if some data was copied.
+     */
+    private boolean parseChunkData() {
+        int length = (int) Math.min(this.chunkRemaining,
+                this.inbound.remaining());
+
+        if (length == 0) {
+            return false;
+        }
+
+        readEntity(length);
+        this.chunkRemaining -= length;
+
+        if (this.chunkRemaining == 0) {
+            this.state = STATE_CHUNK_END;
+        }
+
+        return true;
+    }
+
+    /**
+     * Parses a chunk size line.
+     * 
+     * @return True if the line was parsed.
+     */
+    private boolean parseChunkSize() {
+        int start = this.inbound.position();
+        int end = findLineEnd(start);
+
+        if (end == -1) {
+            return false;
+        }
+
+        long size = 0;
+        boolean digits = false;
+
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(this.inbound.get(i), 16);
+
+            if (digit == -1) {
+                break;
+            }
+
+            digits = true;
+            size = (size << 4) + digit;
+
+            if (size > Integer.MAX_VALUE) {
+                break;
+            }
+        }
+
+        this.inbound.position(end);
+
+        if (!digits || (size > Integer.MAX_VALUE)) {
+            failEntity(new IOException("Invalid chunk size"));
+        } else if (size == 0) {
+            this.state = STATE_TRAILER;
+        } else if (isTooLarge(this.entityRead + size)) {
+            failEntity(new IOException("Request entity too large"));
+        } else {
+            this.chunkRemaining = size;
+            this.state = STATE_CHUNK_DATA;
+        }
+
+        return true;
+    }
+
+    /**
+     * Streams the available bytes of an entity of known size.
+     * 
+     * @return True if the entity was fully read.
+     */
+    private boolean parseEntity() {
+        int length = (int) Math.min(this.entitySize - this.entityRead,
+                this.inbound.remaining());
+
+        if (length > 0) {
+            readEntity(length);
+        }
+
+        if (this.entityRead == this.entitySize) {
+            endEntity();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Parses the request line and headers once fully available.
+     * 
+     * @return True if the head was parsed.
+     * @throws IOException
+     */
+    private boolean parseHead() throws IOException {
+        int start = this.inbound.position();
+
+        // Ignore empty lines preceding the request line
+        while ((start < this.inbound.limit())
+                && ((this.inbound.get(start) == '\r') || (this.inbound
+                        .get(start) == '\n'))) {
+            start++;
+        }
+
+        this.inbound.position(start);
+        int limit = this.inbound.limit();
+        int headEnd = -1;
+
+        for (int i = Math.max(start, start + this.scanned - 3); (headEnd == -1)
+                && (i < limit); i++) {
+            if (this.inbound.get(i) == '\n') {
+                if ((i + 1 < limit) && (this.inbound.get(i + 1) == '\n')) {
+                    headEnd = i + 2;
+                } else if ((i + 2 < limit)
+                        && (this.inbound.get(i + 1) == '\r')
+                        && (this.inbound.get(i + 2) == '\n')) {
+                    headEnd = i + 3;
+                }
+            }
+        }
+
+        if (headEnd == -1) {
+            this.scanned = limit - start;
+            return false;
+        }
+
+        this.scanned = 0;
+        this.inbound.position(headEnd);
+        NioServerCall current = new NioServerCall(getHelper().getHelped(),
+                this);
+
+        if (!parseHead(current, start, headEnd)) {
+            sendError(Status.CLIENT_ERROR_BAD_REQUEST);
+            return true;
+        }
+
+        this.call = current;
+
+        // Detect the entity delimitation
+        String transferEncoding = current.getRequestHeaders().getFirstValue(
+                HeaderConstants.HEADER_TRANSFER_ENCODING, true);
+        String contentLength = current.getRequestHeaders().getFirstValue(
+                HeaderConstants.HEADER_CONTENT_LENGTH, true);
+        long size = 0;
+
+        if ((transferEncoding != null)
+                && transferEncoding.trim().toLowerCase().endsWith("chunked")) {
+            size = -1;
+        } else if (contentLength != null) {
+            try {
+                size = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException nfe) {
+                size = -2;
+            }
+        }
+
+        if (size < -1) {
+            sendError(Status.CLIENT_ERROR_BAD_REQUEST);
+        } else if (isTooLarge(size)) {
+            sendError(Status.CLIENT_ERROR_REQUEST_ENTITY_TOO_LARGE);
+        } else {
+            if ((size != 0)
+                    && "100-continue".equalsIgnoreCase(current
+                            .getRequestHeaders().getFirstValue(
+                                    HeaderConstants.HEADER_EXPECT, true))) {
+                send(new ByteBuffer[] { ByteBuffer.wrap(CONTINUE) });
+            }
+
+            this.entitySize = size;
+
+            if (size == -1) {
+                this.state = STATE_CHUNK_SIZE;
+            } else if (size > 0) {
+                this.state = STATE_ENTITY;
+            }
+
+            dispatch(size != 0);
+        }
+
+        return true;
+    }
+
+    /**
+     * Parses the request line and headers.
+     * 
+     * @param current
+     *            The call to update.
+     * @param start
+     *            The index of the first head byte.
+     * @param end
+     *            The index following the last head byte.
+     * @return True if the head is valid.
+     */
+    private boolean parseHead(NioServerCall current, int start, int end) {
+        int lineStart = start;
+        int lineEnd = findLineEnd(lineStart);
+        Header last = null;
+        boolean requestLine = true;
+
+        while ((lineEnd != -1) && (lineEnd <= end)) {
+            int contentEnd = lineEnd - 1;
+
+            if ((contentEnd > lineStart)
+                    && (this.inbound.get(contentEnd - 1) == '\r')) {
+                contentEnd--;
+            }
+
+            if (contentEnd == lineStart) {
+                // End of the head
+                break;
+            } else if (requestLine) {
+                int methodEnd = indexOf(' ', lineStart, contentEnd);
+                int uriEnd = (methodEnd == -1) ? -1 : indexOf(' ',
+                        methodEnd + 1, contentEnd);
+
+                if ((methodEnd <= lineStart) || (uriEnd <= methodEnd + 1)) {
+                    return false;
+                }
+
+                current.setMethod(ascii(lineStart, methodEnd));
+                current.setRequestUri(ascii(methodEnd + 1, uriEnd));
+                current.setVersion(ascii(uriEnd + 1, contentEnd).trim());
+                requestLine = false;
+            } else {
+                byte first = this.inbound.get(lineStart);
+
+                if ((first == ' ') || (first == '\t')) {
+                    // Obsolete line folding
+                    if (last == null) {
+                        return false;
+                    }
+
+                    last.setValue(last.getValue() + ' '
+                            + ascii(lineStart, contentEnd).trim());
+                } else {
+                    int colon = indexOf(':', lineStart, contentEnd);
+
+                    if (colon <= lineStart) {
+                        return false;
+                    }
+
+                    last = new Header(HeaderUtils.intern(ascii(lineStart,
+                            colon).trim()), ascii(colon + 1, contentEnd).trim());
+                    current.getRequestHeaders().add(last);
+                }
+            }
+
+            lineStart = lineEnd;
+            lineEnd = findLineEnd(lineStart);
+        }
+
+        return !requestLine;
+    }
+
+    /**
+     * Returns the index of a byte in the inbound buffer, or -1.
+     * 
+     * @param b
+     *            The byte to look for.
+     * @param start
+     *            The start index.
+     * @param end
+     *            The end index (excluded).
+     * @return The index of the byte or -1.
+     */
+    private int indexOf(char b, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (this.inbound.get(i) == b) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Indicates if the selector thread stopped reading the entity until the
+     * worker thread consumes the buffered bytes.
+     * 
+     * @return True if the entity reading is suspended.
+     */
+    private boolean isEntitySuspended() {
+        EntityInputStream stream = this.entityStream;
+        return (stream != null) && stream.isSuspended();
+    }
+
+    /**
+     * Indicates if an entity of the given size exceeds the maximum size.
+     * 
+     * @param size
+     *            The entity size.
+     * @return True if the entity exceeds the maximum size.
+     */
+    private boolean isTooLarge(long size) {
+        long max = getHelper().getMaxRequestEntitySize();
+        return (size > Integer.MAX_VALUE - 8) || ((max >= 0) && (size > max));
+    }
+
+    /**
+     * Hands inbound entity bytes to the worker thread. Stops reading the
+     * connection while too many bytes are buffered.
+     * 
+     * @param length
+     *            The number of inbound bytes to hand.
+     */
+    private void readEntity(int length) {
+        byte[] bytes;
+        int offset;
+
+        if (this.inbound.hasArray()) {
+            bytes = this.inbound.array();
+            offset = this.inbound.arrayOffset() + this.inbound.position();
+        } else {
+            bytes = new byte[length];
+            offset = 0;
+            this.inbound.duplicate().get(bytes);
+        }
+
+        this.inbound.position(this.inbound.position() + length);
+        this.entityRead += length;
+
+        if (this.entityStream.add(bytes, offset, length)
+                && this.selectionKey.isValid()) {
+            this.selectionKey.interestOps(this.selectionKey.interestOps()
+                    & ~SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Asks the selector thread to write the pending buffers once the
+     * connection is writable.
+     */
+    private void registerWrite() {
+        getHelper().execute(new Runnable() {
+            public void run() {
+                if (selectionKey.isValid()) {
+                    selectionKey.interestOps(selectionKey.interestOps()
+                            | SelectionKey.OP_WRITE);
+                }
+            }
+        });
+    }
+
+    /**
+     * Asks the selector thread to resume reading the entity once the worker
+     * thread consumed enough buffered bytes.
+     */
+    private void resumeEntity() {
+        getHelper().execute(new Runnable() {
+            public void run() {
+                if (!closed && selectionKey.isValid()
+                        && (state != STATE_BUSY)) {
+                    selectionKey.interestOps(selectionKey.interestOps()
+                            | SelectionKey.OP_READ);
+
+                    if (inbound.position() > 0) {
+                        try {
+                            parse();
+                        } catch (IOException e) {
+                            getHelper().getLogger().log(Level.FINE,
+                                    "Unable to parse the request entity", e);
+                            close();
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Called by the selector thread once the response was fully written.
+     * Closes the connection or parses the next pipelined request.
+     */
+    private void reset() {
+        synchronized (this.pendingBuffers) {
+            if (this.closed || !this.responseCompleted
+                    || !this.pendingBuffers.isEmpty()) {
+                return;
+            }
+
+            this.responseCompleted = false;
+        }
+
+        EntityInputStream stream = this.entityStream;
+
+        if (!this.keepAlive || (this.state != STATE_BUSY)
+                || ((stream != null) && !stream.isCompleted())) {
+            // The remaining entity bytes can't be skipped reliably
+            close();
+        } else {
+            this.call = null;
+            this.entityStream = null;
+            this.keepAlive = false;
+            this.state = STATE_HEAD;
+            this.selectionKey.interestOps(SelectionKey.OP_READ);
+
+            if (this.inbound.position() > 0) {
+                try {
+                    parse();
+                } catch (IOException e) {
+                    getHelper().getLogger().log(Level.FINE,
+                            "Unable to parse the pipelined request", e);
+                    close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends buffers on the connection. Tries to write them immediately on the
+     * channel and otherwise queues them for the selector thread, blocking the
+     * calling worker thread while too many bytes are pending.
+     * 
+     * @param buffers
+     *            The buffers to send.
+     * @return True if the buffers were fully written and can be reused.
+     * @throws IOException
+     */
+    private boolean send(ByteBuffer[] buffers) throws IOException {
+        boolean written = false;
+        boolean register = false;
+
+        synchronized (this.pendingBuffers) {
+            awaitPendingBytes();
+
+            if (this.pendingBuffers.isEmpty()) {
+                this.channel.write(buffers);
+                this.lastActivity = System.currentTimeMillis();
+            }
+
+            written = true;
+
+            for (ByteBuffer buffer : buffers) {
+                if (buffer.hasRemaining()) {
+                    written = false;
+                    register = register || this.pendingBuffers.isEmpty();
+                    this.pendingBuffers.add(buffer);
+                    this.pendingBytes += buffer.remaining();
+                }
+            }
+        }
+
+        if (register) {
+            registerWrite();
+        }
+
+        return written;
+    }
+
+    /**
+     * Sends a minimal error response and closes the connection afterwards.
+     * 
+     * @param status
+     *            The error status.
+     */
+    private void sendError(Status status) {
+        this.state = STATE_BUSY;
+        this.keepAlive = false;
+
+        if (this.selectionKey != null && this.selectionKey.isValid()) {
+            this.selectionKey.interestOps(0);
+        }
+
+        try {
+            send(new ByteBuffer[] { ByteBuffer.wrap(StringUtils
+                    .getAsciiBytes("HTTP/1.1 " + status.getCode() + " "
+                            + status.getReasonPhrase()
+                            + "\r\nConnection: close\r\n"
+                            + "Content-Length: 0\r\n\r\n")) });
+            onResponseCompleted();
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    /**
+     * Indicates if the connection should be kept alive after the current
+     * call.
+     * 
+     * @param keepAlive
+     *            True if the connection should be kept alive.
+     */
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Sets the selection key.
+     * 
+     * @param selectionKey
+     *            The selection key.
+     */
+    public void setSelectionKey(SelectionKey selectionKey) {
+        this.selectionKey = selectionKey;
+    }
+
+    @Override
+    public String toString() {
+        return "Connection from " + this.clientAddress + ":" + this.clientPort;
+    }
+}
@@ -0,0 +1,847 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.engine.connector;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import org.restlet.Client;
+import org.restlet.Request;
+import org.restlet.data.Protocol;
+import org.restlet.engine.adapter.ClientCall;
+import org.restlet.engine.log.LoggingThreadFactory;
+
+/**
+ * Internal HTTP client connector based on non-blocking NIO channels. The
+ * connections are pooled per target host and port. Requests are written by the
+ * calling threads while a single selector thread parses the responses and
+ * streams their entities, so asynchronous calls, see
+ * {@link Request#setOnResponse(org.restlet.Uniform)}, don't hold any thread
+ * while waiting for the response. Their callbacks are invoked by worker
+ * threads. However, the calling thread of an asynchronous call still blocks
+ * while a connection is acquired, up to the "acquireTimeoutMs" parameter, and
+ * while the request head and entity are written. Here is the list of additional parameters that are supported. They
+ * should be set in the Client's context before it is started:
+ * <table>
+ * <tr>
+ * <th>Parameter name</th>
+ * <th>Value type</th>
+ * <th>Default value</th>
+ * <th>Description</th>
+ * </tr>
+ * <tr>
+ * <td>acquireTimeoutMs</td>
+ * <td>int</td>
+ * <td>60000</td>
+ * <td>Time to wait for a pooled connection when the maximum number of
+ * connections to a host is reached.</td>
+ * </tr>
+ * <tr>
+ * <td>ioBufferSize</td>
+ * <td>int</td>
+ * <td>8192</td>
+ * <td>Size of the buffers used to write requests and read responses.</td>
+ * </tr>
+ * <tr>
+ * <td>maxConnectionsPerHost</td>
+ * <td>int</td>
+ * <td>10</td>
+ * <td>Maximum number of connections opened to a given host and port.</td>
+ * </tr>
+ * <tr>
+ * <td>maxHeadSize</td>
+ * <td>int</td>
+ * <td>65536</td>
+ * <td>Maximum size of a response status line and headers.</td>
+ * </tr>
+ * <tr>
+ * <td>maxIdleTimeMs</td>
+ * <td>int</td>
+ * <td>60000</td>
+ * <td>Time after which an idle pooled connection is closed. If the value is
+ * '0', then idle connections are never closed.</td>
+ * </tr>
+ * <tr>
+ * <td>maxPipelinedRequests</td>
+ * <td>int</td>
+ * <td>4</td>
+ * <td>Maximum number of requests waiting for a response on a connection when
+ * pipelining is enabled.</td>
+ * </tr>
+ * <tr>
+ * <td>maxRequestsPerConnection</td>
+ * <td>int</td>
+ * <td>0</td>
+ * <td>Maximum number of requests sent on a connection before it is closed. If
+ * the value is '0', then the number of requests isn't limited.</td>
+ * </tr>
+ * <tr>
+ * <td>pipelining</td>
+ * <td>boolean</td>
+ * <td>false</td>
+ * <td>Indicates if GET and HEAD requests can be sent on a busy connection,
+ * before the previous responses are received, when the maximum number of
+ * connections to a host is reached.</td>
+ * </tr>
+ * <tr>
+ * <td>readTimeout</td>
+ * <td>int</td>
+ * <td>60000</td>
+ * <td>Time after which a connection waiting for a response without receiving
+ * any byte is closed. If the value is '0', then the wait isn't limited.</td>
+ * </tr>
+ * <tr>
+ * <td>socketConnectTimeoutMs</td>
+ * <td>int</td>
+ * <td>0</td>
+ * <td>The socket connection timeout or 0 for unlimited wait.</td>
+ * </tr>
+ * </table>
+ * <br>
+ * Only the HTTP protocol is supported. This connector isn't registered first
+ * so it must be explicitly selected, for example by passing its class name to
+ * the {@link Client#Client(org.restlet.Context, java.util.List, String)}
+ * constructor.
+ * 
+ * @author Jerome Louvel
+ */
+public class NioHttpClientHelper extends
+        org.restlet.engine.adapter.HttpClientHelper {
+
+    /**
+     * Pool of the connections to a given host and port.
+     */
+    public class HostPool {
+
+        /** The open connections. */
+        private final Set<NioClientConnection> connections;
+
+        /** The target host. */
+        private final String host;
+
+        /** The idle connections, most recently used first. */
+        private final LinkedList<NioClientConnection> idleConnections;
+
+        /** The number of connections being opened. */
+        private int pendingCount;
+
+        /** The target port. */
+        private final int port;
+
+        /**
+         * Constructor.
+         * 
+         * @param host
+         *            The target host.
+         * @param port
+         *            The target port.
+         */
+        private HostPool(String host, int port) {
+            this.connections = new HashSet<NioClientConnection>();
+            this.host = host;
+            this.idleConnections = new LinkedList<NioClientConnection>();
+            this.pendingCount = 0;
+            this.port = port;
+        }
+
+        /**
+         * Returns a connection for a call. Reuses an idle connection, opens a
+         * new one or pipelines the call on a busy connection, otherwise waits
+         * for a connection to be released.
+         * 
+         * @param call
+         *            The call to send.
+         * @return The connection, reserved for the call unless pipelined.
+         * @throws IOException
+         */
+        private NioClientConnection acquire(NioClientCall call)
+                throws IOException {
+            long deadline = System.currentTimeMillis() + getAcquireTimeoutMs();
+
+            synchronized (this) {
+                for (;;) {
+                    NioClientConnection connection = this.idleConnections
+                            .pollFirst();
+
+                    while (connection != null) {
+                        if (connection.reserve(call)) {
+                            return connection;
+                        }
+
+                        connection = this.idleConnections.pollFirst();
+                    }
+
+                    if (this.connections.size() + this.pendingCount < getMaxConnectionsPerHost()) {
+                        this.pendingCount++;
+                        break;
+                    }
+
+                    if (isPipelining()) {
+                        for (NioClientConnection current : this.connections) {
+                            if (current.canPipeline(call)) {
+                                return current;
+                            }
+                        }
+                    }
+
+                    long wait = deadline - System.currentTimeMillis();
+
+                    if (wait <= 0) {
+                        throw new ConnectException(
+                                "No connection available to " + this.host
+                                        + ":" + this.port);
+                    }
+
+                    try {
+                        wait(wait);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException(
+                                "Interrupted while waiting for a connection");
+                    }
+                }
+            }
+
+            NioClientConnection result = null;
+
+            try {
+                result = connect(this, call);
+            } finally {
+                synchronized (this) {
+                    this.pendingCount--;
+
+                    if (result != null) {
+                        this.connections.add(result);
+                    }
+
+                    notifyAll();
+                }
+            }
+
+            return result;
+        }
+
+        /**
+         * Closes the idle connections unused since the given time.
+         * 
+         * @param limit
+         *            The time limit.
+         */
+        private void closeIdleConnections(long limit) {
+            List<NioClientConnection> expired = new ArrayList<NioClientConnection>();
+
+            synchronized (this) {
+                Iterator<NioClientConnection> iter = this.idleConnections
+                        .descendingIterator();
+
+                while (iter.hasNext()) {
+                    NioClientConnection connection = iter.next();
+
+                    if (connection.getLastActivity() < limit) {
+                        iter.remove();
+                        expired.add(connection);
+                    }
+                }
+            }
+
+            for (NioClientConnection connection : expired) {
+                connection.close(new ClosedChannelException());
+            }
+        }
+
+        /**
+         * Returns the number of open connections.
+         * 
+         * @return The number of open connections.
+         */
+        public synchronized int getConnectionCount() {
+            return this.connections.size();
+        }
+
+        /**
+         * Returns the target host.
+         * 
+         * @return The target host.
+         */
+        public String getHost() {
+            return this.host;
+        }
+
+        /**
+         * Returns the number of idle connections.
+         * 
+         * @return The number of idle connections.
+         */
+        public synchronized int getIdleConnectionCount() {
+            return this.idleConnections.size();
+        }
+
+        /**
+         * Returns the target port.
+         * 
+         * @return The target port.
+         */
+        public int getPort() {
+            return this.port;
+        }
+
+        /**
+         * Returns a connection to the idle connections once no response is
+         * expected anymore.
+         * 
+         * @param connection
+         *            The connection to release.
+         */
+        protected synchronized void release(NioClientConnection connection) {
+            if (connection.isIdle()
+                    && !this.idleConnections.contains(connection)) {
+                this.idleConnections.addFirst(connection);
+                notifyAll();
+            }
+        }
+
+        /**
+         * Removes a closed connection.
+         * 
+         * @param connection
+         *            The closed connection.
+         */
+        private synchronized void remove(NioClientConnection connection) {
+            this.connections.remove(connection);
+            this.idleConnections.remove(connection);
+            notifyAll();
+        }
+
+        @Override
+        public String toString() {
+            return "Connection pool to " + this.host + ":" + this.port;
+        }
+    }
+
+    /** The open connections. */
+    private final Set<NioClientConnection> connections;
+
+    /** The number of connections opened. */
+    private final AtomicLong createdCount;
+
+    /** The connection pools per host and port. */
+    private final ConcurrentMap<String, HostPool> hostPools;
+
+    /** The number of requests pipelined behind other requests. */
+    private final AtomicLong pipelinedCount;
+
+    /** The number of requests sent on a previously used connection. */
+    private final AtomicLong reusedCount;
+
+    /** Indicates if the selector thread should keep running. */
+    private volatile boolean running;
+
+    /** The selector. */
+    private volatile Selector selector;
+
+    /** The tasks to run on the selector thread. */
+    private final Queue<Runnable> selectorTasks;
+
+    /** The selector thread. */
+    private volatile Thread selectorThread;
+
+    /** The worker service invoking the asynchronous callbacks. */
+    private volatile ExecutorService workerService;
+
+    /**
+     * Constructor.
+     * 
+     * @param client
+     *            The client to help.
+     */
+    public NioHttpClientHelper(Client client) {
+        super(client);
+        getProtocols().add(Protocol.HTTP);
+        this.connections = Collections
+                .newSetFromMap(new ConcurrentHashMap<NioClientConnection, Boolean>());
+        this.createdCount = new AtomicLong();
+        this.hostPools = new ConcurrentHashMap<String, HostPool>();
+        this.pipelinedCount = new AtomicLong();
+        this.reusedCount = new AtomicLong();
+        this.selectorTasks = new ConcurrentLinkedQueue<Runnable>();
+    }
+
+    /**
+     * Returns a connection for a call from the pool of its target host.
+     * 
+     * @param call
+     *            The call to send.
+     * @return The connection.
+     * @throws IOException
+     */
+    protected NioClientConnection acquire(NioClientCall call)
+            throws IOException {
+        String key = call.getHostDomain() + ":" + call.getHostPort();
+        HostPool pool = this.hostPools.get(key);
+
+        if (pool == null) {
+            pool = new HostPool(call.getHostDomain(), call.getHostPort());
+            HostPool existing = this.hostPools.putIfAbsent(key, pool);
+
+            if (existing != null) {
+                pool = existing;
+            }
+        }
+
+        return pool.acquire(call);
+    }
+
+    /**
+     * Checks the idle connections and the read timeouts.
+     */
+    private void checkConnections() {
+        long now = System.currentTimeMillis();
+        int maxIdleTimeMs = getMaxIdleTimeMs();
+
+        if (maxIdleTimeMs > 0) {
+            for (HostPool pool : this.hostPools.values()) {
+                pool.closeIdleConnections(now - maxIdleTimeMs);
+            }
+        }
+
+        for (NioClientConnection connection : this.connections) {
+            connection.checkTimeout(now);
+        }
+    }
+
+    /**
+     * Opens a new connection reserved for a call.
+     * 
+     * @param pool
+     *            The parent host pool.
+     * @param call
+     *            The call to send.
+     * @return The new connection.
+     * @throws IOException
+     */
+    private NioClientConnection connect(HostPool pool, NioClientCall call)
+            throws IOException {
+        if (!this.running) {
+            throw new ConnectException("The HTTP client isn't started");
+        }
+
+        InetSocketAddress address = new InetSocketAddress(pool.getHost(),
+                pool.getPort());
+
+        if (address.isUnresolved()) {
+            throw new UnknownHostException(pool.getHost());
+        }
+
+        SocketChannel socketChannel = SocketChannel.open();
+
+        try {
+            socketChannel.socket().setTcpNoDelay(true);
+            socketChannel.socket().connect(address,
+                    getSocketConnectTimeoutMs());
+            socketChannel.configureBlocking(false);
+        } catch (SocketTimeoutException ste) {
+            socketChannel.close();
+            throw new ConnectException("Connection to " + address
+                    + " timed out");
+        } catch (IOException ioe) {
+            socketChannel.close();
+            throw ioe;
+        }
+
+        final NioClientConnection result = new NioClientConnection(this,
+                pool, socketChannel);
+        result.reserve(call);
+        this.connections.add(result);
+        this.createdCount.incrementAndGet();
+        execute(new Runnable() {
+            public void run() {
+                try {
+                    result.register();
+                } catch (IOException e) {
+                    result.close(e);
+                }
+            }
+        });
+
+        return result;
+    }
+
+    @Override
+    public ClientCall create(Request request) {
+        return new NioClientCall(this, request);
+    }
+
+    /**
+     * Runs a task on the selector thread.
+     * 
+     * @param task
+     *            The task to run.
+     */
+    protected void execute(Runnable task) {
+        if (Thread.currentThread() == this.selectorThread) {
+            task.run();
+        } else {
+            this.selectorTasks.add(task);
+            Selector current = this.selector;
+
+            if (current != null) {
+                current.wakeup();
+            }
+        }
+    }
+
+    /**
+     * Returns the time to wait for a pooled connection.
+     * 
+     * @return The time to wait for a pooled connection.
+     */
+    public int getAcquireTimeoutMs() {
+        return Integer.parseInt(getHelpedParameters().getFirstValue(
+                "acquireTimeoutMs", "60000"));
+    }
+
+    /**
+     * Returns the number of open connections.
+     * 
+     * @return The number of open connections.
+     */
+    public int getConnectionCount() {
+        return this.connections.size();
+    }
+
+    /**
+     * Returns the number of connections opened since the connector was
+     * created.
+     * 
+     * @return The number of connections opened.
+     */
+    public long getCreatedConnectionCount() {
+        return this.createdCount.get();
+    }
+
+    /**
+     * Returns the connection pools per host and port.
+     * 
+     * @return The connection pools.
+     */
+    public Collection<HostPool> getHostPools() {
+        return Collections.unmodifiableCollection(this.hostPools.values());
+    }
+
+    /**
+     * Returns the number of idle pooled connections.
+     * 
+     * @return The number of idle pooled connections.
+     */
+    public int getIdleConnectionCount() {
+        int result = 0;
+
+        for (HostPool pool : this.hostPools.values()) {
+            result += pool.getIdleConnectionCount();
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the size of the buffers used to write requests and read
+     * responses.
+     * 
+     * @return The size of the I/O buffers.
+     */
+    public int getIoBufferSize() {
+        return Integer.parseInt(getHelpedParameters().getFirstValue(
+                "ioBufferSize", "8192"));
+    }
+
+    /**
+     * Returns the maximum number of connections opened to a given host and
+     * port.
+     * 
+     * @return The maximum number of connections per host.
+     */
+    public int getMaxConnectionsPerHost() {
+        return Integer.parseInt(getHelpedParameters().getFirstValue(
+                "maxConnectionsPerHost", "10"));
+    }
+
+    /**
+     * Returns the maximum size of a response status line and headers.
+     * 
+     * @return The maximum size of a response status line and headers.
+     */
+    public int getMaxHeadSize() {
+        return Integer.parseInt(getHelpedParameters().getFirstValue(
+                "maxHeadSize", "65536"));
+    }
+
+    /**
+     * Returns the time after which an idle pooled connection is closed.
+     * 
+     * @return The time after which an idle connection is closed.
+     */
+    public int getMaxIdleTimeMs() {
+        return Integer.parseInt(getHelpedParameters().getFirstValue(
+                "maxIdleTimeMs", "60000"));
+    }
+
+    /**
+     * Returns the maximum number of requests waiting for a response on a
+     * connection when pipelining is enabled.
+     * 
+     * @return The maximum number of pipelined requests.
+     */
+    public int getMaxPipelinedRequests() {
+        return Integer.parseInt(getHelpedParameters().getFirstValue(
+                "maxPipelinedRequests", "4"));
+    }
+
+    /**
+     * Returns the maximum number of requests sent on a connection before it is
+     * closed.
+     * 
+     * @return The maximum number of requests per connection.
+     */
+    public int getMaxRequestsPerConnection() {
+        return Integer.parseInt(getHelpedParameters().getFirstValue(
+                "maxRequestsPerConnection", "0"));
+    }
+
+    /**
+     * Returns the number of requests pipelined behind other requests since the
+     * connector was created.
+     * 
+     * @return The number of pipelined requests.
+     */
+    public long getPipelinedRequestCount() {
+        return this.pipelinedCount.get();
+    }
+
+    /**
+     * Returns the time after which a connection waiting for a response
+     * without receiving any byte is closed.
+     * 
+     * @return The read timeout.
+     */
+    public int getReadTimeout() {
+        return Integer.parseInt(getHelpedParameters().getFirstValue(
+                "readTimeout", "60000"));
+    }
+
+    /**
+     * Returns the number of requests sent on a previously used connection
+     * since the connector was created.
+     * 
+     * @return The number of requests sent on a reused connection.
+     */
+    public long getReusedConnectionCount() {
+        return this.reusedCount.get();
+    }
+
+    /**
+     * Returns the selector.
+     * 
+     * @return The selector.
+     */
+    protected Selector getSelector() {
+        return this.selector;
+    }
+
+    /**
+     * Returns the worker service invoking the asynchronous callbacks.
+     * 
+     * @return The worker service.
+     */
+    protected ExecutorService getWorkerService() {
+        return this.workerService;
+    }
+
+    /**
+     * Indicates if GET and HEAD requests can be pipelined on busy connections.
+     * 
+     * @return True if requests can be pipelined.
+     */
+    public boolean isPipelining() {
+        return Boolean.parseBoolean(getHelpedParameters().getFirstValue(
+                "pipelining", "false"));
+    }
+
+    /**
+     * Called when a connection is closed.
+     * 
+     * @param connection
+     *            The closed connection.
+     */
+    protected void onClosed(NioClientConnection connection) {
+        this.connections.remove(connection);
+        connection.getPool().remove(connection);
+    }
+
+    /**
+     * Called when a request is sent, to update the statistics.
+     * 
+     * @param reused
+     *            True if the connection was previously used.
+     * @param pipelined
+     *            True if the request was pipelined.
+     */
+    protected void onSent(boolean reused, boolean pipelined) {
+        if (reused) {
+            this.reusedCount.incrementAndGet();
+        }
+
+        if (pipelined) {
+            this.pipelinedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Runs the selection loop until the connector is stopped.
+     */
+    private void select() {
+        long lastCheck = System.currentTimeMillis();
+
+        while (this.running) {
+            try {
+                this.selector.select(1000);
+
+                for (Runnable task = this.selectorTasks.poll(); task != null; task = this.selectorTasks
+                        .poll()) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> keys = this.selector.selectedKeys()
+                        .iterator();
+
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
+                    NioClientConnection connection = (NioClientConnection) key
+                            .attachment();
+
+                    if (key.isWritable()) {
+                        connection.onWritable();
+                    }
+
+                    if (key.isValid() && key.isReadable()) {
+                        connection.onReadable();
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+
+                if (now - lastCheck >= 1000) {
+                    lastCheck = now;
+                    checkConnections();
+                }
+            } catch (Throwable t) {
+                if (this.running) {
+                    getLogger().log(Level.WARNING,
+                            "Error in the selector thread", t);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void start() throws Exception {
+        this.selector = Selector.open();
+        this.workerService = Executors
+                .newCachedThreadPool(new LoggingThreadFactory(getLogger(),
+                        true));
+        this.running = true;
+        this.selectorThread = new Thread(new Runnable() {
+            public void run() {
+                select();
+            }
+        }, "Restlet-NioClientSelector");
+        this.selectorThread.setDaemon(true);
+        this.selectorThread.start();
+        super.start();
+        getLogger().info("Starting the internal NIO HTTP client");
+    }
+
+    @Override
+    public synchronized void stop() throws Exception {
+        super.stop();
+        getLogger().info("Stopping the internal NIO HTTP client");
+        this.running = false;
+
+        if (this.selector != null) {
+            this.selector.wakeup();
+        }
+
+        if (this.selectorThread != null) {
+            this.selectorThread.join(5000);
+            this.selectorThread = null;
+        }
+
+        for (NioClientConnection connection : this.connections) {
+            connection.close(new ClosedChannelException());
+        }
+
+        if (this.selector != null) {
+            this.selector.close();
+            this.selector = null;
+        }
+
+        if (this.workerService != null) {
+            this.workerService.shutdown();
+            this.workerService = null;
+        }
+
+        this.hostPools.clear();
+        this.selectorTasks.clear();
+    }
+}
@@ -0,0 +1,440 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.engine.connector;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.logging.Level;
+
+import org.restlet.Server;
+import org.restlet.data.Protocol;
+
+/**
+ * Internal HTTP server connector based on non-blocking NIO channels. A single
+ * selector thread accepts the connections and parses the requests, pipelined
+ * or not, then hands the calls to the worker threads created by
+ * {@link #createWorkerService()}, possibly virtual threads, as soon as their
+ * head is read. Request entities are streamed to the worker threads through
+ * bounded buffers. Idle persistent connections don't consume any worker
+ * thread. Here is the list of additional parameters that are supported.
+ * They should be set in the Server's context before it is started:
+ * <table>
+ * <tr>
+ * <th>Parameter name</th>
+ * <th>Value type</th>
+ * <th>Default value</th>
+ * <th>Description</th>
+ * </tr>
+ * <tr>
+ * <td>ioBufferSize</td>
+ * <td>int</td>
+ * <td>8192</td>
+ * <td>Size of the buffers used to read requests and write responses. Up to
+ * four times this size of request entity or response bytes are buffered per
+ * connection.</td>
+ * </tr>
+ * <tr>
+ * <td>maxHeadSize</td>
+ * <td>int</td>
+ * <td>65536</td>
+ * <td>Maximum size of a request line and headers. Larger requests are
+ * rejected with a 400 status.</td>
+ * </tr>
+ * <tr>
+ * <td>maxRequestEntitySize</td>
+ * <td>long</td>
+ * <td>10485760</td>
+ * <td>Maximum size of a request entity. Requests declaring a larger size are
+ * rejected with a 413 status, while larger chunked entities are interrupted
+ * and their connection closed. If the value is '-1', then the size isn't
+ * limited.</td>
+ * </tr>
+ * <tr>
+ * <td>maxIdleTimeMs</td>
+ * <td>int</td>
+ * <td>60000</td>
+ * <td>Time after which a connection waiting for a request is closed. If the
+ * value is '0', then idle connections are never closed.</td>
+ * </tr>
+ * <tr>
+ * <td>persistingConnections</td>
+ * <td>boolean</td>
+ * <td>true</td>
+ * <td>Indicates if connections should be kept alive after a call.</td>
+ * </tr>
+ * </table>
+ * <br>
+ * This connector isn't registered first so it must be explicitly selected,
+ * for example by passing its class name to the
+ * {@link Server#Server(org.restlet.Context, java.util.List, String, int, org.restlet.Restlet, String)}
+ * constructor.
+ * 
+ * @author Jerome Louvel
+ */
+public class NioHttpServerHelper extends NetServerHelper {
+
+    /** The open connections. */
+    private final Set<NioConnection> connections;
+
+    /** Indicates if the selector thread should keep running. */
+    private volatile boolean running;
+
+    /** The selector. */
+    private volatile Selector selector;
+
+    /** The tasks to run on the selector thread. */
+    private final Queue<Runnable> selectorTasks;
+
+    /** The selector thread. */
+    private volatile Thread selectorThread;
+
+    /** The server socket channel. */
+    private volatile ServerSocketChannel serverSocketChannel;
+
+    /** The worker service. */
+    private volatile ExecutorService workerService;
+
+    /**
+     * Constructor.
+     * 
+     * @param server
+     *            The server to help.
+     */
+    public NioHttpServerHelper(Server server) {
+        super(server);
+        getProtocols().add(Protocol.HTTP);
+        this.connections = Collections
+                .newSetFromMap(new ConcurrentHashMap<NioConnection, Boolean>());
+        this.selectorTasks = new ConcurrentLinkedQueue<Runnable>();
+    }
+
+    /**
+     * Accepts all the pending connections.
+     * 
+     * @throws IOException
+     */
+    private void accept() throws IOException {
+        SocketChannel socketChannel = this.serverSocketChannel.accept();
+
+        while (socketChannel != null) {
+            socketChannel.configureBlocking(false);
+            socketChannel.socket().setTcpNoDelay(true);
+            NioConnection connection = new NioConnection(this, socketChannel);
+            connection.setSelectionKey(socketChannel.register(this.selector,
+                    SelectionKey.OP_READ, connection));
+            this.connections.add(connection);
+            socketChannel = this.serverSocketChannel.accept();
+        }
+    }
+
+    /**
+     * Closes the connections that have been waiting for a request for too
+     * long.
+     */
+    private void closeIdleConnections() {
+        int maxIdleTimeMs = getMaxIdleTimeMs();
+
+        if (maxIdleTimeMs > 0) {
+            long limit = System.currentTimeMillis() - maxIdleTimeMs;
+
+            for (NioConnection connection : this.connections) {
+                if (connection.isIdle()
+                        && (connection.getLastActivity() < limit)) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs a task on the selector thread.
+     * 
+     * @param task
+     *            The task to run.
+     */
+    protected void execute(Runnable task) {
+        if (Thread.currentThread() == this.selectorThread) {
+            task.run();
+        } else {
+            this.selectorTasks.add(task);
+            Selector current = this.selector;
+
+            if (current != null) {
+                current.wakeup();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of open connections.
+     * 
+     * @return The number of open connections.
+     */
+    public int getConnectionCount() {
+        return this.connections.size();
+    }
+
+    /**
+     * Returns the size of the buffers used to read requests and write
+     * responses.
+     * 
+     * @return The size of the I/O buffers.
+     */
+    public int getIoBufferSize() {
+        return Integer.parseInt(getHelpedParameters().getFirstValue(
+                "ioBufferSize", "8192"));
+    }
+
+    /**
+     * Returns the maximum size of a request line and headers.
+     * 
+     * @return The maximum size of a request line and headers.
+     */
+    public int getMaxHeadSize() {
+        return Integer.parseInt(getHelpedParameters().getFirstValue(
+                "maxHeadSize", "65536"));
+    }
+
+    /**
+     * Returns the time after which a connection waiting for a request is
+     * closed.
+     * 
+     * @return The time after which an idle connection is closed.
+     */
+    public int getMaxIdleTimeMs() {
+        return Integer.parseInt(getHelpedParameters().getFirstValue(
+                "maxIdleTimeMs", "60000"));
+    }
+
+    /**
+     * Returns the maximum size of a request entity.
+     * 
+     * @return The maximum size of a request entity.
+     */
+    public long getMaxRequestEntitySize() {
+        return Long.parseLong(getHelpedParameters().getFirstValue(
+                "maxRequestEntitySize", "10485760"));
+    }
+
+    /**
+     * Returns the worker service.
+     * 
+     * @return The worker service.
+     */
+    protected ExecutorService getWorkerService() {
+        return workerService;
+    }
+
+    /**
+     * Indicates if connections should be kept alive after a call.
+     * 
+     * @return True if connections should be kept alive after a call.
+     */
+    public boolean isPersistingConnections() {
+        return Boolean.parseBoolean(getHelpedParameters().getFirstValue(
+                "persistingConnections", "true"));
+    }
+
+    /**
+     * Called when a connection is closed.
+     * 
+     * @param connection
+     *            The closed connection.
+     */
+    protected void onClosed(NioConnection connection) {
+        this.connections.remove(connection);
+    }
+
+    /**
+     * Runs the selection loop until the connector is stopped.
+     */
+    private void select() {
+        long lastIdleCheck = System.currentTimeMillis();
+
+        while (this.running) {
+            try {
+                this.selector.select(1000);
+
+                for (Runnable task = this.selectorTasks.poll(); task != null; task = this.selectorTasks
+                        .poll()) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> keys = this.selector.selectedKeys()
+                        .iterator();
+
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        NioConnection connection = (NioConnection) key
+                                .attachment();
+
+                        if (key.isWritable()) {
+                            connection.onWritable();
+                        }
+
+                        if (key.isValid() && key.isReadable()) {
+                            connection.onReadable();
+                        }
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+
+                if (now - lastIdleCheck >= 1000) {
+                    lastIdleCheck = now;
+                    closeIdleConnections();
+                }
+            } catch (Throwable t) {
+                if (this.running) {
+                    getLogger().log(Level.WARNING,
+                            "Error in the selector thread", t);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void start() throws Exception {
+        String addr = getHelped().getAddress();
+
+        if (addr != null) {
+            // This call may throw UnknownHostException and otherwise always
+            // returns an instance of INetAddress.
+            // Note: textual representation of inet addresses are supported
+            setAddress(new InetSocketAddress(InetAddress.getByName(addr),
+                    getHelped().getPort()));
+        } else {
+            setAddress(new InetSocketAddress(getHelped().getPort()));
+        }
+
+        this.selector = Selector.open();
+        this.serverSocketChannel = ServerSocketChannel.open();
+        this.serverSocketChannel.socket().setReuseAddress(true);
+
+        try {
+            this.serverSocketChannel.socket().bind(getAddress());
+        } catch (IOException ioe) {
+            this.serverSocketChannel.close();
+            this.selector.close();
+            throw ioe;
+        }
+
+        this.serverSocketChannel.configureBlocking(false);
+        this.serverSocketChannel.register(this.selector,
+                SelectionKey.OP_ACCEPT);
+
+        this.workerService = createWorkerService();
+
+        if (this.workerService instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor threadPool = (ThreadPoolExecutor) this.workerService;
+            final RejectedExecutionHandler rejectionHandler = threadPool
+                    .getRejectedExecutionHandler();
+            threadPool
+                    .setRejectedExecutionHandler(new RejectedExecutionHandler() {
+                        public void rejectedExecution(Runnable r,
+                                ThreadPoolExecutor executor) {
+                            if (r instanceof NioConnection.CallTask) {
+                                ((NioConnection.CallTask) r).reject();
+                            } else {
+                                rejectionHandler.rejectedExecution(r,
+                                        executor);
+                            }
+                        }
+                    });
+        }
+
+        this.running = true;
+        this.selectorThread = new Thread(new Runnable() {
+            public void run() {
+                select();
+            }
+        }, "Restlet-NioSelector-" + getHelped().getPort());
+        this.selectorThread.setDaemon(true);
+        this.selectorThread.start();
+
+        setConfidential(false);
+        setEphemeralPort(this.serverSocketChannel.socket());
+        super.start();
+    }
+
+    @Override
+    public synchronized void stop() throws Exception {
+        super.stop();
+        this.running = false;
+
+        if (this.selector != null) {
+            this.selector.wakeup();
+        }
+
+        if (this.selectorThread != null) {
+            this.selectorThread.join(5000);
+            this.selectorThread = null;
+        }
+
+        for (NioConnection connection : this.connections) {
+            connection.close();
+        }
+
+        if (this.serverSocketChannel != null) {
+            this.serverSocketChannel.close();
+            this.serverSocketChannel = null;
+        }
+
+        if (this.selector != null) {
+            this.selector.close();
+            this.selector = null;
+        }
+
+        if (this.workerService != null) {
+            this.workerService.shutdown();
+            this.workerService = null;
+        }
+
+        this.selectorTasks.clear();
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+package org.restlet.engine.connector;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+
+import org.restlet.Response;
+import org.restlet.Server;
+import org.restlet.data.Header;
+import org.restlet.engine.adapter.ServerCall;
+import org.restlet.engine.header.HeaderConstants;
+import org.restlet.engine.header.HeaderUtils;
+import org.restlet.engine.util.StringUtils;
+
+/**
+ * Call that is used by the non-blocking internal HTTP server. The request line
+ * and headers are fully read by the {@link NioConnection} before the call is
+ * handed to a worker thread, the entity being streamed afterwards.
+ * 
+ * @author Jerome Louvel
+ */
+public class NioServerCall extends ServerCall {
+
+    /** The parent connection. */
+    private final NioConnection connection;
+
+    /** The request entity stream, or null if there is none. */
+    private volatile InputStream requestEntityStream;
+
+    /**
+     * Constructor.
+     * 
+     * @param server
+     *            The parent server connector.
+     * @param connection
+     *            The parent connection.
+     */
+    public NioServerCall(Server server, NioConnection connection) {
+        super(server);
+        this.connection = connection;
+        this.requestEntityStream = null;
+        setClientAddress(connection.getClientAddress());
+        setClientPort(connection.getClientPort());
+    }
+
+    @Override
+    public boolean abort() {
+        this.connection.close();
+        return true;
+    }
+
+    @Override
+    public void flushBuffers() throws IOException {
+        this.connection.getOutputStream().flush();
+    }
+
+    /**
+     * Returns the parent connection.
+     * 
+     * @return The parent connection.
+     */
+    public NioConnection getConnection() {
+        return connection;
+    }
+
+    @Override
+    public InputStream getRequestEntityStream(long size) {
+        return (this.requestEntityStream == null) ? new ByteArrayInputStream(
+                new byte[0]) : this.requestEntityStream;
+    }
+
+    @Override
+    public InputStream getRequestHeadStream() {
+        return null;
+    }
+
+    /**
+     * Returns the connection's entity channel unless the entity is chunked, so
+     * that file representations are transferred without copying them through
+     * the Java heap.
+     */
+    @Override
+    public WritableByteChannel getResponseEntityChannel() {
+        return this.connection.getOutputStream().isChunked() ? null
+                : this.connection.getEntityChannel();
+    }
+
+    @Override
+    public OutputStream getResponseEntityStream() {
+        return this.connection.getOutputStream();
+    }
+
+    /**
+     * Indicates if the request was sent using HTTP/1.1 or a later version.
+     * 
+     * @return True if the request was sent using HTTP/1.1 or a later version.
+     */
+    protected boolean isHttp11() {
+        return !"HTTP/1.0".equalsIgnoreCase(getVersion());
+    }
+
+    @Override
+    protected boolean isClientKeepAlive() {
+        String connectionHeader = getRequestHeaders().getFirstValue(
+                HeaderConstants.HEADER_CONNECTION, true);
+
+        if (isHttp11()) {
+            return !"close".equalsIgnoreCase(connectionHeader);
+        }
+
+        return "keep-alive".equalsIgnoreCase(connectionHeader);
+    }
+
+    @Override
+    protected boolean isServerKeepAlive() {
+        return this.connection.getHelper().isPersistingConnections()
+                && !HeaderUtils.isConnectionClose(getResponseHeaders());
+    }
+
+    /**
+     * Sets the request entity stream.
+     * 
+     * @param requestEntityStream
+     *            The request entity stream, or null if there is none.
+     */
+    protected void setRequestEntityStream(InputStream requestEntityStream) {
+        this.requestEntityStream = requestEntityStream;
+    }
+
+    // Widen the visibility for the connection parser.
+    @Override
+    protected void setMethod(String method) {
+        super.setMethod(method);
+    }
+
+    // Widen the visibility for the connection parser.
+    @Override
+    protected void setRequestUri(String requestUri) {
+        super.setRequestUri(requestUri);
+    }
+
+    /**
+     * Writes the status line and headers into the connection buffer. They are
+     * only sent on the network with the first bytes of the entity or when the
+     * call completes, so that small responses need a single write.
+     */
+    @Override
+    protected void writeResponseHead(Response response) throws IOException {
+        boolean keepAlive = isKeepAlive();
+        boolean chunked = false;
+
+        if (shouldResponseBeChunked(response)) {
+            if (isHttp11()) {
+                chunked = true;
+                getResponseHeaders().set(
+                        HeaderConstants.HEADER_TRANSFER_ENCODING, "chunked",
+                        true);
+            } else {
+                // The end of the entity is signaled by closing the connection
+                keepAlive = false;
+            }
+        }
+
+        if (!keepAlive) {
+            getResponseHeaders().set(HeaderConstants.HEADER_CONNECTION,
+                    "close", true);
+        } else if (!isHttp11()) {
+            getResponseHeaders().set(HeaderConstants.HEADER_CONNECTION,
+                    "keep-alive", true);
+        }
+
+        NioConnection.OutputBuffer headStream = this.connection
+                .getOutputStream();
+
+        // Write the status line
+        headStream.write(StringUtils.getAsciiBytes("HTTP/1.1 "));
+        headStream.write(StringUtils.getAsciiBytes(Integer
+                .toString(getStatusCode())));
+        headStream.write(' ');
+
+        if (getReasonPhrase() != null) {
+            headStream.write(StringUtils.getLatin1Bytes(getReasonPhrase()));
+        } else {
+            headStream.write(StringUtils.getAsciiBytes("Status "
+                    + getStatusCode()));
+        }
+
+        HeaderUtils.writeCRLF(headStream);
+
+        // Write the response headers
+        for (Header header : getResponseHeaders()) {
+            HeaderUtils.writeHeaderLine(header, headStream);
+        }
+
+        HeaderUtils.writeCRLF(headStream);
+        headStream.startEntity(chunked);
+        this.connection.setKeepAlive(keepAlive);
+    }
+}
@@ -25,23 +25,279 @@
 package org.restlet.engine.converter;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 
 import org.restlet.Context;
+import org.restlet.data.CharacterSet;
+import org.restlet.data.Encoding;
+import org.restlet.data.Language;
+import org.restlet.data.MediaType;
 import org.restlet.engine.Engine;
 import org.restlet.engine.resource.VariantInfo;
+import org.restlet.representation.ObjectRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.representation.Variant;
 import org.restlet.resource.Resource;
 
 /**
- * Utilities for the converter service.
+ * Utilities for the converter service.<br>
+ * <br>
+ * The selected helpers and the lists of variants are remembered, keyed by the
+ * source class or metadata, the target class or variant metadata and the
+ * {@link ObjectRepresentation} flags, so that repeated conversions don't score
+ * all the registered helpers again. This requires the scores to only depend on
+ * those properties, ignoring the media type parameters, which is the case of
+ * the converter helpers of the Restlet Framework. As the lists of variants can
+ * reflect the target media type, they aren't remembered for media types with
+ * parameters. The memory is automatically cleared when the list of registered
+ * converters changes, or when it is full.
  * 
  * @author Jerome Louvel
  */
 public class ConverterUtils {
 
+    /**
+     * Memory of the conversion lookups valid for a given list of registered
+     * converters.
+     */
+    private static final class Cache {
+
+        /** The snapshot of the registered converters. */
+        private final List<ConverterHelper> helpers;
+
+        /** The helpers or lists of variants, by lookup key. */
+        private final ConcurrentMap<Key, Object> lookups;
+
+        /**
+         * Constructor.
+         * 
+         * @param helpers
+         *            The snapshot of the registered converters.
+         */
+        private Cache(List<ConverterHelper> helpers) {
+            this.helpers = helpers;
+            this.lookups = new ConcurrentHashMap<Key, Object>();
+        }
+
+        /**
+         * Indicates if the cache is valid for the given registered converters.
+         * As a new snapshot is published after each registration change, the
+         * comparison is done by identity.
+         * 
+         * @param registeredConverters
+         *            The snapshot of the registered converters.
+         * @return True if the cache is valid for the converters.
+         */
+        private boolean isValid(List<ConverterHelper> registeredConverters) {
+            return this.helpers == registeredConverters;
+        }
+
+        /**
+         * Remembers the result of a lookup, clearing the cache first if full.
+         * 
+         * @param key
+         *            The lookup key.
+         * @param value
+         *            The helper, list of variants or {@link #NONE}.
+         */
+        private void put(Key key, Object value) {
+            if (this.lookups.size() >= MAX_LOOKUPS) {
+                this.lookups.clear();
+            }
+
+            this.lookups.putIfAbsent(key, value);
+        }
+    }
+
+    /**
+     * Key of a conversion lookup.
+     */
+    private static final class Key {
+
+        /** The character set of the variant. */
+        private final CharacterSet characterSet;
+
+        /** The encodings of the variant. */
+        private final List<Encoding> encodings;
+
+        /** The kind of lookup. */
+        private final int kind;
+
+        /** The languages of the variant. */
+        private final List<Language> languages;
+
+        /** The media type of the variant. */
+        private final MediaType mediaType;
+
+        /** The value of the binary object representation flag. */
+        private final boolean objectBinary;
+
+        /** The value of the XML object representation flag. */
+        private final boolean objectXml;
+
+        /** The source class. */
+        private final Class<?> sourceClass;
+
+        /** The target class. */
+        private final Class<?> targetClass;
+
+        /** Indicates if a variant was provided. */
+        private final boolean variant;
+
+        /**
+         * Constructor.
+         * 
+         * @param kind
+         *            The kind of lookup.
+         * @param sourceClass
+         *            The source class.
+         * @param targetClass
+         *            The target class.
+         * @param variant
+         *            The source or target variant or null.
+         */
+        private Key(int kind, Class<?> sourceClass, Class<?> targetClass,
+                Variant variant) {
+            this.kind = kind;
+            this.sourceClass = sourceClass;
+            this.targetClass = targetClass;
+            this.variant = (variant != null);
+            this.mediaType = (variant == null) ? null : getMediaType(variant);
+            this.characterSet = (variant == null) ? null : variant
+                    .getCharacterSet();
+            this.encodings = (variant == null) ? null : copy(variant
+                    .getEncodings());
+            this.languages = (variant == null) ? null : copy(variant
+                    .getLanguages());
+            this.objectBinary = ObjectRepresentation.VARIANT_OBJECT_BINARY_SUPPORTED;
+            this.objectXml = ObjectRepresentation.VARIANT_OBJECT_XML_SUPPORTED;
+        }
+
+        /**
+         * Returns the media type of a variant without its parameters, such as
+         * the boundary of multipart entities.
+         * 
+         * @param variant
+         *            The variant.
+         * @return The media type without parameters.
+         */
+        private static MediaType getMediaType(Variant variant) {
+            MediaType result = variant.getMediaType();
+            return ((result == null) || result.getParameters().isEmpty()) ? result
+                    : result.getParent();
+        }
+
+        /**
+         * Returns an immutable copy of a list of metadata.
+         * 
+         * @param list
+         *            The list to copy.
+         * @return An immutable copy of the list.
+         */
+        private static <T> List<T> copy(List<T> list) {
+            return list.isEmpty() ? Collections.<T> emptyList() : Collections
+                    .unmodifiableList(new ArrayList<T>(list));
+        }
+
+        /**
+         * Indicates if two objects are equal, handling null values.
+         * 
+         * @param o1
+         *            The first object.
+         * @param o2
+         *            The second object.
+         * @return True if both objects are null or equal.
+         */
+        private static boolean equal(Object o1, Object o2) {
+            return (o1 == null) ? (o2 == null) : o1.equals(o2);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) obj;
+            return (this.kind == other.kind)
+                    && (this.sourceClass == other.sourceClass)
+                    && (this.targetClass == other.targetClass)
+                    && (this.variant == other.variant)
+                    && (this.objectBinary == other.objectBinary)
+                    && (this.objectXml == other.objectXml)
+                    && equal(this.mediaType, other.mediaType)
+                    && equal(this.characterSet, other.characterSet)
+                    && equal(this.encodings, other.encodings)
+                    && equal(this.languages, other.languages);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = this.kind;
+            result = 31 * result
+                    + ((this.sourceClass == null) ? 0 : this.sourceClass
+                            .hashCode());
+            result = 31
+                    * result
+                    + ((this.targetClass == null) ? 0 : this.targetClass
+                            .hashCode());
+            result = 31 * result
+                    + ((this.mediaType == null) ? 0 : this.mediaType.hashCode());
+            result = 31
+                    * result
+                    + ((this.characterSet == null) ? 0 : this.characterSet
+                            .hashCode());
+            result = 31 * result + (this.variant ? 1 : 0);
+            result = 31 * result + (this.objectBinary ? 1 : 0);
+            return 31 * result + (this.objectXml ? 1 : 0);
+        }
+    }
+
+    /** Lookup of the best helper converting an object. */
+    private static final int KIND_OBJECT = 1;
+
+    /** Lookup of the best helper converting a representation. */
+    private static final int KIND_REPRESENTATION = 2;
+
+    /** Lookup of the variants that can be converted from a class. */
+    private static final int KIND_VARIANTS = 3;
+
+    /** Maximum number of remembered lookups. */
+    private static final int MAX_LOOKUPS = 1024;
+
+    /** Marker of a lookup without result. */
+    private static final Object NONE = new Object();
+
+    /** The cache valid for the last known registered converters. */
+    private static volatile Cache currentCache;
+
+    /**
+     * Returns the cache valid for the current registered converters.
+     * 
+     * @return The valid cache.
+     */
+    private static Cache getCache() {
+        List<ConverterHelper> registeredConverters = Engine.getInstance()
+                .getRegisteredConvertersSnapshot();
+        Cache result = currentCache;
+
+        if ((result == null) || !result.isValid(registeredConverters)) {
+            result = new Cache(registeredConverters);
+            currentCache = result;
+        }
+
+        return result;
+    }
+
     /**
      * Returns the best converter helper matching the given parameters.
      * 
@@ -55,12 +311,24 @@ public class ConverterUtils {
      */
     public static ConverterHelper getBestHelper(Object source, Variant target,
             Resource resource) {
+        Cache cache = (source == null) ? null : getCache();
+        Key key = null;
+
+        if (cache != null) {
+            key = new Key(KIND_OBJECT, source.getClass(), null, target);
+            Object cached = cache.lookups.get(key);
+
+            if (cached != null) {
+                return (cached == NONE) ? null : (ConverterHelper) cached;
+            }
+        }
+
         ConverterHelper result = null;
         float bestScore = -1.0F;
         float currentScore;
 
         for (ConverterHelper ch : Engine.getInstance()
-                .getRegisteredConverters()) {
+                .getRegisteredConvertersSnapshot()) {
             if (ch != null) {
                 try {
                     currentScore = ch.score(source, target, resource);
@@ -74,10 +342,16 @@ public class ConverterUtils {
                             Level.SEVERE,
                             "Unable get the score of the " + ch
                                     + " converter helper.", e);
+                    // Don't remember a selection that may be transient
+                    key = null;
                 }
             }
         }
 
+        if (key != null) {
+            cache.put(key, (result == null) ? NONE : result);
+        }
+
         return result;
     }
 
@@ -96,12 +370,25 @@ public class ConverterUtils {
      */
     public static <T> ConverterHelper getBestHelper(Representation source,
             Class<T> target, Resource resource) {
+        Cache cache = (source == null) ? null : getCache();
+        Key key = null;
+
+        if (cache != null) {
+            key = new Key(KIND_REPRESENTATION, source.getClass(), target,
+                    source);
+            Object cached = cache.lookups.get(key);
+
+            if (cached != null) {
+                return (cached == NONE) ? null : (ConverterHelper) cached;
+            }
+        }
+
         ConverterHelper result = null;
         float bestScore = -1.0F;
         float currentScore;
 
         for (ConverterHelper ch : Engine.getInstance()
-                .getRegisteredConverters()) {
+                .getRegisteredConvertersSnapshot()) {
             if (ch != null) {
                 currentScore = ch.score(source, target, resource);
 
@@ -112,6 +399,10 @@ public class ConverterUtils {
             }
         }
 
+        if (key != null) {
+            cache.put(key, (result == null) ? NONE : result);
+        }
+
         return result;
     }
 
@@ -123,14 +414,34 @@ public class ConverterUtils {
      *            The source class.
      * @param targetVariant
      *            The expected representation metadata.
-     * @return The list of variants that can be converted.
+     * @return The list of variants that can be converted, as a new modifiable
+     *         list, or null.
      */
+    @SuppressWarnings("unchecked")
     public static List<VariantInfo> getVariants(Class<?> sourceClass,
             Variant targetVariant) {
+        // The variants can reflect the media type parameters of the target
+        boolean cacheable = (targetVariant == null)
+                || (targetVariant.getMediaType() == null)
+                || targetVariant.getMediaType().getParameters().isEmpty();
+        Cache cache = cacheable ? getCache() : null;
+        Key key = null;
+
+        if (cache != null) {
+            key = new Key(KIND_VARIANTS, sourceClass, null, targetVariant);
+            Object cached = cache.lookups.get(key);
+
+            if (cached != null) {
+                return (cached == NONE) ? null : new ArrayList<VariantInfo>(
+                        (List<VariantInfo>) cached);
+            }
+        }
+
+        boolean complete = (key != null);
         List<VariantInfo> result = null;
 
         for (ConverterHelper ch : Engine.getInstance()
-                .getRegisteredConverters()) {
+                .getRegisteredConvertersSnapshot()) {
             if (ch != null) {
                 try {
                     result = ch.addVariants(sourceClass, targetVariant, result);
@@ -139,10 +450,16 @@ public class ConverterUtils {
                             Level.FINE,
                             "Unable get the variants of the " + ch
                                     + " converter helper.", e);
+                    complete = false;
                 }
             }
         }
 
+        if (complete) {
+            cache.put(key, (result == null) ? NONE : new ArrayList<VariantInfo>(
+                    result));
+        }
+
         return result;
     }
 
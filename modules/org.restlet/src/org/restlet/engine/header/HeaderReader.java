@@ -171,7 +171,8 @@ public class HeaderReader<V> {
                             "Unable to parse the header name. End of line reached too early.");
                 }
 
-                result.setName(header.subSequence(start, index - 1).toString());
+                result.setName(HeaderUtils.intern(header.subSequence(start,
+                        index - 1).toString()));
                 next = header.charAt(index++);
 
                 while (isSpace(next)) {
@@ -228,7 +229,7 @@ public class HeaderReader<V> {
                         "Unable to parse the header name. End of stream reached too early.");
             }
 
-            result.setName(sb.toString());
+            result.setName(HeaderUtils.intern(sb.toString()));
             sb.delete(0, sb.length());
             next = is.read();
 
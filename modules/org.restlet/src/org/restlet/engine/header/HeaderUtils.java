@@ -29,7 +29,9 @@ import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 
@@ -132,6 +134,80 @@ public class HeaderUtils {
                     HeaderConstants.HEADER_TRANSFER_EXTENSION,
                     HeaderConstants.HEADER_UPGRADE)));
 
+    /**
+     * The names of the well-known headers, mapped to themselves.
+     */
+    private static final Map<String, String> HEADER_NAMES = new HashMap<String, String>();
+
+    static {
+        for (String name : Arrays.asList(
+                HeaderConstants.HEADER_ACCEPT,
+                HeaderConstants.HEADER_ACCEPT_CHARSET,
+                HeaderConstants.HEADER_ACCEPT_ENCODING,
+                HeaderConstants.HEADER_ACCEPT_LANGUAGE,
+                HeaderConstants.HEADER_ACCEPT_PATCH,
+                HeaderConstants.HEADER_ACCEPT_RANGES,
+                HeaderConstants.HEADER_ACCESS_CONTROL_ALLOW_CREDENTIALS,
+                HeaderConstants.HEADER_ACCESS_CONTROL_ALLOW_HEADERS,
+                HeaderConstants.HEADER_ACCESS_CONTROL_ALLOW_METHODS,
+                HeaderConstants.HEADER_ACCESS_CONTROL_ALLOW_ORIGIN,
+                HeaderConstants.HEADER_ACCESS_CONTROL_EXPOSE_HEADERS,
+                HeaderConstants.HEADER_ACCESS_CONTROL_REQUEST_HEADERS,
+                HeaderConstants.HEADER_ACCESS_CONTROL_REQUEST_METHOD,
+                HeaderConstants.HEADER_AGE,
+                HeaderConstants.HEADER_ALLOW,
+                HeaderConstants.HEADER_AUTHENTICATION_INFO,
+                HeaderConstants.HEADER_AUTHORIZATION,
+                HeaderConstants.HEADER_CACHE_CONTROL,
+                HeaderConstants.HEADER_CONNECTION,
+                HeaderConstants.HEADER_CONTENT_DISPOSITION,
+                HeaderConstants.HEADER_CONTENT_ENCODING,
+                HeaderConstants.HEADER_CONTENT_LANGUAGE,
+                HeaderConstants.HEADER_CONTENT_LENGTH,
+                HeaderConstants.HEADER_CONTENT_LOCATION,
+                HeaderConstants.HEADER_CONTENT_MD5,
+                HeaderConstants.HEADER_CONTENT_RANGE,
+                HeaderConstants.HEADER_CONTENT_TYPE,
+                HeaderConstants.HEADER_COOKIE,
+                HeaderConstants.HEADER_DATE,
+                HeaderConstants.HEADER_ETAG,
+                HeaderConstants.HEADER_EXPECT,
+                HeaderConstants.HEADER_EXPIRES,
+                HeaderConstants.HEADER_FROM,
+                HeaderConstants.HEADER_HOST,
+                HeaderConstants.HEADER_IF_MATCH,
+                HeaderConstants.HEADER_IF_MODIFIED_SINCE,
+                HeaderConstants.HEADER_IF_NONE_MATCH,
+                HeaderConstants.HEADER_IF_RANGE,
+                HeaderConstants.HEADER_IF_UNMODIFIED_SINCE,
+                HeaderConstants.HEADER_LAST_MODIFIED,
+                HeaderConstants.HEADER_LOCATION,
+                HeaderConstants.HEADER_MAX_FORWARDS,
+                HeaderConstants.HEADER_PRAGMA,
+                HeaderConstants.HEADER_PROXY_AUTHENTICATE,
+                HeaderConstants.HEADER_PROXY_AUTHORIZATION,
+                HeaderConstants.HEADER_RANGE,
+                HeaderConstants.HEADER_REFERRER,
+                HeaderConstants.HEADER_RETRY_AFTER,
+                HeaderConstants.HEADER_SERVER,
+                HeaderConstants.HEADER_SET_COOKIE,
+                HeaderConstants.HEADER_SET_COOKIE2,
+                HeaderConstants.HEADER_SLUG,
+                HeaderConstants.HEADER_TRAILER,
+                HeaderConstants.HEADER_TRANSFER_ENCODING,
+                HeaderConstants.HEADER_TRANSFER_EXTENSION,
+                HeaderConstants.HEADER_UPGRADE,
+                HeaderConstants.HEADER_USER_AGENT,
+                HeaderConstants.HEADER_VARY,
+                HeaderConstants.HEADER_VIA,
+                HeaderConstants.HEADER_WARNING,
+                HeaderConstants.HEADER_WWW_AUTHENTICATE,
+                HeaderConstants.HEADER_X_FORWARDED_FOR,
+                HeaderConstants.HEADER_X_HTTP_METHOD_OVERRIDE)) {
+            HEADER_NAMES.put(name, name);
+        }
+    }
+
     /**
      * Adds the entity headers based on the {@link Representation} to the
      * {@link Series}.
@@ -978,6 +1054,21 @@ public class HeaderUtils {
         return contentLength;
     }
 
+    /**
+     * Returns the shared instance of a header name if it is the name of a
+     * well-known header, with the same case, as defined by
+     * {@link HeaderConstants}. Header names parsed from messages can then be
+     * compared by identity and their copies quickly collected.
+     * 
+     * @param name
+     *            The header name.
+     * @return The shared instance of the header name or the name itself.
+     */
+    public static String intern(String name) {
+        String result = HEADER_NAMES.get(name);
+        return (result == null) ? name : result;
+    }
+
     /**
      * Indicates if the given character is alphabetical (a-z or A-Z).
      * 
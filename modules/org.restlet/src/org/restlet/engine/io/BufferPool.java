@@ -0,0 +1,465 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.engine.io;
+
+import java.nio.ByteBuffer;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of I/O buffers reused by the copy methods and the representations to
+ * avoid allocating a buffer for each copy. Three kinds of buffers are pooled:
+ * heap byte arrays, heap char arrays and direct byte buffers.<br>
+ * <br>
+ * Requested sizes are rounded up to a size class, a power of two between
+ * {@link #MIN_SIZE} and {@link #MAX_SIZE}. Larger buffers are allocated
+ * without being pooled. Idle buffers are first shared between threads, up to a
+ * maximum per kind and size class, so that buffers released by short-lived
+ * threads such as virtual threads aren't stranded. When the shared buffers are
+ * full, each thread keeps one more idle buffer per kind and size class, up to
+ * {@link #MAX_LOCAL_SIZE}.<br>
+ * <br>
+ * The defaults can be changed with the
+ * "org.restlet.engine.io.bufferPool.maxIdle" and
+ * "org.restlet.engine.io.bufferPool.threadLocal" System properties, or with
+ * the "bufferPoolMaxIdle" and "bufferPoolThreadLocal" connector parameters.
+ * 
+ * @author Jerome Louvel
+ */
+public final class BufferPool {
+
+    /**
+     * Idle buffers of a given kind and size class, shared between threads.
+     */
+    private static final class SharedTier {
+
+        /** The number of idle buffers. */
+        private final AtomicInteger count = new AtomicInteger();
+
+        /** The idle buffers, the most recently released first. */
+        private final Deque<Object> buffers = new ConcurrentLinkedDeque<Object>();
+
+        /**
+         * Returns the most recently released idle buffer or null.
+         * 
+         * @return An idle buffer or null.
+         */
+        private Object poll() {
+            Object result = this.buffers.pollFirst();
+
+            if (result != null) {
+                this.count.decrementAndGet();
+            }
+
+            return result;
+        }
+
+        /**
+         * Adds an idle buffer unless the maximum is reached.
+         * 
+         * @param buffer
+         *            The idle buffer.
+         * @return True if the buffer was added.
+         */
+        private boolean offer(Object buffer) {
+            if (this.count.incrementAndGet() <= maxIdle) {
+                this.buffers.offerFirst(buffer);
+                return true;
+            }
+
+            this.count.decrementAndGet();
+            return false;
+        }
+    }
+
+    /** The kind of the heap byte arrays. */
+    private static final int KIND_BYTES = 0;
+
+    /** The kind of the heap char arrays. */
+    private static final int KIND_CHARS = 1;
+
+    /** The kind of the direct byte buffers. */
+    private static final int KIND_DIRECT = 2;
+
+    /** The number of buffer kinds. */
+    private static final int KINDS = 3;
+
+    /** The shift of the smallest size class. */
+    private static final int MIN_SHIFT = 10;
+
+    /** The shift of the largest size class. */
+    private static final int MAX_SHIFT = 20;
+
+    /** The shift of the largest size class kept per thread. */
+    private static final int MAX_LOCAL_SHIFT = 16;
+
+    /** The number of size classes. */
+    private static final int SIZE_CLASSES = MAX_SHIFT - MIN_SHIFT + 1;
+
+    /** The number of size classes kept per thread. */
+    private static final int LOCAL_SIZE_CLASSES = MAX_LOCAL_SHIFT - MIN_SHIFT
+            + 1;
+
+    /** The size of the smallest pooled buffers. */
+    public static final int MIN_SIZE = 1 << MIN_SHIFT;
+
+    /** The size of the largest pooled buffers. */
+    public static final int MAX_SIZE = 1 << MAX_SHIFT;
+
+    /** The size of the largest idle buffers kept per thread. */
+    public static final int MAX_LOCAL_SIZE = 1 << MAX_LOCAL_SHIFT;
+
+    /** The number of buffers served from the pool. */
+    private static final AtomicLong hits = new AtomicLong();
+
+    /** The idle buffers of the current thread, per kind and size class. */
+    private static final ThreadLocal<Object[]> localBuffers = new ThreadLocal<Object[]>() {
+        @Override
+        protected Object[] initialValue() {
+            return new Object[KINDS * LOCAL_SIZE_CLASSES];
+        }
+    };
+
+    /**
+     * The maximum number of idle buffers shared between threads, per kind and
+     * size class.
+     */
+    private static volatile int maxIdle = Integer.getInteger(
+            "org.restlet.engine.io.bufferPool.maxIdle", 64);
+
+    /** The number of buffers allocated because the pool was empty. */
+    private static final AtomicLong misses = new AtomicLong();
+
+    /** The idle buffers shared between threads, per kind and size class. */
+    private static final SharedTier[] sharedBuffers = new SharedTier[KINDS
+            * SIZE_CLASSES];
+
+    /** Indicates if each thread keeps its own idle buffers. */
+    private static volatile boolean threadLocal = !"false"
+            .equalsIgnoreCase(System.getProperty(
+                    "org.restlet.engine.io.bufferPool.threadLocal", "true"));
+
+    static {
+        for (int i = 0; i < sharedBuffers.length; i++) {
+            sharedBuffers[i] = new SharedTier();
+        }
+    }
+
+    /**
+     * Returns an idle buffer of the given kind and size class, or null.
+     * 
+     * @param kind
+     *            The buffer kind.
+     * @param sizeClass
+     *            The size class.
+     * @return An idle buffer or null.
+     */
+    private static Object acquire(int kind, int sizeClass) {
+        Object result = null;
+
+        if (threadLocal && (sizeClass < LOCAL_SIZE_CLASSES)) {
+            Object[] local = localBuffers.get();
+            int localIndex = kind * LOCAL_SIZE_CLASSES + sizeClass;
+            result = local[localIndex];
+            local[localIndex] = null;
+        }
+
+        if (result == null) {
+            result = sharedBuffers[kind * SIZE_CLASSES + sizeClass].poll();
+        }
+
+        if (result == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns a byte array of {@link IoUtils#BUFFER_SIZE} bytes or more.
+     * 
+     * @return A byte array.
+     */
+    public static byte[] acquireArray() {
+        return acquireArray(IoUtils.BUFFER_SIZE);
+    }
+
+    /**
+     * Returns a byte array from the pool or a new one. Its length is the size
+     * class of the requested size, which can be larger.
+     * 
+     * @param size
+     *            The minimum size.
+     * @return A byte array.
+     */
+    public static byte[] acquireArray(int size) {
+        int sizeClass = getSizeClass(size);
+
+        if (sizeClass < 0) {
+            return new byte[size];
+        }
+
+        byte[] result = (byte[]) acquire(KIND_BYTES, sizeClass);
+        return (result == null) ? new byte[MIN_SIZE << sizeClass] : result;
+    }
+
+    /**
+     * Returns a char array of {@link IoUtils#BUFFER_SIZE} chars or more.
+     * 
+     * @return A char array.
+     */
+    public static char[] acquireCharArray() {
+        return acquireCharArray(IoUtils.BUFFER_SIZE);
+    }
+
+    /**
+     * Returns a char array from the pool or a new one. Its length is the size
+     * class of the requested size, which can be larger.
+     * 
+     * @param size
+     *            The minimum size.
+     * @return A char array.
+     */
+    public static char[] acquireCharArray(int size) {
+        int sizeClass = getSizeClass(size);
+
+        if (sizeClass < 0) {
+            return new char[size];
+        }
+
+        char[] result = (char[]) acquire(KIND_CHARS, sizeClass);
+        return (result == null) ? new char[MIN_SIZE << sizeClass] : result;
+    }
+
+    /**
+     * Returns a cleared direct buffer of {@link IoUtils#BUFFER_SIZE} bytes or
+     * more.
+     * 
+     * @return A direct buffer.
+     */
+    public static ByteBuffer acquireDirectBuffer() {
+        return acquireDirectBuffer(IoUtils.BUFFER_SIZE);
+    }
+
+    /**
+     * Returns a cleared direct buffer from the pool or a new one. Its capacity
+     * is the size class of the requested size, which can be larger.
+     * 
+     * @param size
+     *            The minimum size.
+     * @return A direct buffer.
+     */
+    public static ByteBuffer acquireDirectBuffer(int size) {
+        int sizeClass = getSizeClass(size);
+
+        if (sizeClass < 0) {
+            return ByteBuffer.allocateDirect(size);
+        }
+
+        ByteBuffer result = (ByteBuffer) acquire(KIND_DIRECT, sizeClass);
+
+        if (result == null) {
+            result = ByteBuffer.allocateDirect(MIN_SIZE << sizeClass);
+        } else {
+            result.clear();
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the number of buffers served from the pool.
+     * 
+     * @return The number of buffers served from the pool.
+     */
+    public static long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the maximum number of idle buffers shared between threads, per
+     * kind and size class. The default value is 64.
+     * 
+     * @return The maximum number of idle buffers shared between threads.
+     */
+    public static int getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * Returns the number of buffers allocated because the pool was empty.
+     * 
+     * @return The number of buffers allocated because the pool was empty.
+     */
+    public static long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the size class of a requested size or -1 if it isn't pooled.
+     * 
+     * @param size
+     *            The requested size.
+     * @return The size class or -1.
+     */
+    private static int getSizeClass(int size) {
+        if (size > MAX_SIZE) {
+            return -1;
+        } else if (size <= MIN_SIZE) {
+            return 0;
+        }
+
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+
+    /**
+     * Returns the size class of a released buffer or -1 if it can't be pooled.
+     * 
+     * @param length
+     *            The length of the released buffer.
+     * @return The size class or -1.
+     */
+    private static int getSizeClassOf(int length) {
+        if ((length < MIN_SIZE) || (length > MAX_SIZE)
+                || (Integer.bitCount(length) != 1)) {
+            return -1;
+        }
+
+        return Integer.numberOfTrailingZeros(length) - MIN_SHIFT;
+    }
+
+    /**
+     * Indicates if each thread keeps its own idle buffers when the shared
+     * buffers are full. True by default.
+     * 
+     * @return True if each thread keeps its own idle buffers.
+     */
+    public static boolean isThreadLocal() {
+        return threadLocal;
+    }
+
+    /**
+     * Returns an idle buffer to the pool. It is kept by the current thread
+     * only when the shared buffers are full.
+     * 
+     * @param kind
+     *            The buffer kind.
+     * @param sizeClass
+     *            The size class.
+     * @param buffer
+     *            The idle buffer.
+     */
+    private static void release(int kind, int sizeClass, Object buffer) {
+        if (!sharedBuffers[kind * SIZE_CLASSES + sizeClass].offer(buffer)
+                && threadLocal && (sizeClass < LOCAL_SIZE_CLASSES)) {
+            Object[] local = localBuffers.get();
+            int localIndex = kind * LOCAL_SIZE_CLASSES + sizeClass;
+
+            if (local[localIndex] == null) {
+                local[localIndex] = buffer;
+            }
+        }
+    }
+
+    /**
+     * Returns a byte array to the pool. It must not be used afterwards.
+     * 
+     * @param array
+     *            The array acquired from the pool.
+     */
+    public static void release(byte[] array) {
+        int sizeClass = (array == null) ? -1 : getSizeClassOf(array.length);
+
+        if (sizeClass >= 0) {
+            release(KIND_BYTES, sizeClass, array);
+        }
+    }
+
+    /**
+     * Returns a direct buffer to the pool. It must not be used afterwards.
+     * 
+     * @param buffer
+     *            The buffer acquired from the pool.
+     */
+    public static void release(ByteBuffer buffer) {
+        int sizeClass = ((buffer == null) || !buffer.isDirect()
+                || buffer.isReadOnly()) ? -1 : getSizeClassOf(buffer
+                .capacity());
+
+        if (sizeClass >= 0) {
+            release(KIND_DIRECT, sizeClass, buffer);
+        }
+    }
+
+    /**
+     * Returns a char array to the pool. It must not be used afterwards.
+     * 
+     * @param array
+     *            The array acquired from the pool.
+     */
+    public static void release(char[] array) {
+        int sizeClass = (array == null) ? -1 : getSizeClassOf(array.length);
+
+        if (sizeClass >= 0) {
+            release(KIND_CHARS, sizeClass, array);
+        }
+    }
+
+    /**
+     * Sets the maximum number of idle buffers shared between threads, per
+     * kind and size class. Use 0 to only keep idle buffers per thread, up to
+     * {@link #MAX_LOCAL_SIZE}.
+     * 
+     * @param maxIdle
+     *            The maximum number of idle buffers shared between threads.
+     */
+    public static void setMaxIdle(int maxIdle) {
+        BufferPool.maxIdle = maxIdle;
+    }
+
+    /**
+     * Indicates if each thread keeps its own idle buffers when the shared
+     * buffers are full.
+     * 
+     * @param threadLocal
+     *            True if each thread keeps its own idle buffers.
+     */
+    public static void setThreadLocal(boolean threadLocal) {
+        BufferPool.threadLocal = threadLocal;
+    }
+
+    /**
+     * Private constructor to ensure that the class acts as a true utility class
+     * i.e. it isn't instantiable and extensible.
+     */
+    private BufferPool() {
+    }
+
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.engine.io;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writable channel able to send a region of a file without copying it through
+ * the Java heap, typically by relying on {@link FileChannel#transferTo(long,
+ * long, WritableByteChannel)} with the underlying socket channel. Connectors
+ * return such channels when the socket isn't directly exposed.
+ * 
+ * @author Jerome Louvel
+ */
+public interface FileTransferChannel extends WritableByteChannel {
+
+    /**
+     * Transfers a region of a file to this channel. The method blocks until
+     * the whole region is sent or queued for sending.
+     * 
+     * @param source
+     *            The source file channel.
+     * @param position
+     *            The position of the region in the file.
+     * @param count
+     *            The number of bytes to transfer.
+     * @return The number of bytes transferred.
+     * @throws IOException
+     */
+    long transferFrom(FileChannel source, long position, long count)
+            throws IOException;
+
+}
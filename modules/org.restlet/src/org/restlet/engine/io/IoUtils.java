@@ -34,8 +34,10 @@ import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channel;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.WritableByteChannel;
@@ -68,6 +70,16 @@ public class IoUtils {
     /** Support for byte to hexa conversions. */
     private static final char[] HEXDIGITS = "0123456789ABCDEF".toCharArray();
 
+    // [ifndef gwt] member
+    /**
+     * Indicates if the representation adapters use a writer thread and a pipe
+     * for content of unknown size instead of spooling it. It looks for the
+     * System property "org.restlet.engine.io.pipedUnknownSize" and if not
+     * defined, uses the "false" default value.
+     */
+    private static volatile boolean pipedUnknownSize = Boolean
+            .getBoolean("org.restlet.engine.io.pipedUnknownSize");
+
     /**
      * The number of milliseconds after which IO operation will time out. It
      * looks for the System property "org.restlet.engine.io.timeoutMs" and if
@@ -92,10 +104,14 @@ public class IoUtils {
         if (inputStream != null) {
             if (outputStream != null) {
                 int bytesRead;
-                byte[] buffer = new byte[2048];
+                byte[] buffer = BufferPool.acquireArray();
 
-                while ((bytesRead = inputStream.read(buffer)) > 0) {
-                    outputStream.write(buffer, 0, bytesRead);
+                try {
+                    while ((bytesRead = inputStream.read(buffer)) > 0) {
+                        outputStream.write(buffer, 0, bytesRead);
+                    }
+                } finally {
+                    BufferPool.release(buffer);
                 }
 
                 outputStream.flush();
@@ -126,10 +142,14 @@ public class IoUtils {
     public static void copy(InputStream inputStream,
             java.io.RandomAccessFile randomAccessFile) throws IOException {
         int bytesRead;
-        byte[] buffer = new byte[2048];
+        byte[] buffer = BufferPool.acquireArray();
 
-        while ((bytesRead = inputStream.read(buffer)) > 0) {
-            randomAccessFile.write(buffer, 0, bytesRead);
+        try {
+            while ((bytesRead = inputStream.read(buffer)) > 0) {
+                randomAccessFile.write(buffer, 0, bytesRead);
+            }
+        } finally {
+            BufferPool.release(buffer);
         }
 
         inputStream.close();
@@ -137,7 +157,109 @@ public class IoUtils {
 
     // [ifndef gwt] method
     /**
-     * Writes a readable channel to a writable channel.
+     * Writes a region of a file channel to an output stream, through pooled
+     * buffers.
+     * 
+     * @param fileChannel
+     *            The source file channel.
+     * @param position
+     *            The position of the region in the file.
+     * @param count
+     *            The number of bytes to copy.
+     * @param outputStream
+     *            The output stream.
+     * @throws IOException
+     */
+    public static void copy(FileChannel fileChannel, long position,
+            long count, OutputStream outputStream) throws IOException {
+        ByteBuffer buffer = BufferPool.acquireDirectBuffer();
+        byte[] array = BufferPool.acquireArray();
+
+        try {
+            long end = position + count;
+
+            while (position < end) {
+                buffer.clear();
+
+                if (end - position < buffer.capacity()) {
+                    buffer.limit((int) (end - position));
+                }
+
+                int read = fileChannel.read(buffer, position);
+
+                if (read < 0) {
+                    break;
+                }
+
+                position += read;
+                buffer.flip();
+
+                while (buffer.hasRemaining()) {
+                    int length = Math.min(buffer.remaining(), array.length);
+                    buffer.get(array, 0, length);
+                    outputStream.write(array, 0, length);
+                }
+            }
+
+            outputStream.flush();
+        } finally {
+            BufferPool.release(array);
+            BufferPool.release(buffer);
+        }
+    }
+
+    // [ifndef gwt] method
+    /**
+     * Writes a region of a file channel to a writable channel. It relies on
+     * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, so
+     * that the operating system can send the file content without copying it
+     * through the Java heap, or on the connector's
+     * {@link FileTransferChannel}.
+     * 
+     * @param fileChannel
+     *            The source file channel.
+     * @param position
+     *            The position of the region in the file.
+     * @param count
+     *            The number of bytes to copy.
+     * @param writableChannel
+     *            The writable channel.
+     * @throws IOException
+     */
+    public static void copy(FileChannel fileChannel, long position,
+            long count, WritableByteChannel writableChannel)
+            throws IOException {
+        if (writableChannel instanceof FileTransferChannel) {
+            ((FileTransferChannel) writableChannel).transferFrom(fileChannel,
+                    position, count);
+        } else {
+            long end = Math.min(position + count, fileChannel.size());
+
+            while (position < end) {
+                long transferred = fileChannel.transferTo(position, end
+                        - position, writableChannel);
+
+                if (transferred <= 0) {
+                    if (!isBlocking(writableChannel)) {
+                        throw new IOException(
+                                "Unable to transfer a file to a non-blocking channel");
+                    }
+
+                    // The file was probably truncated
+                    end = Math.min(end, fileChannel.size());
+                } else {
+                    position += transferred;
+                }
+            }
+        }
+    }
+
+    // [ifndef gwt] method
+    /**
+     * Writes a readable channel to a writable channel. When the readable
+     * channel is a file channel, the content is transferred without copying it
+     * through the Java heap. Otherwise, a pooled direct buffer is used. When
+     * the copy is done, the readable channel is closed.
      * 
      * @param readableChannel
      *            The readable channel.
@@ -148,7 +270,34 @@ public class IoUtils {
     public static void copy(ReadableByteChannel readableChannel,
             WritableByteChannel writableChannel) throws IOException {
         if ((readableChannel != null) && (writableChannel != null)) {
-            copy(getStream(readableChannel), getStream(writableChannel));
+            try {
+                if (readableChannel instanceof FileChannel) {
+                    FileChannel fileChannel = (FileChannel) readableChannel;
+                    long position = fileChannel.position();
+                    copy(fileChannel, position, fileChannel.size() - position,
+                            writableChannel);
+                } else if (!isBlocking(readableChannel)
+                        || !isBlocking(writableChannel)) {
+                    // Rely on the streams to wait for the channels
+                    copy(getStream(readableChannel),
+                            getStream(writableChannel));
+                } else {
+                    ByteBuffer buffer = BufferPool.acquireDirectBuffer();
+
+                    try {
+                        while (readableChannel.read(buffer) >= 0
+                                || buffer.position() > 0) {
+                            buffer.flip();
+                            writableChannel.write(buffer);
+                            buffer.compact();
+                        }
+                    } finally {
+                        BufferPool.release(buffer);
+                    }
+                }
+            } finally {
+                readableChannel.close();
+            }
         }
     }
 
@@ -166,10 +315,14 @@ public class IoUtils {
     public static void copy(Reader reader, java.io.Writer writer)
             throws IOException {
         int charsRead;
-        char[] buffer = new char[2048];
+        char[] buffer = BufferPool.acquireCharArray();
 
-        while ((charsRead = reader.read(buffer)) > 0) {
-            writer.write(buffer, 0, charsRead);
+        try {
+            while ((charsRead = reader.read(buffer)) > 0) {
+                writer.write(buffer, 0, charsRead);
+            }
+        } finally {
+            BufferPool.release(buffer);
         }
 
         writer.flush();
@@ -274,13 +427,18 @@ public class IoUtils {
         long result = -1L;
 
         if (input != null) {
-            byte[] buf = new byte[2048];
-            int read = input.read(buf);
-            result = (read == -1) ? -1 : 0;
+            byte[] buf = BufferPool.acquireArray();
+
+            try {
+                int read = input.read(buf);
+                result = (read == -1) ? -1 : 0;
 
-            while (read != -1) {
-                result += read;
-                read = input.read(buf);
+                while (read != -1) {
+                    result += read;
+                    read = input.read(buf);
+                }
+            } finally {
+                BufferPool.release(buf);
             }
         }
 
@@ -362,8 +520,10 @@ public class IoUtils {
     // [ifndef gwt] method
     /**
      * Returns a readable byte channel based on the given representation's
-     * content and its write(WritableByteChannel) method. Internally, it uses a
-     * writer thread and a pipe channel.
+     * content and its write(WritableByteChannel) method. The content is first
+     * written in a {@link SpoolOutputStream} by the calling thread, so that no
+     * writer thread is needed. Content of unknown size uses a writer thread
+     * and a pipe channel instead when {@link #isPipedUnknownSize()} is true.
      * 
      * @param representation
      *            the representation to get the {@link OutputStream} from.
@@ -376,6 +536,23 @@ public class IoUtils {
 
         if (Edition.CURRENT != Edition.GAE) {
             // [ifndef gae]
+            if (isSpooled(representation)) {
+                SpoolOutputStream spool = new SpoolOutputStream();
+
+                try {
+                    representation.write(Channels.newChannel(spool));
+                } catch (IOException ioe) {
+                    spool.setFailure(ioe);
+                    Context.getCurrentLogger().log(Level.WARNING,
+                            "Error while writing to the spooled channel.", ioe);
+                } catch (RuntimeException re) {
+                    spool.discard();
+                    throw re;
+                }
+
+                return Channels.newChannel(spool.getInputStream());
+            }
+
             final java.nio.channels.Pipe pipe = java.nio.channels.Pipe.open();
 
             // Get a thread that will handle the task of continuously
@@ -460,8 +637,10 @@ public class IoUtils {
 
     // [ifndef gwt] method
     /**
-     * Returns a reader from a writer representation.Internally, it uses a
-     * writer thread and a pipe stream.
+     * Returns a reader from a writer representation. The characters are first
+     * written in a {@link SpoolOutputStream} by the calling thread, so that no
+     * writer thread is needed. Content of unknown size uses a writer thread
+     * and a pipe stream instead when {@link #isPipedUnknownSize()} is true.
      * 
      * @param representation
      *            The representation to read from.
@@ -471,9 +650,27 @@ public class IoUtils {
     public static Reader getReader(
             final org.restlet.representation.WriterRepresentation representation)
             throws IOException {
-        Reader result = null;
-        final java.io.PipedWriter pipedWriter = new java.io.PipedWriter();
+        if (isSpooled(representation)) {
+            SpoolOutputStream spool = new SpoolOutputStream();
+            Writer writer = new OutputStreamWriter(spool, "UTF-8");
+
+            try {
+                representation.write(writer);
+            } catch (IOException ioe) {
+                spool.setFailure(ioe);
+                Context.getCurrentLogger().log(Level.WARNING,
+                        "Error while writing to the spooled reader.", ioe);
+            } catch (RuntimeException re) {
+                spool.discard();
+                throw re;
+            } finally {
+                writer.close();
+            }
+
+            return new InputStreamReader(spool.getInputStream(), "UTF-8");
+        }
 
+        final java.io.PipedWriter pipedWriter = new java.io.PipedWriter();
         java.io.PipedReader pipedReader = new java.io.PipedReader(pipedWriter);
 
         // Gets a thread that will handle the task of continuously
@@ -506,10 +703,7 @@ public class IoUtils {
                     .start();
         }
 
-        result = pipedReader;
-
-        return result;
-
+        return pipedReader;
     }
 
     // [ifndef gwt] method
@@ -572,8 +766,11 @@ public class IoUtils {
     // [ifndef gwt] method
     /**
      * Returns an input stream based on the given representation's content and
-     * its write(OutputStream) method. Internally, it uses a writer thread and a
-     * pipe stream.
+     * its write(OutputStream) method. The content is first written in a
+     * {@link SpoolOutputStream} by the calling thread, so that no writer thread
+     * is needed. If the writing fails, the returned stream throws an exception
+     * after the spooled bytes. Content of unknown size uses a writer thread
+     * and a pipe stream instead when {@link #isPipedUnknownSize()} is true.
      * 
      * @param representation
      *            the representation to get the {@link java.io.OutputStream}
@@ -587,6 +784,31 @@ public class IoUtils {
             return null;
         }
 
+        if (isSpooled(representation)) {
+            SpoolOutputStream spool = new SpoolOutputStream();
+
+            try {
+                try {
+                    representation.write(spool);
+                } catch (IOException ioe) {
+                    spool.setFailure(ioe);
+                    Context.getCurrentLogger().log(Level.WARNING,
+                            "Error while writing to the spooled input stream.",
+                            ioe);
+                } catch (RuntimeException re) {
+                    spool.discard();
+                    throw re;
+                }
+
+                result = spool.getInputStream();
+            } catch (IOException ioe) {
+                Context.getCurrentLogger().log(Level.WARNING,
+                        "Unable to read the spooled input stream.", ioe);
+            }
+
+            return result;
+        }
+
         final PipeStream pipe = new PipeStream();
         final java.io.OutputStream os = pipe.getOutputStream();
 
@@ -622,7 +844,6 @@ public class IoUtils {
         }
 
         result = pipe.getInputStream();
-
         return result;
     }
 
@@ -720,6 +941,45 @@ public class IoUtils {
         return result;
     }
 
+    // [ifndef gwt] method
+    /**
+     * Indicates if the representation adapters use a writer thread and a pipe
+     * for content of unknown size instead of spooling it. This can be enabled
+     * for unbounded or streaming representations, which can't be fully
+     * spooled before being read. False by default.
+     * 
+     * @return True if content of unknown size is piped.
+     */
+    public static boolean isPipedUnknownSize() {
+        return pipedUnknownSize;
+    }
+
+    // [ifndef gwt] method
+    /**
+     * Indicates if a representation is spooled by the representation
+     * adapters, rather than piped by a writer thread.
+     * 
+     * @param representation
+     *            The representation to adapt.
+     * @return True if the representation is spooled.
+     */
+    private static boolean isSpooled(Representation representation) {
+        return !pipedUnknownSize
+                || (representation.getAvailableSize() != Representation.UNKNOWN_SIZE);
+    }
+
+    // [ifndef gwt] method
+    /**
+     * Indicates if the representation adapters use a writer thread and a pipe
+     * for content of unknown size instead of spooling it.
+     * 
+     * @param pipedUnknownSize
+     *            True if content of unknown size is piped.
+     */
+    public static void setPipedUnknownSize(boolean pipedUnknownSize) {
+        IoUtils.pipedUnknownSize = pipedUnknownSize;
+    }
+
     // [ifndef gwt] method
     /**
      * Converts a char array into a byte array using the default character set.
@@ -890,12 +1150,21 @@ public class IoUtils {
                 StringBuilder sb = new StringBuilder();
                 BufferedReader br = (reader instanceof BufferedReader) ? (BufferedReader) reader
                         : new BufferedReader(reader, BUFFER_SIZE);
-                char[] buffer = new char[2048];
-                int charsRead = br.read(buffer);
+                // [ifndef gwt] instruction
+                char[] buffer = BufferPool.acquireCharArray();
+                // [ifdef gwt] instruction uncomment
+                // char[] buffer = new char[2048];
 
-                while (charsRead != -1) {
-                    sb.append(buffer, 0, charsRead);
-                    charsRead = br.read(buffer);
+                try {
+                    int charsRead = br.read(buffer);
+
+                    while (charsRead != -1) {
+                        sb.append(buffer, 0, charsRead);
+                        charsRead = br.read(buffer);
+                    }
+                } finally {
+                    // [ifndef gwt] instruction
+                    BufferPool.release(buffer);
                 }
 
                 br.close();
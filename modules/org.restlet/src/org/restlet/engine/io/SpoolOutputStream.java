@@ -0,0 +1,404 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.engine.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// [excludes gwt]
+/**
+ * Output stream that spools the written bytes so that they can be read back
+ * afterwards with {@link #getInputStream()}, without needing a separate writer
+ * thread. The bytes are kept in pooled memory chunks up to a threshold, then
+ * in a temporary file that is deleted once read or discarded. The temporary
+ * file is only readable by its owner where the file system supports it, and is
+ * also deleted when the stream is garbage collected.<br>
+ * <br>
+ * The default threshold can be changed with the
+ * "org.restlet.engine.io.spoolThreshold" System property.
+ * 
+ * @author Jerome Louvel
+ */
+public class SpoolOutputStream extends OutputStream {
+
+    /**
+     * Input stream reading the spooled bytes, first from the memory chunks
+     * then from the temporary file. The resources are released at the end of
+     * the content or when the stream is closed.
+     */
+    private class SpoolInputStream extends InputStream {
+
+        /** The index of the current memory chunk. */
+        private int chunkIndex;
+
+        /** The position in the current memory chunk. */
+        private int chunkPosition;
+
+        /** The temporary file stream, opened after the memory chunks. */
+        private InputStream fileStream;
+
+        /** Indicates if the end of the content was reached. */
+        private boolean endReached;
+
+        @Override
+        public int available() throws IOException {
+            if (this.endReached) {
+                return 0;
+            }
+
+            if (this.chunkIndex < chunks.size()) {
+                return getChunkLength(this.chunkIndex) - this.chunkPosition;
+            }
+
+            return (this.fileStream == null) ? 0 : this.fileStream.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.endReached = true;
+            release();
+        }
+
+        /**
+         * Called at the end of the spooled content.
+         * 
+         * @return -1.
+         * @throws IOException
+         *             If the spooled content is incomplete.
+         */
+        private int end() throws IOException {
+            close();
+
+            if (failure != null) {
+                throw new IOException("The spooled content is incomplete",
+                        failure);
+            }
+
+            return -1;
+        }
+
+        /**
+         * Returns the number of bytes written in a memory chunk.
+         * 
+         * @param index
+         *            The chunk index.
+         * @return The number of bytes written in the chunk.
+         */
+        private int getChunkLength(int index) {
+            return (index == chunks.size() - 1) ? chunkCount : chunks
+                    .get(index).length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!this.endReached && (this.chunkIndex < chunks.size())
+                    && (this.chunkPosition < getChunkLength(this.chunkIndex))) {
+                return chunks.get(this.chunkIndex)[this.chunkPosition++] & 0xff;
+            }
+
+            byte[] b = new byte[1];
+            int result = read(b, 0, 1);
+            return (result == -1) ? -1 : (b[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            } else if (this.endReached) {
+                return (failure == null) ? -1 : end();
+            }
+
+            while (this.chunkIndex < chunks.size()) {
+                int remaining = getChunkLength(this.chunkIndex)
+                        - this.chunkPosition;
+
+                if (remaining > 0) {
+                    int length = Math.min(len, remaining);
+                    System.arraycopy(chunks.get(this.chunkIndex),
+                            this.chunkPosition, b, off, length);
+                    this.chunkPosition += length;
+                    return length;
+                }
+
+                this.chunkIndex++;
+                this.chunkPosition = 0;
+            }
+
+            if (file != null) {
+                if (this.fileStream == null) {
+                    this.fileStream = new BufferedInputStream(
+                            new FileInputStream(file), IoUtils.BUFFER_SIZE);
+                }
+
+                int result = this.fileStream.read(b, off, len);
+
+                if (result != -1) {
+                    return result;
+                }
+            }
+
+            return end();
+        }
+
+        /**
+         * Releases the memory chunks and deletes the temporary file.
+         * 
+         * @throws IOException
+         */
+        private void release() throws IOException {
+            for (byte[] chunk : chunks) {
+                BufferPool.release(chunk);
+            }
+
+            chunks.clear();
+
+            if (this.fileStream != null) {
+                this.fileStream.close();
+                this.fileStream = null;
+            }
+
+            if (file != null) {
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+
+                file = null;
+            }
+        }
+    }
+
+    /**
+     * The default number of bytes kept in memory before spooling to a
+     * temporary file.
+     */
+    public static final int DEFAULT_THRESHOLD = Integer.getInteger(
+            "org.restlet.engine.io.spoolThreshold", 1024 * 1024);
+
+    /** The number of bytes written in the last memory chunk. */
+    private int chunkCount;
+
+    /** The memory chunks. */
+    private final List<byte[]> chunks;
+
+    /** Indicates if the stream was closed. */
+    private boolean closed;
+
+    /** The error that interrupted the writing, if any. */
+    private volatile IOException failure;
+
+    /** The temporary file, created once the threshold is reached. */
+    private File file;
+
+    /** The temporary file output stream. */
+    private OutputStream fileStream;
+
+    /** The number of bytes kept in memory. */
+    private long memorySize;
+
+    /** The number of bytes kept in memory before using a temporary file. */
+    private final long threshold;
+
+    /**
+     * Constructor using the default threshold.
+     */
+    public SpoolOutputStream() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param threshold
+     *            The number of bytes kept in memory before using a temporary
+     *            file.
+     */
+    public SpoolOutputStream(long threshold) {
+        this.chunks = new ArrayList<byte[]>();
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!this.closed) {
+            this.closed = true;
+
+            if (this.fileStream != null) {
+                this.fileStream.close();
+                this.fileStream = null;
+            }
+        }
+    }
+
+    /**
+     * Creates the temporary file, only readable and writable by its owner
+     * where the file system supports POSIX permissions.
+     * 
+     * @return The temporary file.
+     * @throws IOException
+     */
+    private static File createTempFile() throws IOException {
+        // [ifndef android]
+        if (java.nio.file.FileSystems.getDefault()
+                .supportedFileAttributeViews().contains("posix")) {
+            java.nio.file.attribute.FileAttribute<?> permissions = java.nio.file.attribute.PosixFilePermissions
+                    .asFileAttribute(java.nio.file.attribute.PosixFilePermissions
+                            .fromString("rw-------"));
+            return java.nio.file.Files.createTempFile("restlet-spool", ".tmp",
+                    permissions).toFile();
+        }
+        // [enddef]
+
+        return File.createTempFile("restlet-spool", ".tmp");
+    }
+
+    /**
+     * Closes the stream and releases the spooled bytes without reading them.
+     * 
+     * @throws IOException
+     */
+    public void discard() throws IOException {
+        getInputStream().close();
+    }
+
+    /**
+     * Deletes the temporary file if the spooled bytes were neither read nor
+     * discarded.
+     */
+    @Override
+    protected void finalize() throws Throwable {
+        try {
+            if (this.fileStream != null) {
+                this.fileStream.close();
+            }
+
+            File file = this.file;
+
+            if (file != null) {
+                file.delete();
+            }
+        } finally {
+            super.finalize();
+        }
+    }
+
+    /**
+     * Flushes the bytes buffered for the temporary file, if any.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (this.fileStream != null) {
+            this.fileStream.flush();
+        }
+    }
+
+    /**
+     * Closes the stream and returns an input stream reading the spooled bytes.
+     * It can only be called once. Closing the returned stream releases the
+     * memory chunks and deletes the temporary file.
+     * 
+     * @return An input stream reading the spooled bytes.
+     * @throws IOException
+     */
+    public InputStream getInputStream() throws IOException {
+        close();
+        return new SpoolInputStream();
+    }
+
+    /**
+     * Records an error that interrupted the writing. The input stream will
+     * throw an exception once the spooled bytes are read.
+     * 
+     * @param failure
+     *            The error that interrupted the writing.
+     */
+    public void setFailure(IOException failure) {
+        this.failure = failure;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (this.closed) {
+            throw new IOException("The spool stream is closed");
+        }
+
+        if ((this.fileStream == null)
+                && (this.memorySize + len > this.threshold)) {
+            this.file = createTempFile();
+            this.fileStream = new BufferedOutputStream(new FileOutputStream(
+                    this.file), IoUtils.BUFFER_SIZE);
+        }
+
+        if (this.fileStream != null) {
+            this.fileStream.write(b, off, len);
+            return;
+        }
+
+        this.memorySize += len;
+
+        while (len > 0) {
+            byte[] chunk = this.chunks.isEmpty() ? null : this.chunks
+                    .get(this.chunks.size() - 1);
+
+            if ((chunk == null) || (this.chunkCount == chunk.length)) {
+                chunk = BufferPool.acquireArray();
+                this.chunks.add(chunk);
+                this.chunkCount = 0;
+            }
+
+            int length = Math.min(len, chunk.length - this.chunkCount);
+            System.arraycopy(b, off, chunk, this.chunkCount, length);
+            this.chunkCount += length;
+            off += length;
+            len -= length;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        byte[] last = this.chunks.isEmpty() ? null : this.chunks
+                .get(this.chunks.size() - 1);
+
+        if (!this.closed && (this.fileStream == null)
+                && (this.memorySize < this.threshold) && (last != null)
+                && (this.chunkCount < last.length)) {
+            last[this.chunkCount++] = (byte) b;
+            this.memorySize++;
+        } else if (!this.closed && (this.fileStream != null)) {
+            this.fileStream.write(b);
+        } else {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+    }
+}
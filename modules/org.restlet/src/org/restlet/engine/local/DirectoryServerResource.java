@@ -41,6 +41,7 @@ import org.restlet.data.Preference;
 import org.restlet.data.Reference;
 import org.restlet.data.ReferenceList;
 import org.restlet.data.Status;
+import org.restlet.representation.FileRepresentation;
 import org.restlet.representation.Representation;
 import org.restlet.representation.Variant;
 import org.restlet.resource.Directory;
@@ -787,6 +788,18 @@ public class DirectoryServerResource extends ServerResource {
             }
         } else {
             result = super.handle();
+            long mappedFileMaxSize = getDirectory().getMappedFileMaxSize();
+
+            if ((mappedFileMaxSize > 0) && Method.GET.equals(getMethod())
+                    && getRequest().getRanges().isEmpty()
+                    && (getResponseEntity() instanceof FileRepresentation)
+                    && (getResponseEntity().getSize() >= 0)
+                    && (getResponseEntity().getSize() <= mappedFileMaxSize)) {
+                // Share the memory mapped content of small files
+                result = new MappedFileRepresentation(
+                        (FileRepresentation) getResponseEntity());
+                getResponse().setEntity(result);
+            }
         }
 
         return result;
@@ -0,0 +1,195 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.engine.local;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.restlet.engine.io.BufferPool;
+import org.restlet.representation.FileRepresentation;
+import org.restlet.util.WrapperRepresentation;
+
+/**
+ * File representation whose content is memory mapped once and then shared by
+ * all the responses. It is used by the {@link DirectoryServerResource} for
+ * small and frequently requested files when the
+ * {@link org.restlet.resource.Directory#getMappedFileMaxSize()} property is
+ * set. The mapping is reused as long as the length and the modification date
+ * of the file don't change. The least recently used mappings are dropped when
+ * more than 256 files are mapped.<br>
+ * <br>
+ * Note that truncating a file while it is being sent can cause the JVM to
+ * fail, which is why mapping must be explicitly enabled.
+ * 
+ * @author Jerome Louvel
+ */
+public class MappedFileRepresentation extends WrapperRepresentation {
+
+    /**
+     * Memory mapped content of a file.
+     */
+    private static final class MappedFile {
+
+        /** The mapped content. */
+        private final ByteBuffer buffer;
+
+        /** The modification date of the file when it was mapped. */
+        private final long lastModified;
+
+        /** The length of the file when it was mapped. */
+        private final long length;
+
+        /**
+         * Constructor.
+         * 
+         * @param buffer
+         *            The mapped content.
+         * @param length
+         *            The length of the file when it was mapped.
+         * @param lastModified
+         *            The modification date of the file when it was mapped.
+         */
+        private MappedFile(ByteBuffer buffer, long length, long lastModified) {
+            this.buffer = buffer;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /** The maximum number of files mapped at the same time. */
+    private static final int MAX_MAPPED_FILES = 256;
+
+    /** The mapped files indexed by absolute path, in access order. */
+    private static final Map<String, MappedFile> mappedFiles = Collections
+            .synchronizedMap(new LinkedHashMap<String, MappedFile>(16, 0.75f,
+                    true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, MappedFile> eldest) {
+                    return size() > MAX_MAPPED_FILES;
+                }
+            });
+
+    /**
+     * Returns a read-only view of the mapped content of a file, mapping it if
+     * needed. Stale mappings of modified or deleted files are dropped.
+     * 
+     * @param file
+     *            The file to map.
+     * @return A read-only view of the mapped content.
+     * @throws IOException
+     */
+    private static ByteBuffer getMappedBuffer(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        long length = file.length();
+        long lastModified = file.lastModified();
+        MappedFile mapped = mappedFiles.get(path);
+
+        if ((mapped == null) || (mapped.length != length)
+                || (mapped.lastModified != lastModified)) {
+            if (mapped != null) {
+                mappedFiles.remove(path);
+            }
+
+            FileInputStream fis = new FileInputStream(file);
+
+            try {
+                FileChannel fc = fis.getChannel();
+                mapped = new MappedFile(fc.map(FileChannel.MapMode.READ_ONLY,
+                        0, Math.min(length, fc.size())), length, lastModified);
+            } finally {
+                fis.close();
+            }
+
+            mappedFiles.put(path, mapped);
+        }
+
+        return mapped.buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param fileRepresentation
+     *            The file representation to map.
+     */
+    public MappedFileRepresentation(FileRepresentation fileRepresentation) {
+        super(fileRepresentation);
+    }
+
+    /**
+     * Returns the mapped file.
+     * 
+     * @return The mapped file.
+     */
+    public File getFile() {
+        return ((FileRepresentation) getWrappedRepresentation()).getFile();
+    }
+
+    /**
+     * Writes the mapped content to the stream through a pooled buffer.
+     */
+    @Override
+    public void write(OutputStream outputStream) throws IOException {
+        ByteBuffer buffer = getMappedBuffer(getFile());
+        byte[] bytes = BufferPool.acquireArray();
+
+        try {
+            while (buffer.hasRemaining()) {
+                int length = Math.min(buffer.remaining(), bytes.length);
+                buffer.get(bytes, 0, length);
+                outputStream.write(bytes, 0, length);
+            }
+
+            outputStream.flush();
+        } finally {
+            BufferPool.release(bytes);
+        }
+    }
+
+    /**
+     * Writes the read-only mapped content to the channel, without copying it
+     * when the channel supports it.
+     */
+    @Override
+    public void write(WritableByteChannel writableChannel) throws IOException {
+        ByteBuffer buffer = getMappedBuffer(getFile());
+
+        while (buffer.hasRemaining()) {
+            writableChannel.write(buffer);
+        }
+    }
+}
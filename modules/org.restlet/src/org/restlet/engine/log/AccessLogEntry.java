@@ -0,0 +1,375 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.engine.log;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.Method;
+import org.restlet.data.Status;
+import org.restlet.engine.Engine;
+
+/**
+ * Access log entry capturing the fields of a call that are needed to format
+ * its log line later, possibly on another thread. Either the fields of the
+ * default log format or the values of the variables of a custom log format
+ * are captured.<br>
+ * <br>
+ * Concurrency note: instances are filled by the calling thread then safely
+ * published to the writer thread by the {@link AccessLogWriter} buffer, so
+ * their fields don't need to be volatile.
+ * 
+ * @author Jerome Louvel
+ * @see AccessLogWriter
+ */
+public class AccessLogEntry {
+
+    /** The name of the agent. */
+    private String agentName;
+
+    /** The client IP address. */
+    private String clientAddress;
+
+    /** The client port. */
+    private int clientPort;
+
+    /** The call duration (in milliseconds). */
+    private int duration;
+
+    /** The host reference. */
+    private String hostRef;
+
+    /** The access logger to use. */
+    private Logger logger;
+
+    /** The method name. */
+    private String methodName;
+
+    /** The number of bytes received, or -1 if unknown. */
+    private long receivedSize;
+
+    /** The referrer reference. */
+    private String referrerRef;
+
+    /** The resource reference path. */
+    private String resourcePath;
+
+    /** The resource reference query. */
+    private String resourceQuery;
+
+    /** The number of bytes sent, or -1 if unknown. */
+    private long sentSize;
+
+    /** The server IP address. */
+    private String serverAddress;
+
+    /** The server port. */
+    private int serverPort;
+
+    /** The response status code, or -1 if unknown. */
+    private int statusCode;
+
+    /** The custom log format, or null for the default one. */
+    private AccessLogTemplate template;
+
+    /** The time of the call. */
+    private final long time;
+
+    /** The user identifier from the challenge response. */
+    private String userIdentifier;
+
+    /** The resolved values of the custom log format variables. */
+    private String[] variableValues;
+
+    /**
+     * Constructor capturing the fields of the default log format.
+     * 
+     * @param response
+     *            The response to log.
+     * @param duration
+     *            The call duration (in milliseconds).
+     */
+    public AccessLogEntry(Response response, int duration) {
+        Request request = response.getRequest();
+        this.time = System.currentTimeMillis();
+        this.duration = duration;
+        this.clientAddress = request.getClientInfo().getUpstreamAddress();
+        this.clientPort = request.getClientInfo().getPort();
+
+        if (request.getChallengeResponse() != null) {
+            this.userIdentifier = request.getChallengeResponse()
+                    .getIdentifier();
+        }
+
+        this.serverAddress = response.getServerInfo().getAddress();
+        this.serverPort = response.getServerInfo().getPort();
+
+        if (request.getMethod() != null) {
+            this.methodName = request.getMethod().getName();
+        }
+
+        if (request.getResourceRef() != null) {
+            this.resourcePath = request.getResourceRef().getPath();
+            this.resourceQuery = request.getResourceRef().getQuery();
+        } else {
+            this.resourcePath = "-";
+            this.resourceQuery = "-";
+        }
+
+        this.statusCode = (response.getStatus() == null) ? -1 : response
+                .getStatus().getCode();
+
+        if (!response.isEntityAvailable()
+                || Status.REDIRECTION_NOT_MODIFIED.equals(response.getStatus())
+                || Status.SUCCESS_NO_CONTENT.equals(response.getStatus())
+                || Method.HEAD.equals(request.getMethod())) {
+            this.sentSize = 0;
+        } else {
+            this.sentSize = response.getEntity().getSize();
+        }
+
+        try {
+            this.receivedSize = (request.getEntity() == null) ? 0 : request
+                    .getEntity().getSize();
+        } catch (Throwable t) {
+            // Error while getting the request's entity, cf issue #931
+            Engine.getLogger(AccessLogEntry.class).log(Level.SEVERE,
+                    "Cannot retrieve size of request's entity", t);
+            this.receivedSize = -1;
+        }
+
+        if (request.getHostRef() != null) {
+            this.hostRef = request.getHostRef().toString();
+        }
+
+        this.agentName = request.getClientInfo().getAgent();
+
+        if (request.getReferrerRef() != null) {
+            this.referrerRef = request.getReferrerRef().getIdentifier();
+        }
+    }
+
+    /**
+     * Constructor capturing the values of the custom log format variables.
+     * 
+     * @param template
+     *            The custom log format.
+     * @param response
+     *            The response to log.
+     */
+    public AccessLogEntry(AccessLogTemplate template, Response response) {
+        this.time = System.currentTimeMillis();
+        this.template = template;
+        this.variableValues = template.resolve(response.getRequest(),
+                response);
+    }
+
+    /**
+     * Returns the name of the agent.
+     * 
+     * @return The name of the agent.
+     */
+    public String getAgentName() {
+        return agentName;
+    }
+
+    /**
+     * Returns the client IP address.
+     * 
+     * @return The client IP address.
+     */
+    public String getClientAddress() {
+        return clientAddress;
+    }
+
+    /**
+     * Returns the client port.
+     * 
+     * @return The client port.
+     */
+    public int getClientPort() {
+        return clientPort;
+    }
+
+    /**
+     * Returns the call duration (in milliseconds).
+     * 
+     * @return The call duration (in milliseconds).
+     */
+    public int getDuration() {
+        return duration;
+    }
+
+    /**
+     * Returns the host reference.
+     * 
+     * @return The host reference.
+     */
+    public String getHostRef() {
+        return hostRef;
+    }
+
+    /**
+     * Returns the access logger to use.
+     * 
+     * @return The access logger to use.
+     */
+    public Logger getLogger() {
+        return logger;
+    }
+
+    /**
+     * Returns the method name.
+     * 
+     * @return The method name.
+     */
+    public String getMethodName() {
+        return methodName;
+    }
+
+    /**
+     * Returns the number of bytes received, or -1 if unknown.
+     * 
+     * @return The number of bytes received, or -1 if unknown.
+     */
+    public long getReceivedSize() {
+        return receivedSize;
+    }
+
+    /**
+     * Returns the referrer reference.
+     * 
+     * @return The referrer reference.
+     */
+    public String getReferrerRef() {
+        return referrerRef;
+    }
+
+    /**
+     * Returns the resource reference path.
+     * 
+     * @return The resource reference path.
+     */
+    public String getResourcePath() {
+        return resourcePath;
+    }
+
+    /**
+     * Returns the resource reference query.
+     * 
+     * @return The resource reference query.
+     */
+    public String getResourceQuery() {
+        return resourceQuery;
+    }
+
+    /**
+     * Returns the number of bytes sent, or -1 if unknown.
+     * 
+     * @return The number of bytes sent, or -1 if unknown.
+     */
+    public long getSentSize() {
+        return sentSize;
+    }
+
+    /**
+     * Returns the server IP address.
+     * 
+     * @return The server IP address.
+     */
+    public String getServerAddress() {
+        return serverAddress;
+    }
+
+    /**
+     * Returns the server port.
+     * 
+     * @return The server port.
+     */
+    public int getServerPort() {
+        return serverPort;
+    }
+
+    /**
+     * Returns the response status code, or -1 if unknown.
+     * 
+     * @return The response status code, or -1 if unknown.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Returns the custom log format, or null if the fields of the default log
+     * format were captured.
+     * 
+     * @return The custom log format.
+     */
+    public AccessLogTemplate getTemplate() {
+        return template;
+    }
+
+    /**
+     * Returns the time of the call.
+     * 
+     * @return The time of the call.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the user identifier from the challenge response.
+     * 
+     * @return The user identifier from the challenge response.
+     */
+    public String getUserIdentifier() {
+        return userIdentifier;
+    }
+
+    /**
+     * Returns the resolved values of the custom log format variables, or null
+     * if the fields of the default log format were captured.
+     * 
+     * @return The resolved values of the custom log format variables.
+     */
+    public String[] getVariableValues() {
+        return variableValues;
+    }
+
+    /**
+     * Sets the access logger to use.
+     * 
+     * @param logger
+     *            The access logger to use.
+     */
+    public void setLogger(Logger logger) {
+        this.logger = logger;
+    }
+
+}
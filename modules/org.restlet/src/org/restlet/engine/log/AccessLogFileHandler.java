@@ -29,11 +29,32 @@ import java.io.IOException;
 /**
  * Log file handler that uses the {@link AccessLogFormatter} by default. Also
  * useful in configuration files to differentiate from the
- * {@link java.util.logging.FileHandler}.
+ * {@link java.util.logging.FileHandler}. The file is rotated like by the
+ * parent class. When records are published by the {@link AccessLogWriter},
+ * the file is only flushed once per batch instead of after each record.
  * 
  * @author Jerome Louvel
  */
 public class AccessLogFileHandler extends java.util.logging.FileHandler {
+
+    /** Indicates if the current thread is publishing a batch of records. */
+    private static final ThreadLocal<Boolean> BATCHING = new ThreadLocal<Boolean>();
+
+    /**
+     * Indicates if the current thread is publishing a batch of records, in
+     * which case the implicit flushes are skipped until the batch ends.
+     * 
+     * @param batching
+     *            True if the current thread is publishing a batch of records.
+     */
+    static void setBatching(boolean batching) {
+        if (batching) {
+            BATCHING.set(Boolean.TRUE);
+        } else {
+            BATCHING.remove();
+        }
+    }
+
     /**
      * Constructor.
      * 
@@ -113,6 +134,17 @@ public class AccessLogFileHandler extends java.util.logging.FileHandler {
         init();
     }
 
+    /**
+     * Flushes the file unless the current thread is publishing a batch of
+     * records.
+     */
+    @Override
+    public synchronized void flush() {
+        if (BATCHING.get() == null) {
+            super.flush();
+        }
+    }
+
     /**
      * Initialization code common to all constructors.
      */
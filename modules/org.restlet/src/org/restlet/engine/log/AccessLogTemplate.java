@@ -0,0 +1,171 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.engine.log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.Reference;
+import org.restlet.routing.Template;
+import org.restlet.routing.Variable;
+import org.restlet.util.Resolver;
+
+/**
+ * Access log format precompiled from a {@link Template}. The pattern is split
+ * once into literals and variable names, so that formatting a call only
+ * resolves the variable values on the calling thread and leaves the encoding
+ * and concatenation to the {@link AccessLogWriter} thread. The result is the
+ * same as {@link Template#format(Request, Response)}.
+ * 
+ * @author Jerome Louvel
+ */
+public class AccessLogTemplate {
+
+    /** The literals surrounding the variables. */
+    private final String[] literals;
+
+    /** The source template. */
+    private final Template template;
+
+    /** The variable names. */
+    private final String[] variableNames;
+
+    /**
+     * Constructor.
+     * 
+     * @param template
+     *            The source template.
+     */
+    public AccessLogTemplate(Template template) {
+        this.template = template;
+        List<String> literalList = new ArrayList<String>();
+        List<String> nameList = new ArrayList<String>();
+        StringBuilder literal = new StringBuilder();
+        StringBuilder varBuffer = null;
+        String pattern = template.getPattern();
+
+        for (int i = 0; i < pattern.length(); i++) {
+            char next = pattern.charAt(i);
+
+            if (varBuffer != null) {
+                if (Reference.isUnreserved(next)) {
+                    varBuffer.append(next);
+                } else if (next == '}') {
+                    // Empty variables are ignored like by the template
+                    if (varBuffer.length() > 0) {
+                        literalList.add(literal.toString());
+                        nameList.add(varBuffer.toString());
+                        literal = new StringBuilder();
+                    }
+
+                    varBuffer = null;
+                }
+            } else if (next == '{') {
+                varBuffer = new StringBuilder();
+            } else if (next != '}') {
+                literal.append(next);
+            }
+        }
+
+        literalList.add(literal.toString());
+        this.literals = literalList.toArray(new String[literalList.size()]);
+        this.variableNames = nameList.toArray(new String[nameList.size()]);
+    }
+
+    /**
+     * Formats the resolved variable values.
+     * 
+     * @param values
+     *            The values resolved by {@link #resolve(Request, Response)}.
+     * @return The formatted log entry.
+     */
+    public String format(String[] values) {
+        StringBuilder result = new StringBuilder();
+
+        for (int i = 0; i < this.variableNames.length; i++) {
+            result.append(this.literals[i]);
+            String value = values[i];
+            Variable var = this.template.getVariables().get(
+                    this.variableNames[i]);
+
+            // Use the default values instead
+            if (value == null) {
+                if (var == null) {
+                    var = this.template.getDefaultVariable();
+                }
+
+                if (var != null) {
+                    value = var.getDefaultValue();
+                }
+            }
+
+            if (this.template.isEncodingVariables()) {
+                result.append((var != null) ? var.encode(value) : Reference
+                        .encode(value));
+            } else if ((var != null) && var.isEncodingOnFormat()) {
+                result.append(Reference.encode(value));
+            } else {
+                result.append(value);
+            }
+        }
+
+        result.append(this.literals[this.variableNames.length]);
+        return result.toString();
+    }
+
+    /**
+     * Returns the source template.
+     * 
+     * @return The source template.
+     */
+    public Template getTemplate() {
+        return template;
+    }
+
+    /**
+     * Resolves the values of the variables for the given call.
+     * 
+     * @param request
+     *            The request to use as a model.
+     * @param response
+     *            The response to use as a model.
+     * @return The resolved values, null when a variable can't be resolved.
+     */
+    public String[] resolve(Request request, Response response) {
+        Resolver<?> resolver = Resolver.createResolver(request, response);
+        String[] result = new String[this.variableNames.length];
+
+        for (int i = 0; i < result.length; i++) {
+            Object value = resolver.resolve(this.variableNames[i]);
+            result[i] = (value == null) ? null : value.toString();
+        }
+
+        return result;
+    }
+
+}
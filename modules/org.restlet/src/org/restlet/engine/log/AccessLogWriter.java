@@ -0,0 +1,390 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.engine.log;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.restlet.engine.Engine;
+import org.restlet.service.LogService;
+
+/**
+ * Background writer of access log entries. The calling threads only capture
+ * an {@link AccessLogEntry} and offer it to a lock-free bounded ring buffer.
+ * A single daemon thread drains the buffer by batches, formats the entries
+ * with {@link LogService#getResponseLogMessage(AccessLogEntry)} and flushes
+ * the log handlers once per batch. It parks while the buffer is empty and is
+ * unparked by the next offered entry. When the buffer is saturated, the new
+ * entries are either dropped and counted, or the calling threads wait for a
+ * free slot.
+ * 
+ * @author Jerome Louvel
+ */
+public class AccessLogWriter implements Runnable {
+
+    /** The flag set on the tail sequence once the writer thread has stopped. */
+    private static final long CLOSED = 1L << 62;
+
+    /** The time to sleep when the buffer is full. */
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /** The maximum number of entries written before flushing the handlers. */
+    private final int batchSize;
+
+    /** Indicates if calling threads wait when the buffer is saturated. */
+    private final boolean blocking;
+
+    /** The number of dropped entries. */
+    private final AtomicLong droppedCount;
+
+    /** The ring buffer of entries. */
+    private final AtomicReferenceArray<AccessLogEntry> entries;
+
+    /** The sequence of the next entry to write. */
+    private volatile long head;
+
+    /** The parent log service. */
+    private final LogService logService;
+
+    /** The mask to apply to a sequence to get its ring buffer index. */
+    private final int mask;
+
+    /** Indicates if the writer thread should keep running. */
+    private volatile boolean running;
+
+    /**
+     * The sequence of the next entry to offer, with the {@link #CLOSED} flag
+     * once the writer thread has stopped.
+     */
+    private final AtomicLong tail;
+
+    /** The writer thread. */
+    private volatile Thread thread;
+
+    /** Indicates if the writer thread is parked or about to park. */
+    private volatile boolean waiting;
+
+    /** The number of written entries. */
+    private final AtomicLong writtenCount;
+
+    /**
+     * Constructor.
+     * 
+     * @param logService
+     *            The parent log service formatting the entries.
+     * @param bufferSize
+     *            The capacity of the buffer, rounded up to a power of two.
+     * @param batchSize
+     *            The maximum number of entries written before flushing the
+     *            handlers.
+     * @param blocking
+     *            Indicates if calling threads wait when the buffer is
+     *            saturated, instead of dropping the entries.
+     */
+    public AccessLogWriter(LogService logService, int bufferSize,
+            int batchSize, boolean blocking) {
+        int capacity = Integer.highestOneBit(Math.max(2, bufferSize) - 1) << 1;
+        this.logService = logService;
+        this.entries = new AtomicReferenceArray<AccessLogEntry>(capacity);
+        this.mask = capacity - 1;
+        this.batchSize = Math.max(1, batchSize);
+        this.blocking = blocking;
+        this.tail = new AtomicLong();
+        this.head = 0;
+        this.droppedCount = new AtomicLong();
+        this.writtenCount = new AtomicLong();
+    }
+
+    /**
+     * Closes the tail sequence so that no entry can be offered anymore.
+     * 
+     * @return The sequence of the next entry that would have been offered.
+     */
+    private long close() {
+        for (;;) {
+            long sequence = this.tail.get();
+
+            if (this.tail.compareAndSet(sequence, sequence | CLOSED)) {
+                return sequence;
+            }
+        }
+    }
+
+    /**
+     * Flushes the handlers of the given logger and of its parents.
+     * 
+     * @param logger
+     *            The logger to flush.
+     */
+    private void flush(Logger logger) {
+        for (Logger current = logger; current != null; current = current
+                .getParent()) {
+            for (Handler handler : current.getHandlers()) {
+                handler.flush();
+            }
+
+            if (!current.getUseParentHandlers()) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns the capacity of the buffer.
+     * 
+     * @return The capacity of the buffer.
+     */
+    public int getBufferSize() {
+        return this.entries.length();
+    }
+
+    /**
+     * Returns the number of entries dropped because the buffer was saturated.
+     * 
+     * @return The number of dropped entries.
+     */
+    public long getDroppedCount() {
+        return this.droppedCount.get();
+    }
+
+    /**
+     * Returns the number of entries waiting to be written.
+     * 
+     * @return The number of entries waiting to be written.
+     */
+    public int getPendingCount() {
+        return (int) ((this.tail.get() & ~CLOSED) - this.head);
+    }
+
+    /**
+     * Returns the number of written entries.
+     * 
+     * @return The number of written entries.
+     */
+    public long getWrittenCount() {
+        return this.writtenCount.get();
+    }
+
+    /**
+     * Indicates if the next entry to write is published.
+     * 
+     * @return True if the next entry to write is published.
+     */
+    private boolean isAvailable() {
+        return this.entries.get((int) this.head & this.mask) != null;
+    }
+
+    /**
+     * Indicates if calling threads wait when the buffer is saturated.
+     * 
+     * @return True if calling threads wait when the buffer is saturated.
+     */
+    public boolean isBlocking() {
+        return blocking;
+    }
+
+    /**
+     * Indicates if the writer thread is running.
+     * 
+     * @return True if the writer thread is running.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Logs a single entry without flushing the handlers.
+     * 
+     * @param entry
+     *            The entry to log.
+     * @return The logger used or null if the entry couldn't be logged.
+     */
+    private Logger log(AccessLogEntry entry) {
+        try {
+            Logger logger = entry.getLogger();
+            logger.log(Level.INFO,
+                    this.logService.getResponseLogMessage(entry));
+            this.writtenCount.incrementAndGet();
+            return logger;
+        } catch (Throwable t) {
+            Engine.getLogger(AccessLogWriter.class).log(Level.SEVERE,
+                    "Cannot log call", t);
+            return null;
+        }
+    }
+
+    /**
+     * Offers an entry to the buffer. When the buffer is saturated, the entry
+     * is either dropped or the calling thread waits for a free slot, depending
+     * on the blocking policy. When the writer thread has stopped in the
+     * meantime, the entry is written by the calling thread.
+     * 
+     * @param entry
+     *            The entry to write.
+     * @return True if the entry was accepted, false if it was dropped.
+     */
+    public boolean offer(AccessLogEntry entry) {
+        for (;;) {
+            long sequence = this.tail.get();
+
+            if ((sequence & CLOSED) != 0) {
+                Logger logger = log(entry);
+
+                if (logger != null) {
+                    flush(logger);
+                }
+
+                return true;
+            } else if (sequence - this.head >= this.entries.length()) {
+                // Without a writer thread, no slot would ever be freed. A
+                // stopping thread frees the slots then closes the tail.
+                if (!this.blocking || ((this.thread == null)
+                        && (this.tail.get() == sequence))) {
+                    this.droppedCount.incrementAndGet();
+                    return false;
+                }
+
+                LockSupport.unpark(this.thread);
+                LockSupport.parkNanos(PARK_NANOS);
+            } else if (this.tail.compareAndSet(sequence, sequence + 1)) {
+                this.entries.set((int) sequence & this.mask, entry);
+
+                if (this.waiting) {
+                    LockSupport.unpark(this.thread);
+                }
+
+                return true;
+            }
+        }
+    }
+
+    public void run() {
+        while (this.running) {
+            if (write() == 0) {
+                // Checked again after the flag is set, so that an offered
+                // entry either is seen or unparks the thread
+                this.waiting = true;
+
+                if (this.running && !isAvailable()) {
+                    LockSupport.park(this);
+                }
+
+                this.waiting = false;
+            }
+        }
+
+        // Write the remaining entries, including the ones claimed but not
+        // published yet
+        long last = close();
+
+        while (this.head < last) {
+            if (write() == 0) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Starts the writer thread.
+     */
+    public synchronized void start() {
+        if (!this.running) {
+            // Reopen the buffer closed by a previous stop
+            this.tail.set(this.tail.get() & ~CLOSED);
+            this.running = true;
+            Thread t = new LoggingThreadFactory(
+                    Engine.getLogger(AccessLogWriter.class), true)
+                    .newThread(this);
+            t.setName("Restlet-AccessLogWriter-" + t.hashCode());
+            this.thread = t;
+            t.start();
+        }
+    }
+
+    /**
+     * Stops the writer thread after writing the pending entries.
+     * 
+     * @throws InterruptedException
+     */
+    public synchronized void stop() throws InterruptedException {
+        if (this.running) {
+            this.running = false;
+            Thread t = this.thread;
+            LockSupport.unpark(t);
+            t.join();
+            this.thread = null;
+        }
+    }
+
+    /**
+     * Writes the next batch of published entries then flushes the handlers of
+     * the loggers used.
+     * 
+     * @return The number of written entries.
+     */
+    private int write() {
+        int result = 0;
+        Map<Logger, Boolean> loggers = new IdentityHashMap<Logger, Boolean>();
+        AccessLogFileHandler.setBatching(true);
+
+        try {
+            while (result < this.batchSize) {
+                int index = (int) this.head & this.mask;
+                AccessLogEntry entry = this.entries.get(index);
+
+                if (entry == null) {
+                    // Not published yet
+                    break;
+                }
+
+                this.entries.set(index, null);
+                this.head++;
+                result++;
+                Logger logger = log(entry);
+
+                if (logger != null) {
+                    loggers.put(logger, Boolean.TRUE);
+                }
+            }
+        } finally {
+            AccessLogFileHandler.setBatching(false);
+        }
+
+        for (Logger logger : loggers.keySet()) {
+            flush(logger);
+        }
+
+        return result;
+    }
+
+}
@@ -37,7 +37,8 @@ import org.restlet.service.LogService;
 /**
  * Filter logging all calls after their handling by the target Restlet. The
  * current format is similar to IIS 6 logs. The logging is based on the
- * java.util.logging package.
+ * java.util.logging package. When the log service is asynchronous, the call is
+ * only captured and handed to its {@link AccessLogWriter}.
  * 
  * Concurrency note: instances of this class or its subclasses can be invoked by
  * several threads at the same time and therefore must be thread-safe. You
@@ -95,8 +96,17 @@ public class LogFilter extends Filter {
                 long startTime = (Long) request.getAttributes().get(
                         "org.restlet.startTime");
                 int duration = (int) (System.currentTimeMillis() - startTime);
-                this.logLogger.log(Level.INFO, this.logService
-                        .getResponseLogMessage(response, duration));
+                AccessLogWriter writer = this.logService.getAccessLogWriter();
+
+                if ((writer != null) && writer.isRunning()) {
+                    AccessLogEntry entry = this.logService
+                            .getResponseLogEntry(response, duration);
+                    entry.setLogger(this.logLogger);
+                    writer.offer(entry);
+                } else {
+                    this.logLogger.log(Level.INFO, this.logService
+                            .getResponseLogMessage(response, duration));
+                }
             }
         } catch (Throwable e) {
             // Error while logging the call, cf issue #931
@@ -30,6 +30,7 @@ import java.util.logging.Logger;
 
 /**
  * Thread factory that logs uncaught exceptions thrown by the created threads.
+ * It can also wrap another factory, for example one creating virtual threads.
  * 
  * @author Jerome Louvel
  */
@@ -53,6 +54,9 @@ public class LoggingThreadFactory implements ThreadFactory {
     /** Indicates if threads should be created as daemons. */
     private final boolean daemon;
 
+    /** The wrapped factory, or null. */
+    private final ThreadFactory factory;
+
     /**
      * Constructor.
      * 
@@ -74,6 +78,22 @@ public class LoggingThreadFactory implements ThreadFactory {
     public LoggingThreadFactory(Logger logger, boolean daemon) {
         this.logger = logger;
         this.daemon = daemon;
+        this.factory = null;
+    }
+
+    /**
+     * Constructor. The threads are created by the wrapped factory, keeping
+     * their name and daemon status.
+     * 
+     * @param logger
+     *            The associated logger.
+     * @param factory
+     *            The wrapped factory.
+     */
+    public LoggingThreadFactory(Logger logger, ThreadFactory factory) {
+        this.logger = logger;
+        this.daemon = true;
+        this.factory = factory;
     }
 
     /**
@@ -83,10 +103,17 @@ public class LoggingThreadFactory implements ThreadFactory {
      *            The runnable task.
      */
     public Thread newThread(Runnable r) {
-        Thread result = new Thread(r);
-        result.setName("Restlet-" + result.hashCode());
+        Thread result;
+
+        if (this.factory != null) {
+            result = this.factory.newThread(r);
+        } else {
+            result = new Thread(r);
+            result.setName("Restlet-" + result.hashCode());
+            result.setDaemon(this.daemon);
+        }
+
         result.setUncaughtExceptionHandler(new LoggingExceptionHandler());
-        result.setDaemon(this.daemon);
         return result;
     }
 }
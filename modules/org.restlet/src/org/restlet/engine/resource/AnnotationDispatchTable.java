@@ -0,0 +1,325 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.engine.resource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.restlet.data.CharacterSet;
+import org.restlet.data.Form;
+import org.restlet.data.MediaType;
+import org.restlet.data.Method;
+import org.restlet.representation.Representation;
+import org.restlet.service.ConverterService;
+import org.restlet.service.MetadataService;
+
+// [excludes gwt]
+/**
+ * Dispatch table precomputed for an annotated class. The method annotation
+ * descriptors are grouped by Restlet method, keeping their declaration order,
+ * and the descriptor selected for a given method and request entity is
+ * remembered so that later calls are resolved with a single lookup. The table
+ * is immutable once built, except for this lock-free memo. The memo ignores
+ * the media type parameters, which don't influence the selection, and is
+ * cleared when full.
+ * 
+ * @author Jerome Louvel
+ */
+public class AnnotationDispatchTable {
+
+    /**
+     * Key of the memo, based on the request properties that can influence the
+     * selection of a method annotation descriptor.
+     */
+    private static final class DispatchKey {
+
+        /** The character set of the request entity. */
+        private final CharacterSet characterSet;
+
+        /** The converter service. */
+        private final ConverterService converterService;
+
+        /** The media type of the request entity. */
+        private final MediaType mediaType;
+
+        /** The metadata service. */
+        private final MetadataService metadataService;
+
+        /** The Restlet method. */
+        private final Method method;
+
+        /**
+         * Constructor.
+         * 
+         * @param method
+         *            The Restlet method.
+         * @param mediaType
+         *            The media type of the request entity.
+         * @param characterSet
+         *            The character set of the request entity.
+         * @param metadataService
+         *            The metadata service.
+         * @param converterService
+         *            The converter service.
+         */
+        private DispatchKey(Method method, MediaType mediaType,
+                CharacterSet characterSet, MetadataService metadataService,
+                ConverterService converterService) {
+            this.method = method;
+            this.mediaType = mediaType;
+            this.characterSet = characterSet;
+            this.metadataService = metadataService;
+            this.converterService = converterService;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (!(obj instanceof DispatchKey)) {
+                return false;
+            }
+
+            DispatchKey other = (DispatchKey) obj;
+            return this.method.equals(other.method)
+                    && (this.metadataService == other.metadataService)
+                    && (this.converterService == other.converterService)
+                    && ((this.mediaType == null) ? other.mediaType == null
+                            : this.mediaType.equals(other.mediaType))
+                    && ((this.characterSet == null) ? other.characterSet == null
+                            : this.characterSet.equals(other.characterSet));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = this.method.hashCode();
+            result = 31 * result
+                    + ((this.mediaType == null) ? 0 : this.mediaType.hashCode());
+            result = 31
+                    * result
+                    + ((this.characterSet == null) ? 0 : this.characterSet
+                            .hashCode());
+            result = 31 * result
+                    + System.identityHashCode(this.metadataService);
+            return 31 * result + System.identityHashCode(this.converterService);
+        }
+    }
+
+    /** The empty array of descriptors. */
+    private static final MethodAnnotationInfo[] EMPTY = new MethodAnnotationInfo[0];
+
+    /**
+     * The maximum number of remembered selections. Above this limit, the memo
+     * is cleared, which protects the memory from requests with arbitrary media
+     * types.
+     */
+    private static final int MAX_SELECTIONS = 256;
+
+    /** Index of the selection when no descriptor matches. */
+    private static final Integer NO_MATCH = Integer.valueOf(-1);
+
+    /** The method annotation descriptors grouped by Restlet method. */
+    private final Map<Method, MethodAnnotationInfo[]> methodAnnotations;
+
+    /** The Restlet methods whose descriptors all ignore the query. */
+    private final Map<Method, Boolean> queryIndependent;
+
+    /** The remembered selections, as indexes in the descriptors arrays. */
+    private final ConcurrentMap<DispatchKey, Integer> selections;
+
+    /** The first throwable annotation descriptor or null. */
+    private final ThrowableAnnotationInfo throwableAnnotation;
+
+    /**
+     * Constructor.
+     * 
+     * @param annotations
+     *            The annotation descriptors of the class or null.
+     */
+    public AnnotationDispatchTable(List<AnnotationInfo> annotations) {
+        Map<Method, List<MethodAnnotationInfo>> grouped = new HashMap<Method, List<MethodAnnotationInfo>>();
+        ThrowableAnnotationInfo throwable = null;
+
+        if (annotations != null) {
+            for (AnnotationInfo annotationInfo : annotations) {
+                if (annotationInfo instanceof MethodAnnotationInfo) {
+                    MethodAnnotationInfo mai = (MethodAnnotationInfo) annotationInfo;
+                    List<MethodAnnotationInfo> list = grouped.get(mai
+                            .getRestletMethod());
+
+                    if (list == null) {
+                        list = new ArrayList<MethodAnnotationInfo>();
+                        grouped.put(mai.getRestletMethod(), list);
+                    }
+
+                    list.add(mai);
+                } else if ((throwable == null)
+                        && (annotationInfo instanceof ThrowableAnnotationInfo)) {
+                    throwable = (ThrowableAnnotationInfo) annotationInfo;
+                }
+            }
+        }
+
+        Map<Method, MethodAnnotationInfo[]> methods = new HashMap<Method, MethodAnnotationInfo[]>();
+        Map<Method, Boolean> independent = new HashMap<Method, Boolean>();
+
+        for (Map.Entry<Method, List<MethodAnnotationInfo>> entry : grouped
+                .entrySet()) {
+            boolean noQuery = true;
+
+            for (MethodAnnotationInfo mai : entry.getValue()) {
+                noQuery = noQuery && (mai.getQuery() == null);
+            }
+
+            methods.put(entry.getKey(),
+                    entry.getValue().toArray(EMPTY));
+            independent.put(entry.getKey(), Boolean.valueOf(noQuery));
+        }
+
+        this.methodAnnotations = Collections.unmodifiableMap(methods);
+        this.queryIndependent = Collections.unmodifiableMap(independent);
+        this.selections = new ConcurrentHashMap<DispatchKey, Integer>();
+        this.throwableAnnotation = throwable;
+    }
+
+    /**
+     * Returns the given media type without its parameters, such as the
+     * boundary of multipart entities, which are ignored when matching the
+     * method annotations.
+     * 
+     * @param mediaType
+     *            The media type of the request entity.
+     * @return The media type without parameters.
+     */
+    private static MediaType getMediaType(MediaType mediaType) {
+        return ((mediaType == null) || mediaType.getParameters().isEmpty()) ? mediaType
+                : mediaType.getParent();
+    }
+
+    /**
+     * Returns the first method annotation descriptor compatible with the given
+     * call, in the declaration order, or null.
+     * 
+     * @param restletMethod
+     *            The method to match.
+     * @param query
+     *            The query parameters.
+     * @param entity
+     *            The request entity to match or null if no entity is provided.
+     * @param metadataService
+     *            The metadata service to use.
+     * @param converterService
+     *            The converter service to use.
+     * @return The annotation descriptor.
+     * @throws IOException
+     */
+    public MethodAnnotationInfo getMethodAnnotation(Method restletMethod,
+            Form query, Representation entity,
+            MetadataService metadataService, ConverterService converterService)
+            throws IOException {
+        MethodAnnotationInfo[] candidates = getMethodAnnotations(restletMethod);
+
+        if (candidates.length == 0) {
+            return null;
+        }
+
+        DispatchKey key = null;
+
+        if (Boolean.TRUE.equals(this.queryIndependent.get(restletMethod))) {
+            if ((entity == null) || !entity.isAvailable()) {
+                key = new DispatchKey(restletMethod, null, null,
+                        metadataService, converterService);
+            } else if (entity.getEncodings().isEmpty()
+                    && entity.getLanguages().isEmpty()) {
+                key = new DispatchKey(restletMethod,
+                        getMediaType(entity.getMediaType()),
+                        entity.getCharacterSet(), metadataService,
+                        converterService);
+            }
+        }
+
+        if (key != null) {
+            Integer index = this.selections.get(key);
+
+            if (index != null) {
+                return (index.intValue() < 0) ? null : candidates[index
+                        .intValue()];
+            }
+        }
+
+        int selected = -1;
+
+        for (int i = 0; (selected < 0) && (i < candidates.length); i++) {
+            if (candidates[i].isCompatible(restletMethod, query, entity,
+                    metadataService, converterService)) {
+                selected = i;
+            }
+        }
+
+        if (key != null) {
+            if (this.selections.size() >= MAX_SELECTIONS) {
+                this.selections.clear();
+            }
+
+            this.selections.putIfAbsent(key,
+                    (selected < 0) ? NO_MATCH : Integer.valueOf(selected));
+        }
+
+        return (selected < 0) ? null : candidates[selected];
+    }
+
+    /**
+     * Returns the method annotation descriptors of the given Restlet method,
+     * in the declaration order. The returned array must not be modified.
+     * 
+     * @param restletMethod
+     *            The Restlet method.
+     * @return The method annotation descriptors, possibly empty.
+     */
+    public MethodAnnotationInfo[] getMethodAnnotations(Method restletMethod) {
+        MethodAnnotationInfo[] result = this.methodAnnotations
+                .get(restletMethod);
+        return (result == null) ? EMPTY : result;
+    }
+
+    /**
+     * Returns the first throwable annotation descriptor or null.
+     * 
+     * @return The first throwable annotation descriptor or null.
+     */
+    public ThrowableAnnotationInfo getThrowableAnnotation() {
+        return this.throwableAnnotation;
+    }
+
+}
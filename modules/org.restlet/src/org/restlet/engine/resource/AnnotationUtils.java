@@ -49,6 +49,9 @@ public class AnnotationUtils {
     /** Annotation info cache. */
     private static final ConcurrentMap<Class<?>, List<AnnotationInfo>> cache = new ConcurrentHashMap<Class<?>, List<AnnotationInfo>>();
 
+    /** Dispatch table cache. */
+    private static final ConcurrentMap<Class<?>, AnnotationDispatchTable> dispatchTables = new ConcurrentHashMap<Class<?>, AnnotationDispatchTable>();
+
     /** Current instance. */
     private static AnnotationUtils instance = new AnnotationUtils();
 
@@ -224,22 +227,30 @@ public class AnnotationUtils {
      */
     public void clearCache() {
         cache.clear();
+        dispatchTables.clear();
     }
 
     /**
-     * Returns the annotation descriptors for the given resource class.
+     * Returns the annotation descriptors for the given resource class. This
+     * method doesn't lock: concurrent first calls for the same class may
+     * introspect it several times but they all return the same cached list.
      * 
      * @param clazz
      *            The resource class to introspect.
      * @return The list of annotation descriptors.
      */
-    public synchronized List<AnnotationInfo> getAnnotations(Class<?> clazz) {
+    public List<AnnotationInfo> getAnnotations(Class<?> clazz) {
         List<AnnotationInfo> result = cache.get(clazz);
 
         if (result == null) {
             // Inspect the class itself for annotations
             result = addAnnotations(result, clazz, clazz);
 
+            if (result == null) {
+                // Nothing to cache, for example for the ServerResource class
+                return null;
+            }
+
             // Put the list in the cache if no one was previously present
             List<AnnotationInfo> prev = cache.putIfAbsent(clazz, result);
 
@@ -264,6 +275,30 @@ public class AnnotationUtils {
         return addMethodAnnotationDescriptors(null, clazz, clazz, javaMethod);
     }
 
+    /**
+     * Returns the dispatch table precomputed for the given class. This method
+     * doesn't lock.
+     * 
+     * @param clazz
+     *            The class or interface to introspect.
+     * @return The dispatch table.
+     */
+    public AnnotationDispatchTable getDispatchTable(Class<?> clazz) {
+        AnnotationDispatchTable result = dispatchTables.get(clazz);
+
+        if (result == null) {
+            result = new AnnotationDispatchTable(getAnnotations(clazz));
+            AnnotationDispatchTable prev = dispatchTables.putIfAbsent(clazz,
+                    result);
+
+            if (prev != null) {
+                result = prev;
+            }
+        }
+
+        return result;
+    }
+
     /**
      * Returns the first annotation descriptor matching the given Java method.
      * 
@@ -327,6 +362,37 @@ public class AnnotationUtils {
         return null;
     }
 
+    /**
+     * Returns the first annotation descriptor of the given class matching the
+     * given Restlet method. The selection is resolved with the class dispatch
+     * table and is equivalent to
+     * {@link #getMethodAnnotation(List, Method, Form, Representation, MetadataService, org.restlet.service.ConverterService)}
+     * called with the annotations of the class.
+     * 
+     * @param clazz
+     *            The annotated class.
+     * @param restletMethod
+     *            The method to match.
+     * @param query
+     *            The query parameters.
+     * @param entity
+     *            The request entity to match or null if no entity is provided.
+     * @param metadataService
+     *            The metadata service to use.
+     * @param converterService
+     *            The converter service to use.
+     * @return The annotation descriptor.
+     * @throws IOException
+     */
+    public MethodAnnotationInfo getMethodAnnotation(Class<?> clazz,
+            Method restletMethod, Form query, Representation entity,
+            MetadataService metadataService,
+            org.restlet.service.ConverterService converterService)
+            throws IOException {
+        return getDispatchTable(clazz).getMethodAnnotation(restletMethod,
+                query, entity, metadataService, converterService);
+    }
+
     /**
      * Returns an instance of {@link Method} according to the given annotations.
      * 
@@ -351,15 +417,7 @@ public class AnnotationUtils {
      * @return The status annotation descriptor if present or null.
      */
     public ThrowableAnnotationInfo getThrowableAnnotationInfo(Class<?> clazz) {
-        List<AnnotationInfo> annotationInfos = getAnnotations(clazz);
-
-        for (AnnotationInfo annotationInfo : annotationInfos) {
-            if (annotationInfo instanceof ThrowableAnnotationInfo) {
-                return (ThrowableAnnotationInfo) annotationInfo;
-            }
-        }
-
-        return null;
+        return getDispatchTable(clazz).getThrowableAnnotation();
     }
 
     /**
@@ -25,10 +25,12 @@
 package org.restlet.engine.resource;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.logging.Level;
 
 import org.restlet.Context;
 import org.restlet.data.CharacterSet;
@@ -54,6 +56,14 @@ public class MethodAnnotationInfo extends AnnotationInfo {
     /** The input part of the annotation value. */
     private final String input;
 
+    // [ifndef android] member
+    /** The method handle invoker, lazily created. */
+    private volatile MethodInvoker invoker;
+
+    // [ifndef android] member
+    /** Indicates if the method can't be invoked through a method handle. */
+    private volatile boolean invokerUnavailable;
+
     /** The output part of the annotation value. */
     private final String output;
 
@@ -144,6 +154,32 @@ public class MethodAnnotationInfo extends AnnotationInfo {
         return input;
     }
 
+    // [ifndef android] method
+    /**
+     * Returns the invoker of the annotated Java method based on a method
+     * handle. It is created at first use then cached with this descriptor.
+     * 
+     * @return The invoker or null if the method isn't publicly accessible.
+     */
+    public MethodInvoker getInvoker() {
+        MethodInvoker result = this.invoker;
+
+        if ((result == null) && !this.invokerUnavailable) {
+            try {
+                result = new MethodInvoker(getJavaMethod());
+                this.invoker = result;
+            } catch (IllegalAccessException e) {
+                Context.getCurrentLogger().log(
+                        Level.FINE,
+                        "Unable to create a method handle for "
+                                + getJavaMethod() + ", using reflection", e);
+                this.invokerUnavailable = true;
+            }
+        }
+
+        return result;
+    }
+
     /**
      * Returns the generic type for the given input parameter.
      * 
@@ -366,6 +402,36 @@ public class MethodAnnotationInfo extends AnnotationInfo {
         return result;
     }
 
+    /**
+     * Invokes the annotated Java method on the given target.
+     * 
+     * @param target
+     *            The target object.
+     * @param parameters
+     *            The parameters, in the order of the Java method.
+     * @param compiled
+     *            Indicates if the cached method handle invoker should be used
+     *            instead of reflection, when available.
+     * @return The value returned by the method, or null for void methods.
+     * @throws IllegalAccessException
+     * @throws InvocationTargetException
+     *             If the invoked method throws an exception.
+     */
+    public Object invoke(Object target, Object[] parameters, boolean compiled)
+            throws IllegalAccessException, InvocationTargetException {
+        // [ifndef android]
+        if (compiled) {
+            MethodInvoker invoker = getInvoker();
+
+            if (invoker != null) {
+                return invoker.invoke(target, parameters);
+            }
+        }
+        // [enddef]
+
+        return getJavaMethod().invoke(target, parameters);
+    }
+
     /**
      * Indicates if the annotated method described is compatible with the given
      * parameters.
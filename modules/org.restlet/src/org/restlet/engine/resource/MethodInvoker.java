@@ -0,0 +1,142 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.engine.resource;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+
+// [excludes gwt]
+/**
+ * Invoker of an annotated Java method based on a method handle. The handle is
+ * resolved and adapted once to a generic signature, so that each call avoids
+ * the access checks and argument copies of
+ * {@link java.lang.reflect.Method#invoke(Object, Object...)} and can be
+ * inlined by the JIT compiler.
+ * 
+ * @author Jerome Louvel
+ */
+public class MethodInvoker {
+
+    /** The adapted method handle, taking the target and the arguments array. */
+    private final MethodHandle handle;
+
+    /** The invoked Java method. */
+    private final java.lang.reflect.Method javaMethod;
+
+    /** The parameter types, primitive types being replaced by their wrapper. */
+    private final Class<?>[] parameterTypes;
+
+    /** Indicates which parameters have a primitive type. */
+    private final boolean[] primitives;
+
+    /**
+     * Constructor.
+     * 
+     * @param javaMethod
+     *            The Java method to invoke.
+     * @throws IllegalAccessException
+     *             If the method isn't publicly accessible.
+     */
+    public MethodInvoker(java.lang.reflect.Method javaMethod)
+            throws IllegalAccessException {
+        Class<?>[] types = javaMethod.getParameterTypes();
+        int parameterCount = types.length;
+        this.javaMethod = javaMethod;
+        this.parameterTypes = new Class<?>[parameterCount];
+        this.primitives = new boolean[parameterCount];
+
+        for (int i = 0; i < parameterCount; i++) {
+            this.primitives[i] = types[i].isPrimitive();
+            this.parameterTypes[i] = this.primitives[i] ? MethodType
+                    .methodType(types[i]).wrap().returnType() : types[i];
+        }
+
+        this.handle = MethodHandles.publicLookup().unreflect(javaMethod)
+                .asType(MethodType.genericMethodType(parameterCount + 1))
+                .asSpreader(Object[].class, parameterCount);
+    }
+
+    /**
+     * Returns the invoked Java method.
+     * 
+     * @return The invoked Java method.
+     */
+    public java.lang.reflect.Method getJavaMethod() {
+        return javaMethod;
+    }
+
+    /**
+     * Invokes the Java method on the given target. Like
+     * {@link java.lang.reflect.Method#invoke(Object, Object...)}, invalid
+     * arguments are reported by an {@link IllegalArgumentException} while any
+     * exception thrown by the invoked method is wrapped in an
+     * {@link InvocationTargetException}. Unlike it, primitive parameters
+     * don't accept widened values.
+     * 
+     * @param target
+     *            The target object.
+     * @param parameters
+     *            The parameters, in the order of the Java method.
+     * @return The value returned by the method, or null for void methods.
+     * @throws IllegalArgumentException
+     *             If the target or the parameters don't match the method.
+     * @throws InvocationTargetException
+     *             If the method throws an exception.
+     */
+    public Object invoke(Object target, Object... parameters)
+            throws InvocationTargetException {
+        if (target == null) {
+            throw new NullPointerException("The target object is null");
+        } else if (!this.javaMethod.getDeclaringClass().isInstance(target)) {
+            throw new IllegalArgumentException(
+                    "object is not an instance of declaring class");
+        }
+
+        int count = (parameters == null) ? 0 : parameters.length;
+
+        if (count != this.parameterTypes.length) {
+            throw new IllegalArgumentException("wrong number of arguments");
+        }
+
+        for (int i = 0; i < count; i++) {
+            Object parameter = parameters[i];
+
+            if ((parameter == null) ? this.primitives[i]
+                    : !this.parameterTypes[i].isInstance(parameter)) {
+                throw new IllegalArgumentException("argument type mismatch");
+            }
+        }
+
+        try {
+            return (Object) this.handle.invokeExact(target, parameters);
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+}
@@ -68,6 +68,14 @@ public final class DateUtils {
             "EEE, dd MMM yy HH:mm:ss z", "EEE, dd MMM yy HH:mm z",
             "dd MMM yy HH:mm:ss z", "dd MMM yy HH:mm z");
 
+    // [ifndef gwt] member
+    /** The prototypes of the date formats, cloned for each use. */
+    private static final java.util.concurrent.ConcurrentMap<String, java.text.SimpleDateFormat> DATE_FORMATS = new java.util.concurrent.ConcurrentHashMap<String, java.text.SimpleDateFormat>();
+
+    // [ifndef gwt] member
+    /** The maximum number of date format prototypes. */
+    private static final int MAX_DATE_FORMATS = 64;
+
     // [ifndef gwt] member
     /** Remember the often used GMT time zone. */
     private static final java.util.TimeZone TIMEZONE_GMT = java.util.TimeZone
@@ -175,17 +183,21 @@ public final class DateUtils {
         }
 
         // [ifndef gwt]
-        java.text.DateFormat formatter = null;
+        String result = null;
+
+        if (FORMAT_RFC_1123.get(0).equals(format)) {
+            result = HttpDateUtils.formatRfc1123(date);
+        } else if (FORMAT_RFC_1036.get(0).equals(format)) {
+            result = HttpDateUtils.formatRfc1036(date);
+        } else if (FORMAT_ASC_TIME.get(0).equals(format)) {
+            result = HttpDateUtils.formatAscTime(date);
+        }
 
-        if (FORMAT_RFC_3339.get(0).equals(format)) {
-            formatter = new InternetDateFormat(TIMEZONE_GMT);
-        } else {
-            formatter = new java.text.SimpleDateFormat(format,
-                    java.util.Locale.US);
-            formatter.setTimeZone(TIMEZONE_GMT);
+        if (result == null) {
+            result = getDateFormat(format).format(date);
         }
 
-        return formatter.format(date);
+        return result;
         // [enddef]
         // [ifdef gwt]
         /*
@@ -204,6 +216,42 @@ public final class DateUtils {
         // [enddef]
     }
 
+    // [ifndef gwt] method
+    /**
+     * Returns a date format for the given pattern, using the US locale and the
+     * GMT time zone. As date formats aren't thread-safe, a new instance is
+     * returned each time, cloned from a cached prototype to avoid compiling
+     * the pattern again.
+     * 
+     * @param format
+     *            The date format pattern.
+     * @return A new date format.
+     */
+    private static java.text.DateFormat getDateFormat(String format) {
+        if (FORMAT_RFC_3339.get(0).equals(format)) {
+            return new InternetDateFormat(TIMEZONE_GMT);
+        }
+
+        java.text.SimpleDateFormat prototype = DATE_FORMATS.get(format);
+
+        if (prototype == null) {
+            prototype = new java.text.SimpleDateFormat(format,
+                    java.util.Locale.US);
+            prototype.setTimeZone(TIMEZONE_GMT);
+
+            if (DATE_FORMATS.size() < MAX_DATE_FORMATS) {
+                java.text.SimpleDateFormat existing = DATE_FORMATS
+                        .putIfAbsent(format, prototype);
+
+                if (existing != null) {
+                    prototype = existing;
+                }
+            }
+        }
+
+        return (java.text.DateFormat) prototype.clone();
+    }
+
     /**
      * Parses a formatted date into a Date object using the default HTTP format
      * (RFC 1123).
@@ -238,15 +286,20 @@ public final class DateUtils {
         for (int i = 0; (result == null) && (i < formatsSize); i++) {
             format = formats.get(i);
             // [ifndef gwt]
-            java.text.DateFormat parser = null;
-
-            if (FORMAT_RFC_3339.get(0).equals(format)) {
-                parser = new InternetDateFormat(TIMEZONE_GMT);
-            } else {
-                parser = new java.text.SimpleDateFormat(format,
-                        java.util.Locale.US);
-                parser.setTimeZone(TIMEZONE_GMT);
+            if (FORMAT_RFC_1123.get(0).equals(format)) {
+                result = HttpDateUtils.parseRfc1123(date);
+            } else if (FORMAT_RFC_1036.get(0).equals(format)) {
+                result = HttpDateUtils.parseRfc1036(date);
+            } else if (FORMAT_ASC_TIME.get(0).equals(format)) {
+                result = HttpDateUtils.parseAscTime(date);
             }
+
+            if (result != null) {
+                break;
+            }
+
+            // Fall back to the lenient parser
+            java.text.DateFormat parser = getDateFormat(format);
             // [enddef]
             // [ifdef gwt]
             /*
@@ -0,0 +1,506 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.engine.util;
+
+import java.util.Date;
+
+/**
+ * Fast formatting and parsing of the HTTP date formats (RFC 1123, RFC 1036 and
+ * ANSI C asctime()), always in the GMT time zone and with English names. The
+ * methods are thread-safe and don't rely on {@link java.text.SimpleDateFormat}.
+ * They only handle the canonical form of each format, for years between 1583
+ * and 9999, and return null otherwise so that the caller can fall back to a
+ * lenient {@link java.text.SimpleDateFormat}.
+ * 
+ * @author Jerome Louvel
+ */
+public final class HttpDateUtils {
+
+    /** Formatted date cached for the current second. */
+    private static final class CachedDate {
+
+        /** The number of seconds since the epoch. */
+        private final long second;
+
+        /** The formatted date. */
+        private final String value;
+
+        private CachedDate(long second, String value) {
+            this.second = second;
+            this.value = value;
+        }
+    }
+
+    /** The short names of the days of the week, starting with Sunday. */
+    private static final String[] DAYS = { "Sun", "Mon", "Tue", "Wed", "Thu",
+            "Fri", "Sat" };
+
+    /** The long names of the days of the week, starting with Sunday. */
+    private static final String[] DAYS_LONG = { "Sunday", "Monday", "Tuesday",
+            "Wednesday", "Thursday", "Friday", "Saturday" };
+
+    /** The largest supported year. */
+    private static final int MAX_YEAR = 9999;
+
+    /** The smallest supported year, after the Gregorian calendar cutover. */
+    private static final int MIN_YEAR = 1583;
+
+    /** The short names of the months. */
+    private static final String[] MONTHS = { "Jan", "Feb", "Mar", "Apr", "May",
+            "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec" };
+
+    /** The RFC 1123 date formatted for the current second. */
+    private static volatile CachedDate currentDate;
+
+    /**
+     * Appends a number on two digits.
+     * 
+     * @param sb
+     *            The target builder.
+     * @param value
+     *            The number between 0 and 99.
+     */
+    private static void append2(StringBuilder sb, int value) {
+        sb.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    /**
+     * Appends a number on four digits.
+     * 
+     * @param sb
+     *            The target builder.
+     * @param value
+     *            The number between 0 and 9999.
+     */
+    private static void append4(StringBuilder sb, int value) {
+        append2(sb, value / 100);
+        append2(sb, value % 100);
+    }
+
+    /**
+     * Appends the time of the day, as "HH:mm:ss".
+     * 
+     * @param sb
+     *            The target builder.
+     * @param fields
+     *            The date fields.
+     */
+    private static void appendTime(StringBuilder sb, int[] fields) {
+        append2(sb, fields[3]);
+        sb.append(':');
+        append2(sb, fields[4]);
+        sb.append(':');
+        append2(sb, fields[5]);
+    }
+
+    /**
+     * Returns the number of days since the epoch of a date in the proleptic
+     * Gregorian calendar.
+     * 
+     * @param year
+     *            The year.
+     * @param month
+     *            The month, from 1 to 12.
+     * @param day
+     *            The day of the month, from 1 to 31.
+     * @return The number of days since the epoch.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        long y = (month <= 2) ? year - 1 : year;
+        long era = ((y >= 0) ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * ((month > 2) ? month - 3 : month + 9) + 2) / 5
+                + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100
+                + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Returns the number of days of a given month.
+     * 
+     * @param year
+     *            The year.
+     * @param month
+     *            The month, from 1 to 12.
+     * @return The number of days of the month.
+     */
+    private static int daysOfMonth(int year, int month) {
+        if (month == 2) {
+            boolean leap = ((year % 4) == 0)
+                    && (((year % 100) != 0) || ((year % 400) == 0));
+            return leap ? 29 : 28;
+        }
+
+        return ((month == 4) || (month == 6) || (month == 9) || (month == 11)) ? 30
+                : 31;
+    }
+
+    /**
+     * Computes the GMT fields of a date.
+     * 
+     * @param time
+     *            The number of milliseconds since the epoch.
+     * @return The year, month (1-12), day of the month, hours, minutes,
+     *         seconds and day of the week (0 for Sunday) or null if the year
+     *         isn't supported.
+     */
+    private static int[] getFields(long time) {
+        long seconds = floorDiv(time, 1000);
+        long days = floorDiv(seconds, 86400);
+        int secondOfDay = (int) (seconds - days * 86400);
+
+        // Convert the number of days into a civil date
+        long z = days + 719468;
+        long era = ((z >= 0) ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra
+                - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) ((mp < 10) ? mp + 3 : mp - 9);
+        long year = yearOfEra + era * 400 + ((month <= 2) ? 1 : 0);
+
+        if ((year < MIN_YEAR) || (year > MAX_YEAR)) {
+            return null;
+        }
+
+        return new int[] { (int) year, month, day, secondOfDay / 3600,
+                (secondOfDay / 60) % 60, secondOfDay % 60,
+                (int) floorMod(days + 4, 7) };
+    }
+
+    /**
+     * Formats a date in the ANSI C asctime() format. Pattern:
+     * "EEE MMM dd HH:mm:ss yyyy".
+     * 
+     * @param date
+     *            The date to format.
+     * @return The formatted date or null if the year isn't supported.
+     */
+    public static String formatAscTime(Date date) {
+        int[] fields = getFields(date.getTime());
+
+        if (fields == null) {
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder(24);
+        sb.append(DAYS[fields[6]]).append(' ');
+        sb.append(MONTHS[fields[1] - 1]).append(' ');
+        append2(sb, fields[2]);
+        sb.append(' ');
+        appendTime(sb, fields);
+        sb.append(' ');
+        append4(sb, fields[0]);
+        return sb.toString();
+    }
+
+    /**
+     * Formats a date in the RFC 1036 format. Pattern:
+     * "EEEE, dd-MMM-yy HH:mm:ss zzz".
+     * 
+     * @param date
+     *            The date to format.
+     * @return The formatted date or null if the year isn't supported.
+     */
+    public static String formatRfc1036(Date date) {
+        int[] fields = getFields(date.getTime());
+
+        if (fields == null) {
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder(32);
+        sb.append(DAYS_LONG[fields[6]]).append(", ");
+        append2(sb, fields[2]);
+        sb.append('-').append(MONTHS[fields[1] - 1]).append('-');
+        append2(sb, fields[0] % 100);
+        sb.append(' ');
+        appendTime(sb, fields);
+        sb.append(" GMT");
+        return sb.toString();
+    }
+
+    /**
+     * Formats a date in the RFC 1123 format. Pattern:
+     * "EEE, dd MMM yyyy HH:mm:ss zzz". The result is cached for the current
+     * second as it is used for the "Date" header of each message.
+     * 
+     * @param date
+     *            The date to format.
+     * @return The formatted date or null if the year isn't supported.
+     */
+    public static String formatRfc1123(Date date) {
+        long time = date.getTime();
+        long second = floorDiv(time, 1000);
+        CachedDate cached = currentDate;
+
+        if ((cached != null) && (cached.second == second)) {
+            return cached.value;
+        }
+
+        int[] fields = getFields(time);
+
+        if (fields == null) {
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder(29);
+        sb.append(DAYS[fields[6]]).append(", ");
+        append2(sb, fields[2]);
+        sb.append(' ').append(MONTHS[fields[1] - 1]).append(' ');
+        append4(sb, fields[0]);
+        sb.append(' ');
+        appendTime(sb, fields);
+        sb.append(" GMT");
+        String result = sb.toString();
+
+        // Only remember the current date, other dates are rarely repeated
+        if (Math.abs(time - System.currentTimeMillis()) < 1000) {
+            currentDate = new CachedDate(second, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Divides two numbers, rounding toward negative infinity.
+     * 
+     * @param x
+     *            The dividend.
+     * @param y
+     *            The positive divisor.
+     * @return The quotient.
+     */
+    private static long floorDiv(long x, long y) {
+        long result = x / y;
+        return ((x % y) < 0) ? result - 1 : result;
+    }
+
+    /**
+     * Returns the modulus of two numbers, always positive.
+     * 
+     * @param x
+     *            The dividend.
+     * @param y
+     *            The positive divisor.
+     * @return The modulus.
+     */
+    private static long floorMod(long x, long y) {
+        return x - floorDiv(x, y) * y;
+    }
+
+    /**
+     * Returns the index of a name found at a given position.
+     * 
+     * @param names
+     *            The names to look for.
+     * @param value
+     *            The value to parse.
+     * @param offset
+     *            The position of the name.
+     * @param length
+     *            The expected length of the name.
+     * @return The index of the name or -1.
+     */
+    private static int indexOf(String[] names, String value, int offset,
+            int length) {
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i];
+
+            if ((name.length() == length)
+                    && value.regionMatches(offset, name, 0, length)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Parses a date in the ANSI C asctime() format. Pattern:
+     * "EEE MMM dd HH:mm:ss yyyy".
+     * 
+     * @param date
+     *            The date to parse.
+     * @return The parsed date or null if it isn't in the canonical form.
+     */
+    public static Date parseAscTime(String date) {
+        if ((date.length() != 24) || (date.charAt(3) != ' ')
+                || (date.charAt(7) != ' ') || (date.charAt(10) != ' ')
+                || (date.charAt(19) != ' ')
+                || (indexOf(DAYS, date, 0, 3) < 0)) {
+            return null;
+        }
+
+        return toDate(parseNumber(date, 20, 4),
+                indexOf(MONTHS, date, 4, 3) + 1, parseNumber(date, 8, 2),
+                date, 11);
+    }
+
+    /**
+     * Parses a positive number.
+     * 
+     * @param value
+     *            The value to parse.
+     * @param offset
+     *            The position of the first digit.
+     * @param length
+     *            The number of digits.
+     * @return The number or -1 if a character isn't a digit.
+     */
+    private static int parseNumber(String value, int offset, int length) {
+        int result = 0;
+
+        for (int i = offset; i < offset + length; i++) {
+            char c = value.charAt(i);
+
+            if ((c < '0') || (c > '9')) {
+                return -1;
+            }
+
+            result = result * 10 + (c - '0');
+        }
+
+        return result;
+    }
+
+    /**
+     * Parses a date in the RFC 1036 format. Pattern:
+     * "EEEE, dd-MMM-yy HH:mm:ss zzz". The two digits year is resolved like
+     * {@link java.text.SimpleDateFormat} does, within 80 years before and 20
+     * years after the current date.
+     * 
+     * @param date
+     *            The date to parse.
+     * @return The parsed date or null if it isn't in the canonical form.
+     */
+    public static Date parseRfc1036(String date) {
+        int comma = date.indexOf(',');
+
+        if ((comma < 0) || (indexOf(DAYS_LONG, date, 0, comma) < 0)) {
+            return null;
+        }
+
+        int offset = comma + 2;
+
+        if ((date.length() != offset + 22) || (date.charAt(comma + 1) != ' ')
+                || (date.charAt(offset + 2) != '-')
+                || (date.charAt(offset + 6) != '-')
+                || (date.charAt(offset + 9) != ' ')
+                || !date.endsWith(" GMT")) {
+            return null;
+        }
+
+        int shortYear = parseNumber(date, offset + 7, 2);
+
+        if (shortYear < 0) {
+            return null;
+        }
+
+        // Resolve the century like SimpleDateFormat
+        int startYear = getFields(System.currentTimeMillis())[0] - 80;
+
+        if (shortYear == (startYear % 100)) {
+            // Ambiguous year depending on the exact start date
+            return null;
+        }
+
+        int year = (startYear / 100) * 100 + shortYear
+                + ((shortYear < (startYear % 100)) ? 100 : 0);
+        return toDate(year, indexOf(MONTHS, date, offset + 3, 3) + 1,
+                parseNumber(date, offset, 2), date, offset + 10);
+    }
+
+    /**
+     * Parses a date in the RFC 1123 format. Pattern:
+     * "EEE, dd MMM yyyy HH:mm:ss zzz".
+     * 
+     * @param date
+     *            The date to parse.
+     * @return The parsed date or null if it isn't in the canonical form.
+     */
+    public static Date parseRfc1123(String date) {
+        if ((date.length() != 29) || (date.charAt(3) != ',')
+                || (date.charAt(4) != ' ') || (date.charAt(7) != ' ')
+                || (date.charAt(11) != ' ') || (date.charAt(16) != ' ')
+                || !date.endsWith(" GMT") || (indexOf(DAYS, date, 0, 3) < 0)) {
+            return null;
+        }
+
+        return toDate(parseNumber(date, 12, 4),
+                indexOf(MONTHS, date, 8, 3) + 1, parseNumber(date, 5, 2),
+                date, 17);
+    }
+
+    /**
+     * Builds a date after checking the validity of each field. The day of the
+     * week isn't checked, like {@link java.text.SimpleDateFormat} does.
+     * 
+     * @param year
+     *            The year.
+     * @param month
+     *            The month, from 1 to 12 or 0 if invalid.
+     * @param day
+     *            The day of the month or -1 if invalid.
+     * @param value
+     *            The value containing the time of the day.
+     * @param offset
+     *            The position of the "HH:mm:ss" time.
+     * @return The date or null if a field is invalid.
+     */
+    private static Date toDate(int year, int month, int day, String value,
+            int offset) {
+        if ((year < MIN_YEAR) || (year > MAX_YEAR) || (month < 1)
+                || (day < 1) || (day > daysOfMonth(year, month))
+                || (value.charAt(offset + 2) != ':')
+                || (value.charAt(offset + 5) != ':')) {
+            return null;
+        }
+
+        int hours = parseNumber(value, offset, 2);
+        int minutes = parseNumber(value, offset + 3, 2);
+        int seconds = parseNumber(value, offset + 6, 2);
+
+        if ((hours < 0) || (hours > 23) || (minutes < 0) || (minutes > 59)
+                || (seconds < 0) || (seconds > 59)) {
+            return null;
+        }
+
+        return new Date((daysFromCivil(year, month, day) * 86400 + hours
+                * 3600 + minutes * 60 + seconds) * 1000);
+    }
+
+    /**
+     * Private constructor to ensure that the class acts as a true utility class
+     * i.e. it isn't instantiable and extensible.
+     */
+    private HttpDateUtils() {
+    }
+
+}
@@ -0,0 +1,282 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.engine.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.restlet.Request;
+import org.restlet.routing.Route;
+import org.restlet.routing.Template;
+import org.restlet.routing.TemplateRoute;
+
+/**
+ * Index of routes compiled from the literal prefix of their URI templates, the
+ * part preceding the first variable. The prefixes are stored in a tree of path
+ * segments so that the candidate routes for a given call are found in a
+ * number of steps depending on the depth of the remaining part, instead of the
+ * number of routes. Candidates still need to be scored as the index only rules
+ * out the routes whose literal prefix can't match.<br>
+ * <br>
+ * Routes that can't be indexed, such as custom route classes, are always
+ * returned as candidates. The index is updated incrementally as routes are
+ * appended or removed. Readers don't block.
+ * 
+ * @author Jerome Louvel
+ */
+public class RouteTrie {
+
+    /**
+     * Indexed route.
+     */
+    private static final class Entry {
+
+        /** The position in the list of routes. */
+        private final long order;
+
+        /** The indexed route. */
+        private final Route route;
+
+        /** The part of the literal prefix after the last slash. */
+        private final String tail;
+
+        /**
+         * Constructor.
+         * 
+         * @param route
+         *            The indexed route.
+         * @param order
+         *            The position in the list of routes.
+         * @param tail
+         *            The part of the literal prefix after the last slash.
+         */
+        private Entry(Route route, long order, String tail) {
+            this.route = route;
+            this.order = order;
+            this.tail = tail;
+        }
+    }
+
+    /**
+     * Node of the tree, matching a path segment.
+     */
+    private static final class Node {
+
+        /** The child nodes, by path segment. */
+        private final Map<String, Node> children = new ConcurrentHashMap<String, Node>();
+
+        /** The routes whose literal prefix ends in this node. */
+        private final List<Entry> entries = new CopyOnWriteArrayList<Entry>();
+    }
+
+    /** Sorts the entries by position in the list of routes. */
+    private static final Comparator<Entry> ORDER_COMPARATOR = new Comparator<Entry>() {
+        public int compare(Entry entry1, Entry entry2) {
+            return (entry1.order < entry2.order) ? -1
+                    : ((entry1.order == entry2.order) ? 0 : 1);
+        }
+    };
+
+    /**
+     * Returns the literal prefix of a URI template pattern, which must be
+     * matched exactly by the formatted strings.
+     * 
+     * @param pattern
+     *            The URI template pattern.
+     * @return The literal prefix.
+     */
+    public static String getLiteralPrefix(String pattern) {
+        int end = pattern.length();
+
+        for (int i = 0; i < end; i++) {
+            char next = pattern.charAt(i);
+
+            if ((next == '{') || (next == '}')) {
+                end = i;
+            } else if (next == '+') {
+                // Not escaped in the regular expression so the previous
+                // character may be repeated
+                end = (i > 0) ? i - 1 : 0;
+            }
+        }
+
+        return pattern.substring(0, end);
+    }
+
+    /**
+     * Indicates if a route can be indexed based on its template.
+     * 
+     * @param route
+     *            The route to test.
+     * @return True if the route can be indexed.
+     */
+    private static boolean isIndexable(Route route) {
+        return (route != null)
+                && (route.getClass() == TemplateRoute.class)
+                && (((TemplateRoute) route).getTemplate() != null)
+                && (((TemplateRoute) route).getTemplate().getClass() == Template.class);
+    }
+
+    /** The node of each indexed route, null for the unindexed ones. */
+    private final Map<Route, Node> nodes;
+
+    /** The order given to the next appended route. */
+    private volatile long nextOrder;
+
+    /** The root node. */
+    private final Node root;
+
+    /** The routes that can't be indexed. */
+    private final List<Entry> unindexed;
+
+    /**
+     * Constructor.
+     * 
+     * @param routes
+     *            The initial list of routes.
+     */
+    public RouteTrie(List<Route> routes) {
+        this.nodes = new IdentityHashMap<Route, Node>();
+        this.root = new Node();
+        this.unindexed = new CopyOnWriteArrayList<Entry>();
+        this.nextOrder = 0L;
+
+        for (Route route : routes) {
+            add(route);
+        }
+    }
+
+    /**
+     * Appends a route to the index.
+     * 
+     * @param route
+     *            The route to append.
+     */
+    public synchronized void add(Route route) {
+        long order = this.nextOrder++;
+
+        if (isIndexable(route)) {
+            String prefix = getLiteralPrefix(((TemplateRoute) route)
+                    .getTemplate().getPattern());
+            Node node = this.root;
+            int start = 0;
+
+            for (int slash = prefix.indexOf('/'); slash != -1; slash = prefix
+                    .indexOf('/', start)) {
+                String segment = prefix.substring(start, slash);
+                Node child = node.children.get(segment);
+
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(segment, child);
+                }
+
+                node = child;
+                start = slash + 1;
+            }
+
+            node.entries.add(new Entry(route, order, prefix.substring(start)));
+            this.nodes.put(route, node);
+        } else {
+            this.unindexed.add(new Entry(route, order, null));
+            this.nodes.put(route, null);
+        }
+    }
+
+    /**
+     * Returns the routes that may match a call, in their list order.
+     * 
+     * @param request
+     *            The request to route.
+     * @return The candidate routes.
+     */
+    public List<Route> getCandidates(Request request) {
+        List<Entry> entries = new ArrayList<Entry>(this.unindexed);
+        String path = (request.getResourceRef() == null) ? null : request
+                .getResourceRef().getRemainingPart(false, true);
+
+        if (path != null) {
+            Node node = this.root;
+            int start = 0;
+
+            while (node != null) {
+                for (Entry entry : node.entries) {
+                    if (path.startsWith(entry.tail, start)) {
+                        entries.add(entry);
+                    }
+                }
+
+                int slash = path.indexOf('/', start);
+
+                if (slash == -1) {
+                    node = null;
+                } else {
+                    node = node.children.get(path.substring(start, slash));
+                    start = slash + 1;
+                }
+            }
+        }
+
+        if (entries.size() > 1) {
+            Collections.sort(entries, ORDER_COMPARATOR);
+        }
+
+        List<Route> result = new ArrayList<Route>(entries.size());
+
+        for (Entry entry : entries) {
+            result.add(entry.route);
+        }
+
+        return result;
+    }
+
+    /**
+     * Removes all the occurrences of a route from the index.
+     * 
+     * @param route
+     *            The route to remove.
+     */
+    public synchronized void remove(Route route) {
+        if (this.nodes.containsKey(route)) {
+            Node node = this.nodes.remove(route);
+            List<Entry> entries = (node == null) ? this.unindexed
+                    : node.entries;
+
+            for (Entry entry : entries) {
+                if (entry.route == route) {
+                    entries.remove(entry);
+                }
+            }
+        }
+    }
+
+}
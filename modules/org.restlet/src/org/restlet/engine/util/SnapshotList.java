@@ -0,0 +1,159 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.engine.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.restlet.util.WrapperList;
+
+/**
+ * Modifiable and thread-safe list that also publishes an immutable snapshot of
+ * its content. The snapshot is replaced after each modification, so that
+ * frequent readers such as the lookups of the registered helpers can iterate
+ * over a stable array without any lock or iterator. Sub-lists are read-only
+ * views of the current snapshot.
+ * 
+ * @author Jerome Louvel
+ * @param <E>
+ *            The element type.
+ */
+public class SnapshotList<E> extends WrapperList<E> {
+
+    /** The immutable snapshot of the content, lazily built. */
+    private volatile List<E> snapshot;
+
+    /**
+     * Constructor.
+     */
+    public SnapshotList() {
+        super(new CopyOnWriteArrayList<E>());
+    }
+
+    @Override
+    public synchronized boolean add(E element) {
+        boolean result = super.add(element);
+        this.snapshot = null;
+        return result;
+    }
+
+    @Override
+    public synchronized void add(int index, E element) {
+        super.add(index, element);
+        this.snapshot = null;
+    }
+
+    @Override
+    public synchronized boolean addAll(Collection<? extends E> elements) {
+        boolean result = super.addAll(elements);
+        this.snapshot = null;
+        return result;
+    }
+
+    @Override
+    public synchronized boolean addAll(int index,
+            Collection<? extends E> elements) {
+        boolean result = super.addAll(index, elements);
+        this.snapshot = null;
+        return result;
+    }
+
+    @Override
+    public synchronized void clear() {
+        super.clear();
+        this.snapshot = null;
+    }
+
+    /**
+     * Returns an immutable snapshot of the current content. The same instance
+     * is returned until the list is modified.
+     * 
+     * @return An immutable snapshot of the current content.
+     */
+    public List<E> getSnapshot() {
+        List<E> result = this.snapshot;
+
+        if (result == null) {
+            synchronized (this) {
+                result = this.snapshot;
+
+                if (result == null) {
+                    @SuppressWarnings("unchecked")
+                    E[] elements = (E[]) toArray();
+                    result = Collections.unmodifiableList(Arrays
+                            .asList(elements));
+                    this.snapshot = result;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public synchronized E remove(int index) {
+        E result = super.remove(index);
+        this.snapshot = null;
+        return result;
+    }
+
+    @Override
+    public synchronized boolean remove(Object element) {
+        boolean result = super.remove(element);
+        this.snapshot = null;
+        return result;
+    }
+
+    @Override
+    public synchronized boolean removeAll(Collection<?> elements) {
+        boolean result = super.removeAll(elements);
+        this.snapshot = null;
+        return result;
+    }
+
+    @Override
+    public synchronized boolean retainAll(Collection<?> elements) {
+        boolean result = super.retainAll(elements);
+        this.snapshot = null;
+        return result;
+    }
+
+    @Override
+    public synchronized E set(int index, E element) {
+        E result = super.set(index, element);
+        this.snapshot = null;
+        return result;
+    }
+
+    @Override
+    public List<E> subList(int fromIndex, int toIndex) {
+        return getSnapshot().subList(fromIndex, toIndex);
+    }
+
+}
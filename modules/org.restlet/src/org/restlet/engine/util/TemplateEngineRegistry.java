@@ -0,0 +1,410 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.engine.util;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.restlet.Context;
+
+// [excludes gwt]
+/**
+ * Registry of the template engines and compiled templates shared by the
+ * template extensions of an application. One registry is stored in the
+ * attributes of each {@link Context}, so that the engines are configured and
+ * initialized once per application instead of once per rendered
+ * representation. Here is the list of parameters that are supported. They
+ * should be set in the application's context before the first template is
+ * rendered:
+ * <table>
+ * <tr>
+ * <th>Parameter name</th>
+ * <th>Value type</th>
+ * <th>Default value</th>
+ * <th>Description</th>
+ * </tr>
+ * <tr>
+ * <td>templateCacheSize</td>
+ * <td>int</td>
+ * <td>256</td>
+ * <td>Maximum number of templates compiled from representations that are
+ * cached.</td>
+ * </tr>
+ * <tr>
+ * <td>templateCacheTtlMs</td>
+ * <td>long</td>
+ * <td>5000</td>
+ * <td>Delay after which a cached template is checked for modification, or
+ * reloaded when the engine can't detect modifications. If the value is '0',
+ * templates are checked on each use. If the value is '-1', cached templates
+ * are never reloaded.</td>
+ * </tr>
+ * </table>
+ * 
+ * @author Jerome Louvel
+ */
+public class TemplateEngineRegistry {
+
+    /** A compiled template and its validators. */
+    private static class CachedTemplate {
+
+        /** The time when the template was compiled. */
+        private final long loadTime;
+
+        /** The modification date of the template source or -1. */
+        private final long modificationTime;
+
+        /** The compiled template. */
+        private final Object template;
+
+        /**
+         * Constructor.
+         * 
+         * @param template
+         *            The compiled template.
+         * @param modificationTime
+         *            The modification date of the template source or -1.
+         */
+        public CachedTemplate(Object template, long modificationTime) {
+            this.loadTime = System.currentTimeMillis();
+            this.modificationTime = modificationTime;
+            this.template = template;
+        }
+    }
+
+    /** The name of the context attribute holding the registry. */
+    public static final String ATTRIBUTE_NAME = TemplateEngineRegistry.class
+            .getName();
+
+    /** The registry used outside of any context. */
+    private static final TemplateEngineRegistry DEFAULT = new TemplateEngineRegistry(
+            null);
+
+    /**
+     * Returns the registry of the given context, creating it if needed. If the
+     * context is null, the current context is used. Outside of any context, a
+     * shared default registry is returned.
+     * 
+     * @param context
+     *            The context or null.
+     * @return The template engine registry.
+     */
+    public static TemplateEngineRegistry getInstance(Context context) {
+        Context current = (context == null) ? Context.getCurrent() : context;
+
+        if (current == null) {
+            return DEFAULT;
+        }
+
+        Object result = current.getAttributes().get(ATTRIBUTE_NAME);
+
+        if (result == null) {
+            TemplateEngineRegistry registry = new TemplateEngineRegistry(
+                    current);
+            result = current.getAttributes().putIfAbsent(ATTRIBUTE_NAME,
+                    registry);
+
+            if (result == null) {
+                result = registry;
+            }
+        }
+
+        return (TemplateEngineRegistry) result;
+    }
+
+    /** The context providing the parameters, or null. */
+    private final Context context;
+
+    /** The template engines, by class. */
+    private final ConcurrentMap<Class<?>, Object> engines;
+
+    /** The number of templates served from the cache. */
+    private final AtomicLong hitCount;
+
+    /** The number of templates compiled because none could be reused. */
+    private final AtomicLong missCount;
+
+    /** The number of rendered templates. */
+    private final AtomicLong renderCount;
+
+    /** The number of renderings that failed. */
+    private final AtomicLong renderErrorCount;
+
+    /** The cumulated rendering time in nanoseconds. */
+    private final AtomicLong renderTime;
+
+    /** The compiled templates, by key. */
+    private final ConcurrentMap<String, CachedTemplate> templates;
+
+    /**
+     * Constructor.
+     * 
+     * @param context
+     *            The context providing the parameters, or null.
+     */
+    public TemplateEngineRegistry(Context context) {
+        this.context = context;
+        this.engines = new ConcurrentHashMap<Class<?>, Object>();
+        this.hitCount = new AtomicLong();
+        this.missCount = new AtomicLong();
+        this.renderCount = new AtomicLong();
+        this.renderErrorCount = new AtomicLong();
+        this.renderTime = new AtomicLong();
+        this.templates = new ConcurrentHashMap<String, CachedTemplate>();
+    }
+
+    /**
+     * Returns the registered engine of the given class.
+     * 
+     * @param engineClass
+     *            The engine class.
+     * @return The registered engine or null.
+     */
+    public <T> T getEngine(Class<T> engineClass) {
+        return engineClass.cast(this.engines.get(engineClass));
+    }
+
+    /**
+     * Returns the number of templates served from the cache.
+     * 
+     * @return The number of templates served from the cache.
+     */
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    /**
+     * Returns the maximum number of cached templates compiled from
+     * representations.
+     * 
+     * @return The maximum number of cached templates.
+     */
+    public int getMaxTemplates() {
+        return Integer.parseInt(getParameter("templateCacheSize", "256"));
+    }
+
+    /**
+     * Returns the number of templates compiled because none could be reused.
+     * 
+     * @return The number of compiled templates.
+     */
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /**
+     * Returns the value of a context parameter.
+     * 
+     * @param name
+     *            The parameter name.
+     * @param defaultValue
+     *            The default value.
+     * @return The parameter value.
+     */
+    private String getParameter(String name, String defaultValue) {
+        return (this.context == null) ? defaultValue : this.context
+                .getParameters().getFirstValue(name, defaultValue);
+    }
+
+    /**
+     * Returns the number of rendered templates.
+     * 
+     * @return The number of rendered templates.
+     */
+    public long getRenderCount() {
+        return this.renderCount.get();
+    }
+
+    /**
+     * Returns the number of renderings that failed.
+     * 
+     * @return The number of renderings that failed.
+     */
+    public long getRenderErrorCount() {
+        return this.renderErrorCount.get();
+    }
+
+    /**
+     * Returns the cumulated rendering time in milliseconds.
+     * 
+     * @return The cumulated rendering time in milliseconds.
+     */
+    public long getRenderTimeMs() {
+        return TimeUnit.NANOSECONDS.toMillis(this.renderTime.get());
+    }
+
+    /**
+     * Returns a cached template compiled from a representation. It is only
+     * returned if it was compiled from a source with the same modification
+     * date, or, when the modification date is unknown, if it was compiled
+     * less than {@link #getTemplateCacheTtlMs()} ago.
+     * 
+     * @param key
+     *            The template key, typically the location of the source.
+     * @param modificationDate
+     *            The modification date of the source or null.
+     * @return The cached template or null.
+     */
+    public Object getTemplate(String key, Date modificationDate) {
+        CachedTemplate cached = (key == null) ? null : this.templates.get(key);
+        Object result = null;
+
+        if (cached != null) {
+            if (modificationDate != null) {
+                if (cached.modificationTime == modificationDate.getTime()) {
+                    result = cached.template;
+                }
+            } else if (cached.modificationTime == -1) {
+                long ttl = getTemplateCacheTtlMs();
+
+                long age = System.currentTimeMillis() - cached.loadTime;
+
+                if ((ttl < 0) || (age < ttl)) {
+                    result = cached.template;
+                }
+            }
+
+            if (result == null) {
+                this.templates.remove(key, cached);
+            }
+        }
+
+        if (result == null) {
+            this.missCount.incrementAndGet();
+        } else {
+            this.hitCount.incrementAndGet();
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the delay after which a cached template is checked for
+     * modification, or reloaded when the engine can't detect modifications.
+     * 
+     * @return The delay in milliseconds, 0 to check on each use or -1 to
+     *         never reload.
+     */
+    public long getTemplateCacheTtlMs() {
+        return Long.parseLong(getParameter("templateCacheTtlMs", "5000"));
+    }
+
+    /**
+     * Removes all the cached templates compiled from representations.
+     */
+    public void invalidate() {
+        this.templates.clear();
+    }
+
+    /**
+     * Removes a cached template compiled from a representation.
+     * 
+     * @param key
+     *            The template key.
+     */
+    public void invalidate(String key) {
+        this.templates.remove(key);
+    }
+
+    /**
+     * Registers an engine unless one of the same class is already registered.
+     * 
+     * @param engineClass
+     *            The engine class.
+     * @param engine
+     *            The engine to register.
+     * @return The registered engine, which is the given one unless another
+     *         one was registered first.
+     */
+    public <T> T putEngineIfAbsent(Class<T> engineClass, T engine) {
+        Object result = this.engines.putIfAbsent(engineClass, engine);
+        return (result == null) ? engine : engineClass.cast(result);
+    }
+
+    /**
+     * Caches a template compiled from a representation.
+     * 
+     * @param key
+     *            The template key, typically the location of the source.
+     * @param modificationDate
+     *            The modification date of the source or null.
+     * @param template
+     *            The compiled template.
+     */
+    public void putTemplate(String key, Date modificationDate,
+            Object template) {
+        boolean cacheable = (modificationDate != null)
+                || (getTemplateCacheTtlMs() != 0);
+
+        if ((key != null) && (template != null) && cacheable) {
+            if (this.templates.size() >= getMaxTemplates()) {
+                // Make room by evicting an arbitrary entry
+                Iterator<String> keys = this.templates.keySet().iterator();
+
+                if (keys.hasNext()) {
+                    this.templates.remove(keys.next());
+                }
+            }
+
+            this.templates.put(key, new CachedTemplate(template,
+                    (modificationDate == null) ? -1 : modificationDate
+                            .getTime()));
+        }
+    }
+
+    /**
+     * Records the rendering of a template.
+     * 
+     * @param startTime
+     *            The start time of the rendering, as given by
+     *            {@link System#nanoTime()}.
+     * @param success
+     *            True if the rendering succeeded.
+     */
+    public void recordRender(long startTime, boolean success) {
+        this.renderCount.incrementAndGet();
+        this.renderTime.addAndGet(System.nanoTime() - startTime);
+
+        if (!success) {
+            this.renderErrorCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Unregisters the engine of the given class, so that a new one is created
+     * and configured on next use.
+     * 
+     * @param engineClass
+     *            The engine class.
+     */
+    public void removeEngine(Class<?> engineClass) {
+        this.engines.remove(engineClass);
+    }
+}
@@ -0,0 +1,281 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.engine.util;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor service starting a new thread for each task, typically a virtual
+ * thread created by {@link #createVirtualThreadFactory(String)}.
+ * As such threads are cheap, the number of tasks running concurrently is
+ * limited by a semaphore instead of a pool size. Tasks submitted while all
+ * permits are taken wait for one in their own thread, up to a maximum number
+ * of waiting tasks.
+ * 
+ * @author Jerome Louvel
+ */
+public class ThreadPerTaskExecutorService extends AbstractExecutorService {
+
+    /**
+     * Creates a factory of virtual threads, named with the given prefix
+     * followed by a counter. Virtual threads are looked up by reflection as
+     * they are only available since Java SE 21.
+     * 
+     * @param namePrefix
+     *            The prefix of the thread names.
+     * @return A factory of virtual threads or null if they aren't supported
+     *         by the current JVM.
+     */
+    public static ThreadFactory createVirtualThreadFactory(String namePrefix) {
+        ThreadFactory result = null;
+
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method name = builderClass.getMethod("name", String.class,
+                    long.class);
+            builder = name.invoke(builder, namePrefix, 0L);
+            result = (ThreadFactory) builderClass.getMethod("factory").invoke(
+                    builder);
+        } catch (Exception e) {
+            // Virtual threads aren't supported by this JVM
+        }
+
+        return result;
+    }
+
+    /** The maximum number of tasks waiting for a permit. */
+    private final int maxQueued;
+
+    /** The permits limiting the concurrent tasks, or null if unlimited. */
+    private final Semaphore permits;
+
+    /** The number of tasks waiting for a permit. */
+    private final AtomicInteger queued;
+
+    /** Indicates if the service has been shut down. */
+    private volatile boolean shutdown;
+
+    /** The factory creating a thread for each task. */
+    private final ThreadFactory threadFactory;
+
+    /** The live threads. */
+    private final Set<Thread> threads;
+
+    /**
+     * Constructor.
+     * 
+     * @param threadFactory
+     *            The factory creating a thread for each task.
+     * @param maxConcurrent
+     *            The maximum number of tasks running concurrently. If the
+     *            value is '-1', then the number isn't limited.
+     * @param maxQueued
+     *            The maximum number of tasks waiting for a permit. If the
+     *            value is '0', then tasks are rejected if no permit is
+     *            immediately available. If the value is '-1', then tasks are
+     *            never rejected.
+     */
+    public ThreadPerTaskExecutorService(ThreadFactory threadFactory,
+            int maxConcurrent, int maxQueued) {
+        this.threadFactory = threadFactory;
+        this.permits = (maxConcurrent < 0) ? null : new Semaphore(
+                maxConcurrent);
+        this.maxQueued = maxQueued;
+        this.queued = new AtomicInteger();
+        this.threads = Collections
+                .newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+    }
+
+    /**
+     * Releases the permit and notifies the termination if needed.
+     * 
+     * @param permitted
+     *            True if a permit was acquired.
+     */
+    private void afterExecute(boolean permitted) {
+        if (permitted && (this.permits != null)) {
+            this.permits.release();
+        }
+
+        this.threads.remove(Thread.currentThread());
+
+        if (isTerminated()) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        synchronized (this) {
+            while (!isTerminated()) {
+                long remaining = deadline - System.nanoTime();
+
+                if (remaining <= 0) {
+                    return false;
+                }
+
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        }
+
+        return true;
+    }
+
+    public void execute(final Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+
+        if (this.shutdown) {
+            throw new RejectedExecutionException(
+                    "The executor service has been shut down");
+        }
+
+        final boolean permitted = (this.permits == null)
+                || this.permits.tryAcquire();
+
+        if (!permitted) {
+            if (this.maxQueued == 0) {
+                throw new RejectedExecutionException(
+                        "Maximum number of concurrent tasks reached");
+            } else if ((this.queued.incrementAndGet() > this.maxQueued)
+                    && (this.maxQueued > 0)) {
+                this.queued.decrementAndGet();
+                throw new RejectedExecutionException(
+                        "Maximum number of queued tasks reached");
+            }
+        }
+
+        Thread thread = this.threadFactory.newThread(new Runnable() {
+            public void run() {
+                boolean acquired = permitted;
+
+                try {
+                    if (!acquired) {
+                        try {
+                            permits.acquire();
+                            acquired = true;
+                        } finally {
+                            queued.decrementAndGet();
+                        }
+                    }
+
+                    command.run();
+                } catch (InterruptedException e) {
+                    // Shut down while waiting for a permit
+                } finally {
+                    afterExecute(acquired);
+                }
+            }
+        });
+
+        this.threads.add(thread);
+
+        try {
+            thread.start();
+        } catch (RuntimeException re) {
+            this.threads.remove(thread);
+
+            if (permitted && (this.permits != null)) {
+                this.permits.release();
+            } else if (!permitted) {
+                this.queued.decrementAndGet();
+            }
+
+            throw new RejectedExecutionException(re);
+        }
+    }
+
+    /**
+     * Returns the number of live threads, running or waiting for a permit.
+     * 
+     * @return The number of live threads.
+     */
+    public int getActiveCount() {
+        return this.threads.size();
+    }
+
+    /**
+     * Returns the number of tasks waiting for a permit.
+     * 
+     * @return The number of tasks waiting for a permit.
+     */
+    public int getQueuedCount() {
+        return this.queued.get();
+    }
+
+    public boolean isShutdown() {
+        return this.shutdown;
+    }
+
+    public boolean isTerminated() {
+        return this.shutdown && this.threads.isEmpty();
+    }
+
+    public void shutdown() {
+        this.shutdown = true;
+
+        if (isTerminated()) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Shuts down the service and interrupts the live threads. As tasks are
+     * never queued without a thread, the returned list is always empty.
+     * 
+     * @return An empty list.
+     */
+    public List<Runnable> shutdownNow() {
+        shutdown();
+
+        for (Thread thread : this.threads) {
+            thread.interrupt();
+        }
+
+        return new ArrayList<Runnable>();
+    }
+
+}
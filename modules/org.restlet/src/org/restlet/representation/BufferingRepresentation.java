@@ -52,6 +52,9 @@ import org.restlet.util.WrapperRepresentation;
  */
 public class BufferingRepresentation extends WrapperRepresentation {
 
+    /** The maximum initial size of the buffer. */
+    private static final int MAX_INITIAL_SIZE = 1024 * 1024;
+
     /** The cached content as an array of bytes. */
     private volatile byte[] buffer;
 
@@ -77,7 +80,12 @@ public class BufferingRepresentation extends WrapperRepresentation {
     private void buffer() throws IOException {
         if (!isBuffered()) {
             if (getWrappedRepresentation().isAvailable()) {
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                // Size the buffer upfront to avoid growing it while copying,
+                // without trusting large announced sizes
+                long size = getWrappedRepresentation().getAvailableSize();
+                ByteArrayOutputStream baos = new ByteArrayOutputStream(
+                        (size > 0) ? (int) Math.min(size, MAX_INITIAL_SIZE)
+                                : IoUtils.BUFFER_SIZE);
                 getWrappedRepresentation().write(baos);
                 baos.flush();
                 setBuffer(baos.toByteArray());
@@ -256,9 +256,22 @@ public class FileRepresentation extends Representation {
         this.file = file;
     }
 
+    /**
+     * Writes the representation to an output stream. Reads the file channel
+     * through pooled buffers.
+     * 
+     * @param outputStream
+     *            The output stream.
+     */
     @Override
     public void write(OutputStream outputStream) throws IOException {
-        IoUtils.copy(getStream(), outputStream);
+        FileChannel fileChannel = getChannel();
+
+        try {
+            IoUtils.copy(fileChannel, 0, fileChannel.size(), outputStream);
+        } finally {
+            fileChannel.close();
+        }
     }
 
     /**
@@ -71,8 +71,9 @@ public abstract class OutputRepresentation extends StreamRepresentation {
     }
 
     /**
-     * Returns a stream with the representation's content. Internally, it uses a
-     * writer thread and a pipe stream.
+     * Returns a stream with the representation's content. Internally, the
+     * content is spooled by the calling thread, see
+     * {@link IoUtils#getStream(Representation)}.
      * 
      * @return A stream with the representation's content.
      */
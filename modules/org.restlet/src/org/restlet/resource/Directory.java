@@ -97,6 +97,12 @@ public class Directory extends Finder {
      */
     private volatile boolean listingAllowed;
 
+    /**
+     * The maximum size of the files that are memory mapped and shared between
+     * responses (0 by default, meaning disabled).
+     */
+    private volatile long mappedFileMaxSize;
+
     /**
      * Indicates if modifications to local resources are allowed (false by
      * default).
@@ -137,6 +143,7 @@ public class Directory extends Finder {
         this.deeplyAccessible = true;
         this.indexName = "index";
         this.listingAllowed = false;
+        this.mappedFileMaxSize = 0;
         this.modifiable = false;
         this.negotiatingContent = true;
         setTargetClass(DirectoryServerResource.class);
@@ -222,6 +229,17 @@ public class Directory extends Finder {
         return result;
     }
 
+    /**
+     * Returns the maximum size of the local files that are memory mapped once
+     * and then shared between the responses, which suits small and frequently
+     * requested files. Returns 0 by default, meaning that no file is mapped.
+     * 
+     * @return The maximum size of the memory mapped files.
+     */
+    public long getMappedFileMaxSize() {
+        return this.mappedFileMaxSize;
+    }
+
     /**
      * Returns the root URI from which the relative resource URIs will be looked
      * up.
@@ -320,6 +338,17 @@ public class Directory extends Finder {
         this.listingAllowed = listingAllowed;
     }
 
+    /**
+     * Sets the maximum size of the local files that are memory mapped once and
+     * then shared between the responses. Use 0 to disable the mapping.
+     * 
+     * @param mappedFileMaxSize
+     *            The maximum size of the memory mapped files.
+     */
+    public void setMappedFileMaxSize(long mappedFileMaxSize) {
+        this.mappedFileMaxSize = mappedFileMaxSize;
+    }
+
     /**
      * Indicates if modifications to local resources are allowed.
      * 
@@ -98,6 +98,9 @@ public abstract class ServerResource extends Resource {
     /** Indicates if annotations are supported. */
     private volatile boolean annotated;
 
+    /** Indicates if annotated methods are invoked through method handles. */
+    private volatile boolean compiledInvocation;
+
     /** Indicates if conditional handling is enabled. */
     private volatile boolean conditional;
 
@@ -122,6 +125,7 @@ public abstract class ServerResource extends Resource {
      */
     {
         this.annotated = true;
+        this.compiledInvocation = false;
         this.conditional = true;
         this.existing = true;
         this.negotiated = true;
@@ -488,41 +492,30 @@ public abstract class ServerResource extends Resource {
         Object resultObject = null;
 
         try {
-            if (parameterTypes.length > 0) {
-                List<Object> parameters = new ArrayList<Object>();
-                Object parameter = null;
-
-                for (Class<?> parameterType : parameterTypes) {
-                    if (Variant.class.equals(parameterType)) {
-                        parameters.add(variant);
-                    } else {
-                        if (getRequestEntity() != null
-                                && getRequestEntity().isAvailable()
-                                && getRequestEntity().getSize() != 0) {
-                            // Assume there is content to be read.
-                            // NB: it does not handle the case where the size is
-                            // unknown, but there is no content.
-                            parameter = toObject(getRequestEntity(),
-                                    parameterType);
-
-                            if (parameter == null) {
-                                throw new ResourceException(
-                                        Status.CLIENT_ERROR_UNSUPPORTED_MEDIA_TYPE);
-                            }
-                        } else {
-                            parameter = null;
-                        }
-
-                        parameters.add(parameter);
+            Object[] parameters = new Object[parameterTypes.length];
+
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (Variant.class.equals(parameterTypes[i])) {
+                    parameters[i] = variant;
+                } else if (getRequestEntity() != null
+                        && getRequestEntity().isAvailable()
+                        && getRequestEntity().getSize() != 0) {
+                    // Assume there is content to be read.
+                    // NB: it does not handle the case where the size is
+                    // unknown, but there is no content.
+                    parameters[i] = toObject(getRequestEntity(),
+                            parameterTypes[i]);
+
+                    if (parameters[i] == null) {
+                        throw new ResourceException(
+                                Status.CLIENT_ERROR_UNSUPPORTED_MEDIA_TYPE);
                     }
                 }
-
-                resultObject = annotationInfo.getJavaMethod().invoke(this,
-                        parameters.toArray());
-            } else {
-                resultObject = annotationInfo.getJavaMethod().invoke(this);
             }
 
+            resultObject = annotationInfo.invoke(this, parameters,
+                    isCompiledInvocation());
+
             if (resultObject != null) {
                 result = toRepresentation(resultObject, variant);
             }
@@ -777,8 +770,8 @@ public abstract class ServerResource extends Resource {
             Representation entity) throws IOException {
         if (isAnnotated()) {
             return AnnotationUtils.getInstance().getMethodAnnotation(
-                    getAnnotations(), method, query, entity,
-                    getMetadataService(), getConverterService());
+                    getClass(), method, query, entity, getMetadataService(),
+                    getConverterService());
         }
 
         return null;
@@ -945,56 +938,54 @@ public abstract class ServerResource extends Resource {
                 List<Variant> annoVariants = null;
                 method = (Method.HEAD.equals(method)) ? Method.GET : method;
 
-                for (AnnotationInfo annotationInfo : getAnnotations()) {
+                for (MethodAnnotationInfo methodAnnotationInfo : AnnotationUtils
+                        .getInstance().getDispatchTable(getClass())
+                        .getMethodAnnotations(method)) {
                     try {
-                        if (annotationInfo instanceof MethodAnnotationInfo) {
-                            MethodAnnotationInfo methodAnnotationInfo = (MethodAnnotationInfo) annotationInfo;
-
-                            if (methodAnnotationInfo
-                                    .isCompatible(method, getQuery(),
-                                            getRequestEntity(),
+                        if (methodAnnotationInfo
+                                .isCompatible(method, getQuery(),
+                                        getRequestEntity(),
+                                        getMetadataService(),
+                                        getConverterService())) {
+                            annoVariants = methodAnnotationInfo
+                                    .getResponseVariants(
                                             getMetadataService(),
-                                            getConverterService())) {
-                                annoVariants = methodAnnotationInfo
-                                        .getResponseVariants(
-                                                getMetadataService(),
-                                                getConverterService());
-
-                                if (annoVariants != null) {
-                                    // Compute an affinity score between this
-                                    // annotation and the input entity.
-                                    float score = 0.5f;
-                                    if ((getRequest().getEntity() != null)
-                                            && getRequest().getEntity()
-                                                    .isAvailable()) {
-                                        MediaType emt = getRequest()
-                                                .getEntity().getMediaType();
-                                        List<MediaType> amts = getMetadataService()
-                                                .getAllMediaTypes(
-                                                        methodAnnotationInfo
-                                                                .getInput());
-                                        if (amts != null) {
-                                            for (MediaType amt : amts) {
-                                                if (amt.equals(emt)) {
-                                                    score = 1.0f;
-                                                } else if (amt.includes(emt)) {
-                                                    score = Math.max(0.8f,
-                                                            score);
-                                                } else if (amt
-                                                        .isCompatible(emt)) {
-                                                    score = Math.max(0.6f,
-                                                            score);
-                                                }
+                                            getConverterService());
+
+                            if (annoVariants != null) {
+                                // Compute an affinity score between this
+                                // annotation and the input entity.
+                                float score = 0.5f;
+                                if ((getRequest().getEntity() != null)
+                                        && getRequest().getEntity()
+                                                .isAvailable()) {
+                                    MediaType emt = getRequest()
+                                            .getEntity().getMediaType();
+                                    List<MediaType> amts = getMetadataService()
+                                            .getAllMediaTypes(
+                                                    methodAnnotationInfo
+                                                            .getInput());
+                                    if (amts != null) {
+                                        for (MediaType amt : amts) {
+                                            if (amt.equals(emt)) {
+                                                score = 1.0f;
+                                            } else if (amt.includes(emt)) {
+                                                score = Math.max(0.8f,
+                                                        score);
+                                            } else if (amt
+                                                    .isCompatible(emt)) {
+                                                score = Math.max(0.6f,
+                                                        score);
                                             }
                                         }
                                     }
+                                }
 
-                                    for (Variant v : annoVariants) {
-                                        VariantInfo vi = new VariantInfo(v,
-                                                methodAnnotationInfo);
-                                        vi.setInputScore(score);
-                                        result.add(vi);
-                                    }
+                                for (Variant v : annoVariants) {
+                                    VariantInfo vi = new VariantInfo(v,
+                                            methodAnnotationInfo);
+                                    vi.setInputScore(score);
+                                    result.add(vi);
                                 }
                             }
                         }
@@ -1153,6 +1144,20 @@ public abstract class ServerResource extends Resource {
         return getResponse().isCommitted();
     }
 
+    /**
+     * Indicates if annotated methods are invoked through method handles
+     * compiled at first use and cached with the annotation descriptors,
+     * instead of reflection. This removes the reflection overhead of each call
+     * and lets the JIT compiler inline the dispatch. Methods that aren't
+     * publicly accessible are still invoked by reflection. The default value
+     * is false.
+     * 
+     * @return True if annotated methods are invoked through method handles.
+     */
+    public boolean isCompiledInvocation() {
+        return compiledInvocation;
+    }
+
     /**
      * Indicates if conditional handling is enabled. The default value is true.
      * 
@@ -1610,6 +1615,19 @@ public abstract class ServerResource extends Resource {
         getResponse().setCommitted(committed);
     }
 
+    /**
+     * Indicates if annotated methods are invoked through method handles
+     * compiled at first use and cached with the annotation descriptors,
+     * instead of reflection.
+     * 
+     * @param compiledInvocation
+     *            True if annotated methods are invoked through method handles.
+     * @see #isCompiledInvocation()
+     */
+    public void setCompiledInvocation(boolean compiledInvocation) {
+        this.compiledInvocation = compiledInvocation;
+    }
+
     /**
      * Indicates if conditional handling is enabled. The default value is true.
      * 
@@ -53,6 +53,11 @@ import org.restlet.util.RouteList;
  * <li>Custom</li>
  * </ul>
  * <br>
+ * The best match and first match modes also exist in a compiled variant which
+ * only scores the routes whose URI template may match the remaining part,
+ * using an index of the templates' literal prefixes. This is recommended for
+ * routers with many attached routes.<br>
+ * <br>
  * Note that for routes using URI patterns will update the resource reference's
  * base reference during the routing if they are selected. It is also important
  * to know that the routing is very strict about path separators in your URI
@@ -77,6 +82,22 @@ public class Router extends Restlet {
      */
     public static final int MODE_BEST_MATCH = 1;
 
+    /**
+     * Each call will be routed like in the {@link #MODE_BEST_MATCH} mode, but
+     * only the routes whose URI template may match the remaining part are
+     * scored. See {@link RouteList#getCompiledBest(Request, Response, float)}
+     * method for implementation details.
+     */
+    public static final int MODE_COMPILED_BEST_MATCH = 7;
+
+    /**
+     * Each call will be routed like in the {@link #MODE_FIRST_MATCH} mode, but
+     * only the routes whose URI template may match the remaining part are
+     * scored. See {@link RouteList#getCompiledFirst(Request, Response, float)}
+     * method for implementation details.
+     */
+    public static final int MODE_COMPILED_FIRST_MATCH = 8;
+
     /**
      * Each call will be routed according to a custom mode. Override the
      * {@link #getCustom(Request, Response)} method to provide your own logic.
@@ -541,6 +562,16 @@ public class Router extends Restlet {
                             getRequiredScore());
                     break;
 
+                case MODE_COMPILED_BEST_MATCH:
+                    result = getRoutes().getCompiledBest(request, response,
+                            getRequiredScore());
+                    break;
+
+                case MODE_COMPILED_FIRST_MATCH:
+                    result = getRoutes().getCompiledFirst(request, response,
+                            getRequiredScore());
+                    break;
+
                 case MODE_LAST_MATCH:
                     result = getRoutes().getLast(request, response,
                             getRequiredScore());
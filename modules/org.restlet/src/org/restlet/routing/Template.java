@@ -49,6 +49,11 @@ import org.restlet.util.Resolver;
  * Note that the variable descriptors can be changed before the first parsing or
  * matching call. After that point, changes won't be taken into account.<br>
  * <br>
+ * Patterns only using the common variable types are matched by scanning the
+ * characters directly, without regular expression. Others, such as patterns
+ * using the {@link Variable#TYPE_COMMENT} type or repeating a variable, are
+ * compiled into a regular expression.<br>
+ * <br>
  * Format and parsing methods are specially available to deal with requests and
  * response. See {@link #format(Request, Response)} and
  * {@link #parse(String, Request)}.
@@ -66,6 +71,94 @@ public class Template {
     /** Mode where characters at the beginning must match the template. */
     public static final int MODE_STARTS_WITH = 1;
 
+    /**
+     * Element of a pattern compiled for the fast matcher, either a literal or
+     * a variable.
+     */
+    private static final class Element {
+
+        /** The index of the captured variable, or -1. */
+        private final int group;
+
+        /** The literal text or the value of a fixed variable. */
+        private final String literal;
+
+        /** The variable name or null for a literal. */
+        private final String name;
+
+        /** The variable descriptor or null for a literal. */
+        private final Variable variable;
+
+        /**
+         * Constructor.
+         * 
+         * @param literal
+         *            The literal text or the value of a fixed variable.
+         * @param name
+         *            The variable name or null for a literal.
+         * @param variable
+         *            The variable descriptor or null for a literal.
+         * @param group
+         *            The index of the captured variable, or -1.
+         */
+        private Element(String literal, String name, Variable variable,
+                int group) {
+            this.literal = literal;
+            this.name = name;
+            this.variable = variable;
+            this.group = group;
+        }
+    }
+
+    /** The ASCII characters matched by {@link Variable#TYPE_ALPHA}. */
+    private static final boolean[] ALPHA_CHARS;
+
+    /** The ASCII characters matched by {@link Variable#TYPE_ALPHA_DIGIT}. */
+    private static final boolean[] ALPHA_DIGIT_CHARS;
+
+    /** The ASCII characters matched by {@link Variable#TYPE_DIGIT}. */
+    private static final boolean[] DIGIT_CHARS;
+
+    /** The hexadecimal digits. */
+    private static final boolean[] HEXA_CHARS;
+
+    /** The single characters of a URI path segment. */
+    private static final boolean[] PCHAR_CHARS;
+
+    /** The single characters of a URI query parameter. */
+    private static final boolean[] QUERY_PARAM_CHARS;
+
+    /** The separators excluded by {@link Variable#TYPE_TOKEN}. */
+    private static final boolean[] SEPARATOR_CHARS;
+
+    /** The single characters matched by {@link Variable#TYPE_URI_ALL}. */
+    private static final boolean[] URI_ALL_CHARS;
+
+    /**
+     * The ASCII characters matched by {@link Variable#TYPE_URI_UNRESERVED}.
+     */
+    private static final boolean[] URI_UNRESERVED_CHARS;
+
+    /** The ASCII characters matched by {@link Variable#TYPE_WORD}. */
+    private static final boolean[] WORD_CHARS;
+
+    static {
+        String alpha = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+        String digit = "0123456789";
+        String unreserved = alpha + digit + "-._~";
+        String subDelims = "!$&'()*+,;=";
+        ALPHA_CHARS = getAsciiTable(alpha);
+        ALPHA_DIGIT_CHARS = getAsciiTable(alpha + digit);
+        DIGIT_CHARS = getAsciiTable(digit);
+        HEXA_CHARS = getAsciiTable(digit + "ABCDEFabcdef");
+        PCHAR_CHARS = getAsciiTable(unreserved + subDelims + ":@");
+        QUERY_PARAM_CHARS = getAsciiTable(unreserved + "!$'()*+,;:@");
+        SEPARATOR_CHARS = getAsciiTable("()<>@,;:[]\"/\\?={} \t");
+        URI_ALL_CHARS = getAsciiTable(unreserved + subDelims + ":/?#[]@");
+        URI_UNRESERVED_CHARS = getAsciiTable(unreserved);
+        WORD_CHARS = getAsciiTable(alpha + digit + "_");
+    }
+
     /**
      * Appends to a pattern a repeating group of a given content based on a
      * class of characters.
@@ -123,6 +216,169 @@ public class Template {
         pattern.append(")");
     }
 
+    /**
+     * Returns a table indicating which ASCII characters are part of the given
+     * string.
+     * 
+     * @param characters
+     *            The characters to include.
+     * @return The table indexed by character.
+     */
+    private static boolean[] getAsciiTable(String characters) {
+        boolean[] result = new boolean[128];
+
+        for (int i = 0; i < characters.length(); i++) {
+            result[characters.charAt(i)] = true;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the length of the unit of characters preceding the end of a
+     * sequence matched by the fast matcher.
+     * 
+     * @param type
+     *            The variable type.
+     * @param value
+     *            The formatted string.
+     * @param start
+     *            The start index of the matched sequence.
+     * @param end
+     *            The end index of the matched sequence.
+     * @return The length of the previous unit.
+     */
+    private static int getPreviousUnitLength(int type, String value,
+            int start, int end) {
+        if ((end - 3 >= start) && (value.charAt(end - 3) == '%')
+                && (type >= Variable.TYPE_URI_ALL)
+                && (type <= Variable.TYPE_URI_SEGMENT)) {
+            // Percent-encoded character, as the '%' character is never
+            // matched alone by these types
+            return 3;
+        } else if ((end - 2 >= start)
+                && Character.isLowSurrogate(value.charAt(end - 1))
+                && Character.isHighSurrogate(value.charAt(end - 2))) {
+            return 2;
+        }
+
+        return 1;
+    }
+
+    /**
+     * Returns the length of the unit of characters matched by a variable type
+     * at the given index, either one character, a surrogate pair or a
+     * percent-encoded character. Reproduces the regular expressions returned
+     * by {@link #getVariableRegex(Variable)}.
+     * 
+     * @param type
+     *            The variable type.
+     * @param value
+     *            The formatted string.
+     * @param index
+     *            The index of the unit.
+     * @return The length of the unit or 0 if it doesn't match.
+     */
+    private static int getUnitLength(int type, String value, int index) {
+        char next = value.charAt(index);
+        boolean ascii = next < 128;
+
+        switch (type) {
+        case Variable.TYPE_ALL:
+            if ((next == '\n') || (next == '\r') || (next == '\u0085')
+                    || (next == '\u2028') || (next == '\u2029')) {
+                return 0;
+            }
+
+            return getCodePointLength(value, index);
+        case Variable.TYPE_ALPHA:
+            return (ascii && ALPHA_CHARS[next]) ? 1 : 0;
+        case Variable.TYPE_DIGIT:
+            return (ascii && DIGIT_CHARS[next]) ? 1 : 0;
+        case Variable.TYPE_ALPHA_DIGIT:
+            return (ascii && ALPHA_DIGIT_CHARS[next]) ? 1 : 0;
+        case Variable.TYPE_URI_UNRESERVED:
+            return (ascii && URI_UNRESERVED_CHARS[next]) ? 1 : 0;
+        case Variable.TYPE_WORD:
+            return (ascii && WORD_CHARS[next]) ? 1 : 0;
+        case Variable.TYPE_TOKEN:
+            return (ascii && SEPARATOR_CHARS[next]) ? 0 : getCodePointLength(
+                    value, index);
+        case Variable.TYPE_COMMENT_ATTRIBUTE:
+            return ((next == ';') || (next == '(') || (next == ')')) ? 0
+                    : getCodePointLength(value, index);
+        case Variable.TYPE_URI_ALL:
+            return (ascii && URI_ALL_CHARS[next]) ? 1 : getPercentLength(
+                    value, index);
+        case Variable.TYPE_URI_SEGMENT:
+            return (ascii && PCHAR_CHARS[next]) ? 1 : getPercentLength(value,
+                    index);
+        case Variable.TYPE_URI_PATH:
+            return (ascii && (PCHAR_CHARS[next] || (next == '/'))) ? 1
+                    : getPercentLength(value, index);
+        case Variable.TYPE_URI_QUERY:
+        case Variable.TYPE_URI_FRAGMENT:
+            return (ascii && (PCHAR_CHARS[next] || (next == '/') || (next == '?'))) ? 1
+                    : getPercentLength(value, index);
+        case Variable.TYPE_URI_QUERY_PARAM:
+            return (ascii && (QUERY_PARAM_CHARS[next] || (next == '/') || (next == '?'))) ? 1
+                    : getPercentLength(value, index);
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the length of the code point at the given index.
+     * 
+     * @param value
+     *            The formatted string.
+     * @param index
+     *            The index of the code point.
+     * @return 2 for a surrogate pair, 1 otherwise.
+     */
+    private static int getCodePointLength(String value, int index) {
+        return (Character.isHighSurrogate(value.charAt(index))
+                && (index + 1 < value.length()) && Character
+                    .isLowSurrogate(value.charAt(index + 1))) ? 2 : 1;
+    }
+
+    /**
+     * Returns the length of the percent-encoded character at the given index.
+     * 
+     * @param value
+     *            The formatted string.
+     * @param index
+     *            The index of the '%' character.
+     * @return 3 for a percent-encoded character, 0 otherwise.
+     */
+    private static int getPercentLength(String value, int index) {
+        if ((value.charAt(index) == '%') && (index + 2 < value.length())) {
+            char first = value.charAt(index + 1);
+            char second = value.charAt(index + 2);
+
+            if ((first < 128) && HEXA_CHARS[first] && (second < 128)
+                    && HEXA_CHARS[second]) {
+                return 3;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Indicates if a variable type is supported by the fast matcher.
+     * 
+     * @param type
+     *            The variable type.
+     * @return True if the variable type is supported by the fast matcher.
+     */
+    private static boolean isFastType(int type) {
+        return (type >= Variable.TYPE_ALL) && (type <= Variable.TYPE_WORD)
+                && (type != Variable.TYPE_COMMENT)
+                && (type != Variable.TYPE_URI_SCHEME);
+    }
+
     /**
      * Returns the Regex pattern string corresponding to a variable.
      * 
@@ -234,6 +490,9 @@ public class Template {
     /** The default variable to use when no matching variable descriptor exists. */
     private volatile Variable defaultVariable;
 
+    /** The pattern compiled for the fast matcher, or null. */
+    private volatile Element[] elements;
+
     /** True if the variables must be encoded when formatting the template. */
     private volatile boolean encodingVariables;
 
@@ -246,6 +505,9 @@ public class Template {
     /** The pattern to use for formatting or parsing. */
     private volatile String pattern;
 
+    /** Indicates if the pattern must be matched by a Regex pattern. */
+    private volatile boolean regexOnly;
+
     /** The internal Regex pattern. */
     private volatile Pattern regexPattern;
 
@@ -335,6 +597,78 @@ public class Template {
         this.encodingVariables = encodingVariables;
     }
 
+    /**
+     * Compiles the pattern for the fast matcher.
+     * 
+     * @return The compiled elements or null if the pattern must be matched by
+     *         a Regex pattern.
+     */
+    private Element[] compileElements() {
+        List<Element> result = new ArrayList<Element>();
+        List<String> names = new ArrayList<String>();
+        StringBuilder literal = new StringBuilder();
+        String pattern = getPattern();
+        int i = 0;
+
+        while (i < pattern.length()) {
+            char next = pattern.charAt(i);
+
+            if (next == '{') {
+                int end = pattern.indexOf('}', i + 1);
+
+                if (end == -1) {
+                    return null;
+                }
+
+                String name = pattern.substring(i + 1, end);
+
+                if ((name.length() == 0) || names.contains(name)) {
+                    // Empty or repeated variables are handled by the regex
+                    return null;
+                }
+
+                for (int j = 0; j < name.length(); j++) {
+                    if (!Reference.isUnreserved(name.charAt(j))) {
+                        return null;
+                    }
+                }
+
+                Variable var = getVariables().get(name);
+
+                if (var == null) {
+                    var = getDefaultVariable();
+                }
+
+                if (var.isFixed() ? (var.getDefaultValue() == null)
+                        : !isFastType(var.getType())) {
+                    return null;
+                }
+
+                if (literal.length() > 0) {
+                    result.add(new Element(literal.toString(), null, null, -1));
+                    literal.setLength(0);
+                }
+
+                result.add(new Element(var.isFixed() ? var.getDefaultValue()
+                        : null, name, var, names.size()));
+                names.add(name);
+                i = end + 1;
+            } else if ((next == '}') || (next == '+')) {
+                // Invalid or not escaped in the regex
+                return null;
+            } else {
+                literal.append(next);
+                i++;
+            }
+        }
+
+        if (literal.length() > 0) {
+            result.add(new Element(literal.toString(), null, null, -1));
+        }
+
+        return result.toArray(new Element[result.size()]);
+    }
+
     /**
      * Creates a formatted string based on the given map of values.
      * 
@@ -447,6 +781,35 @@ public class Template {
         return result.toString();
     }
 
+    /**
+     * Returns the pattern compiled for the fast matcher, compiling it if
+     * needed.
+     * 
+     * @return The compiled elements or null if the pattern must be matched by
+     *         a Regex pattern.
+     */
+    private Element[] getElements() {
+        Element[] result = this.elements;
+
+        if ((result == null) && !this.regexOnly) {
+            synchronized (this) {
+                result = this.elements;
+
+                if ((result == null) && !this.regexOnly) {
+                    result = compileElements();
+
+                    if (result == null) {
+                        this.regexOnly = true;
+                    } else {
+                        this.elements = result;
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
     /**
      * Returns the default variable.
      * 
@@ -674,7 +1037,12 @@ public class Template {
         int result = -1;
 
         try {
-            if (formattedString != null) {
+            Element[] elements = (formattedString == null) ? null
+                    : getElements();
+
+            if (elements != null) {
+                result = matchElements(elements, 0, formattedString, 0, null);
+            } else if (formattedString != null) {
                 final Matcher matcher = getRegexPattern().matcher(
                         formattedString);
 
@@ -694,6 +1062,84 @@ public class Template {
         return result;
     }
 
+    /**
+     * Matches the compiled elements from the given index, without regular
+     * expression. The variables are greedy and backtrack like their Regex
+     * counterparts so that the same matches are returned.
+     * 
+     * @param elements
+     *            The compiled elements.
+     * @param index
+     *            The index of the element to match.
+     * @param value
+     *            The formatted string.
+     * @param position
+     *            The current position in the formatted string.
+     * @param groups
+     *            The bounds of the captured variables to update, or null if
+     *            only the matched length is needed.
+     * @return The number of matched characters or -1 if the match failed.
+     */
+    private int matchElements(Element[] elements, int index, String value,
+            int position, int[] groups) {
+        if (index == elements.length) {
+            if (getMatchingMode() == MODE_STARTS_WITH) {
+                return position;
+            }
+
+            return ((getMatchingMode() == MODE_EQUALS) && (position == value
+                    .length())) ? position : -1;
+        }
+
+        Element element = elements[index];
+        int result = -1;
+
+        if (element.literal != null) {
+            if (value.startsWith(element.literal, position)) {
+                int end = position + element.literal.length();
+                result = matchElements(elements, index + 1, value, end, groups);
+
+                if ((result != -1) && (groups != null)
+                        && (element.group != -1)) {
+                    groups[2 * element.group] = position;
+                    groups[2 * element.group + 1] = end;
+                }
+            }
+        } else {
+            int type = element.variable.getType();
+            int end = position;
+            int count = 0;
+            int unitLength;
+
+            // Greedy match
+            while ((end < value.length())
+                    && ((unitLength = getUnitLength(type, value, end)) > 0)) {
+                end += unitLength;
+                count++;
+            }
+
+            // Backtracking
+            int min = element.variable.isRequired() ? 1 : 0;
+
+            while ((result == -1) && (count >= min)) {
+                result = matchElements(elements, index + 1, value, end, groups);
+
+                if (result != -1) {
+                    if (groups != null) {
+                        groups[2 * element.group] = position;
+                        groups[2 * element.group + 1] = end;
+                    }
+                } else if (count > 0) {
+                    end -= getPreviousUnitLength(type, value, position, end);
+                }
+
+                count--;
+            }
+        }
+
+        return result;
+    }
+
     /**
      * Attempts to parse a formatted reference. If the parsing succeeds, the
      * given request's attributes are updated.<br>
@@ -732,7 +1178,25 @@ public class Template {
             boolean loggable) {
         int result = -1;
 
-        if (formattedString != null) {
+        Element[] elements = (formattedString == null) ? null : getElements();
+
+        if (elements != null) {
+            int[] groups = new int[2 * elements.length];
+            result = matchElements(elements, 0, formattedString, 0, groups);
+
+            if (result != -1) {
+                // Update the attributes with the variables value
+                for (Element element : elements) {
+                    if (element.name != null) {
+                        String attributeValue = formattedString.substring(
+                                groups[2 * element.group],
+                                groups[2 * element.group + 1]);
+                        updateVariable(variables, element.name,
+                                attributeValue, loggable);
+                    }
+                }
+            }
+        } else if (formattedString != null) {
             try {
                 Matcher matcher = getRegexPattern().matcher(formattedString);
                 boolean matched = ((getMatchingMode() == MODE_EQUALS) && matcher
@@ -751,20 +1215,8 @@ public class Template {
                     for (int i = 0; i < getRegexVariables().size(); i++) {
                         attributeName = getRegexVariables().get(i);
                         attributeValue = matcher.group(i + 1);
-                        Variable var = getVariables().get(attributeName);
-
-                        if ((var != null) && var.isDecodingOnParse()) {
-                            attributeValue = Reference.decode(attributeValue);
-                        }
-
-                        if (loggable) {
-                            getLogger().fine(
-                                    "Template variable \"" + attributeName
-                                            + "\" matched with value \""
-                                            + attributeValue + "\"");
-                        }
-
-                        variables.put(attributeName, attributeValue);
+                        updateVariable(variables, attributeName,
+                                attributeValue, loggable);
                     }
                 }
             } catch (StackOverflowError soe) {
@@ -892,6 +1344,8 @@ public class Template {
     public void setPattern(String pattern) {
         this.pattern = pattern;
         this.regexPattern = null;
+        this.elements = null;
+        this.regexOnly = false;
     }
 
     /**
@@ -912,4 +1366,33 @@ public class Template {
         }
     }
 
+    /**
+     * Updates a parsed variable value, decoding it if needed.
+     * 
+     * @param variables
+     *            The map of variables to update.
+     * @param name
+     *            The variable name.
+     * @param value
+     *            The parsed value.
+     * @param loggable
+     *            True if the parsing should be logged.
+     */
+    private void updateVariable(Map<String, Object> variables, String name,
+            String value, boolean loggable) {
+        Variable var = getVariables().get(name);
+
+        if ((var != null) && var.isDecodingOnParse()) {
+            value = Reference.decode(value);
+        }
+
+        if (loggable) {
+            getLogger().fine(
+                    "Template variable \"" + name + "\" matched with value \""
+                            + value + "\"");
+        }
+
+        variables.put(name, value);
+    }
+
 }
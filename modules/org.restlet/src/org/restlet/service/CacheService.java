@@ -0,0 +1,187 @@
+/**
+ * Copyright 2005-2014 Restlet
+ * 
+ * The contents of this file are subject to the terms of one of the following
+ * open source licenses: Apache 2.0 or or EPL 1.0 (the "Licenses"). You can
+ * select the license that you prefer but you may not use this file except in
+ * compliance with one of these Licenses.
+ * 
+ * You can obtain a copy of the Apache 2.0 license at
+ * http://www.opensource.org/licenses/apache-2.0
+ * 
+ * You can obtain a copy of the EPL 1.0 license at
+ * http://www.opensource.org/licenses/eclipse-1.0
+ * 
+ * See the Licenses for the specific language governing permissions and
+ * limitations under the Licenses.
+ * 
+ * Alternatively, you can obtain a royalty free commercial license with less
+ * limitations, transferable or non-transferable, directly at
+ * http://restlet.com/products/restlet-framework
+ * 
+ * Restlet is a registered trademark of Restlet S.A.S.
+ */
+
+
+package org.restlet.service;
+
+import org.restlet.Context;
+import org.restlet.engine.cache.CacheFilter;
+import org.restlet.engine.cache.CacheStore;
+import org.restlet.engine.cache.HttpCache;
+import org.restlet.engine.cache.MemoryCacheStore;
+import org.restlet.routing.Filter;
+
+/**
+ * Application service caching the responses of the resources. Fresh responses
+ * are served without invoking the resources, taking the variant negotiated
+ * for each request into account, and stale responses are revalidated with
+ * conditional requests. The freshness is driven by the cache directives, the
+ * expiration date, the tag and the modification date set by the resources.<br>
+ * <br>
+ * The cache is shared by all the clients of the application so private
+ * responses, responses setting cookies and responses to authenticated
+ * requests are never stored. By default, the entries are kept in the Java
+ * heap using a {@link MemoryCacheStore}, but other storage tiers can be set
+ * via {@link #setStore(CacheStore)}.<br>
+ * <br>
+ * The service can also cache the responses received by the client calls of
+ * the application, in a separate private cache that is enabled with
+ * {@link #setClientCaching(boolean)}. This service is disabled by default.
+ * 
+ * @author Jerome Louvel
+ */
+public class CacheService extends Service {
+
+    /** The HTTP cache of the resources. */
+    private final HttpCache cache;
+
+    /** The private HTTP cache of the client calls. */
+    private final HttpCache clientCache;
+
+    /** Indicates if the responses to the client calls are cached. */
+    private volatile boolean clientCaching;
+
+    /** Indicates if the responses of the resources are cached. */
+    private volatile boolean serverCaching;
+
+    /**
+     * Constructor.
+     */
+    public CacheService() {
+        this(true);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param enabled
+     *            True if the service has been enabled.
+     */
+    public CacheService(boolean enabled) {
+        super(enabled);
+        this.cache = new HttpCache(new MemoryCacheStore(), true);
+        this.clientCache = new HttpCache(new MemoryCacheStore(), false);
+        this.clientCaching = false;
+        this.serverCaching = true;
+    }
+
+    @Override
+    public Filter createInboundFilter(Context context) {
+        return isServerCaching() ? new CacheFilter(context, getCache()) : null;
+    }
+
+    @Override
+    public Filter createOutboundFilter(Context context) {
+        return isClientCaching() ? new CacheFilter(context, getClientCache())
+                : null;
+    }
+
+    /**
+     * Returns the HTTP cache of the resources, giving access to the hit, miss,
+     * revalidation and eviction statistics.
+     * 
+     * @return The HTTP cache of the resources.
+     */
+    public HttpCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Returns the private HTTP cache of the client calls, giving access to its
+     * statistics and storage tier.
+     * 
+     * @return The private HTTP cache of the client calls.
+     */
+    public HttpCache getClientCache() {
+        return clientCache;
+    }
+
+    /**
+     * Returns the storage tier of the resources cache.
+     * 
+     * @return The storage tier.
+     */
+    public CacheStore getStore() {
+        return getCache().getStore();
+    }
+
+    /**
+     * Indicates if the responses to the client calls are cached. False by
+     * default.
+     * 
+     * @return True if the responses to the client calls are cached.
+     */
+    public boolean isClientCaching() {
+        return clientCaching;
+    }
+
+    /**
+     * Indicates if the responses of the resources are cached. True by default.
+     * 
+     * @return True if the responses of the resources are cached.
+     */
+    public boolean isServerCaching() {
+        return serverCaching;
+    }
+
+    /**
+     * Indicates if the responses to the client calls should be cached. Must be
+     * set before the application is started.
+     * 
+     * @param clientCaching
+     *            True if the responses to the client calls should be cached.
+     */
+    public void setClientCaching(boolean clientCaching) {
+        this.clientCaching = clientCaching;
+    }
+
+    /**
+     * Indicates if the responses of the resources should be cached. Must be
+     * set before the application is started.
+     * 
+     * @param serverCaching
+     *            True if the responses of the resources should be cached.
+     */
+    public void setServerCaching(boolean serverCaching) {
+        this.serverCaching = serverCaching;
+    }
+
+    /**
+     * Sets the storage tier of the resources cache.
+     * 
+     * @param store
+     *            The storage tier.
+     */
+    public void setStore(CacheStore store) {
+        getCache().setStore(store);
+    }
+
+    @Override
+    public synchronized void stop() throws Exception {
+        super.stop();
+        getCache().clear();
+        getClientCache().clear();
+    }
+
+}
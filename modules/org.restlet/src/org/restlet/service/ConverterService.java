@@ -120,7 +120,7 @@ public class ConverterService extends Service {
         List<Class<?>> helperObjectClasses = null;
 
         for (ConverterHelper ch : Engine.getInstance()
-                .getRegisteredConverters()) {
+                .getRegisteredConvertersSnapshot()) {
             helperObjectClasses = ch.getObjectClasses(source);
 
             if (helperObjectClasses != null) {
@@ -391,7 +391,7 @@ public class ConverterService extends Service {
     public void updatePreferences(List<Preference<MediaType>> preferences,
             Class<?> entity) {
         for (ConverterHelper ch : Engine.getInstance()
-                .getRegisteredConverters()) {
+                .getRegisteredConvertersSnapshot()) {
             ch.updatePreferences(preferences, entity);
         }
     }
@@ -24,16 +24,14 @@
 
 package org.restlet.service;
 
-import java.util.logging.Level;
-
 import org.restlet.Application;
 import org.restlet.Context;
 import org.restlet.Request;
 import org.restlet.Response;
-import org.restlet.data.Method;
 import org.restlet.data.Reference;
-import org.restlet.data.Status;
-import org.restlet.engine.Engine;
+import org.restlet.engine.log.AccessLogEntry;
+import org.restlet.engine.log.AccessLogTemplate;
+import org.restlet.engine.log.AccessLogWriter;
 import org.restlet.engine.log.LogFilter;
 import org.restlet.representation.Representation;
 import org.restlet.resource.ClientResource;
@@ -73,6 +71,12 @@ import org.restlet.routing.Template;
  * <br>
  * For custom access log format, see the syntax to use and the list of available
  * variable names in {@link org.restlet.routing.Template}. <br>
+ * <br>
+ * When the asynchronous mode is enabled, the calling threads only capture the
+ * fields needed by the log format into an {@link AccessLogEntry}. The entries
+ * are formatted and written by batches on a background thread, including the
+ * identity check. When its buffer is saturated, the new entries are dropped
+ * unless the calling threads are configured to wait. <br>
  * 
  * @see <a href="http://wiki.restlet.org/docs_2.2/201-restlet.html">User Guide -
  *      Access logging</a>
@@ -82,6 +86,21 @@ import org.restlet.routing.Template;
  */
 public class LogService extends Service {
 
+    /** The writer of access log entries when asynchronous. */
+    private volatile AccessLogWriter accessLogWriter;
+
+    /** Indicates if the access log entries are written asynchronously. */
+    private volatile boolean asynchronous;
+
+    /** The maximum number of entries written before flushing the handlers. */
+    private volatile int batchSize;
+
+    /** Indicates if the calling threads wait when the buffer is saturated. */
+    private volatile boolean blockingWhenSaturated;
+
+    /** The capacity of the buffer of asynchronous entries. */
+    private volatile int bufferSize;
+
     /** Indicates if the debugging mode is enabled. */
     private volatile boolean debugging;
 
@@ -100,6 +119,9 @@ public class LogService extends Service {
     /** The response log entry format. */
     private volatile String responseLogFormat;
 
+    /** The response log template precompiled for asynchronous entries. */
+    private volatile AccessLogTemplate responseLogAccessTemplate;
+
     /** The response log template to use. */
     protected volatile Template responseLogTemplate;
 
@@ -123,6 +145,10 @@ public class LogService extends Service {
         this.responseLogFormat = null;
         this.logPropertiesRef = null;
         this.identityCheck = false;
+        this.asynchronous = false;
+        this.batchSize = 128;
+        this.blockingWhenSaturated = false;
+        this.bufferSize = 8192;
     }
 
     @Override
@@ -130,31 +156,52 @@ public class LogService extends Service {
         return new LogFilter(context, this);
     }
 
+    /**
+     * Returns the writer of access log entries, or null if the service isn't
+     * started in asynchronous mode.
+     * 
+     * @return The writer of access log entries.
+     */
+    public AccessLogWriter getAccessLogWriter() {
+        return accessLogWriter;
+    }
+
+    /**
+     * Returns the maximum number of entries written before flushing the log
+     * handlers in asynchronous mode. Default value is 128.
+     * 
+     * @return The maximum number of entries written before flushing.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Returns the capacity of the buffer of entries waiting to be written in
+     * asynchronous mode. Default value is 8192.
+     * 
+     * @return The capacity of the buffer of entries.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
     /**
      * Format a log entry using the default IIS log format.
      * 
-     * @param response
-     *            The response to log.
-     * @param duration
-     *            The call duration (in milliseconds).
+     * @param entry
+     *            The captured log entry.
      * @return The formatted log entry.
      */
-    protected String getDefaultResponseLogMessage(Response response,
-            int duration) {
+    protected String getDefaultResponseLogMessage(AccessLogEntry entry) {
         StringBuilder sb = new StringBuilder();
-        Request request = response.getRequest();
-        long currentTime = System.currentTimeMillis();
-
-        // Append the date of the request
-        sb.append(String.format("%tF", currentTime));
-        sb.append('\t');
 
-        // Append the time of the request
-        sb.append(String.format("%tT", currentTime));
+        // Append the date and time of the request
+        sb.append(String.format("%1$tF\t%1$tT", entry.getTime()));
         sb.append('\t');
 
         // Append the client IP address
-        String clientAddress = request.getClientInfo().getUpstreamAddress();
+        String clientAddress = entry.getClientAddress();
         sb.append((clientAddress == null) ? "-" : clientAddress);
         sb.append('\t');
 
@@ -162,14 +209,12 @@ public class LogService extends Service {
         if (isIdentityCheck()) {
             // [ifndef gae]
             org.restlet.engine.log.IdentClient ic = new org.restlet.engine.log.IdentClient(
-                    request.getClientInfo().getUpstreamAddress(), request
-                            .getClientInfo().getPort(), response
-                            .getServerInfo().getPort());
+                    clientAddress, entry.getClientPort(),
+                    entry.getServerPort());
             sb.append((ic.getUserIdentifier() == null) ? "-" : ic
                     .getUserIdentifier());
-        } else if ((request.getChallengeResponse() != null)
-                && (request.getChallengeResponse().getIdentifier() != null)) {
-            sb.append(request.getChallengeResponse().getIdentifier());
+        } else if (entry.getUserIdentifier() != null) {
+            sb.append(entry.getUserIdentifier());
         } else {
             // [enddef]
             sb.append('-');
@@ -178,89 +223,79 @@ public class LogService extends Service {
         sb.append('\t');
 
         // Append the server IP address
-        String serverAddress = response.getServerInfo().getAddress();
+        String serverAddress = entry.getServerAddress();
         sb.append((serverAddress == null) ? "-" : serverAddress);
         sb.append('\t');
 
         // Append the server port
-        Integer serverport = response.getServerInfo().getPort();
-        sb.append((serverport == null) ? "-" : serverport.toString());
+        sb.append(entry.getServerPort());
         sb.append('\t');
 
         // Append the method name
-        String methodName = (request.getMethod() == null) ? "-" : request
-                .getMethod().getName();
+        String methodName = entry.getMethodName();
         sb.append((methodName == null) ? "-" : methodName);
 
         // Append the resource path
         sb.append('\t');
-        String resourcePath = (request.getResourceRef() == null) ? "-"
-                : request.getResourceRef().getPath();
+        String resourcePath = entry.getResourcePath();
         sb.append((resourcePath == null) ? "-" : resourcePath);
 
         // Append the resource query
         sb.append('\t');
-        String resourceQuery = (request.getResourceRef() == null) ? "-"
-                : request.getResourceRef().getQuery();
+        String resourceQuery = entry.getResourceQuery();
         sb.append((resourceQuery == null) ? "-" : resourceQuery);
 
         // Append the status code
         sb.append('\t');
-        sb.append((response.getStatus() == null) ? "-" : Integer
-                .toString(response.getStatus().getCode()));
+        sb.append((entry.getStatusCode() == -1) ? "-" : Integer.toString(entry
+                .getStatusCode()));
 
         // Append the returned size
         sb.append('\t');
-
-        if (!response.isEntityAvailable()
-                || Status.REDIRECTION_NOT_MODIFIED.equals(response.getStatus())
-                || Status.SUCCESS_NO_CONTENT.equals(response.getStatus())
-                || Method.HEAD.equals(request.getMethod())) {
-            sb.append('0');
-        } else {
-            sb.append((response.getEntity().getSize() == -1) ? "-" : Long
-                    .toString(response.getEntity().getSize()));
-        }
+        sb.append((entry.getSentSize() == -1) ? "-" : Long.toString(entry
+                .getSentSize()));
 
         // Append the received size
         sb.append('\t');
-
-        try {
-            if (request.getEntity() == null) {
-                sb.append('0');
-            } else {
-                sb.append((request.getEntity().getSize() == -1) ? "-" : Long
-                        .toString(request.getEntity().getSize()));
-            }
-        } catch (Throwable t) {
-            // Error while getting the request's entity, cf issue #931
-            Engine.getLogger(LogService.class).log(Level.SEVERE,
-                    "Cannot retrieve size of request's entity", t);
-            sb.append("-");
-        }
+        sb.append((entry.getReceivedSize() == -1) ? "-" : Long.toString(entry
+                .getReceivedSize()));
 
         // Append the duration
         sb.append('\t');
-        sb.append(duration);
+        sb.append(entry.getDuration());
 
         // Append the host reference
         sb.append('\t');
-        sb.append((request.getHostRef() == null) ? "-" : request.getHostRef()
-                .toString());
+        sb.append((entry.getHostRef() == null) ? "-" : entry.getHostRef());
 
         // Append the agent name
         sb.append('\t');
-        String agentName = request.getClientInfo().getAgent();
+        String agentName = entry.getAgentName();
         sb.append((agentName == null) ? "-" : agentName);
 
         // Append the referrer
         sb.append('\t');
-        sb.append((request.getReferrerRef() == null) ? "-" : request
-                .getReferrerRef().getIdentifier());
+        sb.append((entry.getReferrerRef() == null) ? "-" : entry
+                .getReferrerRef());
 
         return sb.toString();
     }
 
+    /**
+     * Format a log entry using the default IIS log format.
+     * 
+     * @param response
+     *            The response to log.
+     * @param duration
+     *            The call duration (in milliseconds).
+     * @return The formatted log entry.
+     */
+    protected String getDefaultResponseLogMessage(Response response,
+            int duration) {
+        return getDefaultResponseLogMessage(new AccessLogEntry(response,
+                duration));
+    }
+
     /**
      * Returns the URI template of loggable resource references. Returns null by
      * default, meaning the all requests are loggable, independant of their
@@ -305,6 +340,49 @@ public class LogService extends Service {
         return this.responseLogFormat;
     }
 
+    /**
+     * Captures the fields of a call needed to format its access log entry
+     * later. Only the variables of the log template are resolved if the
+     * property is provided.
+     * 
+     * @param response
+     *            The response to log.
+     * @param duration
+     *            The call duration (in milliseconds).
+     * @return The captured log entry.
+     */
+    public AccessLogEntry getResponseLogEntry(Response response, int duration) {
+        Template template = this.responseLogTemplate;
+
+        if (template == null) {
+            return new AccessLogEntry(response, duration);
+        }
+
+        AccessLogTemplate accessTemplate = this.responseLogAccessTemplate;
+
+        if ((accessTemplate == null)
+                || (accessTemplate.getTemplate() != template)) {
+            accessTemplate = new AccessLogTemplate(template);
+            this.responseLogAccessTemplate = accessTemplate;
+        }
+
+        return new AccessLogEntry(accessTemplate, response);
+    }
+
+    /**
+     * Format a captured access log entry.
+     * 
+     * @param entry
+     *            The captured log entry.
+     * @return The formatted log entry.
+     * @see #getResponseLogEntry(Response, int)
+     */
+    public String getResponseLogMessage(AccessLogEntry entry) {
+        return (entry.getTemplate() != null) ? entry.getTemplate().format(
+                entry.getVariableValues())
+                : getDefaultResponseLogMessage(entry);
+    }
+
     /**
      * Format an access log entry. If the log template property isn't provided,
      * then a default IIS like format is used.
@@ -329,6 +407,27 @@ public class LogService extends Service {
         return result;
     }
 
+    /**
+     * Indicates if the access log entries are formatted and written by a
+     * background thread. Default value is false.
+     * 
+     * @return True if the access log entries are written asynchronously.
+     */
+    public boolean isAsynchronous() {
+        return asynchronous;
+    }
+
+    /**
+     * Indicates if the calling threads wait for a free slot when the buffer of
+     * asynchronous entries is saturated, instead of dropping the entries.
+     * Default value is false.
+     * 
+     * @return True if the calling threads wait when the buffer is saturated.
+     */
+    public boolean isBlockingWhenSaturated() {
+        return blockingWhenSaturated;
+    }
+
     /**
      * Indicates if the debugging mode is enabled. False by default.
      * 
@@ -364,6 +463,51 @@ public class LogService extends Service {
                 .match(request.getResourceRef().getTargetRef().toString()) > 0;
     }
 
+    /**
+     * Indicates if the access log entries are formatted and written by a
+     * background thread. Takes effect when the service is started.
+     * 
+     * @param asynchronous
+     *            True if the access log entries are written asynchronously.
+     */
+    public void setAsynchronous(boolean asynchronous) {
+        this.asynchronous = asynchronous;
+    }
+
+    /**
+     * Sets the maximum number of entries written before flushing the log
+     * handlers in asynchronous mode.
+     * 
+     * @param batchSize
+     *            The maximum number of entries written before flushing.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Indicates if the calling threads wait for a free slot when the buffer of
+     * asynchronous entries is saturated, instead of dropping the entries.
+     * 
+     * @param blockingWhenSaturated
+     *            True if the calling threads wait when the buffer is
+     *            saturated.
+     */
+    public void setBlockingWhenSaturated(boolean blockingWhenSaturated) {
+        this.blockingWhenSaturated = blockingWhenSaturated;
+    }
+
+    /**
+     * Sets the capacity of the buffer of entries waiting to be written in
+     * asynchronous mode. It is rounded up to a power of two.
+     * 
+     * @param bufferSize
+     *            The capacity of the buffer of entries.
+     */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
     /**
      * Indicates if the debugging mode is enabled.
      * 
@@ -463,6 +607,28 @@ public class LogService extends Service {
 
         this.responseLogTemplate = (getResponseLogFormat() == null) ? null
                 : new Template(getResponseLogFormat());
+        this.responseLogAccessTemplate = null;
+
+        if (this.responseLogTemplate != null) {
+            this.responseLogAccessTemplate = new AccessLogTemplate(
+                    this.responseLogTemplate);
+        }
+
+        // Replaces the writer of a previous start
+        AccessLogWriter previousWriter = this.accessLogWriter;
+        this.accessLogWriter = null;
+
+        if (isAsynchronous()) {
+            AccessLogWriter writer = new AccessLogWriter(this,
+                    getBufferSize(), getBatchSize(), isBlockingWhenSaturated());
+            writer.start();
+            this.accessLogWriter = writer;
+        }
+
+        if (previousWriter != null) {
+            previousWriter.stop();
+        }
+
         // [ifndef gae]
         if (getLogPropertiesRef() != null) {
             Representation logProperties = new ClientResource(getContext(),
@@ -475,4 +641,19 @@ public class LogService extends Service {
         }
         // [enddef]
     }
+
+    /**
+     * Stops the log service after writing the pending asynchronous entries.
+     */
+    @Override
+    public synchronized void stop() throws Exception {
+        AccessLogWriter writer = this.accessLogWriter;
+
+        if (writer != null) {
+            writer.stop();
+            this.accessLogWriter = null;
+        }
+
+        super.stop();
+    }
 }
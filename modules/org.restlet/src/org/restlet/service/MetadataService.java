@@ -25,7 +25,9 @@
 package org.restlet.service;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.restlet.data.CharacterSet;
@@ -41,10 +43,53 @@ import org.restlet.engine.application.MetadataExtension;
  * {@link #addCommonExtensions()} method.<br>
  * <br>
  * Internally, the mappings are stored as a list of "extension, metadata" pairs.
+ * This list is indexed by extension name and by metadata so that lookups don't
+ * depend on the number of mappings. The index is rebuilt after each update and
+ * never blocks concurrent readers.
  * 
  * @author Jerome Louvel
  */
 public class MetadataService extends Service {
+
+    /**
+     * Immutable index of the mappings by extension name and by metadata.
+     */
+    private static final class MappingsIndex {
+
+        /** The first extension name mapped to each metadata. */
+        private final Map<Metadata, String> extensions;
+
+        /** The ordered metadata mapped to each extension name. */
+        private final Map<String, List<Metadata>> metadata;
+
+        /**
+         * Constructor.
+         * 
+         * @param mappings
+         *            The ordered mappings to index.
+         */
+        private MappingsIndex(List<MetadataExtension> mappings) {
+            this.extensions = new HashMap<Metadata, String>();
+            this.metadata = new HashMap<String, List<Metadata>>();
+
+            for (MetadataExtension mapping : mappings) {
+                List<Metadata> list = this.metadata.get(mapping.getName());
+
+                if (list == null) {
+                    list = new ArrayList<Metadata>(2);
+                    this.metadata.put(mapping.getName(), list);
+                }
+
+                list.add(mapping.getMetadata());
+
+                if (!this.extensions.containsKey(mapping.getMetadata())) {
+                    this.extensions.put(mapping.getMetadata(),
+                            mapping.getName());
+                }
+            }
+        }
+    }
+
     /** The default character set for textual representations. */
     private volatile CharacterSet defaultCharacterSet;
 
@@ -57,6 +102,9 @@ public class MetadataService extends Service {
     /** The default media type for representations. */
     private volatile MediaType defaultMediaType;
 
+    /** The index of the mappings, replaced after each update. */
+    private volatile MappingsIndex index;
+
     /** The list of mappings between extension names and metadata. */
     private final List<MetadataExtension> mappings;
 
@@ -75,6 +123,7 @@ public class MetadataService extends Service {
         // [ifdef gwt] instruction uncomment
         // this.defaultMediaType = MediaType.APPLICATION_JSON;
         this.mappings = new CopyOnWriteArrayList<MetadataExtension>();
+        this.index = new MappingsIndex(this.mappings);
         addCommonExtensions();
     }
 
@@ -366,7 +415,10 @@ public class MetadataService extends Service {
         ext(dm, "xml", MediaType.APPLICATION_XML);
 
         // Add all those mappings
-        this.mappings.addAll(dm);
+        synchronized (this.mappings) {
+            this.mappings.addAll(dm);
+            this.index = new MappingsIndex(this.mappings);
+        }
     }
 
     /**
@@ -395,12 +447,17 @@ public class MetadataService extends Service {
      */
     public void addExtension(String extension, Metadata metadata,
             boolean preferred) {
-        if (preferred) {
-            // Add the mapping at the beginning of the list
-            this.mappings.add(0, new MetadataExtension(extension, metadata));
-        } else {
-            // Add the mapping at the end of the list
-            this.mappings.add(new MetadataExtension(extension, metadata));
+        synchronized (this.mappings) {
+            if (preferred) {
+                // Add the mapping at the beginning of the list
+                this.mappings
+                        .add(0, new MetadataExtension(extension, metadata));
+            } else {
+                // Add the mapping at the end of the list
+                this.mappings.add(new MetadataExtension(extension, metadata));
+            }
+
+            this.index = new MappingsIndex(this.mappings);
         }
     }
 
@@ -408,7 +465,10 @@ public class MetadataService extends Service {
      * clears the mappings for all extensions.
      */
     public void clearExtensions() {
-        this.mappings.clear();
+        synchronized (this.mappings) {
+            this.mappings.clear();
+            this.index = new MappingsIndex(this.mappings);
+        }
     }
 
     /**
@@ -481,17 +541,16 @@ public class MetadataService extends Service {
      */
     public List<CharacterSet> getAllCharacterSets(String extension) {
         List<CharacterSet> result = null;
+        List<Metadata> metadata = getIndexedMetadata(extension);
 
-        if (extension != null) {
-            // Look for all registered convenient mapping.
-            for (MetadataExtension metadataExtension : this.mappings) {
-                if (extension.equals(metadataExtension.getName())
-                        && (metadataExtension.getMetadata() instanceof CharacterSet)) {
+        if (metadata != null) {
+            for (Metadata m : metadata) {
+                if (m instanceof CharacterSet) {
                     if (result == null) {
                         result = new ArrayList<CharacterSet>();
                     }
 
-                    result.add(metadataExtension.getCharacterSet());
+                    result.add((CharacterSet) m);
                 }
             }
         }
@@ -562,17 +621,16 @@ public class MetadataService extends Service {
      */
     public List<Language> getAllLanguages(String extension) {
         List<Language> result = null;
+        List<Metadata> metadata = getIndexedMetadata(extension);
 
-        if (extension != null) {
-            // Look for all registered convenient mapping.
-            for (MetadataExtension metadataExtension : this.mappings) {
-                if (extension.equals(metadataExtension.getName())
-                        && (metadataExtension.getMetadata() instanceof Language)) {
+        if (metadata != null) {
+            for (Metadata m : metadata) {
+                if (m instanceof Language) {
                     if (result == null) {
                         result = new ArrayList<Language>();
                     }
 
-                    result.add(metadataExtension.getLanguage());
+                    result.add((Language) m);
                 }
             }
         }
@@ -608,17 +666,16 @@ public class MetadataService extends Service {
      */
     public List<MediaType> getAllMediaTypes(String extension) {
         List<MediaType> result = null;
+        List<Metadata> metadata = getIndexedMetadata(extension);
 
-        if (extension != null) {
-            // Look for all registered convenient mapping.
-            for (MetadataExtension metadataExtension : this.mappings) {
-                if (extension.equals(metadataExtension.getName())
-                        && (metadataExtension.getMetadata() instanceof MediaType)) {
+        if (metadata != null) {
+            for (Metadata m : metadata) {
+                if (m instanceof MediaType) {
                     if (result == null) {
                         result = new ArrayList<MediaType>();
                     }
 
-                    result.add(metadataExtension.getMediaType());
+                    result.add((MediaType) m);
                 }
             }
         }
@@ -635,22 +692,8 @@ public class MetadataService extends Service {
      * @return The list of metadata associated to this extension.
      */
     public List<Metadata> getAllMetadata(String extension) {
-        List<Metadata> result = null;
-
-        if (extension != null) {
-            // Look for all registered convenient mapping.
-            for (MetadataExtension metadataExtension : this.mappings) {
-                if (extension.equals(metadataExtension.getName())) {
-                    if (result == null) {
-                        result = new ArrayList<Metadata>();
-                    }
-
-                    result.add(metadataExtension.getMetadata());
-                }
-            }
-        }
-
-        return result;
+        List<Metadata> metadata = getIndexedMetadata(extension);
+        return (metadata == null) ? null : new ArrayList<Metadata>(metadata);
     }
 
     /**
@@ -744,15 +787,18 @@ public class MetadataService extends Service {
      * @return The first extension mapping to this metadata.
      */
     public String getExtension(Metadata metadata) {
-        if (metadata != null) {
-            // Look for the first registered convenient mapping.
-            for (final MetadataExtension metadataExtension : this.mappings) {
-                if (metadata.equals(metadataExtension.getMetadata())) {
-                    return metadataExtension.getName();
-                }
-            }
-        }
-        return null;
+        return (metadata == null) ? null : this.index.extensions.get(metadata);
+    }
+
+    /**
+     * Returns the indexed list of metadata associated to this extension.
+     * 
+     * @param extension
+     *            The extension name without any delimiter.
+     * @return The shared list of metadata or null.
+     */
+    private List<Metadata> getIndexedMetadata(String extension) {
+        return (extension == null) ? null : this.index.metadata.get(extension);
     }
 
     /**
@@ -814,16 +860,8 @@ public class MetadataService extends Service {
      * @return The metadata associated to this extension.
      */
     public Metadata getMetadata(String extension) {
-        if (extension != null) {
-            // Look for the first registered convenient mapping.
-            for (final MetadataExtension metadataExtension : this.mappings) {
-                if (extension.equals(metadataExtension.getName())) {
-                    return metadataExtension.getMetadata();
-                }
-            }
-        }
-
-        return null;
+        List<Metadata> metadata = getIndexedMetadata(extension);
+        return (metadata == null) ? null : metadata.get(0);
     }
 
     // [ifndef gwt] method
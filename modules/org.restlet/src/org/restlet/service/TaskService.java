@@ -35,6 +35,7 @@ import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -44,7 +45,9 @@ import org.restlet.Application;
 import org.restlet.Context;
 import org.restlet.Response;
 import org.restlet.engine.Engine;
+import org.restlet.engine.log.LoggingThreadFactory;
 import org.restlet.engine.util.ContextualRunnable;
+import org.restlet.engine.util.ThreadPerTaskExecutorService;
 import org.restlet.routing.VirtualHost;
 
 /**
@@ -61,7 +64,11 @@ import org.restlet.routing.VirtualHost;
  * Resources that are part of your context. In general this context corresponds
  * to a parent Application's context. If you want to have your own service
  * instance, you can use the {@link TaskService#wrap(ScheduledExecutorService)}
- * method to ensure that thread local variables are correctly set.
+ * method to ensure that thread local variables are correctly set.<br>
+ * <br>
+ * When running on Java SE 21 or later, the service can run each task in a new
+ * virtual thread instead of a pool of platform threads. See the
+ * {@link #setVirtualThreads(boolean)} method.
  * 
  * @author Jerome Louvel
  * @author Doug Lea (docs of ExecutorService in public domain)
@@ -100,6 +107,85 @@ public class TaskService extends Service implements ScheduledExecutorService {
         }
     }
 
+    /**
+     * Scheduled executor service running the immediate tasks in a new thread
+     * each, with a limited concurrency, and the delayed or periodic tasks in a
+     * pool of threads created by the same factory.
+     * 
+     * @author Jerome Louvel
+     */
+    private static class VirtualThreadExecutorService extends
+            ScheduledThreadPoolExecutor {
+
+        /** The service running the immediate tasks. */
+        private final ThreadPerTaskExecutorService immediateService;
+
+        /**
+         * Constructor.
+         * 
+         * @param corePoolSize
+         *            The number of threads running the scheduled tasks.
+         * @param threadFactory
+         *            The virtual thread factory.
+         * @param maxConcurrentTasks
+         *            The maximum number of immediate tasks running
+         *            concurrently.
+         */
+        public VirtualThreadExecutorService(int corePoolSize,
+                ThreadFactory threadFactory, int maxConcurrentTasks) {
+            super(corePoolSize, threadFactory);
+            this.immediateService = new ThreadPerTaskExecutorService(
+                    threadFactory, maxConcurrentTasks, -1);
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit)
+                throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            return super.awaitTermination(timeout, unit)
+                    && this.immediateService.awaitTermination(
+                            deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            this.immediateService.execute(command);
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return super.isTerminated() && this.immediateService.isTerminated();
+        }
+
+        @Override
+        public void shutdown() {
+            super.shutdown();
+            this.immediateService.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            List<Runnable> result = super.shutdownNow();
+            result.addAll(this.immediateService.shutdownNow());
+            return result;
+        }
+
+        @Override
+        public <T> Future<T> submit(Callable<T> task) {
+            return this.immediateService.submit(task);
+        }
+
+        @Override
+        public Future<?> submit(Runnable task) {
+            return this.immediateService.submit(task);
+        }
+
+        @Override
+        public <T> Future<T> submit(Runnable task, T result) {
+            return this.immediateService.submit(task, result);
+        }
+    }
+
     /**
      * Wraps a JDK executor service to ensure that the threads executing the
      * tasks will have the thread local variables copied from the calling
@@ -244,12 +330,24 @@ public class TaskService extends Service implements ScheduledExecutorService {
      */
     private volatile boolean daemon;
 
+    /**
+     * The maximum number of tasks running concurrently in virtual threads. -1
+     * by default, meaning unlimited.
+     */
+    private volatile int maxConcurrentTasks;
+
     /**
      * Allow {@link #shutdown()} and {@link #shutdownNow()} methods to
      * effectively shutdown the wrapped executor service.
      */
     private volatile boolean shutdownAllowed;
 
+    /**
+     * Indicates if the tasks are run in virtual threads when supported. False
+     * by default.
+     */
+    private volatile boolean virtualThreads;
+
     /** The wrapped JDK executor service. */
     private volatile ScheduledExecutorService wrapped;
 
@@ -295,7 +393,9 @@ public class TaskService extends Service implements ScheduledExecutorService {
     public TaskService(boolean enabled, int corePoolSize) {
         super(enabled);
         this.corePoolSize = corePoolSize;
+        this.maxConcurrentTasks = -1;
         this.shutdownAllowed = false;
+        this.virtualThreads = false;
     }
 
     /**
@@ -329,13 +429,32 @@ public class TaskService extends Service implements ScheduledExecutorService {
     /**
      * Creates a new JDK executor service that will be wrapped. By default it
      * calls {@link Executors#newCachedThreadPool(ThreadFactory)}, passing the
-     * result of {@link #createThreadFactory()} as a parameter.
+     * result of {@link #createThreadFactory()} as a parameter.<br>
+     * <br>
+     * If virtual threads are enabled and supported, the immediate tasks are
+     * run in a new virtual thread each, up to the maximum number of concurrent
+     * tasks, while the scheduled tasks are run by a pool of virtual threads.
      * 
      * @param corePoolSize
      *            The core pool size defining the maximum number of threads.
      * @return A new JDK executor service.
      */
     protected ScheduledExecutorService createExecutorService(int corePoolSize) {
+        if (isVirtualThreads()) {
+            ThreadFactory threadFactory = ThreadPerTaskExecutorService
+                    .createVirtualThreadFactory("restlet-virtual-");
+
+            if (threadFactory != null) {
+                return new VirtualThreadExecutorService(corePoolSize,
+                        new LoggingThreadFactory(Context.getCurrentLogger(),
+                                threadFactory), getMaxConcurrentTasks());
+            }
+
+            Context.getCurrentLogger()
+                    .warning(
+                            "Virtual threads aren't supported by this JVM. Using platform threads instead.");
+        }
+
         return Executors.newScheduledThreadPool(corePoolSize,
                 createThreadFactory());
     }
@@ -370,6 +489,17 @@ public class TaskService extends Service implements ScheduledExecutorService {
         return corePoolSize;
     }
 
+    /**
+     * Returns the maximum number of tasks running concurrently in virtual
+     * threads. If the value is '-1', then the number isn't limited.
+     * 
+     * @return The maximum number of tasks running concurrently in virtual
+     *         threads.
+     */
+    public int getMaxConcurrentTasks() {
+        return maxConcurrentTasks;
+    }
+
     /**
      * Returns the wrapped JDK executor service.
      * 
@@ -517,6 +647,16 @@ public class TaskService extends Service implements ScheduledExecutorService {
         return (getWrapped() == null) || getWrapped().isTerminated();
     }
 
+    /**
+     * Indicates if the tasks are run in virtual threads when supported by the
+     * JVM.
+     * 
+     * @return True if the tasks are run in virtual threads when supported.
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
     /**
      * Creates and executes a ScheduledFuture that becomes enabled after the
      * given delay.
@@ -648,6 +788,20 @@ public class TaskService extends Service implements ScheduledExecutorService {
         this.daemon = daemon;
     }
 
+    /**
+     * Sets the maximum number of tasks running concurrently in virtual
+     * threads. Additional tasks wait for their turn. If the value is '-1',
+     * then the number isn't limited. Must be set before the service is
+     * started.
+     * 
+     * @param maxConcurrentTasks
+     *            The maximum number of tasks running concurrently in virtual
+     *            threads.
+     */
+    public void setMaxConcurrentTasks(int maxConcurrentTasks) {
+        this.maxConcurrentTasks = maxConcurrentTasks;
+    }
+
     /**
      * Indicates if the {@link #shutdown()} and {@link #shutdownNow()} methods
      * are allowed to effectively shutdown the wrapped executor service.
@@ -659,6 +813,18 @@ public class TaskService extends Service implements ScheduledExecutorService {
         this.shutdownAllowed = allowShutdown;
     }
 
+    /**
+     * Indicates if the tasks are run in virtual threads when supported by the
+     * JVM, which requires Java SE 21 or later. Otherwise, platform threads are
+     * used. Must be set before the service is started.
+     * 
+     * @param virtualThreads
+     *            True if the tasks are run in virtual threads when supported.
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
     /**
      * Sets the wrapped JDK executor service.
      * 
@@ -24,6 +24,7 @@
 
 package org.restlet.util;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
@@ -32,6 +33,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import org.restlet.Request;
 import org.restlet.Response;
 import org.restlet.Restlet;
+import org.restlet.engine.util.RouteTrie;
 import org.restlet.routing.Route;
 
 /**
@@ -41,7 +43,10 @@ import org.restlet.routing.Route;
  * {@link List}, in particular all the helper methods in {@link Collections}.<br>
  * <br>
  * Note that structural changes to this list are thread-safe, using an
- * underlying {@link CopyOnWriteArrayList}.
+ * underlying {@link CopyOnWriteArrayList}. The index used by the compiled
+ * routing modes is lazily built then maintained as routes are added or
+ * removed. If the URI pattern of a route's template is changed after the
+ * index is built, the {@link #reindex()} method must be called.
  * 
  * @author Jerome Louvel
  * @see java.util.Collections
@@ -51,6 +56,9 @@ public final class RouteList extends WrapperList<Route> {
     /** The index of the last route used in the round robin mode. */
     private volatile int lastIndex;
 
+    /** The compiled index of the routes, lazily built. */
+    private volatile RouteTrie trie;
+
     /**
      * Constructor.
      */
@@ -70,6 +78,47 @@ public final class RouteList extends WrapperList<Route> {
         this.lastIndex = -1;
     }
 
+    @Override
+    public synchronized boolean add(Route route) {
+        boolean result = super.add(route);
+
+        if (this.trie != null) {
+            if (indexOf(route) < size() - 1) {
+                // Duplicate route, the order must be recomputed
+                this.trie = null;
+            } else {
+                this.trie.add(route);
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public synchronized void add(int index, Route route) {
+        super.add(index, route);
+        this.trie = null;
+    }
+
+    @Override
+    public synchronized boolean addAll(Collection<? extends Route> routes) {
+        this.trie = null;
+        return super.addAll(routes);
+    }
+
+    @Override
+    public synchronized boolean addAll(int index,
+            Collection<? extends Route> routes) {
+        this.trie = null;
+        return super.addAll(index, routes);
+    }
+
+    @Override
+    public synchronized void clear() {
+        super.clear();
+        this.trie = null;
+    }
+
     /**
      * Returns the best route match for a given call.
      * 
@@ -98,6 +147,62 @@ public final class RouteList extends WrapperList<Route> {
         return result;
     }
 
+    /**
+     * Returns the best route match for a given call, like
+     * {@link #getBest(Request, Response, float)}, but only scores the routes
+     * whose URI template may match according to the compiled index.
+     * 
+     * @param request
+     *            The request to score.
+     * @param response
+     *            The response to score.
+     * @param requiredScore
+     *            The minimum score required to have a match.
+     * @return The best route match or null.
+     */
+    public Route getCompiledBest(Request request, Response response,
+            float requiredScore) {
+        Route result = null;
+        float bestScore = 0F;
+        float score;
+
+        for (Route current : getTrie().getCandidates(request)) {
+            score = current.score(request, response);
+
+            if ((score > bestScore) && (score >= requiredScore)) {
+                bestScore = score;
+                result = current;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the first route match for a given call, like
+     * {@link #getFirst(Request, Response, float)}, but only scores the routes
+     * whose URI template may match according to the compiled index.
+     * 
+     * @param request
+     *            The request to score.
+     * @param response
+     *            The response to score.
+     * @param requiredScore
+     *            The minimum score required to have a match.
+     * @return The first route match or null.
+     */
+    public Route getCompiledFirst(Request request, Response response,
+            float requiredScore) {
+        for (Route current : getTrie().getCandidates(request)) {
+            if (current.score(request, response) >= requiredScore) {
+                return current;
+            }
+        }
+
+        // No match found
+        return null;
+    }
+
     /**
      * Returns the first route match for a given call.
      * 
@@ -220,6 +325,59 @@ public final class RouteList extends WrapperList<Route> {
         return null;
     }
 
+    /**
+     * Returns the compiled index of the routes, building it if needed.
+     * 
+     * @return The compiled index of the routes.
+     */
+    private RouteTrie getTrie() {
+        RouteTrie result = this.trie;
+
+        if (result == null) {
+            synchronized (this) {
+                result = this.trie;
+
+                if (result == null) {
+                    this.trie = result = new RouteTrie(getDelegate());
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Rebuilds the compiled index of the routes. Needed if the URI pattern of
+     * a route's template was changed after the index was built.
+     */
+    public synchronized void reindex() {
+        this.trie = null;
+    }
+
+    @Override
+    public synchronized Route remove(int index) {
+        Route result = super.remove(index);
+        unindex(result);
+        return result;
+    }
+
+    @Override
+    public synchronized boolean remove(Object route) {
+        boolean result = super.remove(route);
+
+        if (result && (route instanceof Route)) {
+            unindex((Route) route);
+        }
+
+        return result;
+    }
+
+    @Override
+    public synchronized boolean removeAll(Collection<?> routes) {
+        this.trie = null;
+        return super.removeAll(routes);
+    }
+
     /**
      * Removes all routes routing to a given target.
      * 
@@ -234,6 +392,19 @@ public final class RouteList extends WrapperList<Route> {
         }
     }
 
+    @Override
+    public synchronized boolean retainAll(Collection<?> routes) {
+        this.trie = null;
+        return super.retainAll(routes);
+    }
+
+    @Override
+    public synchronized Route set(int index, Route route) {
+        Route result = super.set(index, route);
+        this.trie = null;
+        return result;
+    }
+
     /**
      * Returns a view of the portion of this list between the specified
      * fromIndex, inclusive, and toIndex, exclusive.
@@ -248,4 +419,21 @@ public final class RouteList extends WrapperList<Route> {
     public RouteList subList(int fromIndex, int toIndex) {
         return new RouteList(getDelegate().subList(fromIndex, toIndex));
     }
+
+    /**
+     * Removes a route from the compiled index, if it has been built.
+     * 
+     * @param route
+     *            The removed route.
+     */
+    private void unindex(Route route) {
+        if (this.trie != null) {
+            if (contains(route)) {
+                // Duplicate route, the order must be recomputed
+                this.trie = null;
+            } else {
+                this.trie.remove(route);
+            }
+        }
+    }
 }
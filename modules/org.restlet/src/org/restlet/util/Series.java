@@ -25,21 +25,34 @@
 package org.restlet.util;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 
 import org.restlet.Context;
+import org.restlet.data.Header;
+import org.restlet.data.Parameter;
 
 /**
  * Modifiable list of entries with many helper methods. Note that this class
  * uses the Parameter class as the template type. This allows you to use an
  * instance of this class as any other java.util.List, in particular all the
- * helper methods in java.util.Collections.
+ * helper methods in java.util.Collections.<br>
+ * <br>
+ * Once a series holds more than a few entries, the lookups by name use an
+ * index ignoring the case of the names, lazily built then maintained as
+ * entries are added or removed. If the name of an entry is changed after it
+ * was added, the {@link #reindex()} method must be called.
  * 
  * @author Jerome Louvel
  * @param <T>
@@ -61,6 +74,13 @@ public class Series<T extends NamedValue<String>> extends WrapperList<T> {
      */
     public static final Object EMPTY_VALUE = new Object();
 
+    // [ifndef gwt] member
+    /** The cached entry constructors, by entry class. */
+    private static final ConcurrentMap<Class<?>, java.lang.reflect.Constructor<?>> CONSTRUCTORS = new ConcurrentHashMap<Class<?>, java.lang.reflect.Constructor<?>>();
+
+    /** The minimum number of entries before lookups use the name index. */
+    private static final int INDEX_THRESHOLD = 8;
+
     // [ifndef gwt] method
     /**
      * Returns an unmodifiable view of the specified series. Attempts to call a
@@ -80,12 +100,25 @@ public class Series<T extends NamedValue<String>> extends WrapperList<T> {
     /** The entry class. */
     private final Class<T> entryClass;
 
+    /**
+     * Indicates if the entries can be indexed by name. False when the series
+     * wraps a list that can be changed without notice.
+     */
+    private final boolean indexable;
+
+    /** The entries by name ignoring the case, lazily built. */
+    private volatile Map<String, List<T>> index;
+
+    /** The series this series is a view of, or null. */
+    private volatile Series<T> parent;
+
     /**
      * Constructor.
      */
     public Series(Class<T> entryClass) {
         super();
         this.entryClass = entryClass;
+        this.indexable = true;
     }
 
     /**
@@ -97,6 +130,7 @@ public class Series<T extends NamedValue<String>> extends WrapperList<T> {
     public Series(Class<T> entryClass, int initialCapacity) {
         super(initialCapacity);
         this.entryClass = entryClass;
+        this.indexable = true;
     }
 
     /**
@@ -108,6 +142,29 @@ public class Series<T extends NamedValue<String>> extends WrapperList<T> {
     public Series(Class<T> entryClass, List<T> delegate) {
         super(delegate);
         this.entryClass = entryClass;
+        this.indexable = false;
+    }
+
+    @Override
+    public void add(int index, T element) {
+        super.add(index, element);
+        reindex();
+    }
+
+    @Override
+    public boolean add(T element) {
+        boolean result = super.add(element);
+        Map<String, List<T>> current = this.index;
+
+        if (current != null) {
+            if (this.parent == null) {
+                index(current, element);
+            } else {
+                reindex();
+            }
+        }
+
+        return result;
     }
 
     /**
@@ -123,6 +180,26 @@ public class Series<T extends NamedValue<String>> extends WrapperList<T> {
         return add(createEntry(name, value));
     }
 
+    @Override
+    public boolean addAll(Collection<? extends T> elements) {
+        boolean result = super.addAll(elements);
+        reindex();
+        return result;
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends T> elements) {
+        boolean result = super.addAll(index, elements);
+        reindex();
+        return result;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        reindex();
+    }
+
     /**
      * Copies the parameters whose name is a key in the given map.<br>
      * If a matching parameter is found, its value is put in the map.<br>
@@ -183,9 +260,23 @@ public class Series<T extends NamedValue<String>> extends WrapperList<T> {
      * @return A new entry.
      */
     public T createEntry(String name, String value) {
+        if (this.entryClass == Header.class) {
+            return this.entryClass.cast(new Header(name, value));
+        } else if (this.entryClass == Parameter.class) {
+            return this.entryClass.cast(new Parameter(name, value));
+        }
+
         try {
-            return this.entryClass.getConstructor(String.class, String.class)
-                    .newInstance(name, value);
+            java.lang.reflect.Constructor<?> constructor = CONSTRUCTORS
+                    .get(this.entryClass);
+
+            if (constructor == null) {
+                constructor = this.entryClass.getConstructor(String.class,
+                        String.class);
+                CONSTRUCTORS.putIfAbsent(this.entryClass, constructor);
+            }
+
+            return this.entryClass.cast(constructor.newInstance(name, value));
         } catch (Exception e) {
             Context.getCurrentLogger().log(Level.WARNING,
                     "Unable to create a series entry", e);
@@ -245,6 +336,38 @@ public class Series<T extends NamedValue<String>> extends WrapperList<T> {
         return result;
     }
 
+    /**
+     * Returns the entries that may have a given name, in their order in the
+     * series. For series with more than a few entries, only the entries whose
+     * name is equal ignoring the case are returned, using the name index that
+     * is built if needed. Otherwise, all the entries are returned.
+     * 
+     * @param name
+     *            The entry name.
+     * @return The entries that may have the given name.
+     */
+    private Iterable<T> getCandidates(String name) {
+        if ((name == null) || !this.indexable || (size() < INDEX_THRESHOLD)) {
+            return this;
+        }
+
+        Map<String, List<T>> current = this.index;
+
+        if (current == null) {
+            current = new TreeMap<String, List<T>>(
+                    String.CASE_INSENSITIVE_ORDER);
+
+            for (T entry : getDelegate()) {
+                index(current, entry);
+            }
+
+            this.index = current;
+        }
+
+        List<T> result = current.get(name);
+        return (result == null) ? Collections.<T> emptyList() : result;
+    }
+
     /**
      * Returns the first parameter found with the given name.
      * 
@@ -266,7 +389,7 @@ public class Series<T extends NamedValue<String>> extends WrapperList<T> {
      * @return The first parameter found with the given name.
      */
     public T getFirst(String name, boolean ignoreCase) {
-        for (T param : this) {
+        for (T param : getCandidates(name)) {
             if (equals(param.getName(), name, ignoreCase)) {
                 return param;
             }
@@ -384,7 +507,7 @@ public class Series<T extends NamedValue<String>> extends WrapperList<T> {
         String result = null;
         StringBuilder sb = null;
 
-        for (final T param : this) {
+        for (final T param : getCandidates(name)) {
             if ((ignoreCase && param.getName().equalsIgnoreCase(name))
                     || param.getName().equals(name)) {
                 if (sb == null) {
@@ -500,6 +623,118 @@ public class Series<T extends NamedValue<String>> extends WrapperList<T> {
         return result;
     }
 
+    /**
+     * Adds an entry to a name index.
+     * 
+     * @param index
+     *            The name index.
+     * @param entry
+     *            The entry to add.
+     */
+    private void index(Map<String, List<T>> index, T entry) {
+        if (entry.getName() != null) {
+            List<T> entries = index.get(entry.getName());
+
+            if (entries == null) {
+                entries = new ArrayList<T>(1);
+                index.put(entry.getName(), entries);
+            }
+
+            entries.add(entry);
+        }
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return listIterator();
+    }
+
+    @Override
+    public ListIterator<T> listIterator() {
+        return listIterator(0);
+    }
+
+    @Override
+    public ListIterator<T> listIterator(int index) {
+        final ListIterator<T> iterator = super.listIterator(index);
+
+        return new ListIterator<T>() {
+            public void add(T element) {
+                iterator.add(element);
+                reindex();
+            }
+
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            public boolean hasPrevious() {
+                return iterator.hasPrevious();
+            }
+
+            public T next() {
+                return iterator.next();
+            }
+
+            public int nextIndex() {
+                return iterator.nextIndex();
+            }
+
+            public T previous() {
+                return iterator.previous();
+            }
+
+            public int previousIndex() {
+                return iterator.previousIndex();
+            }
+
+            public void remove() {
+                iterator.remove();
+                reindex();
+            }
+
+            public void set(T element) {
+                iterator.set(element);
+                reindex();
+            }
+        };
+    }
+
+    /**
+     * Drops the name index so that it is rebuilt by the next lookup. Needed if
+     * the name of an entry was changed after it was added, the other changes
+     * being detected.
+     */
+    public void reindex() {
+        this.index = null;
+        Series<T> current = this.parent;
+
+        if (current != null) {
+            current.reindex();
+        }
+    }
+
+    @Override
+    public T remove(int index) {
+        T result = super.remove(index);
+        reindex();
+        return result;
+    }
+
+    @Override
+    public boolean remove(Object element) {
+        boolean result = super.remove(element);
+        reindex();
+        return result;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> elements) {
+        boolean result = super.removeAll(elements);
+        reindex();
+        return result;
+    }
+
     /**
      * Removes all the parameters with a given name.
      * 
@@ -573,6 +808,20 @@ public class Series<T extends NamedValue<String>> extends WrapperList<T> {
         return changed;
     }
 
+    @Override
+    public boolean retainAll(Collection<?> elements) {
+        boolean result = super.retainAll(elements);
+        reindex();
+        return result;
+    }
+
+    @Override
+    public T set(int index, T element) {
+        T result = super.set(index, element);
+        reindex();
+        return result;
+    }
+
     /**
      * Replaces the value of the first parameter with the given name and removes
      * all other parameters with the same name. The name matching is case
@@ -640,9 +889,12 @@ public class Series<T extends NamedValue<String>> extends WrapperList<T> {
      */
     @Override
     public Series<T> subList(int fromIndex, int toIndex) {
-        // [ifndef gwt] instruction
-        return new Series<T>(this.entryClass, getDelegate().subList(fromIndex,
-                toIndex));
+        // [ifndef gwt]
+        Series<T> result = new Series<T>(this.entryClass, getDelegate()
+                .subList(fromIndex, toIndex));
+        result.parent = this;
+        return result;
+        // [enddef]
         // [ifdef gwt] instruction uncomment
         // return
         // createSeries(org.restlet.engine.util.ListUtils.copySubList(
@@ -675,7 +927,7 @@ public class Series<T extends NamedValue<String>> extends WrapperList<T> {
         // [ifdef gwt] instruction uncomment
         // Series<T> result = createSeries(null);
 
-        for (T param : this) {
+        for (T param : getCandidates(name)) {
             if (equals(param.getName(), name, ignoreCase)) {
                 result.add(param);
             }